@@ -31,6 +31,7 @@ import org.slf4j.Logger;
 import org.xwiki.component.annotation.Component;
 import org.xwiki.component.annotation.InstantiationStrategy;
 import org.xwiki.component.descriptor.ComponentInstantiationStrategy;
+import org.xwiki.contrib.llm.internal.EmbeddingVectorUtils;
 import org.xwiki.user.UserReference;
 
 /**
@@ -52,9 +53,11 @@ public class Chunk
     private int posFirstChar;
     private int posLastChar;
     private String content;
-    private double[] embeddings;
+    private float[] embeddings;
     private String errorMessage;
     private String storeHint;
+    private boolean dedicatedIndex;
+    private List<String> viewers;
 
     @Inject
     private Logger logger;
@@ -124,6 +127,44 @@ public class Chunk
         this.storeHint = storeHint;
     }
 
+    /**
+     * @return {@code true} if the embedding of the chunk is indexed in the dedicated vector index of its collection
+     * @since 0.6.3
+     */
+    public boolean getDedicatedIndex()
+    {
+        return this.dedicatedIndex;
+    }
+
+    /**
+     * @param dedicatedIndex {@code true} if the embedding of the chunk shall be indexed in the dedicated vector index
+     *     of its collection
+     * @since 0.6.3
+     */
+    public void setDedicatedIndex(boolean dedicatedIndex)
+    {
+        this.dedicatedIndex = dedicatedIndex;
+    }
+
+    /**
+     * @return the users and groups that might be allowed to view the chunk, {@code null} if the rights of the chunk
+     * are only checked after the search
+     * @since 0.6.3
+     */
+    public List<String> getViewers()
+    {
+        return this.viewers;
+    }
+
+    /**
+     * @param viewers the users and groups that might be allowed to view the chunk
+     * @since 0.6.3
+     */
+    public void setViewers(List<String> viewers)
+    {
+        this.viewers = viewers;
+    }
+
     /**
      * @return the error message if computing or embedding the chunk failed, the embedding should be empty when the
      * error message is set
@@ -226,10 +267,21 @@ public class Chunk
      * Getter for the embeddings.
      *
      * @return the embeddings as double array
+     * @deprecated use {@link #getEmbeddingVector()} instead, this method copies the embeddings on every call
      */
+    @Deprecated(since = "0.6.3")
     public double[] getEmbeddings()
     {
-        return embeddings;
+        return EmbeddingVectorUtils.toDoubleArray(this.embeddings);
+    }
+
+    /**
+     * @return the embeddings as float array, the array is not copied and shouldn't be modified
+     * @since 0.6.3
+     */
+    public float[] getEmbeddingVector()
+    {
+        return this.embeddings;
     }
 
     /**
@@ -314,8 +366,19 @@ public class Chunk
 
     /**
      * @param embeddings the embeddings as double array
+     * @deprecated use {@link #setEmbeddingVector(float[])} instead
      */
+    @Deprecated(since = "0.6.3")
     public void setEmbeddings(double[] embeddings)
+    {
+        this.embeddings = EmbeddingVectorUtils.toFloatArray(embeddings);
+    }
+
+    /**
+     * @param embeddings the embeddings as float array, the array is stored as-is without copying it
+     * @since 0.6.3
+     */
+    public void setEmbeddingVector(float[] embeddings)
     {
         this.embeddings = embeddings;
     }
@@ -328,10 +391,10 @@ public class Chunk
      */
     public void computeEmbeddings(String embeddingModelID, UserReference userReference) throws IndexException
     {
-        this.embeddings = this.embeddingsUtils.computeEmbeddings(this.content,
-                                                                 embeddingModelID,
-                                                                 userReference,
-                                                                 EmbeddingModel.EmbeddingPurpose.INDEX);
+        this.embeddings = this.embeddingsUtils.computeEmbeddingVector(this.content,
+                                                                      embeddingModelID,
+                                                                      userReference,
+                                                                      EmbeddingModel.EmbeddingPurpose.INDEX);
     }
 
     /**
@@ -384,9 +447,11 @@ public class Chunk
             .append(getLanguage(), chunk.getLanguage())
             .append(getCollection(), chunk.getCollection())
             .append(getContent(), chunk.getContent())
-            .append(getEmbeddings(), chunk.getEmbeddings())
+            .append(getEmbeddingVector(), chunk.getEmbeddingVector())
             .append(getErrorMessage(), chunk.getErrorMessage())
             .append(getStoreHint(), chunk.getStoreHint())
+            .append(getDedicatedIndex(), chunk.getDedicatedIndex())
+            .append(getViewers(), chunk.getViewers())
             .isEquals();
     }
 
@@ -403,9 +468,11 @@ public class Chunk
             .append(getPosFirstChar())
             .append(getPosLastChar())
             .append(getContent())
-            .append(getEmbeddings())
+            .append(getEmbeddingVector())
             .append(getErrorMessage())
             .append(getStoreHint())
+            .append(getDedicatedIndex())
+            .append(getViewers())
             .toHashCode();
     }
 }
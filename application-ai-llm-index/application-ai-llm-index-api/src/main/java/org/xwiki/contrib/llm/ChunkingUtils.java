@@ -139,6 +139,7 @@ public class ChunkingUtils
             chunk.setChunkIndex(chunkIndex);
             chunk.setWiki(context.getWikiId());
             chunk.setStoreHint(collection.getDocumentStoreHint());
+            chunk.setDedicatedIndex(collection.getDedicatedIndex());
             chunk.computeId();
             result.add(chunk);
     
@@ -25,6 +25,7 @@ import org.xwiki.component.annotation.Role;
 import org.xwiki.contrib.llm.authorization.AuthorizationManager;
 import org.xwiki.model.reference.DocumentReference;
 import org.xwiki.model.reference.LocalDocumentReference;
+import org.xwiki.stability.Unstable;
 import org.xwiki.user.GuestUserReference;
 import org.xwiki.user.UserReference;
 
@@ -167,6 +168,17 @@ public interface Collection
      */
     boolean getAllowGuests();
 
+    /**
+     * @return {@code true} if the embeddings of the collection are indexed in a separate vector index that is only
+     *     searched for this collection, {@code false} if they are indexed together with other collections
+     * @since 0.6.3
+     */
+    @Unstable
+    default boolean getDedicatedIndex()
+    {
+        return false;
+    }
+
     /**
      * Gets the list of groups that can query the collection.
      * 
@@ -244,6 +256,20 @@ public interface Collection
      */
     void setAllowGuests(boolean allowGuests) throws IndexException;
 
+    /**
+     * Sets whether the embeddings of the collection are indexed in a separate vector index. Changing this re-indexes
+     * the collection.
+     *
+     * @param dedicatedIndex {@code true} to index the collection in a separate vector index
+     * @throws IndexException if the option cannot be set
+     * @since 0.6.3
+     */
+    @Unstable
+    default void setDedicatedIndex(boolean dedicatedIndex) throws IndexException
+    {
+        throw new UnsupportedOperationException("Dedicated indexes are not supported by this collection");
+    }
+
     /**
      * Sets the list of groups that can query the collection.
      * 
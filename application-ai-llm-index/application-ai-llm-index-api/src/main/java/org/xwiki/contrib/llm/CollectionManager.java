@@ -24,6 +24,7 @@ import java.util.List;
 import org.xwiki.component.annotation.Role;
 import org.xwiki.contrib.llm.openai.Context;
 import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.stability.Unstable;
 
 /**
  * This interface manages collections.
@@ -97,6 +98,21 @@ public interface CollectionManager
      */
     List<Context> similaritySearch(String textQuery, List<String> collections, int limit) throws IndexException;
 
+    /**
+     * @param textQuery the text query
+     * @param collections the collections to search in
+     * @param limit the maximum number of results to return
+     * @param parameters the parameters of the search, e.g., to combine the similarity search with a keyword search
+     * @return a list of document ids that match the text query
+     * @since 0.6.3
+     */
+    @Unstable
+    default List<Context> similaritySearch(String textQuery, List<String> collections, int limit,
+        SearchParameters parameters) throws IndexException
+    {
+        return similaritySearch(textQuery, collections, limit);
+    }
+
     /**
      * @param collections the collections to filter
      * @return a list of collections that the user has access to
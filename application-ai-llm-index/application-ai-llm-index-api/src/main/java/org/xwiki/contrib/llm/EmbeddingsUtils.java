@@ -19,6 +19,7 @@
  */
 package org.xwiki.contrib.llm;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
@@ -28,7 +29,11 @@ import javax.inject.Singleton;
 
 import org.xwiki.component.annotation.Component;
 import org.xwiki.component.phase.Initializable;
+import org.xwiki.contrib.llm.internal.AiLLMIndexConfiguration;
 import org.xwiki.contrib.llm.internal.AiLLMSolrCoreInitializer;
+import org.xwiki.contrib.llm.internal.EmbeddingCache;
+import org.xwiki.contrib.llm.internal.EmbeddingRequestCoalescer;
+import org.xwiki.contrib.llm.internal.EmbeddingVectorUtils;
 import org.xwiki.model.reference.WikiReference;
 import org.xwiki.user.UserReference;
 
@@ -54,6 +59,15 @@ public class EmbeddingsUtils implements Initializable
     @Inject 
     private EmbeddingModelManager embeddingModelManager;
 
+    @Inject
+    private EmbeddingCache embeddingCache;
+
+    @Inject
+    private EmbeddingRequestCoalescer requestCoalescer;
+
+    @Inject
+    private AiLLMIndexConfiguration configuration;
+
     private RetryRegistry retryRegistry;
 
     /**
@@ -64,13 +78,16 @@ public class EmbeddingsUtils implements Initializable
      * @param userReference the user reference
      * @param purpose the purpose of the embeddings
      * @return the embeddings as double array
+     * @deprecated use {@link #computeEmbeddingVector(String, String, UserReference, EmbeddingModel.EmbeddingPurpose)}
+     *     instead
      */
+    @Deprecated(since = "0.6.3")
     public double[] computeEmbeddings(String text,
                                      String modelId,
                                      UserReference userReference,
                                      EmbeddingModel.EmbeddingPurpose purpose) throws IndexException
     {
-        return computeEmbeddings(List.of(text), modelId, userReference, purpose).get(0);
+        return EmbeddingVectorUtils.toDoubleArray(computeEmbeddingVector(text, modelId, userReference, purpose));
     }
 
     /**
@@ -82,35 +99,158 @@ public class EmbeddingsUtils implements Initializable
      * @param purpose the purpose of the embeddings
      * @return the embeddings as list of double arrays
      * @throws IndexException if an error occurs while computing the embeddings
+     * @deprecated use {@link #computeEmbeddingVectors(List, String, UserReference, EmbeddingModel.EmbeddingPurpose)}
+     *     instead
      */
+    @Deprecated(since = "0.6.3")
     public List<double[]> computeEmbeddings(List<String> texts,
                                          String modelId,
                                          UserReference userReference,
                                          EmbeddingModel.EmbeddingPurpose purpose)
         throws IndexException
+    {
+        return EmbeddingVectorUtils.toDoubleArrays(computeEmbeddingVectors(texts, modelId, userReference, purpose));
+    }
+
+    /**
+     * Compute the embedding vector for given text.
+     *
+     * @param text the text to compute embeddings for
+     * @param modelId the model id
+     * @param userReference the user reference
+     * @param purpose the purpose of the embeddings
+     * @return the embeddings as float array
+     * @throws IndexException if an error occurs while computing the embeddings
+     * @since 0.6.3
+     */
+    public float[] computeEmbeddingVector(String text,
+                                          String modelId,
+                                          UserReference userReference,
+                                          EmbeddingModel.EmbeddingPurpose purpose) throws IndexException
+    {
+        return computeEmbeddingVectors(List.of(text), modelId, userReference, purpose).get(0);
+    }
+
+    /**
+     * Compute the embedding vectors for given texts.
+     *
+     * @param texts the texts to compute embeddings for
+     * @param modelId the model id
+     * @param userReference the user reference
+     * @param purpose the purpose of the embeddings
+     * @return the embeddings as list of float arrays
+     * @throws IndexException if an error occurs while computing the embeddings
+     * @since 0.6.3
+     */
+    public List<float[]> computeEmbeddingVectors(List<String> texts,
+                                                 String modelId,
+                                                 UserReference userReference,
+                                                 EmbeddingModel.EmbeddingPurpose purpose)
+        throws IndexException
     {
         try {
             XWikiContext context = this.contextProvider.get();
             WikiReference wikiReference = context.getWikiReference();
+            String wiki = wikiReference.getName();
             EmbeddingModel embeddingModel = this.embeddingModelManager.getModel(wikiReference, modelId, userReference);
 
-            // Make sure that the same model on different wikis has different retry objects.
-            String retryId = wikiReference.getName() + ":" + modelId;
-            Retry retry = this.retryRegistry.retry(retryId);
-            List<double[]> embeddingsFull;
-            if (texts.size() == 1) {
-                embeddingsFull = retry.executeCallable(() -> List.of(embeddingModel.embed(texts.get(0), purpose)));
-            } else {
-                embeddingsFull = retry.executeCallable(() -> embeddingModel.embed(texts, purpose));
+            // Only cache query embeddings, the embeddings of chunks are stored in the index and are rarely computed
+            // twice for the same text.
+            boolean useCache = purpose == EmbeddingModel.EmbeddingPurpose.QUERY
+                && this.configuration.getEmbeddingCacheSize() > 0;
+            float[][] result = new float[texts.size()][];
+            List<Integer> missingIndexes = new ArrayList<>(texts.size());
+            for (int i = 0; i < texts.size(); i++) {
+                if (useCache) {
+                    result[i] = this.embeddingCache.get(wiki, modelId, embeddingModel, purpose, texts.get(i));
+                }
+                if (result[i] == null) {
+                    missingIndexes.add(i);
+                }
+            }
+
+            if (!missingIndexes.isEmpty()) {
+                List<String> missingTexts = missingIndexes.stream().map(texts::get).toList();
+                List<float[]> embeddings = embed(missingTexts, wiki, modelId, embeddingModel, userReference, purpose);
+                for (int i = 0; i < missingIndexes.size(); i++) {
+                    result[missingIndexes.get(i)] = embeddings.get(i);
+                    if (useCache) {
+                        this.embeddingCache.put(wiki, modelId, embeddingModel, purpose, missingTexts.get(i),
+                            embeddings.get(i));
+                    }
+                }
             }
-            return embeddingsFull.stream()
-                .map(embeddings -> Arrays.copyOf(embeddings, AiLLMSolrCoreInitializer.NUMBER_OF_DIMENSIONS))
-                .toList();
+
+            return Arrays.asList(result);
         } catch (Exception e) {
             throw new IndexException("Failed to compute embeddings for texts [" + texts + "]", e);
         }
     }
 
+    private List<float[]> embed(List<String> texts, String wiki, String modelId, EmbeddingModel embeddingModel,
+        UserReference userReference, EmbeddingModel.EmbeddingPurpose purpose) throws Exception
+    {
+        // Make sure that the same model on different wikis has different retry objects.
+        String retryId = wiki + ":" + modelId;
+        if (texts.size() == 1 && purpose == EmbeddingModel.EmbeddingPurpose.QUERY
+            && embeddingModel.getMaximumParallelism() > 1 && this.requestCoalescer.isEnabled()) {
+            // Combine the queries of concurrent searches into a single request to the model.
+            return List.of(this.requestCoalescer.embed(wiki, modelId, embeddingModel, userReference, texts.get(0),
+                batch -> embed(batch, embeddingModel, retryId, purpose)));
+        }
+
+        return embed(texts, embeddingModel, retryId, purpose);
+    }
+
+    private List<float[]> embed(List<String> texts, EmbeddingModel embeddingModel, String retryId,
+        EmbeddingModel.EmbeddingPurpose purpose) throws Exception
+    {
+        Retry retry = this.retryRegistry.retry(retryId);
+        List<float[]> embeddingsFull;
+        if (texts.size() == 1) {
+            embeddingsFull = retry.executeCallable(() -> List.of(embeddingModel.embedFloats(texts.get(0), purpose)));
+        } else {
+            embeddingsFull = retry.executeCallable(() -> embeddingModel.embedFloats(texts, purpose));
+        }
+        int dimensions = getDimensions(embeddingModel);
+        return embeddingsFull.stream()
+            .map(embeddings -> embeddings.length == dimensions ? embeddings : Arrays.copyOf(embeddings, dimensions))
+            .toList();
+    }
+
+    /**
+     * Get the number of dimensions of the embeddings computed by {@link #computeEmbeddingVectors}. This is the number
+     * of dimensions configured for the model or {@link AiLLMSolrCoreInitializer#NUMBER_OF_DIMENSIONS} when the model
+     * doesn't specify it.
+     *
+     * @param modelId the model id
+     * @param userReference the user reference for which the model shall be loaded
+     * @return the number of dimensions of the embeddings of the model
+     * @throws IndexException if an error occurs while loading the model
+     * @since 0.6.3
+     */
+    public int getDimensions(String modelId, UserReference userReference) throws IndexException
+    {
+        XWikiContext context = this.contextProvider.get();
+        WikiReference wikiReference = context.getWikiReference();
+        try {
+            return getDimensions(this.embeddingModelManager.getModel(wikiReference, modelId, userReference));
+        } catch (GPTAPIException e) {
+            throw new IndexException("Failed to get the model [" + modelId + "]", e);
+        }
+    }
+
+    private static int getDimensions(EmbeddingModel embeddingModel)
+    {
+        EmbeddingModelDescriptor descriptor = embeddingModel.getDescriptor();
+        if (descriptor != null && descriptor.getDimensions() > 0) {
+            return descriptor.getDimensions();
+        }
+
+        // Models without configured dimensions keep using the padded vectors of the original fixed-size vector field.
+        return AiLLMSolrCoreInitializer.NUMBER_OF_DIMENSIONS;
+    }
+
     /**
      * Get the maximum number of texts that can be processed in parallel by the model.
      *
@@ -134,8 +274,9 @@ public class EmbeddingsUtils implements Initializable
     @Override
     public void initialize()
     {
-        // Retry on rate-limited requests with exponential backoff
-        IntervalFunction intervalFunction = IntervalFunction.ofExponentialBackoff(1000, 2);
+        // Retry on rate-limited requests. The rate limiter of the server already delays the retry until the server
+        // accepts requests again, so only wait a little to let other requests go first.
+        IntervalFunction intervalFunction = IntervalFunction.of(100);
         RetryConfig config = RetryConfig.custom()
             .maxAttempts(3)
             .intervalFunction(intervalFunction)
@@ -64,7 +64,7 @@ public class IndexWorker extends AbstractLocalEventListener
     private TaskManager taskManager;
 
     @Inject
-    private SolrConnector solrConnector;
+    private VectorStore vectorStore;
 
     /**
      * Default constructor.
@@ -84,7 +84,7 @@ public class IndexWorker extends AbstractLocalEventListener
             addTaskForDocument(xdocument);
         } else {
             // Check if the document was an internal document before the change like a deletion - delete it
-            // from Solr. We do this directly as TaskManager doesn't support tasks for deleted documents.
+            // from the vector store. We do this directly as TaskManager doesn't support tasks for deleted documents.
             BaseObject xObject = xdocument.getOriginalDocument().getXObject(Document.XCLASS_REFERENCE);
             if (xObject != null) {
                 String id = xObject.getStringValue(DefaultDocument.ID_KEY);
@@ -92,7 +92,7 @@ public class IndexWorker extends AbstractLocalEventListener
                 String wiki = xdocument.getDocumentReference().getWikiReference().getName();
                 // Ensure that if the current store is not the internal store, we don't accidentally delete the document
                 // of a different store that happens to have the same id.
-                this.solrConnector.deleteChunksByDocIdAndStore(wiki, collection, id, InternalDocumentStore.NAME);
+                this.vectorStore.deleteChunksByDocIdAndStore(wiki, collection, id, InternalDocumentStore.NAME);
             }
         }
 
@@ -119,8 +119,16 @@ public class IndexWorker extends AbstractLocalEventListener
 
             // If the store or the collection id was changed, clear the index and re-index all documents.
             if (!Objects.equals(oldStoreHint, newStoreHint) || !Objects.equals(oldCollectionId, collectionId)) {
-                this.solrConnector.deleteChunksByCollection(wiki, oldCollectionId);
+                this.vectorStore.deleteChunksByCollection(wiki, oldCollectionId);
+                // Make sure that the indexing task doesn't see the deleted chunks.
+                this.vectorStore.flush();
 
+                this.taskManager.addTask(wiki, document.getId(), CollectionIndexingTaskConsumer.NAME);
+            } else if (collectionObject.getIntValue(DefaultCollection.DEDICATED_INDEX_FIELDNAME)
+                != collectionObjectOriginal.getIntValue(DefaultCollection.DEDICATED_INDEX_FIELDNAME))
+            {
+                // Re-index all documents to move their chunks to or from the dedicated index. The chunks are replaced
+                // one document at a time, so the collection stays searchable in the meantime.
                 this.taskManager.addTask(wiki, document.getId(), CollectionIndexingTaskConsumer.NAME);
             }
         } else if (collectionObject != null) {
@@ -128,10 +136,10 @@ public class IndexWorker extends AbstractLocalEventListener
             String wiki = document.getDocumentReference().getWikiReference().getName();
             this.taskManager.addTask(wiki, document.getId(), CollectionIndexingTaskConsumer.NAME);
         } else if (collectionObjectOriginal != null) {
-            // Collection was deleted - delete it from Solr.
+            // Collection was deleted - delete it from the vector store.
             String collectionId = collectionObjectOriginal.getStringValue(DefaultCollection.ID_FIELDNAME);
             String wiki = document.getDocumentReference().getWikiReference().getName();
-            this.solrConnector.deleteChunksByCollection(wiki, collectionId);
+            this.vectorStore.deleteChunksByCollection(wiki, collectionId);
         }
     }
 
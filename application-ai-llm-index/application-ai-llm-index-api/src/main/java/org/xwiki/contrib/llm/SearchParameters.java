@@ -0,0 +1,57 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.llm;
+
+import org.xwiki.stability.Unstable;
+
+/**
+ * The parameters of a search in collections.
+ *
+ * @param mode how the chunks are retrieved
+ * @param vectorWeight the weight of the ranking of the similarity search when the results are fused in a hybrid search
+ * @param keywordWeight the weight of the ranking of the keyword search when the results are fused in a hybrid search
+ * @version $Id$
+ * @since 0.6.3
+ */
+@Unstable
+public record SearchParameters(SearchMode mode, double vectorWeight, double keywordWeight)
+{
+    /**
+     * Only search for the chunks whose embeddings are the most similar to the embedding of the query.
+     */
+    public static final SearchParameters SIMILARITY = new SearchParameters(SearchMode.SIMILARITY, 1, 0);
+
+    /**
+     * The way the chunks are retrieved.
+     */
+    public enum SearchMode
+    {
+        /**
+         * Search for the chunks whose embeddings are the most similar to the embedding of the query.
+         */
+        SIMILARITY,
+
+        /**
+         * Combine the similarity search with a keyword search on the content of the chunks and fuse the two rankings
+         * with reciprocal rank fusion.
+         */
+        HYBRID
+    }
+}
@@ -23,30 +23,47 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 import javax.inject.Inject;
 import javax.inject.Provider;
 import javax.inject.Singleton;
 
-import org.apache.solr.client.solrj.SolrClient;
+import org.apache.commons.collections4.iterators.PeekingIterator;
 import org.apache.solr.client.solrj.SolrQuery;
 import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.response.FacetField;
 import org.apache.solr.client.solrj.response.QueryResponse;
 import org.apache.solr.common.SolrDocument;
 import org.apache.solr.common.SolrDocumentList;
 import org.apache.solr.common.SolrInputDocument;
 import org.slf4j.Logger;
 import org.xwiki.component.annotation.Component;
+import org.xwiki.contrib.llm.internal.AiLLMIndexConfiguration;
 import org.xwiki.contrib.llm.internal.AiLLMSolrCoreInitializer;
 import org.xwiki.contrib.llm.internal.InternalDocumentStore;
+import org.xwiki.contrib.llm.internal.SharedQueryEmbeddings;
+import org.xwiki.contrib.llm.internal.SimilaritySearchExecutor;
+import org.xwiki.contrib.llm.internal.SolrClientManager;
+import org.xwiki.contrib.llm.internal.SolrCommitCoordinator;
+import org.xwiki.contrib.llm.internal.SolrLegacyFieldsMigrator;
+import org.xwiki.contrib.llm.internal.SolrVectorFieldManager;
+import org.xwiki.contrib.llm.internal.SolrVectorFieldManager.VectorQuery;
+import org.xwiki.contrib.llm.internal.SolrVectorUtils;
+import org.xwiki.contrib.llm.internal.authorization.XWikiViewersResolver;
 import org.xwiki.contrib.llm.openai.Context;
-import org.xwiki.search.solr.Solr;
 import org.xwiki.search.solr.SolrException;
 import org.xwiki.search.solr.SolrUtils;
-import org.xwiki.user.CurrentUserReference;
 
 import com.xpn.xwiki.XWikiContext;
 
@@ -76,6 +93,21 @@ public class SolrConnector
 
     private static final String PARENTHESIS_CLOSE = ")";
 
+    private static final Comparator<Context> BY_DESCENDING_SCORE =
+        Comparator.comparingDouble(Context::similarityScore).reversed();
+
+    /**
+     * The rank constant of the reciprocal rank fusion, reduces the influence of the top ranks.
+     */
+    private static final int RRF_RANK_CONSTANT = 60;
+
+    private static final String KEYWORD_QUERY_PARAMETER = "keywordQuery";
+
+    private static final String ALL_DOCUMENTS = "*:*";
+
+    private static final Comparator<SolrDocument> BY_DESCENDING_DOCUMENT_SCORE = Comparator.comparingDouble(
+        (SolrDocument document) -> ((Number) document.getFieldValue(FIELD_SCORE)).doubleValue()).reversed();
+
     @Inject
     private Logger logger;
 
@@ -86,7 +118,7 @@ public class SolrConnector
     private SolrUtils solrUtils;
 
     @Inject
-    private Solr solr;
+    private SolrClientManager clientManager;
 
     @Inject
     private Provider<XWikiContext> contextProvider;
@@ -94,6 +126,24 @@ public class SolrConnector
     @Inject
     private Provider<Chunk> chunkProvider;
 
+    @Inject
+    private SolrCommitCoordinator commitCoordinator;
+
+    @Inject
+    private SolrVectorFieldManager vectorFieldManager;
+
+    @Inject
+    private AiLLMIndexConfiguration configuration;
+
+    @Inject
+    private SimilaritySearchExecutor searchExecutor;
+
+    @Inject
+    private XWikiViewersResolver viewersResolver;
+
+    @Inject
+    private SolrLegacyFieldsMigrator legacyFieldsMigrator;
+
     /**
      * Connects to the Solr server and stores a chunk.
      * If a chunk with the same id exists, it will be updated.
@@ -103,11 +153,8 @@ public class SolrConnector
      */
     public void storeChunk(Chunk chunk, String id) throws SolrServerException
     {
-        try (SolrClient client = solr.getCore(AiLLMSolrCoreInitializer.DEFAULT_AILLM_SOLR_CORE).getClient()) {
-            SolrInputDocument solrDocument = getSolrDocument(chunk);
-            client.add(solrDocument);
-            client.commit();
-            
+        try {
+            this.commitCoordinator.add(List.of(getSolrDocument(chunk)));
         } catch (Exception e) {
             this.logger.error("Failed to store chunk with id [{}]", id, e);
         }
@@ -120,14 +167,14 @@ public class SolrConnector
      */
     public void storeChunks(List<Chunk> chunks) throws SolrServerException, IOException, SolrException
     {
-        try (SolrClient client = this.solr.getCore(AiLLMSolrCoreInitializer.DEFAULT_AILLM_SOLR_CORE).getClient()) {
-            List<SolrInputDocument> solrDocuments = chunks.stream().map(this::getSolrDocument).toList();
-            client.add(solrDocuments);
-            client.commit();
+        List<SolrInputDocument> solrDocuments = new ArrayList<>(chunks.size());
+        for (Chunk chunk : chunks) {
+            solrDocuments.add(getSolrDocument(chunk));
         }
+        this.commitCoordinator.add(solrDocuments);
     }
 
-    private SolrInputDocument getSolrDocument(Chunk chunk)
+    private SolrInputDocument getSolrDocument(Chunk chunk) throws SolrException
     {
         SolrInputDocument solrDocument = new SolrInputDocument();
         // Ensure that the ID is correct.
@@ -144,14 +191,13 @@ public class SolrConnector
         solrDocument.addField(AiLLMSolrCoreInitializer.FIELD_ERROR_MESSAGE, chunk.getErrorMessage());
         solrDocument.addField(AiLLMSolrCoreInitializer.FIELD_STORE_HINT, chunk.getStoreHint());
         solrDocument.addField(AiLLMSolrCoreInitializer.FIELD_CONTENT, chunk.getContent());
-        double[] embeddings = chunk.getEmbeddings();
-        // The embeddings could be null if we got an error and want to store the error.
-        if (embeddings != null) {
-            List<Float> embeddingsList = Arrays.stream(embeddings)
-                .mapToObj(d -> (float) d)
-                .toList();
-            solrDocument.setField(AiLLMSolrCoreInitializer.FIELD_VECTOR, embeddingsList);
+        if (chunk.getViewers() != null) {
+            solrDocument.addField(AiLLMSolrCoreInitializer.FIELD_VIEWERS, chunk.getViewers());
         }
+        String partition = chunk.getDedicatedIndex()
+            ? SolrVectorFieldManager.getPartition(chunk.getWiki(), chunk.getCollection()) : null;
+        // The embeddings could be null if we got an error and want to store the error.
+        this.vectorFieldManager.setVector(solrDocument, chunk.getEmbeddingVector(), partition);
         return solrDocument;
     }
 
@@ -162,9 +208,8 @@ public class SolrConnector
      */
     public void deleteChunk(String id)
     {
-        try (SolrClient client = solr.getCore(AiLLMSolrCoreInitializer.DEFAULT_AILLM_SOLR_CORE).getClient()) {
-            client.deleteById(id);
-            client.commit();
+        try {
+            this.commitCoordinator.deleteById(id);
         } catch (Exception e) {
             this.logger.error("Failed to delete chunk with id [{}]", id, e);
         }
@@ -212,8 +257,9 @@ public class SolrConnector
         String result = AiLLMSolrCoreInitializer.FIELD_STORE_HINT + SOLR_SEPARATOR
             + this.solrUtils.toCompleteFilterQueryString(storeId);
         // Before version 0.5, there was no storeId field and all documents belonged to the "internal" store.
-        // Therefore, also match documents with empty storeId field when the storeId is "internal".
-        if (InternalDocumentStore.NAME.equals(storeId)) {
+        // Therefore, also match documents with empty storeId field when the storeId is "internal" until they have
+        // been migrated.
+        if (InternalDocumentStore.NAME.equals(storeId) && this.legacyFieldsMigrator.hasLegacyChunks()) {
             result = "(%s OR (*:* AND -%s:[* TO *]))".formatted(result, AiLLMSolrCoreInitializer.FIELD_STORE_HINT);
         }
 
@@ -276,16 +322,17 @@ public class SolrConnector
      */
     public List<Chunk> getChunks(String wiki, String collectionId, String documentId, int startChunk, int endChunk)
     {
-        String filterQuery = buildQuery(wiki, collectionId, documentId);
         String queryString =
             AiLLMSolrCoreInitializer.FIELD_INDEX + SOLR_SEPARATOR + RANGE_START + startChunk + TO + endChunk + "]";
         SolrQuery query = new SolrQuery();
-        query.addFilterQuery(filterQuery);
+        query.addFilterQuery(buildWikiFilterQuery(wiki));
+        query.addFilterQuery(buildTermQuery(AiLLMSolrCoreInitializer.FIELD_COLLECTION, collectionId));
+        query.addFilterQuery(buildTermQuery(AiLLMSolrCoreInitializer.FIELD_DOC_ID, documentId));
         query.addFilterQuery(queryString);
         query.setRows(endChunk - startChunk);
 
-        try (SolrClient client = this.solr.getCore(AiLLMSolrCoreInitializer.DEFAULT_AILLM_SOLR_CORE).getClient()) {
-            QueryResponse response = client.query(query);
+        try {
+            QueryResponse response = this.clientManager.executeIndexing(client -> client.query(query));
             SolrDocumentList documents = response.getResults();
             return documents.stream()
                 .map(this::toChunk)
@@ -314,12 +361,12 @@ public class SolrConnector
         result.setErrorMessage((String) solrDocument.getFieldValue(AiLLMSolrCoreInitializer.FIELD_ERROR_MESSAGE));
         result.setStoreHint((String) solrDocument.getFieldValue(AiLLMSolrCoreInitializer.FIELD_STORE_HINT));
         result.setId((String) solrDocument.getFieldValue(FIELD_ID));
-        List<?> vectorField = (List<?>) solrDocument.getFieldValue(AiLLMSolrCoreInitializer.FIELD_VECTOR);
-        if (vectorField != null) {
-            result.setEmbeddings(vectorField.stream()
-                .map(String.class::cast)
-                .mapToDouble(Double::parseDouble)
-                .toArray());
+        result.setEmbeddingVector(SolrVectorFieldManager.getVector(solrDocument));
+        result.setDedicatedIndex(SolrVectorFieldManager.getPartition(solrDocument) != null);
+        if (solrDocument.getFieldValue(AiLLMSolrCoreInitializer.FIELD_VIEWERS) != null) {
+            result.setViewers(solrDocument.getFieldValues(AiLLMSolrCoreInitializer.FIELD_VIEWERS).stream()
+                .map(String::valueOf)
+                .toList());
         }
         return result;
     }
@@ -371,9 +418,19 @@ public class SolrConnector
 
     private void deleteChunksByQuery(String query) throws IOException, SolrServerException, SolrException
     {
-        try (SolrClient client = this.solr.getCore(AiLLMSolrCoreInitializer.DEFAULT_AILLM_SOLR_CORE).getClient()) {
-            client.deleteByQuery(query);
-            client.commit();
+        this.commitCoordinator.deleteByQuery(query);
+    }
+
+    /**
+     * Make all previous updates of the index visible to searches. Updates are otherwise only committed in batches,
+     * so callers that need to read their own updates have to call this method first.
+     */
+    public void flush()
+    {
+        try {
+            this.commitCoordinator.flush();
+        } catch (Exception e) {
+            this.logger.error("Failed to commit the pending updates of the index", e);
         }
     }
 
@@ -388,9 +445,8 @@ public class SolrConnector
     public List<String> filterExistingDocuments(String wiki, String collectionId, List<String> documentIds)
     {
         SolrQuery query = new SolrQuery();
-        query.addFilterQuery(buildWikiQuery(wiki));
-        query.addFilterQuery(AiLLMSolrCoreInitializer.FIELD_COLLECTION + SOLR_SEPARATOR
-            + this.solrUtils.toCompleteFilterQueryString(collectionId));
+        query.addFilterQuery(buildWikiFilterQuery(wiki));
+        query.addFilterQuery(buildTermQuery(AiLLMSolrCoreInitializer.FIELD_COLLECTION, collectionId));
         // Only check for chunk 0 to avoid duplicates.
         query.addFilterQuery(AiLLMSolrCoreInitializer.FIELD_INDEX + SOLR_SEPARATOR + "0");
         query.setFields(AiLLMSolrCoreInitializer.FIELD_DOC_ID);
@@ -400,8 +456,8 @@ public class SolrConnector
                 .map(this.solrUtils::toCompleteFilterQueryString)
                 .collect(Collectors.joining(OR_DELIMITER, PARENTHESIS_OPEN, PARENTHESIS_CLOSE)));
 
-        try (SolrClient client = this.solr.getCore(AiLLMSolrCoreInitializer.DEFAULT_AILLM_SOLR_CORE).getClient()) {
-            QueryResponse response = client.query(query);
+        try {
+            QueryResponse response = this.clientManager.executeIndexing(client -> client.query(query));
             SolrDocumentList documents = response.getResults();
             return documents.stream()
                 .map(document -> String.valueOf(document.getFieldValue(AiLLMSolrCoreInitializer.FIELD_DOC_ID)))
@@ -413,6 +469,36 @@ public class SolrConnector
         }
     }
 
+    /**
+     * Get the ids of the documents whose chunks have been indexed with the users and groups that might view them.
+     *
+     * @param documentIdQuery the query that the document ids need to match, e.g., a prefix query
+     * @return the ids of the matching documents, or an empty list if the query failed
+     * @since 0.6.3
+     */
+    public List<String> getDocumentsWithViewers(String documentIdQuery)
+    {
+        SolrQuery query = new SolrQuery();
+        query.setQuery(AiLLMSolrCoreInitializer.FIELD_DOC_ID + SOLR_SEPARATOR + documentIdQuery);
+        query.addFilterQuery(AiLLMSolrCoreInitializer.FIELD_VIEWERS + ":[* TO *]");
+        // Use a facet to get each document only once, regardless of the number of chunks and collections.
+        query.setRows(0);
+        query.setFacet(true);
+        query.addFacetField(AiLLMSolrCoreInitializer.FIELD_DOC_ID);
+        query.setFacetMinCount(1);
+        query.setFacetLimit(-1);
+
+        try {
+            QueryResponse response = this.clientManager.executeIndexing(client -> client.query(query));
+            return response.getFacetField(AiLLMSolrCoreInitializer.FIELD_DOC_ID).getValues().stream()
+                .map(FacetField.Count::getName)
+                .toList();
+        } catch (Exception e) {
+            this.logger.error("Failed to get the documents indexed with viewers matching [{}]", documentIdQuery, e);
+            return List.of();
+        }
+    }
+
     /**
      * Connects to the Solr server and deletes all chunks of a collection.
      *
@@ -443,10 +529,33 @@ public class SolrConnector
 
     private String buildWikiQuery(String wiki)
     {
-        return "((" + AiLLMSolrCoreInitializer.FIELD_WIKI + SOLR_SEPARATOR
-            + this.solrUtils.toCompleteFilterQueryString(wiki)
+        String result = AiLLMSolrCoreInitializer.FIELD_WIKI + SOLR_SEPARATOR
+            + this.solrUtils.toCompleteFilterQueryString(wiki);
+        if (this.legacyFieldsMigrator.hasLegacyChunks()) {
             // Also match documents with empty wiki field as before version 0.4, no wiki field was stored.
-            + ") OR (*:* AND -" + AiLLMSolrCoreInitializer.FIELD_WIKI + ":[* TO *]))";
+            result = "((" + result + ") OR (*:* AND -" + AiLLMSolrCoreInitializer.FIELD_WIKI + ":[* TO *]))";
+        }
+
+        return result;
+    }
+
+    /**
+     * Build a filter query for the wiki that is cached independently of all other filter queries. Use this instead
+     * of {@link #buildWikiQuery(String)} whenever the filter queries of the query can be set separately.
+     */
+    private String buildWikiFilterQuery(String wiki)
+    {
+        if (this.legacyFieldsMigrator.hasLegacyChunks()) {
+            return buildWikiQuery(wiki);
+        }
+
+        return buildTermQuery(AiLLMSolrCoreInitializer.FIELD_WIKI, wiki);
+    }
+
+    private static String buildTermQuery(String field, String value)
+    {
+        // The term query parser takes the rest of the query as-is, so the value doesn't need to be escaped.
+        return "{!term f=%s}%s".formatted(field, value);
     }
 
     /**
@@ -455,7 +564,8 @@ public class SolrConnector
     public void clearIndexCore() throws SolrServerException
     {
         try {
-            deleteChunksByQuery("*:*");
+            deleteChunksByQuery(ALL_DOCUMENTS);
+            this.commitCoordinator.flush();
         } catch (Exception e) {
             throw new SolrServerException("Failed to clear index core", e);
         }
@@ -472,7 +582,7 @@ public class SolrConnector
     public List<Context> search(String solrQuery, int limit, boolean includeVector) throws SolrServerException
     {
         List<Context> resultsList = List.of();
-        try (SolrClient client = solr.getCore(AiLLMSolrCoreInitializer.DEFAULT_AILLM_SOLR_CORE).getClient()) {
+        try {
             SolrQuery query = new SolrQuery();
             query.setQuery(solrQuery);
             query.setFields(FIELD_ID,
@@ -486,10 +596,11 @@ public class SolrConnector
                             AiLLMSolrCoreInitializer.FIELD_POS_LAST_CHAR,
                             AiLLMSolrCoreInitializer.FIELD_CONTENT,
                             FIELD_SCORE,
-                            AiLLMSolrCoreInitializer.FIELD_VECTOR
+                            // All vector fields as the field that contains the vector depends on the chunk.
+                            AiLLMSolrCoreInitializer.FIELD_VECTOR + "*"
                             );
             query.setRows(limit);
-            QueryResponse response = client.query(query);
+            QueryResponse response = this.clientManager.query(query);
             SolrDocumentList documents = response.getResults();
             resultsList = collectResults(documents, includeVector);
         } catch (Exception e) {
@@ -509,53 +620,415 @@ public class SolrConnector
     public List<Context> similaritySearch(String textQuery,
                                                Map<String, String> collectionEmbeddingModelMap,
                                                int limit) throws SolrServerException
+    {
+        return similaritySearch(textQuery, collectionEmbeddingModelMap, limit, new ConcurrentHashMap<>());
+    }
+
+    /**
+     * Similarity search in the Solr index that re-uses the query embeddings of previous searches for the same query.
+     *
+     * @param textQuery the query to search for
+     * @param collectionEmbeddingModelMap a map of collections and their corresponding embedding models
+     * @param limit the maximum number of results to return
+     * @param queryEmbeddings the embeddings of the query by embedding model, embeddings that are computed during the
+     *     search are added to it, must be thread-safe
+     * @return a list of document details
+     * @since 0.6.3
+     */
+    public List<Context> similaritySearch(String textQuery, Map<String, String> collectionEmbeddingModelMap, int limit,
+        Map<String, float[]> queryEmbeddings) throws SolrServerException
+    {
+        return similaritySearch(textQuery, collectionEmbeddingModelMap, limit, queryEmbeddings,
+            SearchParameters.SIMILARITY);
+    }
+
+    /**
+     * Search in the Solr index, either only by similarity or by combining the similarity search with a keyword search
+     * on the content of the chunks.
+     *
+     * @param textQuery the query to search for
+     * @param collectionEmbeddingModelMap a map of collections and their corresponding embedding models
+     * @param limit the maximum number of results to return
+     * @param queryEmbeddings the embeddings of the query by embedding model, embeddings that are computed during the
+     *     search are added to it, must be thread-safe
+     * @param parameters the parameters of the search
+     * @return a list of document details
+     * @since 0.6.3
+     */
+    public List<Context> similaritySearch(String textQuery, Map<String, String> collectionEmbeddingModelMap, int limit,
+        Map<String, float[]> queryEmbeddings, SearchParameters parameters) throws SolrServerException
     {
         List<Context> resultsList = new ArrayList<>();
-        
-        try (SolrClient client = solr.getCore(AiLLMSolrCoreInitializer.DEFAULT_AILLM_SOLR_CORE).getClient()) {
+
+        try {
+            // Only search chunks that the current user might be allowed to view. This needs to be computed before
+            // the searches are executed concurrently.
+            String viewersFilterQuery = this.viewersResolver.getFilterQuery();
+
             // split embeddingModelMap into sets of collections with the same embedding model
             Map<String, List<String>> embeddingModelCollectionsMap = collectionEmbeddingModelMap.entrySet().stream()
                 // Group by value (embedding model) and collect keys (collections) into a list
                 .collect(Collectors.groupingBy(Map.Entry::getValue,
                     Collectors.mapping(Map.Entry::getKey, Collectors.toList())));
 
-            // perform similarity search for each set of collections with the same embedding model
+            // Perform the similarity search for each set of collections with the same embedding model concurrently as
+            // they mostly wait for the embedding model and Solr.
+            String wiki = this.contextProvider.get().getWikiId();
+            SharedQueryEmbeddings sharedQueryEmbeddings =
+                new SharedQueryEmbeddings(textQuery, queryEmbeddings, this.embeddingsUtils);
+            List<Callable<RankedResults>> searches = new ArrayList<>();
             for (Map.Entry<String, List<String>> entry : embeddingModelCollectionsMap.entrySet()) {
-                String embeddingsModelID = entry.getKey();
-                List<String> collectionsWithSameEmbeddingModel = entry.getValue();
-                double[] queryEmbeddings = embeddingsUtils.computeEmbeddings(textQuery,
-                                                                            embeddingsModelID,
-                                                                            CurrentUserReference.INSTANCE,
-                                                                            EmbeddingModel.EmbeddingPurpose.QUERY);
-                String embeddingsAsString = arrayToString(queryEmbeddings);
-                SolrQuery query = prepareQuery(embeddingsAsString, collectionsWithSameEmbeddingModel, limit);
-                QueryResponse response = client.query(query);
-                SolrDocumentList documents = response.getResults();
-                resultsList.addAll(collectResults(documents, false));
-
-                //order the resultsList in desc order of FIELD_SCORE
-                resultsList.sort(Comparator.comparingDouble(Context::similarityScore).reversed());
-
-                //limit the resultsList to the specified limit
-                if (resultsList.size() > limit) {
-                    resultsList = resultsList.subList(0, limit);
+                String embeddingModelId = entry.getKey();
+                List<String> collections = entry.getValue();
+                searches.add(() -> new RankedResults(false, similaritySearch(
+                    sharedQueryEmbeddings.get(embeddingModelId), collections, null, limit, viewersFilterQuery)));
+                // Collections with a dedicated index are searched in their own partition in parallel to the shared
+                // index. The shared index is still searched for them as it contains their chunks until the collection
+                // has been re-indexed after enabling the dedicated index.
+                for (String collection : collections) {
+                    String partition = SolrVectorFieldManager.getPartition(wiki, collection);
+                    if (this.vectorFieldManager.hasPartition(partition)) {
+                        searches.add(() -> new RankedResults(false,
+                            similaritySearch(sharedQueryEmbeddings.get(embeddingModelId), List.of(collection),
+                                partition, limit, viewersFilterQuery)));
+                    }
                 }
             }
+            // The keyword search doesn't depend on the embedding model, execute it once for all collections in
+            // parallel to the similarity searches.
+            boolean hybrid = parameters.mode() == SearchParameters.SearchMode.HYBRID;
+            if (hybrid) {
+                List<String> allCollections = List.copyOf(collectionEmbeddingModelMap.keySet());
+                searches.add(() ->
+                    new RankedResults(true, keywordSearch(textQuery, allCollections, limit, viewersFilterQuery)));
+            }
+            List<RankedResults> results = this.searchExecutor.invokeAll(searches,
+                this.configuration.getSimilaritySearchTimeout(), TimeUnit.MILLISECONDS);
 
+            List<Context> vectorResults = mergeTopResults(results.stream()
+                .filter(rankedResults -> !rankedResults.keyword())
+                .map(RankedResults::results)
+                .toList(), limit);
+            if (hybrid) {
+                List<Context> keywordResults = results.stream()
+                    .filter(RankedResults::keyword)
+                    .flatMap(rankedResults -> rankedResults.results().stream())
+                    .toList();
+                resultsList = fuseResults(vectorResults, keywordResults, parameters, limit);
+            } else {
+                resultsList = vectorResults;
+            }
         } catch (Exception e) {
             logger.error("Similarity search failed: {}", e.getMessage(), e);
         }
         return resultsList;
     }
 
-    private SolrQuery prepareQuery(String embeddingsAsString, List<String> collections, int limit)
+    private List<Context> similaritySearch(float[] queryVector, List<String> collections, String partition,
+        int limit, String viewersFilterQuery) throws SolrException, SolrServerException, IOException
+    {
+        List<Context> results =
+            new ArrayList<>(searchVectors(queryVector, collections, partition, limit, viewersFilterQuery));
+        results.sort(BY_DESCENDING_SCORE);
+        return results;
+    }
+
+    /**
+     * The results of one of the searches that are executed concurrently.
+     *
+     * @param keyword {@code true} if the results are from the keyword search, {@code false} for a similarity search
+     * @param results the results sorted by descending score
+     */
+    private record RankedResults(boolean keyword, List<Context> results)
+    {
+    }
+
+    /**
+     * Merge the given lists that are sorted by descending score into a single list of the best results.
+     */
+    private static List<Context> mergeTopResults(List<List<Context>> sortedLists, int limit)
+    {
+        PriorityQueue<PeekingIterator<Context>> heads = new PriorityQueue<>(Math.max(1, sortedLists.size()),
+            Comparator.comparing((PeekingIterator<Context> iterator) -> iterator.peek(), BY_DESCENDING_SCORE));
+        for (List<Context> list : sortedLists) {
+            if (!list.isEmpty()) {
+                heads.add(new PeekingIterator<>(list.iterator()));
+            }
+        }
+
+        List<Context> result = new ArrayList<>(limit);
+        while (result.size() < limit && !heads.isEmpty()) {
+            PeekingIterator<Context> head = heads.poll();
+            result.add(head.next());
+            if (head.hasNext()) {
+                heads.add(head);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Fuse the rankings of the similarity and the keyword search with weighted reciprocal rank fusion: every result
+     * gets {@code weight / (k + rank)} from each ranking it appears in. This only depends on the ranks as the scores
+     * of the two searches aren't comparable. The fused score replaces the similarity score of the results.
+     */
+    private static List<Context> fuseResults(List<Context> vectorResults, List<Context> keywordResults,
+        SearchParameters parameters, int limit)
+    {
+        Map<List<String>, Context> contexts = new LinkedHashMap<>();
+        Map<List<String>, Double> scores = new HashMap<>();
+        addReciprocalRanks(vectorResults, parameters.vectorWeight(), contexts, scores);
+        addReciprocalRanks(keywordResults, parameters.keywordWeight(), contexts, scores);
+
+        return contexts.entrySet().stream()
+            .map(entry -> {
+                Context context = entry.getValue();
+                return new Context(context.collectionId(), context.documentId(), context.url(), context.content(),
+                    scores.get(entry.getKey()), context.vector());
+            })
+            .sorted(BY_DESCENDING_SCORE)
+            .limit(limit)
+            .toList();
+    }
+
+    private static void addReciprocalRanks(List<Context> rankedResults, double weight,
+        Map<List<String>, Context> contexts, Map<List<String>, Double> scores)
+    {
+        for (int i = 0; i < rankedResults.size(); i++) {
+            Context context = rankedResults.get(i);
+            // Contexts don't contain the id of the chunk, identify them by their document and content instead.
+            List<String> key = Arrays.asList(context.collectionId(), context.documentId(), context.content());
+            contexts.putIfAbsent(key, context);
+            scores.merge(key, weight / (RRF_RANK_CONSTANT + i + 1), Double::sum);
+        }
+    }
+
+    private List<Context> keywordSearch(String textQuery, List<String> collections, int limit,
+        String viewersFilterQuery) throws SolrException, SolrServerException, IOException
     {
         SolrQuery query = new SolrQuery();
-        query.addFilterQuery(buildWikiQuery(this.contextProvider.get().getWikiId()));
-        query.setQuery(String.format("{!knn f=vector topK=%s}%s", limit, embeddingsAsString));
+        // Pass the text of the user as parameter so that it can't contain local parameters and don't allow queries
+        // on other fields.
+        query.setQuery("{!edismax qf=%s uf=-* v=$%s}".formatted(AiLLMSolrCoreInitializer.FIELD_CONTENT,
+            KEYWORD_QUERY_PARAMETER));
+        query.set(KEYWORD_QUERY_PARAMETER, textQuery);
+        query.setRows(limit);
+        addFilterQueries(query, collections, viewersFilterQuery);
+        setResultFields(query);
+        return collectResults(this.clientManager.query(query).getResults(), false);
+    }
+
+    /**
+     * Search the nearest chunks of the given collections in the shared vector index, or in the dedicated index of a
+     * single collection when a partition is given.
+     */
+    private List<Context> searchVectors(float[] queryEmbeddings, List<String> collections, String partition,
+        int limit, String viewersFilterQuery) throws SolrException, SolrServerException, IOException
+    {
+        // Restrict the search to the chunks that are stored in the searched vector fields so that the filters, and
+        // thus the number of candidates, only contain chunks that can actually be found.
+        String partitionFilterQuery = partition != null ? SolrVectorFieldManager.getPartitionFilterQuery(partition)
+            : this.vectorFieldManager.getSharedFilterQuery();
+        List<String> filterQueries = Arrays.asList(viewersFilterQuery, partitionFilterQuery);
+
+        // When the filters leave only few chunks, e.g., for a small collection in a large index, scoring all of them
+        // is both faster and more accurate than traversing the HNSW graph which mostly visits filtered chunks.
+        int exactSearchThreshold = this.configuration.getExactSearchThreshold();
+        if (exactSearchThreshold > 0) {
+            String candidatesFilterQuery = getCandidatesFilterQuery(queryEmbeddings.length);
+            // The count is cheap as the filter queries are cached, only fetch the candidates when there are few.
+            if (countCandidates(collections, filterQueries, candidatesFilterQuery) <= exactSearchThreshold) {
+                SolrDocumentList candidates =
+                    fetchCandidates(collections, filterQueries, candidatesFilterQuery, exactSearchThreshold);
+                return loadResults(scoreExactly(queryEmbeddings, candidates, limit));
+            }
+        }
+
+        List<Context> results = new ArrayList<>();
+        List<VectorQuery> vectorQueries = partition != null
+            ? this.vectorFieldManager.getVectorQueries(queryEmbeddings, partition)
+            : this.vectorFieldManager.getVectorQueries(queryEmbeddings);
+        for (VectorQuery vectorQuery : vectorQueries) {
+            if (vectorQuery.rescore()) {
+                results.addAll(searchQuantizedVectors(vectorQuery, queryEmbeddings, collections, limit, filterQueries));
+            } else {
+                SolrQuery query =
+                    prepareQuery(vectorQuery.field(), vectorQuery.vector(), collections, limit, filterQueries);
+                if (vectorQuery.filterQuery() != null) {
+                    query.addFilterQuery(vectorQuery.filterQuery());
+                }
+                results.addAll(collectResults(this.clientManager.query(query).getResults(), false));
+            }
+        }
+
+        return results;
+    }
+
+    /**
+     * Search byte encoded vectors in two stages: first get more candidates than needed with the kNN search on the
+     * quantized vectors, then rescore the candidates with the cosine similarity of their full-precision vector to
+     * restore the ranking quality.
+     */
+    private List<Context> searchQuantizedVectors(VectorQuery vectorQuery, float[] queryEmbeddings,
+        List<String> collections, int limit, List<String> filterQueries) throws SolrException, SolrServerException,
+        IOException
+    {
+        int numberOfCandidates = limit * Math.max(1, this.configuration.getRescoringOversampling());
+        SolrQuery query = prepareQuery(vectorQuery.field(), vectorQuery.vector(), collections, numberOfCandidates,
+            filterQueries);
+        if (vectorQuery.filterQuery() != null) {
+            query.addFilterQuery(vectorQuery.filterQuery());
+        }
+        query.addField(AiLLMSolrCoreInitializer.FIELD_VECTOR_DATA);
+        query.addField(AiLLMSolrCoreInitializer.FIELD_VECTOR_DIMENSIONS);
+
+        List<SolrDocument> candidates = new ArrayList<>();
+        for (SolrDocument document : this.clientManager.query(query).getResults()) {
+            float[] vector = SolrVectorFieldManager.getVector(document);
+            if (vector != null && vector.length == queryEmbeddings.length) {
+                // Use the same score as Solr for the cosine similarity so it can be compared to other results.
+                document.setField(FIELD_SCORE, (1 + SolrVectorUtils.cosine(queryEmbeddings, vector)) / 2);
+                candidates.add(document);
+            }
+        }
+
+        candidates.sort(BY_DESCENDING_DOCUMENT_SCORE);
+
+        return collectResults(candidates.subList(0, Math.min(limit, candidates.size())), false);
+    }
+
+    /**
+     * @return a filter query that matches the chunks that might have a vector with the given number of dimensions,
+     *     including chunks indexed before the number of dimensions was stored
+     */
+    private static String getCandidatesFilterQuery(int dimensions)
+    {
+        return "%1$s:%2$d OR (*:* -%1$s:[* TO *])".formatted(AiLLMSolrCoreInitializer.FIELD_VECTOR_DIMENSIONS,
+            dimensions);
+    }
+
+    private long countCandidates(List<String> collections, List<String> filterQueries,
+        String candidatesFilterQuery) throws SolrException, SolrServerException, IOException
+    {
+        SolrQuery query = new SolrQuery(ALL_DOCUMENTS);
+        addFilterQueries(query, collections, filterQueries);
+        query.addFilterQuery(candidatesFilterQuery);
+        query.setRows(0);
+        return this.clientManager.query(query).getResults().getNumFound();
+    }
+
+    /**
+     * Fetch the vectors of up to the given number of candidates, without their content which is only loaded for the
+     * best candidates.
+     */
+    private SolrDocumentList fetchCandidates(List<String> collections, List<String> filterQueries,
+        String candidatesFilterQuery, int maximumCandidates) throws SolrException, SolrServerException, IOException
+    {
+        SolrQuery query = new SolrQuery(ALL_DOCUMENTS);
+        addFilterQueries(query, collections, filterQueries);
+        query.addFilterQuery(candidatesFilterQuery);
+        query.setRows(maximumCandidates);
+        // Both the vector fields and the fields that describe how the vector is stored.
+        query.setFields(FIELD_ID, AiLLMSolrCoreInitializer.FIELD_VECTOR + "*");
+        return this.clientManager.query(query).getResults();
+    }
+
+    /**
+     * Compute the exact cosine similarity of all candidates with the query vector.
+     *
+     * @return the best candidates by descending score, only with their id and score
+     */
+    private List<SolrDocument> scoreExactly(float[] queryEmbeddings, SolrDocumentList candidates, int limit)
+    {
+        float[] unitQuery = SolrVectorUtils.normalize(queryEmbeddings);
+        if (unitQuery == null) {
+            return List.of();
+        }
+        // Keep the best results in a min-heap so that only they need to be sorted.
+        PriorityQueue<SolrDocument> best = new PriorityQueue<>(limit + 1, BY_DESCENDING_DOCUMENT_SCORE.reversed());
+        for (SolrDocument document : candidates) {
+            // Chunks indexed before the introduction of per-dimension vector fields are padded with zeros, remove the
+            // padding. Vectors with other dimensions have been computed by another model and can't be compared.
+            float[] vector = SolrVectorUtils.removePadding(SolrVectorFieldManager.getVector(document),
+                unitQuery.length);
+            if (vector != null) {
+                // Use the same score as Solr for the cosine similarity so it can be compared to other results.
+                document.setField(FIELD_SCORE, (1 + SolrVectorUtils.cosineWithUnitVector(unitQuery, vector)) / 2);
+                best.add(document);
+                if (best.size() > limit) {
+                    best.poll();
+                }
+            }
+        }
+
+        List<SolrDocument> results = new ArrayList<>(best);
+        results.sort(BY_DESCENDING_DOCUMENT_SCORE);
+        return results;
+    }
+
+    /**
+     * Load the fields of the results of the given chunks and keep their order and score.
+     */
+    private List<Context> loadResults(List<SolrDocument> scoredChunks)
+        throws SolrException, SolrServerException, IOException
+    {
+        if (scoredChunks.isEmpty()) {
+            return List.of();
+        }
+
+        SolrQuery query = new SolrQuery(scoredChunks.stream()
+            .map(chunk -> FIELD_ID + SOLR_SEPARATOR
+                + this.solrUtils.toCompleteFilterQueryString(chunk.getFieldValue(FIELD_ID)))
+            .collect(Collectors.joining(OR_DELIMITER)));
+        query.setRows(scoredChunks.size());
+        setResultFields(query);
+        Map<Object, SolrDocument> documentsById = new HashMap<>();
+        this.clientManager.query(query).getResults()
+            .forEach(document -> documentsById.put(document.getFieldValue(FIELD_ID), document));
+
+        List<SolrDocument> results = new ArrayList<>(scoredChunks.size());
+        for (SolrDocument scoredChunk : scoredChunks) {
+            // Chunks that have been deleted in the meantime are skipped.
+            SolrDocument document = documentsById.get(scoredChunk.getFieldValue(FIELD_ID));
+            if (document != null) {
+                document.setField(FIELD_SCORE, scoredChunk.getFieldValue(FIELD_SCORE));
+                results.add(document);
+            }
+        }
+        return collectResults(results, false);
+    }
+
+    private SolrQuery prepareQuery(String vectorField, String embeddingsAsString, List<String> collections,
+        int limit, List<String> filterQueries)
+    {
+        SolrQuery query = new SolrQuery();
+        // Exploring more candidates in the HNSW graph than needed improves the recall, only the best are returned.
+        int topK = limit * this.configuration.getKnnCandidateMultiplier();
+        query.setQuery(String.format("{!knn f=%s topK=%s}%s", vectorField, topK, embeddingsAsString));
+        query.setRows(limit);
+        addFilterQueries(query, collections, filterQueries);
+        setResultFields(query);
+        return query;
+    }
+
+    /**
+     * Add the filter queries of the wiki and the collections as well as the given additional filter queries, which
+     * can contain {@code null} values that are skipped.
+     */
+    private void addFilterQueries(SolrQuery query, List<String> collections, List<String> filterQueries)
+    {
+        addFilterQueries(query, collections, (String) null);
+        filterQueries.stream().filter(Objects::nonNull).forEach(query::addFilterQuery);
+    }
+
+    private void addFilterQueries(SolrQuery query, List<String> collections, String viewersFilterQuery)
+    {
+        query.addFilterQuery(buildWikiFilterQuery(this.contextProvider.get().getWikiId()));
 
         // Constructing the filter query from the collections list
-        if (collections != null && !collections.isEmpty()) {
+        if (collections != null && collections.size() == 1) {
+            query.addFilterQuery(buildTermQuery(AiLLMSolrCoreInitializer.FIELD_COLLECTION, collections.get(0)));
+        } else if (collections != null && !collections.isEmpty()) {
             String filterQuery = collections.stream()
                                     .map(collection -> AiLLMSolrCoreInitializer.FIELD_COLLECTION
                                                     + SOLR_SEPARATOR
@@ -565,6 +1038,15 @@ public class SolrConnector
             query.addFilterQuery(filterQuery);
         }
 
+        // Solr applies the filter queries while traversing the HNSW graph, so the nearest neighbors are only searched
+        // among the chunks that the user might be allowed to view.
+        if (viewersFilterQuery != null) {
+            query.addFilterQuery(viewersFilterQuery);
+        }
+    }
+
+    private static void setResultFields(SolrQuery query)
+    {
         query.setFields(FIELD_ID,
                         AiLLMSolrCoreInitializer.FIELD_DOC_ID,
                         AiLLMSolrCoreInitializer.FIELD_COLLECTION,
@@ -575,12 +1057,10 @@ public class SolrConnector
                         AiLLMSolrCoreInitializer.FIELD_POS_LAST_CHAR,
                         AiLLMSolrCoreInitializer.FIELD_CONTENT,
                         FIELD_SCORE);
-        return query;
     }
 
-    private List<Context> collectResults(SolrDocumentList documents, boolean includeVector)
+    private List<Context> collectResults(List<SolrDocument> documents, boolean includeVector)
     {
-        //noinspection unchecked
         return documents.stream()
             .map(document -> new Context(
                 String.valueOf(document.getFieldValue(AiLLMSolrCoreInitializer.FIELD_COLLECTION)),
@@ -590,28 +1070,14 @@ public class SolrConnector
                 document.getFieldValue(FIELD_SCORE) instanceof Number numericScore
                     ? numericScore.doubleValue()
                     : Double.parseDouble(String.valueOf(document.getFieldValue(FIELD_SCORE))),
-                includeVector ? (List<Float>) document.getFieldValue(AiLLMSolrCoreInitializer.FIELD_VECTOR) : null
+                includeVector ? getVector(document) : null
             ))
             .toList();
     }
 
-    /**
-     * Converts a double array to a string representation.
-     *
-     * @param array the array to convert
-     * @return the string representation of the array
-     */
-    private String arrayToString(double[] array)
+    private static List<Float> getVector(SolrDocument document)
     {
-        StringBuilder sb = new StringBuilder();
-        sb.append(RANGE_START);
-        for (int i = 0; i < array.length; i++) {
-            if (i > 0) {
-                sb.append(", ");
-            }
-            sb.append(array[i]);
-        }
-        sb.append("]");
-        return sb.toString();
+        float[] vector = SolrVectorFieldManager.getVector(document);
+        return vector != null ? SolrVectorUtils.asList(vector) : null;
     }
 }
@@ -0,0 +1,159 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.llm;
+
+import java.util.List;
+import java.util.Map;
+
+import org.xwiki.component.annotation.Role;
+import org.xwiki.contrib.llm.openai.Context;
+import org.xwiki.stability.Unstable;
+
+/**
+ * Stores the chunks of the indexed documents together with their embeddings and searches them by similarity. The
+ * store that is used is configured with {@code llm.index.vectorStore}, the default store indexes the chunks in Solr.
+ * <p>
+ * Except for storing and searching chunks, failures are logged but not reported to the caller as they only affect
+ * the freshness of the index and indexing is retried when documents are updated.
+ *
+ * @version $Id$
+ * @since 0.6.3
+ */
+@Role
+@Unstable
+public interface VectorStore
+{
+    /**
+     * Store the given chunks, replacing existing chunks with the same id.
+     *
+     * @param chunks the chunks to store
+     * @throws IndexException if the chunks couldn't be stored
+     */
+    void storeChunks(List<Chunk> chunks) throws IndexException;
+
+    /**
+     * Get a range of chunks of a document.
+     *
+     * @param wiki the wiki of the collection
+     * @param collectionId the collection to get the chunks from
+     * @param documentId the document to get the chunks from
+     * @param startChunk the index of the first chunk to return
+     * @param endChunk the index after the last chunk to return
+     * @return the chunks that exist in the given range, or an empty list if they couldn't be loaded
+     */
+    List<Chunk> getChunks(String wiki, String collectionId, String documentId, int startChunk, int endChunk);
+
+    /**
+     * Delete the chunks of a document starting with a specific index.
+     *
+     * @param wiki the wiki of the collection
+     * @param collectionId the id of the collection the document is part of
+     * @param documentId the id of the document
+     * @param startChunk the index of the first chunk to delete
+     */
+    void deleteChunksByIndex(String wiki, String collectionId, String documentId, int startChunk);
+
+    /**
+     * Delete the chunks of a document with a specified range of indexes.
+     *
+     * @param wiki the wiki of the collection
+     * @param collectionId the id of the collection the document is part of
+     * @param documentId the id of the document
+     * @param startChunk the index of the first chunk to delete
+     * @param endChunk the index of the first chunk to not delete anymore
+     */
+    void deleteChunksByIndex(String wiki, String collectionId, String documentId, int startChunk, int endChunk);
+
+    /**
+     * Delete all chunks of a document that have been indexed from the given document store.
+     *
+     * @param wiki the wiki of the collection
+     * @param collectionId the id of the collection the document is part of
+     * @param documentId the id of the document
+     * @param storeHint the hint of the document store
+     */
+    void deleteChunksByDocIdAndStore(String wiki, String collectionId, String documentId, String storeHint);
+
+    /**
+     * Delete all chunks of a document that have been indexed from the given document store in any collection.
+     *
+     * @param storeHint the hint of the document store
+     * @param documentId the id of the document
+     */
+    void deleteChunksByStoreHintAndDocId(String storeHint, String documentId);
+
+    /**
+     * Delete all chunks of a collection.
+     *
+     * @param wiki the wiki of the collection
+     * @param collectionId the id of the collection
+     */
+    void deleteChunksByCollection(String wiki, String collectionId);
+
+    /**
+     * Delete the chunks of a collection whose document id doesn't start with one of the given prefixes. Chunks that
+     * have been indexed from the given document store are kept.
+     *
+     * @param wiki the wiki of the collection
+     * @param collectionId the id of the collection
+     * @param storeHint the hint of the document store whose chunks are kept
+     * @param documentIdPrefixes the prefixes of the ids of the documents to keep
+     */
+    void deleteOtherDocuments(String wiki, String collectionId, String storeHint, List<String> documentIdPrefixes);
+
+    /**
+     * Filter the given document ids to only return those for which at least one chunk has been stored.
+     *
+     * @param wiki the wiki of the collection
+     * @param collectionId the collection of the documents
+     * @param documentIds the ids of the documents to check
+     * @return the document ids that have already been indexed, or an empty list if they couldn't be checked
+     */
+    List<String> filterExistingDocuments(String wiki, String collectionId, List<String> documentIds);
+
+    /**
+     * Get the ids of the documents whose chunks have been stored with the users and groups that might view them, in
+     * all wikis and collections.
+     *
+     * @param documentIdPrefix the prefix of the document ids to return, the empty string for all documents
+     * @return the ids of the matching documents, or an empty list if they couldn't be loaded
+     */
+    List<String> getDocumentsWithViewers(String documentIdPrefix);
+
+    /**
+     * Search the chunks that are the most similar to the given query in the given collections of the current wiki.
+     *
+     * @param textQuery the query to search for
+     * @param collectionEmbeddingModelMap the collections to search and their embedding models
+     * @param limit the maximum number of results to return
+     * @param queryEmbeddings the embeddings of the query by embedding model, embeddings that are computed during the
+     *     search are added to it, must be thread-safe
+     * @param parameters the parameters of the search
+     * @return the best results sorted by descending score
+     * @throws IndexException if the search failed
+     */
+    List<Context> similaritySearch(String textQuery, Map<String, String> collectionEmbeddingModelMap, int limit,
+        Map<String, float[]> queryEmbeddings, SearchParameters parameters) throws IndexException;
+
+    /**
+     * Make all previous updates visible to searches and to {@link #getChunks} and {@link #filterExistingDocuments}.
+     */
+    void flush();
+}
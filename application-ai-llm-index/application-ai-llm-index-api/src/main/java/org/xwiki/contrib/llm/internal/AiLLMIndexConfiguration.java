@@ -0,0 +1,215 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.llm.internal;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.apache.commons.lang3.EnumUtils;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.configuration.ConfigurationSource;
+
+/**
+ * Configuration of the index, read from {@code xwiki.properties}.
+ *
+ * @version $Id$
+ * @since 0.6.3
+ */
+@Component(roles = AiLLMIndexConfiguration.class)
+@Singleton
+public class AiLLMIndexConfiguration
+{
+    /**
+     * The default value of {@link #getHnswMaxConnections()}, the default of Solr.
+     */
+    public static final int DEFAULT_HNSW_MAX_CONNECTIONS = 16;
+
+    /**
+     * The default value of {@link #getHnswBeamWidth()}, the default of Solr.
+     */
+    public static final int DEFAULT_HNSW_BEAM_WIDTH = 100;
+
+    private static final String PREFIX = "llm.index.";
+
+    @Inject
+    @Named("xwikiproperties")
+    private ConfigurationSource configurationSource;
+
+    /**
+     * @return the maximum time in milliseconds after which an update of the index becomes visible to searches
+     */
+    public int getCommitWithin()
+    {
+        return this.configurationSource.getProperty(PREFIX + "commitWithin", 1000);
+    }
+
+    /**
+     * @return the number of updated chunks after which a soft commit is triggered even before the commit-within
+     * window has passed
+     */
+    public int getSoftCommitBatchSize()
+    {
+        return this.configurationSource.getProperty(PREFIX + "softCommitBatchSize", 1000);
+    }
+
+    /**
+     * @return the interval in seconds between two hard commits that persist pending updates of the index
+     */
+    public int getHardCommitInterval()
+    {
+        return this.configurationSource.getProperty(PREFIX + "hardCommitInterval", 60);
+    }
+
+    /**
+     * @return the maximum number of concurrent requests to Solr for indexing, further requests wait so that indexing
+     * doesn't starve searches
+     */
+    public int getMaxConcurrentIndexingRequests()
+    {
+        return this.configurationSource.getProperty(PREFIX + "maxConcurrentIndexingRequests", 2);
+    }
+
+    /**
+     * @return the factor by which the number of requested results is multiplied to get the number of candidates that
+     * are fetched from the byte encoded vector fields and rescored with the full embeddings
+     */
+    public int getRescoringOversampling()
+    {
+        return this.configurationSource.getProperty(PREFIX + "rescoringOversampling", 4);
+    }
+
+    /**
+     * @return the maximum number of threads that compute query embeddings and search the index concurrently for the
+     * collections of different embedding models
+     */
+    public int getSimilaritySearchThreads()
+    {
+        return Math.max(1, this.configurationSource.getProperty(PREFIX + "similaritySearchThreads", 8));
+    }
+
+    /**
+     * @return the maximum time in milliseconds a similarity search waits for the results of all embedding models,
+     * the results of models that didn't answer in time are skipped
+     */
+    public long getSimilaritySearchTimeout()
+    {
+        return this.configurationSource.getProperty(PREFIX + "similaritySearchTimeout", 30000L);
+    }
+
+    /**
+     * @return the maximum factor by which the number of requested results is multiplied to fetch more results when
+     * many results are removed because the user isn't allowed to view them
+     */
+    public int getMaxOverFetchMultiplier()
+    {
+        return Math.max(1, this.configurationSource.getProperty(PREFIX + "maxOverFetchMultiplier", 10));
+    }
+
+    /**
+     * @return the time in milliseconds after which a similarity search stops fetching more results to replace the
+     * results the user isn't allowed to view
+     */
+    public long getOverFetchTimeBudget()
+    {
+        return this.configurationSource.getProperty(PREFIX + "overFetchTimeBudget", 5000L);
+    }
+
+    /**
+     * @return the maximum number of connections of each node in the HNSW graph of the vector fields, higher values
+     * improve the recall at the cost of a larger index and slower indexing
+     */
+    public int getHnswMaxConnections()
+    {
+        return this.configurationSource.getProperty(PREFIX + "hnswMaxConnections", DEFAULT_HNSW_MAX_CONNECTIONS);
+    }
+
+    /**
+     * @return the number of candidates that are considered when inserting a vector into the HNSW graph, higher values
+     * improve the quality of the graph at the cost of slower indexing
+     */
+    public int getHnswBeamWidth()
+    {
+        return this.configurationSource.getProperty(PREFIX + "hnswBeamWidth", DEFAULT_HNSW_BEAM_WIDTH);
+    }
+
+    /**
+     * @return the factor by which the number of requested results is multiplied to get the number of candidates that
+     * the HNSW graph search explores (often called ef), higher values improve the recall at the cost of slower
+     * searches
+     */
+    public int getKnnCandidateMultiplier()
+    {
+        return Math.max(1, this.configurationSource.getProperty(PREFIX + "knnCandidateMultiplier", 1));
+    }
+
+    /**
+     * @return the maximum number of chunks that a similarity search may need to consider for scoring all of them
+     * exactly instead of searching the HNSW graph, {@code 0} to always search the HNSW graph
+     */
+    public int getExactSearchThreshold()
+    {
+        return this.configurationSource.getProperty(PREFIX + "exactSearchThreshold", 2000);
+    }
+
+    /**
+     * @return the hint of the {@link org.xwiki.contrib.llm.VectorStore} that stores and searches the chunks, the
+     * chunks need to be re-indexed after changing it
+     */
+    public String getVectorStore()
+    {
+        return this.configurationSource.getProperty(PREFIX + "vectorStore", SolrVectorStore.NAME);
+    }
+
+    /**
+     * @return the maximum memory in bytes that the cache of query embeddings may use, {@code 0} to disable the cache
+     */
+    public long getEmbeddingCacheSize()
+    {
+        return this.configurationSource.getProperty(PREFIX + "embeddingCacheSize", 16L * 1024 * 1024);
+    }
+
+    /**
+     * @return the number of seconds after which cached query embeddings expire
+     */
+    public long getEmbeddingCacheTimeToLive()
+    {
+        return this.configurationSource.getProperty(PREFIX + "embeddingCacheTimeToLive", 3600L);
+    }
+
+    /**
+     * @return the number of milliseconds that a query embedding request waits for concurrent requests for the same
+     * model to send them together, {@code 0} to send each request directly
+     */
+    public long getEmbeddingBatchWindow()
+    {
+        return this.configurationSource.getProperty(PREFIX + "embeddingBatchWindow", 5L);
+    }
+
+    /**
+     * @return the encoding of the vectors in the kNN index, changing it re-encodes the existing vectors in the
+     * background after the next restart
+     */
+    public VectorEncoding getVectorEncoding()
+    {
+        return EnumUtils.getEnumIgnoreCase(VectorEncoding.class,
+            this.configurationSource.getProperty(PREFIX + "vectorEncoding", String.class), VectorEncoding.FLOAT32);
+    }
+}
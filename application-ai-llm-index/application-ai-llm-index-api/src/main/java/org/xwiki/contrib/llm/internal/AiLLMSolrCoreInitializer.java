@@ -20,11 +20,19 @@
 package org.xwiki.contrib.llm.internal;
 
 import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
 
+import javax.inject.Inject;
 import javax.inject.Named;
 import javax.inject.Singleton;
 
+import org.apache.solr.client.solrj.SolrClient;
 import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.request.schema.FieldTypeDefinition;
+import org.apache.solr.client.solrj.request.schema.SchemaRequest;
+import org.apache.solr.client.solrj.response.schema.FieldTypeRepresentation;
+import org.slf4j.Logger;
 import org.xwiki.component.annotation.Component;
 import org.xwiki.search.solr.AbstractSolrCoreInitializer;
 import org.xwiki.search.solr.SolrException;
@@ -100,6 +108,29 @@ public class AiLLMSolrCoreInitializer extends AbstractSolrCoreInitializer
      */
     public static final String FIELD_VECTOR = "vector";
 
+    /**
+     * The name of the field that stores the number of dimensions of the vector embedding of the chunk, {@code 0} if
+     * the chunk has no embedding.
+     *
+     * @since 0.6.3
+     */
+    public static final String FIELD_VECTOR_DIMENSIONS = "vectorDimensions";
+
+    /**
+     * The name of the field that stores the encoding of the vector embedding of the chunk.
+     *
+     * @since 0.6.3
+     */
+    public static final String FIELD_VECTOR_ENCODING = "vectorEncoding";
+
+    /**
+     * The name of the field that stores the full-precision vector embedding of the chunk when the indexed vector is
+     * quantized.
+     *
+     * @since 0.6.3
+     */
+    public static final String FIELD_VECTOR_DATA = "vectorData";
+
     /**
      * The name of the field that stores the error message if there is any.
      */
@@ -110,8 +141,25 @@ public class AiLLMSolrCoreInitializer extends AbstractSolrCoreInitializer
      */
     public static final String FIELD_STORE_HINT = "storeHint";
 
+    /**
+     * The name of the multi-valued field that stores the users and groups that might be allowed to view the chunk.
+     *
+     * @since 0.6.3
+     */
+    public static final String FIELD_VIEWERS = "viewers";
+
+    /**
+     * The name of the field that stores the partition of the vector embedding of chunks of collections with a
+     * dedicated vector index.
+     *
+     * @since 0.6.3
+     */
+    public static final String FIELD_VECTOR_PARTITION = "vectorPartition";
+
     private static final String FIELD_TYPE_KNN_VECTOR = "knn_vector";
 
+    private static final String FIELD_TYPE_BINARY = "llm_binary";
+
     // Last version that required a re-index, after that there are currently only field additions
     private static final long REINDEX_VERSION = 121000002;
 
@@ -120,7 +168,17 @@ public class AiLLMSolrCoreInitializer extends AbstractSolrCoreInitializer
 
     private static final long ERROR_MESSAGE_FILED_VERSION = 121000004;
 
-    private static final long CURRENT_VERSION = 121000005;
+    private static final long STORE_HINT_FIELD_VERSION = 121000005;
+
+    private static final long VECTOR_DIMENSIONS_FIELD_VERSION = 121000006;
+
+    private static final long QUANTIZED_VECTOR_FIELDS_VERSION = 121000007;
+
+    private static final long VIEWERS_FIELD_VERSION = 121000008;
+
+    private static final long VECTOR_PARTITION_FIELD_VERSION = 121000009;
+
+    private static final long CURRENT_VERSION = 121000010;
 
     private static final String SOLR_DENSE_VECTOR_FIELD = "solr.DenseVectorField";
 
@@ -130,6 +188,18 @@ public class AiLLMSolrCoreInitializer extends AbstractSolrCoreInitializer
 
     private static final String COSINE = "cosine";
 
+    private static final String HNSW_MAX_CONNECTIONS = "hnswMaxConnections";
+
+    private static final String HNSW_BEAM_WIDTH = "hnswBeamWidth";
+
+    private static final String NAME = "name";
+
+    @Inject
+    private AiLLMIndexConfiguration configuration;
+
+    @Inject
+    private Logger logger;
+
     @Override
     protected void createSchema() throws SolrException
     {
@@ -175,9 +245,84 @@ public class AiLLMSolrCoreInitializer extends AbstractSolrCoreInitializer
             this.addStringField(FIELD_ERROR_MESSAGE, false, false);
         }
 
-        if (cversion < CURRENT_VERSION) {
+        if (cversion < STORE_HINT_FIELD_VERSION) {
             this.addStringField(FIELD_STORE_HINT, false, false);
         }
+
+        if (cversion < VECTOR_DIMENSIONS_FIELD_VERSION) {
+            this.addPIntField(FIELD_VECTOR_DIMENSIONS, false, false);
+        }
+
+        if (cversion < QUANTIZED_VECTOR_FIELDS_VERSION) {
+            // Fields for quantized vectors, see SolrVectorFieldManager. The vector fields themselves are created on
+            // demand as they depend on the dimensions of the embedding model.
+            this.addFieldType(FIELD_TYPE_BINARY, "solr.BinaryField", "indexed", false, "stored", true);
+            this.addField(FIELD_VECTOR_DATA, FIELD_TYPE_BINARY, false, false);
+            this.addStringField(FIELD_VECTOR_ENCODING, false, false);
+        }
+
+        if (cversion < VIEWERS_FIELD_VERSION) {
+            this.addStringField(FIELD_VIEWERS, true, false);
+        }
+
+        if (cversion < VECTOR_PARTITION_FIELD_VERSION) {
+            this.addStringField(FIELD_VECTOR_PARTITION, false, false);
+        }
+
+        if (cversion < CURRENT_VERSION) {
+            updateHnswParameters();
+        }
+    }
+
+    /**
+     * Sets the configured HNSW parameters on the existing vector field types, the field types that are created later
+     * by the {@link SolrVectorFieldManager} get them directly. Parameters that are changed after this migration only
+     * apply to new field types. Changed parameters only apply to segments that are written after the change,
+     * existing segments keep their graph until they are merged or the index is rebuilt.
+     */
+    private void updateHnswParameters() throws SolrException
+    {
+        String maxConnections = String.valueOf(this.configuration.getHnswMaxConnections());
+        String beamWidth = String.valueOf(this.configuration.getHnswBeamWidth());
+
+        try {
+            SolrClient client = this.core.getClient();
+            for (FieldTypeRepresentation fieldType : new SchemaRequest.FieldTypes().process(client).getFieldTypes()) {
+                Map<String, Object> attributes = fieldType.getAttributes();
+                String name = String.valueOf(attributes.get(NAME));
+                if (name.startsWith(FIELD_TYPE_KNN_VECTOR)
+                    && !hasHnswParameters(attributes, maxConnections, beamWidth))
+                {
+                    Map<String, Object> newAttributes = new HashMap<>(attributes);
+                    newAttributes.put(HNSW_MAX_CONNECTIONS, maxConnections);
+                    newAttributes.put(HNSW_BEAM_WIDTH, beamWidth);
+                    FieldTypeDefinition definition = new FieldTypeDefinition();
+                    definition.setAttributes(newAttributes);
+                    Object errors = new SchemaRequest.ReplaceFieldType(definition).process(client).getResponse()
+                        .get("errors");
+                    if (errors != null) {
+                        throw new SolrException(
+                            "Failed to update the HNSW parameters of the field type [%s]: %s".formatted(name, errors));
+                    }
+                    this.logger.info("Updated the HNSW parameters of the vector field type [{}] to [{}] maximum "
+                        + "connections and a beam width of [{}].", name, maxConnections, beamWidth);
+                }
+            }
+        } catch (SolrServerException | IOException e) {
+            throw new SolrException("Failed to update the HNSW parameters of the vector field types.", e);
+        }
+    }
+
+    private static boolean hasHnswParameters(Map<String, Object> attributes, String maxConnections,
+        String beamWidth)
+    {
+        // Field types without the attributes use the defaults of Solr, which are also the default configuration.
+        Object currentMaxConnections =
+            attributes.getOrDefault(HNSW_MAX_CONNECTIONS, AiLLMIndexConfiguration.DEFAULT_HNSW_MAX_CONNECTIONS);
+        Object currentBeamWidth =
+            attributes.getOrDefault(HNSW_BEAM_WIDTH, AiLLMIndexConfiguration.DEFAULT_HNSW_BEAM_WIDTH);
+        return maxConnections.equals(String.valueOf(currentMaxConnections))
+            && beamWidth.equals(String.valueOf(currentBeamWidth));
     }
 
     @Override
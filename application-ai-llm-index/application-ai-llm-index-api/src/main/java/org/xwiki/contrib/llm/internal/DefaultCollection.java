@@ -68,6 +68,12 @@ public class DefaultCollection implements Collection
      * The field in the XObject that stores the list of document spaces.
      */
     public static final String DOCUMENT_SPACE_FIELDNAME = "documentSpaces";
+
+    /**
+     * The field in the XObject that stores if the collection has a dedicated vector index.
+     */
+    public static final String DEDICATED_INDEX_FIELDNAME = "dedicatedIndex";
+
     private static final String EMBEDDINGMODEL_FIELDNAME = "embeddingModel";
     private static final String CHUNKING_METHOD_FIELDNAME = "chunkingMethod";
     private static final String CHUNKING_LLM_MODEL_FIELDNAME = "chunkingLLMmodel";
@@ -182,6 +188,12 @@ public class DefaultCollection implements Collection
         return this.xWikiDocumentWrapper.getIntValue(ALLOW_GUESTS) == 1;
     }
 
+    @Override
+    public boolean getDedicatedIndex()
+    {
+        return this.xWikiDocumentWrapper.getIntValue(DEDICATED_INDEX_FIELDNAME) == 1;
+    }
+
     @Override
     public String getQueryGroups()
     {
@@ -256,6 +268,12 @@ public class DefaultCollection implements Collection
         this.xWikiDocumentWrapper.setIntValue(ALLOW_GUESTS, allowGuests ? 1 : 0);
     }
 
+    @Override
+    public void setDedicatedIndex(boolean dedicatedIndex) throws IndexException
+    {
+        this.xWikiDocumentWrapper.setIntValue(DEDICATED_INDEX_FIELDNAME, dedicatedIndex ? 1 : 0);
+    }
+
     @Override
     public void setQueryGroups(String queryGroups) throws IndexException
     {
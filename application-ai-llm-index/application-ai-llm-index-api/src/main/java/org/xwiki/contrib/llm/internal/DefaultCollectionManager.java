@@ -22,9 +22,12 @@ package org.xwiki.contrib.llm.internal;
 import java.util.AbstractMap;
 import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -42,7 +45,9 @@ import org.xwiki.contrib.llm.authorization.AuthorizationManager;
 import org.xwiki.contrib.llm.Collection;
 import org.xwiki.contrib.llm.CollectionManager;
 import org.xwiki.contrib.llm.IndexException;
+import org.xwiki.contrib.llm.SearchParameters;
 import org.xwiki.contrib.llm.SolrConnector;
+import org.xwiki.contrib.llm.VectorStore;
 import org.xwiki.contrib.llm.openai.Context;
 import org.xwiki.model.reference.DocumentReference;
 import org.xwiki.model.reference.SpaceReference;
@@ -78,6 +83,9 @@ public class DefaultCollectionManager implements CollectionManager
     @Inject
     private SolrConnector solrConnector;
 
+    @Inject
+    private VectorStore vectorStore;
+
     @Inject
     private Logger logger;
 
@@ -88,6 +96,12 @@ public class DefaultCollectionManager implements CollectionManager
     @Named("document")
     private UserReferenceSerializer<DocumentReference> userReferenceSerializer;
 
+    @Inject
+    private AiLLMIndexConfiguration configuration;
+
+    @Inject
+    private SearchDenialStatistics denialStatistics;
+
     @Override
     public DefaultCollection createCollection(String id) throws IndexException
     {
@@ -205,6 +219,13 @@ public class DefaultCollectionManager implements CollectionManager
     public List<Context> similaritySearch(String textQuery,
                                                 List<String> collections,
                                                 int limit) throws IndexException
+    {
+        return similaritySearch(textQuery, collections, limit, SearchParameters.SIMILARITY);
+    }
+
+    @Override
+    public List<Context> similaritySearch(String textQuery, List<String> collections, int limit,
+        SearchParameters parameters) throws IndexException
     {
         Map<String, DefaultCollection> collectionMap = getAccessibleCollections(collections);
 
@@ -219,12 +240,55 @@ public class DefaultCollectionManager implements CollectionManager
             return List.of();
         }
 
-        try {
-            List<Context> results = solrConnector.similaritySearch(textQuery, collectionEmbeddingModelMap, limit);
-            return filterSearchResults(results, authorizationManagerMap);
-        } catch (SolrServerException e) {
-            throw new IndexException("Failed to perform similarity search", e);
+        String wiki = this.contextProvider.get().getWikiId();
+        int maxFetchSize = limit * Math.max(1, this.configuration.getMaxOverFetchMultiplier());
+        int fetchSize = getInitialFetchSize(wiki, collectionEmbeddingModelMap.keySet(), limit, maxFetchSize);
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(this.configuration.getOverFetchTimeBudget());
+        // Re-use the query embeddings and the checked rights when fetching more results.
+        Map<String, float[]> queryEmbeddings = new ConcurrentHashMap<>();
+        Map<String, Map<String, Boolean>> viewRights = new HashMap<>();
+
+        while (true) {
+            List<Context> results = this.vectorStore.similaritySearch(textQuery, collectionEmbeddingModelMap,
+                fetchSize, queryEmbeddings, parameters);
+            List<Context> allowedResults = filterSearchResults(wiki, results, authorizationManagerMap, viewRights);
+
+            // Stop when there are enough results, there are no more results or the budget is exhausted.
+            if (allowedResults.size() >= limit || results.size() < fetchSize || fetchSize >= maxFetchSize
+                || System.nanoTime() - deadline >= 0)
+            {
+                return allowedResults.subList(0, Math.min(limit, allowedResults.size()));
+            }
+
+            fetchSize = getNextFetchSize(fetchSize, results.size(), allowedResults.size(), limit, maxFetchSize);
+        }
+    }
+
+    private int getInitialFetchSize(String wiki, java.util.Collection<String> collections, int limit,
+        int maxFetchSize)
+    {
+        // Assume that the collection with the most denied results dominates the results.
+        double denialRatio = collections.stream()
+            .mapToDouble(collection -> this.denialStatistics.getDenialRatio(wiki, collection))
+            .max()
+            .orElse(0);
+        double allowedRatio = 1 - denialRatio;
+        if (allowedRatio * maxFetchSize <= limit) {
+            return maxFetchSize;
         }
+
+        return Math.min(maxFetchSize, (int) Math.ceil(limit / allowedRatio));
+    }
+
+    private static int getNextFetchSize(int fetchSize, int numberOfResults, int numberOfAllowedResults, int limit,
+        int maxFetchSize)
+    {
+        int neededFetchSize = maxFetchSize;
+        if (numberOfAllowedResults > 0) {
+            neededFetchSize = (int) Math.ceil(limit * numberOfResults / (double) numberOfAllowedResults);
+        }
+
+        return Math.min(maxFetchSize, Math.max(2 * fetchSize, neededFetchSize));
     }
 
     private Map<String, AuthorizationManager> getAuthorizationManagerMap(Map<String, DefaultCollection> collectionMap)
@@ -260,36 +324,60 @@ public class DefaultCollectionManager implements CollectionManager
             .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
     }
 
-    private List<Context> filterSearchResults(List<Context> results,
-        Map<String, AuthorizationManager> authorizationManagerForCollection)
+    private List<Context> filterSearchResults(String wiki, List<Context> results,
+        Map<String, AuthorizationManager> authorizationManagerForCollection,
+        Map<String, Map<String, Boolean>> viewRights)
     {
-        return results.stream()
-            // Group the stream by collection name to avoid multiple authorization checks for a single collection. An
-            // authorization check could, e.g., call an external service where the overhead per call is high.
+        // Group the results by collection name to avoid multiple authorization checks for a single collection. An
+        // authorization check could, e.g., call an external service where the overhead per call is high.
+        results.stream()
             .collect(Collectors.groupingBy(Context::collectionId))
-            .entrySet().stream()
-            // For each collection, filter out the results that the user does not have access to and combine
-            // everything into a single stream again.
-            .flatMap(entry -> {
-                String collectionName = entry.getKey();
+            .forEach((collectionName, collectionResults) -> {
                 AuthorizationManager authorizationManager = authorizationManagerForCollection.get(collectionName);
                 if (authorizationManager == null) {
                     this.logger.warn("Authorization manager for collection [{}] not found, skipping",
                         collectionName);
-                    return Stream.empty();
+                    return;
                 }
-                Set<String> documentIds = entry.getValue().stream()
+
+                // Only check the documents that haven't been checked for a previous batch of results.
+                Map<String, Boolean> collectionViewRights =
+                    viewRights.computeIfAbsent(collectionName, key -> new HashMap<>());
+                Set<String> documentIds = collectionResults.stream()
                     .map(Context::documentId)
+                    .filter(documentId -> !collectionViewRights.containsKey(documentId))
                     .collect(Collectors.toSet());
-                Map<String, Boolean> accessibleDocumentMap = authorizationManager.canView(documentIds);
-                return entry.getValue().stream()
-                    .filter(context -> accessibleDocumentMap.getOrDefault(context.documentId(), false));
-            })
-            // Sort the results by similarity score in descending order again as the sorting was lost during grouping.
+                if (!documentIds.isEmpty()) {
+                    Map<String, Boolean> accessibleDocumentMap = authorizationManager.canView(documentIds);
+                    documentIds.forEach(documentId -> collectionViewRights.put(documentId,
+                        accessibleDocumentMap.getOrDefault(documentId, false)));
+                    recordDenials(wiki, collectionName, collectionResults, documentIds, collectionViewRights);
+                }
+            });
+
+        return results.stream()
+            .filter(context -> viewRights.getOrDefault(context.collectionId(), Map.of())
+                .getOrDefault(context.documentId(), false))
             .sorted(Comparator.comparingDouble(Context::similarityScore).reversed())
             .toList();
     }
 
+    private void recordDenials(String wiki, String collection, List<Context> collectionResults,
+        Set<String> checkedDocumentIds, Map<String, Boolean> collectionViewRights)
+    {
+        int checked = 0;
+        int denied = 0;
+        for (Context context : collectionResults) {
+            if (checkedDocumentIds.contains(context.documentId())) {
+                checked++;
+                if (!collectionViewRights.get(context.documentId())) {
+                    denied++;
+                }
+            }
+        }
+        this.denialStatistics.record(wiki, collection, checked, denied);
+    }
+
     @Override
     public boolean hasAccess(Collection collection)
     {
@@ -0,0 +1,170 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.llm.internal;
+
+import java.util.List;
+import java.util.Map;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.slf4j.Logger;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.component.manager.ComponentLookupException;
+import org.xwiki.component.manager.ComponentManager;
+import org.xwiki.contrib.llm.Chunk;
+import org.xwiki.contrib.llm.IndexException;
+import org.xwiki.contrib.llm.SearchParameters;
+import org.xwiki.contrib.llm.VectorStore;
+import org.xwiki.contrib.llm.openai.Context;
+
+/**
+ * Delegates to the vector store that is configured with {@code llm.index.vectorStore}, Solr by default.
+ *
+ * @version $Id$
+ * @since 0.6.3
+ */
+@Component
+@Singleton
+public class DefaultVectorStore implements VectorStore
+{
+    private static final String DEFAULT_HINT = "default";
+
+    @Inject
+    private Logger logger;
+
+    @Inject
+    private ComponentManager componentManager;
+
+    @Inject
+    private AiLLMIndexConfiguration configuration;
+
+    private volatile VectorStore store;
+
+    private VectorStore getStore()
+    {
+        VectorStore result = this.store;
+        if (result == null) {
+            synchronized (this) {
+                result = this.store;
+                if (result == null) {
+                    result = lookupStore();
+                    this.store = result;
+                }
+            }
+        }
+
+        return result;
+    }
+
+    private VectorStore lookupStore()
+    {
+        String hint = this.configuration.getVectorStore();
+        if (!DEFAULT_HINT.equals(hint)) {
+            try {
+                return this.componentManager.getInstance(VectorStore.class, hint);
+            } catch (ComponentLookupException e) {
+                this.logger.error("Failed to load the configured vector store [{}], falling back to Solr.", hint, e);
+            }
+        }
+
+        try {
+            return this.componentManager.getInstance(VectorStore.class, SolrVectorStore.NAME);
+        } catch (ComponentLookupException e) {
+            throw new IllegalStateException("Failed to load the Solr vector store", e);
+        }
+    }
+
+    @Override
+    public void storeChunks(List<Chunk> chunks) throws IndexException
+    {
+        getStore().storeChunks(chunks);
+    }
+
+    @Override
+    public List<Chunk> getChunks(String wiki, String collectionId, String documentId, int startChunk, int endChunk)
+    {
+        return getStore().getChunks(wiki, collectionId, documentId, startChunk, endChunk);
+    }
+
+    @Override
+    public void deleteChunksByIndex(String wiki, String collectionId, String documentId, int startChunk)
+    {
+        getStore().deleteChunksByIndex(wiki, collectionId, documentId, startChunk);
+    }
+
+    @Override
+    public void deleteChunksByIndex(String wiki, String collectionId, String documentId, int startChunk,
+        int endChunk)
+    {
+        getStore().deleteChunksByIndex(wiki, collectionId, documentId, startChunk, endChunk);
+    }
+
+    @Override
+    public void deleteChunksByDocIdAndStore(String wiki, String collectionId, String documentId, String storeHint)
+    {
+        getStore().deleteChunksByDocIdAndStore(wiki, collectionId, documentId, storeHint);
+    }
+
+    @Override
+    public void deleteChunksByStoreHintAndDocId(String storeHint, String documentId)
+    {
+        getStore().deleteChunksByStoreHintAndDocId(storeHint, documentId);
+    }
+
+    @Override
+    public void deleteChunksByCollection(String wiki, String collectionId)
+    {
+        getStore().deleteChunksByCollection(wiki, collectionId);
+    }
+
+    @Override
+    public void deleteOtherDocuments(String wiki, String collectionId, String storeHint,
+        List<String> documentIdPrefixes)
+    {
+        getStore().deleteOtherDocuments(wiki, collectionId, storeHint, documentIdPrefixes);
+    }
+
+    @Override
+    public List<String> filterExistingDocuments(String wiki, String collectionId, List<String> documentIds)
+    {
+        return getStore().filterExistingDocuments(wiki, collectionId, documentIds);
+    }
+
+    @Override
+    public List<String> getDocumentsWithViewers(String documentIdPrefix)
+    {
+        return getStore().getDocumentsWithViewers(documentIdPrefix);
+    }
+
+    @Override
+    public List<Context> similaritySearch(String textQuery, Map<String, String> collectionEmbeddingModelMap,
+        int limit, Map<String, float[]> queryEmbeddings, SearchParameters parameters) throws IndexException
+    {
+        return getStore().similaritySearch(textQuery, collectionEmbeddingModelMap, limit, queryEmbeddings,
+            parameters);
+    }
+
+    @Override
+    public void flush()
+    {
+        getStore().flush();
+    }
+}
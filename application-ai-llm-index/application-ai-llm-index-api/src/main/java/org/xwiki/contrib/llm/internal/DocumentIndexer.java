@@ -42,14 +42,16 @@ import org.xwiki.contrib.llm.Document;
 import org.xwiki.contrib.llm.EmbeddingModel;
 import org.xwiki.contrib.llm.EmbeddingsUtils;
 import org.xwiki.contrib.llm.IndexException;
-import org.xwiki.contrib.llm.SolrConnector;
+import org.xwiki.contrib.llm.VectorStore;
+import org.xwiki.contrib.llm.internal.authorization.XWikiAuthorizationManagerBuilder;
+import org.xwiki.contrib.llm.internal.authorization.XWikiViewersResolver;
 import org.xwiki.security.authorization.AccessDeniedException;
 import org.xwiki.user.UserReference;
 
 import com.xpn.xwiki.XWikiContext;
 
 /**
- * Indexes a document by chunking it and storing the chunks in Solr.
+ * Indexes a document by chunking it and storing the chunks in the vector store.
  *
  * @version $Id$
  * @since 0.4
@@ -62,7 +64,7 @@ public class DocumentIndexer
     private CollectionManager collectionManager;
 
     @Inject
-    private SolrConnector solrConnector;
+    private VectorStore vectorStore;
 
     @Inject
     private Logger logger;
@@ -76,8 +78,11 @@ public class DocumentIndexer
     @Inject
     private ChunkingUtils chunkingUtils;
 
+    @Inject
+    private XWikiViewersResolver viewersResolver;
+
     /**
-     * Index a document by chunking it and storing the chunks in Solr.
+     * Index a document by chunking it and storing the chunks in the vector store.
      *
      * @param wiki the wiki where the document is
      * @param collection the collection where the document is
@@ -100,19 +105,25 @@ public class DocumentIndexer
             }
 
             List<Chunk> chunks = this.chunkingUtils.chunkDocument(collectionObj, documentObj);
+            if (XWikiAuthorizationManagerBuilder.NAME.equals(collectionObj.getRightsCheckMethod())) {
+                // Index who can view the chunks so that searches can skip chunks the user isn't allowed to view.
+                List<String> viewers = this.viewersResolver.getViewers(document);
+                chunks.forEach(chunk -> chunk.setViewers(viewers));
+            }
             String embeddingModel = collectionObj.getEmbeddingModel();
             UserReference author = collectionObj.getAuthor();
             int maximumParallelism = this.embeddingsUtils.getMaximumNumberOfTexts(embeddingModel, author);
+            int dimensions = this.embeddingsUtils.getDimensions(embeddingModel, author);
 
             // Group chunks into groups of size maximumParallelism.
             for (int i = 0; i < chunks.size(); i += maximumParallelism) {
                 int end = Math.min(i + maximumParallelism, chunks.size());
                 List<Chunk> chunkGroup = chunks.subList(i, end);
-                embedAndStoreChunks(document, chunkGroup, embeddingModel, author, i, end);
+                embedAndStoreChunks(document, chunkGroup, embeddingModel, author, dimensions, i, end);
             }
 
             // Delete all remaining chunks.
-            this.solrConnector.deleteChunksByIndex(wiki, collection, document, chunks.size());
+            this.vectorStore.deleteChunksByIndex(wiki, collection, document, chunks.size());
         } catch (AccessDeniedException e) {
             throw new IndexException("Access denied while getting document for chunking", e);
         } finally {
@@ -121,7 +132,7 @@ public class DocumentIndexer
     }
 
     private void embedAndStoreChunks(String document, List<Chunk> chunkGroup, String embeddingModel,
-        UserReference author, int firstChunkIndex, int lastChunkIndex) throws IndexException
+        UserReference author, int dimensions, int firstChunkIndex, int lastChunkIndex) throws IndexException
     {
         if (chunkGroup.isEmpty()) {
             return;
@@ -130,16 +141,16 @@ public class DocumentIndexer
         String wiki = chunkGroup.get(0).getWiki();
         String collection = chunkGroup.get(0).getCollection();
         List<Chunk> existingChunks =
-            this.solrConnector.getChunks(wiki, collection, document, firstChunkIndex, lastChunkIndex);
+            this.vectorStore.getChunks(wiki, collection, document, firstChunkIndex, lastChunkIndex);
 
-        copyExistingEmbeddings(chunkGroup, existingChunks);
+        copyExistingEmbeddings(chunkGroup, existingChunks, dimensions);
 
         embedChunks(document, chunkGroup, embeddingModel, author);
 
         updateChunksIfModified(wiki, collection, document, firstChunkIndex, lastChunkIndex, existingChunks, chunkGroup);
     }
 
-    private static void copyExistingEmbeddings(List<Chunk> chunkGroup, List<Chunk> existingChunks)
+    private static void copyExistingEmbeddings(List<Chunk> chunkGroup, List<Chunk> existingChunks, int dimensions)
     {
         // Take the embedding from the existing chunks if the content matches. For this, index chunks by content.
         Map<String, Chunk> chunkByContent = existingChunks.stream()
@@ -147,27 +158,51 @@ public class DocumentIndexer
         for (Chunk chunk : chunkGroup) {
             Chunk existingChunk = chunkByContent.get(chunk.getContent());
             // Check that we have an existing embedding that actually contains a non-zero embedding.
-            if (existingChunk != null && existingChunk.getEmbeddings() != null
-                && Arrays.stream(existingChunk.getEmbeddings()).anyMatch(v -> v != 0.0)) {
-                chunk.setEmbeddings(existingChunk.getEmbeddings());
+            if (existingChunk != null && hasNonZeroValue(existingChunk.getEmbeddingVector(), 0, dimensions)) {
+                chunk.setEmbeddingVector(resizeExistingEmbedding(existingChunk.getEmbeddingVector(), dimensions));
             }
         }
     }
 
+    private static float[] resizeExistingEmbedding(float[] embedding, int dimensions)
+    {
+        if (embedding.length == dimensions) {
+            return embedding;
+        } else if (embedding.length > dimensions && !hasNonZeroValue(embedding, dimensions, embedding.length)) {
+            // Embeddings indexed before the introduction of vector fields with native dimensions were padded with
+            // zeros, remove the padding so the chunk is stored in the vector field of the model.
+            return Arrays.copyOf(embedding, dimensions);
+        }
+
+        // The embedding has been computed by a model with different dimensions, it needs to be computed again.
+        return null;
+    }
+
+    private static boolean hasNonZeroValue(float[] vector, int from, int to)
+    {
+        if (vector != null) {
+            for (int i = from; i < Math.min(to, vector.length); i++) {
+                if (vector[i] != 0.0f) {
+                    return true;
+                }
+            }
+        }
+
+        return false;
+    }
+
     private void embedChunks(String document, List<Chunk> chunkGroup, String embeddingModel, UserReference author)
     {
         List<Chunk> chunksToEmbed = chunkGroup.stream()
-            .filter(chunk -> chunk.getEmbeddings() == null)
+            .filter(chunk -> chunk.getEmbeddingVector() == null)
             .toList();
         if (!chunksToEmbed.isEmpty()) {
             try {
                 List<String> texts = chunksToEmbed.stream().map(Chunk::getContent).toList();
-                List<double[]> embeddings = this.embeddingsUtils.computeEmbeddings(texts,
-                                                                                embeddingModel,
-                                                                                author,
-                                                                                EmbeddingModel.EmbeddingPurpose.INDEX);
+                List<float[]> embeddings = this.embeddingsUtils.computeEmbeddingVectors(texts, embeddingModel, author,
+                    EmbeddingModel.EmbeddingPurpose.INDEX);
                 for (int j = 0; j < chunksToEmbed.size(); j++) {
-                    chunksToEmbed.get(j).setEmbeddings(embeddings.get(j));
+                    chunksToEmbed.get(j).setEmbeddingVector(embeddings.get(j));
                 }
             } catch (IndexException e) {
                 String rootCauseMessage = ExceptionUtils.getRootCauseMessage(e);
@@ -184,22 +219,18 @@ public class DocumentIndexer
     private void updateChunksIfModified(String wiki, String collection, String document, int firstChunkIndex,
         int lastChunkIndex, List<Chunk> existingChunks, List<Chunk> newChunks) throws IndexException
     {
-        try {
-            if (!CollectionUtils.isEqualCollection(newChunks, existingChunks)) {
-                // Check if all chunk ids from the existing chunks are in the new chunks.
-                Set<String> newChunkIds = newChunks.stream().map(Chunk::getId).collect(Collectors.toSet());
-                if (!existingChunks.stream().allMatch(chunk -> newChunkIds.contains(chunk.getId()))) {
-                    // Delete the existing chunks. Delete all of them to avoid creating too many or too large queries.
-                    // This should only happen when the ID generation algorithm was changed, this was the case in
-                    // version 0.4 of LLM the extension.
-                    this.solrConnector.deleteChunksByIndex(wiki, collection, document, firstChunkIndex, lastChunkIndex);
-                }
-
-                this.solrConnector.storeChunks(newChunks);
+        if (!CollectionUtils.isEqualCollection(newChunks, existingChunks)) {
+            // Check if all chunk ids from the existing chunks are in the new chunks.
+            Set<String> newChunkIds = newChunks.stream().map(Chunk::getId).collect(Collectors.toSet());
+            if (!existingChunks.stream().allMatch(chunk -> newChunkIds.contains(chunk.getId()))) {
+                // Delete the existing chunks. Delete all of them to avoid creating too many or too large queries.
+                // This should only happen when the ID generation algorithm was changed, this was the case in
+                // version 0.4 of LLM the extension.
+                this.vectorStore.deleteChunksByIndex(wiki, collection, document, firstChunkIndex, lastChunkIndex);
             }
-        } catch (Exception e) {
-            // Storing in Solr shouldn't fail, if this fails it doesn't make sense to continue embedding chunks.
-            throw new IndexException("Error while storing chunks in Solr", e);
+
+            // Storing the chunks shouldn't fail, if this fails it doesn't make sense to continue embedding chunks.
+            this.vectorStore.storeChunks(newChunks);
         }
     }
 }
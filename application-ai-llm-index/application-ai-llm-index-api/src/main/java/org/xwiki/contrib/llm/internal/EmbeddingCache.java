@@ -0,0 +1,187 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.llm.internal;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.apache.commons.lang3.StringUtils;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.contrib.llm.EmbeddingModel;
+
+/**
+ * Caches the embeddings of queries so that repeated questions don't need a request to the embedding model. The cache
+ * is bounded by the approximate memory usage of the embeddings and entries expire after a configurable time. Entries
+ * are only used for the same instance of the model they were computed with, so changing the configuration of a model,
+ * which creates a new instance, invalidates them.
+ *
+ * @version $Id$
+ * @since 0.6.3
+ */
+@Component(roles = EmbeddingCache.class)
+@Singleton
+public class EmbeddingCache
+{
+    /**
+     * The statistics of the cache.
+     *
+     * @param hits the number of lookups that returned a cached embedding
+     * @param misses the number of lookups that didn't find a valid cached embedding
+     * @param evictions the number of entries that were removed because they expired, their model changed or the cache
+     *     was full
+     * @param size the number of entries in the cache
+     * @param bytes the approximate memory usage of the entries in the cache in bytes
+     */
+    public record Statistics(long hits, long misses, long evictions, int size, long bytes)
+    {
+    }
+
+    private record Key(String wiki, String modelId, EmbeddingModel.EmbeddingPurpose purpose, String text)
+    {
+    }
+
+    private record Entry(float[] embedding, EmbeddingModel model, long expiration, long bytes)
+    {
+    }
+
+    // Approximate overhead of the key, the entry and the linked hash map node.
+    private static final long ENTRY_OVERHEAD = 160;
+
+    @Inject
+    private AiLLMIndexConfiguration configuration;
+
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private long bytes;
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * @param wiki the wiki of the model
+     * @param modelId the id of the model
+     * @param model the current instance of the model
+     * @param purpose the purpose of the embedding
+     * @param text the embedded text
+     * @return the cached embedding, {@code null} if there is no valid cached embedding
+     */
+    public float[] get(String wiki, String modelId, EmbeddingModel model, EmbeddingModel.EmbeddingPurpose purpose,
+        String text)
+    {
+        Key key = new Key(wiki, modelId, purpose, normalize(text));
+        synchronized (this.entries) {
+            Entry entry = this.entries.get(key);
+            if (entry != null && (entry.model() != model || entry.expiration() < System.currentTimeMillis())) {
+                remove(key);
+                entry = null;
+            }
+
+            if (entry == null) {
+                this.misses.incrementAndGet();
+                return null;
+            }
+
+            this.hits.incrementAndGet();
+            return entry.embedding();
+        }
+    }
+
+    /**
+     * Store an embedding in the cache, possibly evicting the least recently used embeddings.
+     *
+     * @param wiki the wiki of the model
+     * @param modelId the id of the model
+     * @param model the instance of the model that computed the embedding
+     * @param purpose the purpose of the embedding
+     * @param text the embedded text
+     * @param embedding the embedding, it is stored without copying it and thus must not be modified anymore
+     */
+    public void put(String wiki, String modelId, EmbeddingModel model, EmbeddingModel.EmbeddingPurpose purpose,
+        String text, float[] embedding)
+    {
+        long maximumBytes = this.configuration.getEmbeddingCacheSize();
+        Key key = new Key(wiki, modelId, purpose, normalize(text));
+        long entryBytes = ENTRY_OVERHEAD + (long) Float.BYTES * embedding.length + 2L * key.text().length();
+        if (entryBytes > maximumBytes) {
+            return;
+        }
+
+        long expiration = System.currentTimeMillis() + this.configuration.getEmbeddingCacheTimeToLive() * 1000L;
+        synchronized (this.entries) {
+            Entry previous = this.entries.put(key, new Entry(embedding, model, expiration, entryBytes));
+            if (previous != null) {
+                this.bytes -= previous.bytes();
+            }
+            this.bytes += entryBytes;
+
+            Iterator<Entry> iterator = this.entries.values().iterator();
+            while (this.bytes > maximumBytes && iterator.hasNext()) {
+                this.bytes -= iterator.next().bytes();
+                iterator.remove();
+                this.evictions.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Remove all entries from the cache.
+     */
+    public void clear()
+    {
+        synchronized (this.entries) {
+            this.entries.clear();
+            this.bytes = 0;
+        }
+    }
+
+    /**
+     * @return the current statistics of the cache
+     */
+    public Statistics getStatistics()
+    {
+        synchronized (this.entries) {
+            return new Statistics(this.hits.get(), this.misses.get(), this.evictions.get(), this.entries.size(),
+                this.bytes);
+        }
+    }
+
+    private void remove(Key key)
+    {
+        Entry entry = this.entries.remove(key);
+        if (entry != null) {
+            this.bytes -= entry.bytes();
+            this.evictions.incrementAndGet();
+        }
+    }
+
+    private static String normalize(String text)
+    {
+        // Queries that only differ in whitespace get the same embedding.
+        return StringUtils.normalizeSpace(text);
+    }
+}
@@ -0,0 +1,193 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.llm.internal;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.xwiki.component.annotation.Component;
+import org.xwiki.contrib.llm.EmbeddingModel;
+import org.xwiki.user.UserReference;
+
+/**
+ * Combines the embedding requests of single queries that arrive at the same time for the same model into a single
+ * request. The first request waits for a short time or until the batch reaches the maximum number of texts of the
+ * model and then sends the request for all texts of the batch in its thread, the other requests wait for the result.
+ * <p>
+ * Only requests of the same user are combined as the request is sent with the context of the first request. If
+ * computing the embeddings of the batch fails, e.g., because one of the texts is rejected by the model, all requests
+ * of the batch fail with the same error.
+ *
+ * @version $Id$
+ * @since 0.6.3
+ */
+@Component(roles = EmbeddingRequestCoalescer.class)
+@Singleton
+public class EmbeddingRequestCoalescer
+{
+    /**
+     * Computes the embeddings of a batch of texts.
+     */
+    @FunctionalInterface
+    public interface BatchEmbedder
+    {
+        /**
+         * @param texts the texts to embed
+         * @return the embedding of each text
+         * @throws Exception if computing the embeddings failed
+         */
+        List<float[]> embed(List<String> texts) throws Exception;
+    }
+
+    // Requests are only combined for the same instance of the model as a new instance might use another
+    // configuration, and for the same user as the request is sent with the context of the first request.
+    private record Key(String wiki, String modelId, EmbeddingModel model, UserReference user)
+    {
+    }
+
+    private static final class Batch
+    {
+        private final int capacity;
+
+        private final List<String> texts = new ArrayList<>();
+
+        private final List<CompletableFuture<float[]>> results = new ArrayList<>();
+
+        private final CountDownLatch full = new CountDownLatch(1);
+
+        Batch(int capacity)
+        {
+            this.capacity = capacity;
+        }
+
+        CompletableFuture<float[]> add(String text)
+        {
+            CompletableFuture<float[]> result = new CompletableFuture<>();
+            this.texts.add(text);
+            this.results.add(result);
+            if (this.texts.size() >= this.capacity) {
+                this.full.countDown();
+            }
+            return result;
+        }
+
+        boolean isFull()
+        {
+            return this.texts.size() >= this.capacity;
+        }
+
+        void execute(BatchEmbedder embedder)
+        {
+            try {
+                List<float[]> embeddings = embedder.embed(this.texts);
+                for (int i = 0; i < this.results.size(); i++) {
+                    this.results.get(i).complete(embeddings.get(i));
+                }
+            } catch (Exception e) {
+                this.results.forEach(result -> result.completeExceptionally(e));
+            } finally {
+                // Don't let the other requests of the batch wait forever when computing the embeddings failed with an
+                // error or didn't return an embedding for every text.
+                if (this.results.stream().anyMatch(result -> !result.isDone())) {
+                    IllegalStateException missing =
+                        new IllegalStateException("The embeddings of the batch couldn't be computed");
+                    this.results.forEach(result -> result.completeExceptionally(missing));
+                }
+            }
+        }
+    }
+
+    @Inject
+    private AiLLMIndexConfiguration configuration;
+
+    private final Map<Key, Batch> pendingBatches = new HashMap<>();
+
+    /**
+     * @return {@code true} if requests shall be combined, {@code false} if they should be sent directly
+     */
+    public boolean isEnabled()
+    {
+        return this.configuration.getEmbeddingBatchWindow() > 0;
+    }
+
+    /**
+     * Compute the embedding of a single text, possibly together with texts of concurrent calls.
+     *
+     * @param wiki the wiki of the model
+     * @param modelId the id of the model
+     * @param model the model, its maximum parallelism limits the size of the batch
+     * @param user the user on whose behalf the embedding is computed
+     * @param text the text to embed
+     * @param embedder computes the embeddings of the batch if this call is the first one of the batch
+     * @return the embedding of the text
+     * @throws Exception if computing the embeddings failed
+     */
+    public float[] embed(String wiki, String modelId, EmbeddingModel model, UserReference user, String text,
+        BatchEmbedder embedder) throws Exception
+    {
+        Key key = new Key(wiki, modelId, model, user);
+        Batch batch;
+        CompletableFuture<float[]> result;
+        boolean first = false;
+        synchronized (this.pendingBatches) {
+            batch = this.pendingBatches.get(key);
+            if (batch == null) {
+                batch = new Batch(Math.max(1, model.getMaximumParallelism()));
+                this.pendingBatches.put(key, batch);
+                first = true;
+            }
+            result = batch.add(text);
+            if (batch.isFull()) {
+                this.pendingBatches.remove(key);
+            }
+        }
+
+        if (first) {
+            try {
+                batch.full.await(this.configuration.getEmbeddingBatchWindow(), TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                synchronized (this.pendingBatches) {
+                    this.pendingBatches.remove(key, batch);
+                }
+                batch.execute(embedder);
+            }
+        }
+
+        try {
+            return result.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+}
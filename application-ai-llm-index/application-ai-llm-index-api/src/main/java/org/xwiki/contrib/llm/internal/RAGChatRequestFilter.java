@@ -33,6 +33,7 @@ import org.apache.commons.lang3.function.FailableConsumer;
 import org.slf4j.Logger;
 import org.xwiki.contrib.llm.AbstractChatRequestFilter;
 import org.xwiki.contrib.llm.CollectionManager;
+import org.xwiki.contrib.llm.SearchParameters;
 import org.xwiki.contrib.llm.openai.ChatCompletionChunk;
 import org.xwiki.contrib.llm.openai.ChatCompletionChunkChoice;
 import org.xwiki.contrib.llm.openai.ChatCompletionRequest;
@@ -69,6 +70,7 @@ public class RAGChatRequestFilter extends AbstractChatRequestFilter
     private final CollectionManager collectionManager;
     private final int maxResults;
     private final String contextPrompt;
+    private final SearchParameters searchParameters;
     private final Logger logger;
 
     /**
@@ -78,17 +80,21 @@ public class RAGChatRequestFilter extends AbstractChatRequestFilter
      * @param collectionManager the collection manager
      * @param maxResults the maximum number of results to return
      * @param contextPrompt the context prompt
+     * @param searchParameters the parameters of the search for the context
      * @param logger the logger
      */
     public RAGChatRequestFilter(List<String> collections,
                                 CollectionManager collectionManager,
                                 Integer maxResults,
-                                String contextPrompt, Logger logger)
+                                String contextPrompt,
+                                SearchParameters searchParameters,
+                                Logger logger)
     {
         this.collections = collections;
         this.collectionManager = collectionManager;
         this.maxResults = maxResults != null && maxResults > 0 ? maxResults : 10;
         this.contextPrompt = contextPrompt;
+        this.searchParameters = searchParameters;
         this.logger = logger;
     }
 
@@ -216,7 +222,8 @@ public class RAGChatRequestFilter extends AbstractChatRequestFilter
 
         // Perform solr similarity search on the last message
         try {
-            return this.collectionManager.similaritySearch(message, this.collections, this.maxResults);
+            return this.collectionManager.similaritySearch(message, this.collections, this.maxResults,
+                this.searchParameters);
         } catch (Exception e) {
             this.logger.error(ERROR_LOG_FORMAT, SIMILARITY_SEARCH_ERROR_MSG, ExceptionUtils.getRootCauseMessage(e));
             return Collections.emptyList();
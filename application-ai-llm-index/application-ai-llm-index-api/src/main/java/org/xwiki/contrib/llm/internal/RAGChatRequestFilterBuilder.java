@@ -32,6 +32,7 @@ import org.xwiki.component.annotation.Component;
 import org.xwiki.contrib.llm.ChatRequestFilter;
 import org.xwiki.contrib.llm.ChatRequestFilterBuilder;
 import org.xwiki.contrib.llm.CollectionManager;
+import org.xwiki.contrib.llm.SearchParameters;
 import org.xwiki.model.reference.EntityReference;
 import org.xwiki.model.reference.LocalDocumentReference;
 
@@ -61,6 +62,8 @@ public class RAGChatRequestFilterBuilder implements ChatRequestFilterBuilder
 
     private static final String COLLECTIONS_FIELD = "collections";
 
+    private static final String HYBRID_SEARCH_MODE = "hybrid";
+
     @Inject
     private CollectionManager collectionManager;
 
@@ -78,14 +81,29 @@ public class RAGChatRequestFilterBuilder implements ChatRequestFilterBuilder
 
         Integer maxResults = object.getIntValue("maxResults");
         String contextPrompt = object.getLargeStringValue("contextPrompt");
-
+        SearchParameters searchParameters = getSearchParameters(object);
 
         // Only return a filter if there are collections to filter on.
         return collections.isEmpty() ? List.of() 
                                      : List.of(new RAGChatRequestFilter(collections,
                                                                         collectionManager,
                                                                         maxResults,
-                                                                        contextPrompt, logger));
+                                                                        contextPrompt,
+                                                                        searchParameters,
+                                                                        logger));
+    }
+
+    private static SearchParameters getSearchParameters(BaseObject object)
+    {
+        if (!HYBRID_SEARCH_MODE.equals(object.getStringValue("searchMode"))) {
+            return SearchParameters.SIMILARITY;
+        }
+
+        // Weigh both searches equally unless configured otherwise.
+        double vectorWeight = object.getDoubleValue("vectorWeight");
+        double keywordWeight = object.getDoubleValue("keywordWeight");
+        return new SearchParameters(SearchParameters.SearchMode.HYBRID, vectorWeight > 0 ? vectorWeight : 1,
+            keywordWeight > 0 ? keywordWeight : 1);
     }
 
     @Override
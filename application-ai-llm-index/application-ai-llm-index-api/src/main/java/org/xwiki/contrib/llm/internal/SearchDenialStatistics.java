@@ -0,0 +1,79 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.llm.internal;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.inject.Singleton;
+
+import org.xwiki.component.annotation.Component;
+
+/**
+ * Keeps track of the fraction of search results of each collection that are removed because the user isn't allowed
+ * to view them. The ratios are used to choose how many results to fetch initially so that enough results remain after
+ * the rights check.
+ *
+ * @version $Id$
+ * @since 0.6.3
+ */
+@Component(roles = SearchDenialStatistics.class)
+@Singleton
+public class SearchDenialStatistics
+{
+    /**
+     * The weight of the latest search in the moving average of the denial ratio.
+     */
+    private static final double SMOOTHING_FACTOR = 0.2;
+
+    private final Map<String, Double> denialRatios = new ConcurrentHashMap<>();
+
+    /**
+     * @param wiki the wiki of the collection
+     * @param collection the collection
+     * @return the recent average fraction of the search results of the collection that were denied, {@code 0} if
+     *     there were no searches in the collection yet
+     */
+    public double getDenialRatio(String wiki, String collection)
+    {
+        return this.denialRatios.getOrDefault(getKey(wiki, collection), 0.0);
+    }
+
+    /**
+     * Record the outcome of the rights check of the search results of a collection.
+     *
+     * @param wiki the wiki of the collection
+     * @param collection the collection
+     * @param checked the number of checked results
+     * @param denied the number of results that the user isn't allowed to view
+     */
+    public void record(String wiki, String collection, int checked, int denied)
+    {
+        if (checked > 0) {
+            this.denialRatios.merge(getKey(wiki, collection), denied / (double) checked,
+                (previous, current) -> previous + SMOOTHING_FACTOR * (current - previous));
+        }
+    }
+
+    private static String getKey(String wiki, String collection)
+    {
+        return wiki + ':' + collection;
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.llm.internal;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+import org.xwiki.contrib.llm.EmbeddingModel;
+import org.xwiki.contrib.llm.EmbeddingsUtils;
+import org.xwiki.contrib.llm.IndexException;
+import org.xwiki.user.CurrentUserReference;
+
+/**
+ * The embeddings of a search query for the embedding models of the searched collections. The searches that are
+ * executed concurrently for the collections of the same embedding model share the query embedding: it is computed by
+ * the first search that needs it while the others wait for it.
+ *
+ * @version $Id$
+ * @since 0.6.3
+ */
+public class SharedQueryEmbeddings
+{
+    private final String textQuery;
+
+    private final Map<String, float[]> knownEmbeddings;
+
+    private final EmbeddingsUtils embeddingsUtils;
+
+    private final Map<String, FutureTask<float[]>> tasks = new ConcurrentHashMap<>();
+
+    /**
+     * @param textQuery the text of the query
+     * @param knownEmbeddings the embeddings of the query that are already known by embedding model id, computed
+     *     embeddings are added to it so it must be thread-safe
+     * @param embeddingsUtils the utility used to compute the embeddings of the current user
+     */
+    public SharedQueryEmbeddings(String textQuery, Map<String, float[]> knownEmbeddings,
+        EmbeddingsUtils embeddingsUtils)
+    {
+        this.textQuery = textQuery;
+        this.knownEmbeddings = knownEmbeddings;
+        this.embeddingsUtils = embeddingsUtils;
+    }
+
+    /**
+     * @param embeddingModelId the id of the embedding model
+     * @return the embedding of the query computed by the given model, waiting for a search that computes it already
+     * @throws IndexException if the embedding couldn't be computed
+     */
+    public float[] get(String embeddingModelId) throws IndexException
+    {
+        FutureTask<float[]> task = this.tasks.computeIfAbsent(embeddingModelId,
+            model -> new FutureTask<>(() -> compute(model)));
+        // Running the task again after it has been started by another search has no effect.
+        task.run();
+        try {
+            return task.get();
+        } catch (ExecutionException e) {
+            throw new IndexException("Failed to compute the embedding of the query", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IndexException("Interrupted while waiting for the embedding of the query", e);
+        }
+    }
+
+    private float[] compute(String embeddingModelId) throws IndexException
+    {
+        float[] result = this.knownEmbeddings.get(embeddingModelId);
+        if (result == null) {
+            result = this.embeddingsUtils.computeEmbeddingVector(this.textQuery, embeddingModelId,
+                CurrentUserReference.INSTANCE, EmbeddingModel.EmbeddingPurpose.QUERY);
+            this.knownEmbeddings.put(embeddingModelId, result);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,185 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.llm.internal;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+import org.apache.commons.lang3.exception.ExceptionUtils;
+import org.slf4j.Logger;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.component.manager.ComponentLookupException;
+import org.xwiki.component.phase.Disposable;
+import org.xwiki.component.phase.Initializable;
+import org.xwiki.context.Execution;
+import org.xwiki.context.ExecutionContext;
+import org.xwiki.context.ExecutionContextManager;
+import org.xwiki.context.concurrent.ContextStoreManager;
+import org.xwiki.contrib.llm.IndexException;
+
+/**
+ * Executes the independent parts of a similarity search, like the searches for the collections of different
+ * embedding models, concurrently on a bounded thread pool. The tasks are executed in the context (wiki, user, locale)
+ * of the request that submitted them.
+ *
+ * @version $Id$
+ * @since 0.6.3
+ */
+@Component(roles = SimilaritySearchExecutor.class)
+@Singleton
+public class SimilaritySearchExecutor implements Initializable, Disposable
+{
+    private static final List<String> CONTEXT_ENTRIES = List.of("wiki", "user", "author", "locale", "secure");
+
+    private static final int QUEUE_SIZE_PER_THREAD = 16;
+
+    @Inject
+    private Logger logger;
+
+    @Inject
+    private AiLLMIndexConfiguration configuration;
+
+    @Inject
+    private ContextStoreManager contextStoreManager;
+
+    @Inject
+    private ExecutionContextManager executionContextManager;
+
+    @Inject
+    private Execution execution;
+
+    private ThreadPoolExecutor executor;
+
+    @Override
+    public void initialize()
+    {
+        int threads = this.configuration.getSimilaritySearchThreads();
+        this.executor = new ThreadPoolExecutor(threads, threads, 1, TimeUnit.MINUTES,
+            new LinkedBlockingQueue<>(threads * QUEUE_SIZE_PER_THREAD), new BasicThreadFactory.Builder()
+                .namingPattern("LLM similarity search %d")
+                .daemon(true)
+                .build());
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Execute the given tasks concurrently and wait for their results until the timeout expires. A single task is
+     * executed directly in the current thread. When the thread pool is saturated, tasks are executed in the current
+     * thread, too, so that the load stays bounded.
+     *
+     * @param tasks the tasks to execute
+     * @param timeout the maximum time to wait for all tasks
+     * @param unit the unit of the timeout
+     * @param <T> the type of the results of the tasks
+     * @return the results of the tasks that succeeded before the timeout, in the order of the tasks, failed tasks and
+     *     tasks that didn't complete in time are logged and skipped
+     * @throws IndexException if the context of the current request cannot be captured
+     */
+    public <T> List<T> invokeAll(List<Callable<T>> tasks, long timeout, TimeUnit unit) throws IndexException
+    {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+
+        List<Future<T>> futures = new ArrayList<>(tasks.size());
+        if (tasks.size() == 1) {
+            futures.add(callDirectly(tasks.get(0)));
+        } else {
+            Map<String, Serializable> contextStore = saveContext();
+            for (Callable<T> task : tasks) {
+                try {
+                    futures.add(this.executor.submit(() -> callInContext(task, contextStore)));
+                } catch (RejectedExecutionException e) {
+                    futures.add(callDirectly(task));
+                }
+            }
+        }
+
+        List<T> results = new ArrayList<>(futures.size());
+        for (Future<T> future : futures) {
+            try {
+                results.add(future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS));
+            } catch (TimeoutException e) {
+                future.cancel(true);
+                this.logger.warn("A part of the similarity search didn't complete within [{}] ms, skipping it.",
+                    unit.toMillis(timeout));
+            } catch (ExecutionException e) {
+                this.logger.warn("A part of the similarity search failed: [{}]", ExceptionUtils.getRootCauseMessage(e));
+                this.logger.debug("Full error of the similarity search:", e);
+            } catch (InterruptedException e) {
+                futures.forEach(f -> f.cancel(true));
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+
+        return results;
+    }
+
+    private static <T> Future<T> callDirectly(Callable<T> task)
+    {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        try {
+            result.complete(task.call());
+        } catch (Exception e) {
+            result.completeExceptionally(e);
+        }
+        return result;
+    }
+
+    private Map<String, Serializable> saveContext() throws IndexException
+    {
+        try {
+            return this.contextStoreManager.save(CONTEXT_ENTRIES);
+        } catch (ComponentLookupException e) {
+            throw new IndexException("Failed to save the context of the similarity search", e);
+        }
+    }
+
+    private <T> T callInContext(Callable<T> task, Map<String, Serializable> contextStore) throws Exception
+    {
+        this.executionContextManager.initialize(new ExecutionContext());
+        try {
+            this.contextStoreManager.restore(contextStore);
+            return task.call();
+        } finally {
+            this.execution.removeContext();
+        }
+    }
+
+    @Override
+    public void dispose()
+    {
+        this.executor.shutdownNow();
+    }
+}
@@ -0,0 +1,184 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.llm.internal;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.apache.solr.client.solrj.SolrClient;
+import org.apache.solr.client.solrj.SolrQuery;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.response.QueryResponse;
+import org.slf4j.Logger;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.component.annotation.DisposePriority;
+import org.xwiki.component.phase.Disposable;
+import org.xwiki.component.phase.Initializable;
+import org.xwiki.search.solr.Solr;
+import org.xwiki.search.solr.SolrException;
+
+/**
+ * Manages long-lived Solr clients for the cores of the LLM application. The clients are thread-safe, so a single
+ * client per core is shared by all users and only released when this component is disposed. It is disposed after the
+ * components that use it so that they can still commit their pending updates when they are disposed.
+ * <p>
+ * Requests of background indexing are limited to a configurable number of concurrent requests so that bursts of
+ * indexing cannot starve interactive searches, which are never limited.
+ *
+ * @version $Id$
+ * @since 0.6.3
+ */
+@Component(roles = SolrClientManager.class)
+@DisposePriority(10000)
+@Singleton
+public class SolrClientManager implements Initializable, Disposable
+{
+    /**
+     * An operation on a Solr client.
+     *
+     * @param <T> the type of the result of the operation
+     */
+    @FunctionalInterface
+    public interface SolrClientOperation<T>
+    {
+        /**
+         * @param client the client to use
+         * @return the result of the operation
+         * @throws SolrServerException if the request fails
+         * @throws IOException if the communication with Solr fails
+         */
+        T apply(SolrClient client) throws SolrServerException, IOException;
+    }
+
+    @Inject
+    private Logger logger;
+
+    @Inject
+    private Solr solr;
+
+    @Inject
+    private AiLLMIndexConfiguration configuration;
+
+    private final Map<String, SolrClient> clients = new ConcurrentHashMap<>();
+
+    private Semaphore indexingPermits;
+
+    private volatile boolean disposed;
+
+    @Override
+    public void initialize()
+    {
+        this.indexingPermits = new Semaphore(Math.max(1, this.configuration.getMaxConcurrentIndexingRequests()), true);
+    }
+
+    /**
+     * @return the client of the default aillm core
+     * @throws SolrException if the core cannot be accessed
+     */
+    public SolrClient getClient() throws SolrException
+    {
+        return getClient(AiLLMSolrCoreInitializer.DEFAULT_AILLM_SOLR_CORE);
+    }
+
+    /**
+     * @param coreName the name of the core
+     * @return the client of the given core, the client must not be closed by the caller
+     * @throws SolrException if the core cannot be accessed
+     */
+    public SolrClient getClient(String coreName) throws SolrException
+    {
+        SolrClient client = this.clients.get(coreName);
+        if (client == null) {
+            client = this.solr.getCore(coreName).getClient();
+            // Don't keep clients once the component has been disposed, they wouldn't be released anymore.
+            if (!this.disposed) {
+                SolrClient existingClient = this.clients.putIfAbsent(coreName, client);
+                if (existingClient != null) {
+                    client = existingClient;
+                }
+            }
+        }
+
+        return client;
+    }
+
+    /**
+     * Execute an interactive query on the default aillm core without any concurrency limit.
+     *
+     * @param query the query to execute
+     * @return the response of the query
+     * @throws SolrException if the core cannot be accessed
+     * @throws SolrServerException if the query fails
+     * @throws IOException if the communication with Solr fails
+     */
+    public QueryResponse query(SolrQuery query) throws SolrException, SolrServerException, IOException
+    {
+        return getClient().query(query);
+    }
+
+    /**
+     * Execute an indexing operation on the default aillm core. Only a limited number of indexing operations are
+     * executed concurrently, further operations wait for a free slot.
+     *
+     * @param operation the operation to execute
+     * @param <T> the type of the result of the operation
+     * @return the result of the operation
+     * @throws SolrException if the core cannot be accessed
+     * @throws SolrServerException if the operation fails or the thread is interrupted while waiting
+     * @throws IOException if the communication with Solr fails
+     */
+    public <T> T executeIndexing(SolrClientOperation<T> operation)
+        throws SolrException, SolrServerException, IOException
+    {
+        SolrClient client = getClient();
+
+        try {
+            this.indexingPermits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SolrServerException("Interrupted while waiting to send an indexing request", e);
+        }
+
+        try {
+            return operation.apply(client);
+        } finally {
+            this.indexingPermits.release();
+        }
+    }
+
+    @Override
+    public void dispose()
+    {
+        this.disposed = true;
+        for (Map.Entry<String, SolrClient> entry : this.clients.entrySet()) {
+            try {
+                entry.getValue().close();
+            } catch (IOException e) {
+                this.logger.warn("Failed to close the Solr client of the core [{}]", entry.getKey(), e);
+            }
+        }
+        this.clients.clear();
+    }
+}
@@ -0,0 +1,220 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.llm.internal;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+import org.apache.commons.lang3.exception.ExceptionUtils;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.request.AbstractUpdateRequest;
+import org.apache.solr.client.solrj.request.UpdateRequest;
+import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.common.params.UpdateParams;
+import org.slf4j.Logger;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.component.manager.ComponentLifecycleException;
+import org.xwiki.component.phase.Disposable;
+import org.xwiki.component.phase.Initializable;
+import org.xwiki.search.solr.SolrException;
+
+/**
+ * Coordinates the commits of the aillm Solr core. Instead of committing after every update, updates are sent with a
+ * commit-within window so that Solr groups them into soft commits. A soft commit is forced when many updates are
+ * pending, and a periodic hard commit persists the updates without opening a new searcher.
+ *
+ * @version $Id$
+ * @since 0.6.3
+ */
+@Component(roles = SolrCommitCoordinator.class)
+@Singleton
+public class SolrCommitCoordinator implements Initializable, Disposable
+{
+    private static final long HARD_COMMIT_TIMEOUT = 60;
+
+    @Inject
+    private Logger logger;
+
+    @Inject
+    private SolrClientManager clientManager;
+
+    @Inject
+    private AiLLMIndexConfiguration configuration;
+
+    private final AtomicInteger pendingUpdates = new AtomicInteger();
+
+    // Updates that haven't been made visible by a commit that waited for a new searcher. Soft commits don't clear this
+    // as they don't wait for the searcher and hard commits don't open one.
+    private final AtomicBoolean invisibleUpdates = new AtomicBoolean();
+
+    // Updates that haven't been persisted by a hard commit.
+    private final AtomicBoolean undurableUpdates = new AtomicBoolean();
+
+    private ScheduledExecutorService hardCommitExecutor;
+
+    @Override
+    public void initialize()
+    {
+        this.hardCommitExecutor = Executors.newSingleThreadScheduledExecutor(new BasicThreadFactory.Builder()
+            .namingPattern("LLM Solr commit")
+            .daemon(true)
+            .build());
+        int interval = this.configuration.getHardCommitInterval();
+        if (interval > 0) {
+            this.hardCommitExecutor.scheduleWithFixedDelay(this::hardCommit, interval, interval, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * Add or replace the given documents in the index. The documents become visible within the configured
+     * commit-within window.
+     *
+     * @param documents the documents to add
+     * @throws SolrException if the Solr core cannot be accessed
+     * @throws SolrServerException if the update fails
+     * @throws IOException if the communication with Solr fails
+     */
+    public void add(Collection<SolrInputDocument> documents) throws SolrException, SolrServerException, IOException
+    {
+        if (documents.isEmpty()) {
+            return;
+        }
+
+        this.clientManager.executeIndexing(client -> client.add(documents, this.configuration.getCommitWithin()));
+        registerUpdates(documents.size());
+    }
+
+    /**
+     * Delete the document with the given id. The deletion becomes visible within the configured commit-within window.
+     *
+     * @param id the id of the document to delete
+     * @throws SolrException if the Solr core cannot be accessed
+     * @throws SolrServerException if the update fails
+     * @throws IOException if the communication with Solr fails
+     */
+    public void deleteById(String id) throws SolrException, SolrServerException, IOException
+    {
+        this.clientManager.executeIndexing(client -> client.deleteById(id, this.configuration.getCommitWithin()));
+        registerUpdates(1);
+    }
+
+    /**
+     * Delete all documents that match the given query. The deletion becomes visible within the configured
+     * commit-within window.
+     *
+     * @param query the query matching the documents to delete
+     * @throws SolrException if the Solr core cannot be accessed
+     * @throws SolrServerException if the update fails
+     * @throws IOException if the communication with Solr fails
+     */
+    public void deleteByQuery(String query) throws SolrException, SolrServerException, IOException
+    {
+        this.clientManager.executeIndexing(
+            client -> client.deleteByQuery(query, this.configuration.getCommitWithin()));
+        registerUpdates(1);
+    }
+
+    /**
+     * Commit all pending updates and wait until they are visible to searches. This should only be used when the
+     * caller needs to read its own updates, e.g., before checking which documents still need to be indexed.
+     *
+     * @throws SolrException if the Solr core cannot be accessed
+     * @throws SolrServerException if the commit fails
+     * @throws IOException if the communication with Solr fails
+     */
+    public void flush() throws SolrException, SolrServerException, IOException
+    {
+        if (this.invisibleUpdates.getAndSet(false)) {
+            boolean undurable = this.undurableUpdates.getAndSet(false);
+            this.pendingUpdates.set(0);
+            try {
+                this.clientManager.executeIndexing(client -> client.commit(true, true));
+            } catch (SolrException | SolrServerException | IOException e) {
+                this.invisibleUpdates.set(true);
+                if (undurable) {
+                    this.undurableUpdates.set(true);
+                }
+                throw e;
+            }
+        }
+    }
+
+    private void registerUpdates(int count)
+    {
+        this.invisibleUpdates.set(true);
+        this.undurableUpdates.set(true);
+        if (this.pendingUpdates.addAndGet(count) >= this.configuration.getSoftCommitBatchSize()) {
+            this.pendingUpdates.set(0);
+            try {
+                // Make the updates visible without waiting, the updates are persisted by the next hard commit.
+                this.clientManager.executeIndexing(client -> client.commit(false, false, true));
+            } catch (Exception e) {
+                this.logger.warn("Failed to soft commit the LLM index: [{}]", ExceptionUtils.getRootCauseMessage(e));
+            }
+        }
+    }
+
+    private void hardCommit()
+    {
+        if (this.undurableUpdates.getAndSet(false)) {
+            try {
+                // Persist the updates but leave the visibility to the soft commits to avoid opening a new searcher.
+                UpdateRequest request = new UpdateRequest();
+                request.setAction(AbstractUpdateRequest.ACTION.COMMIT, false, false);
+                request.setParam(UpdateParams.OPEN_SEARCHER, Boolean.FALSE.toString());
+                this.clientManager.executeIndexing(request::process);
+            } catch (Exception e) {
+                this.undurableUpdates.set(true);
+                this.logger.warn("Failed to commit the LLM index: [{}]", ExceptionUtils.getRootCauseMessage(e));
+            }
+        }
+    }
+
+    @Override
+    public void dispose() throws ComponentLifecycleException
+    {
+        // Let a running hard commit finish instead of interrupting it as Lucene closes the index files of a thread
+        // that is interrupted during I/O. Scheduled hard commits that haven't started yet are cancelled.
+        this.hardCommitExecutor.shutdown();
+        try {
+            if (!this.hardCommitExecutor.awaitTermination(HARD_COMMIT_TIMEOUT, TimeUnit.SECONDS)) {
+                this.logger.warn("Timed out waiting for the running commit of the LLM index to finish");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ComponentLifecycleException("Interrupted while waiting for the commit of the LLM index", e);
+        }
+
+        try {
+            flush();
+        } catch (Exception e) {
+            throw new ComponentLifecycleException("Failed to commit the pending updates of the LLM index", e);
+        }
+    }
+}
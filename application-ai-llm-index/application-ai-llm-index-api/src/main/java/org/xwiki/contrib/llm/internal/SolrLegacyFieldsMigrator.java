@@ -0,0 +1,234 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.llm.internal;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Provider;
+import javax.inject.Singleton;
+
+import org.apache.commons.lang3.exception.ExceptionUtils;
+import org.apache.solr.client.solrj.SolrQuery;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.response.QueryResponse;
+import org.apache.solr.common.SolrDocument;
+import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.common.params.CursorMarkParams;
+import org.slf4j.Logger;
+import org.xwiki.bridge.event.ApplicationReadyEvent;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.component.phase.Disposable;
+import org.xwiki.observation.AbstractEventListener;
+import org.xwiki.observation.event.Event;
+import org.xwiki.search.solr.SolrException;
+
+import com.xpn.xwiki.XWikiContext;
+
+/**
+ * Backfills the wiki and store hint fields of chunks that have been indexed before these fields were introduced in
+ * version 0.4 and 0.5, respectively. Back then, all collections were stored in the main wiki and all documents in the
+ * internal store. Until all chunks have been migrated, queries also need to match chunks without these fields, which
+ * requires expensive negated range queries that can't be cached independently of the wiki.
+ *
+ * @version $Id$
+ * @since 0.6.3
+ */
+@Component
+@Singleton
+@Named(SolrLegacyFieldsMigrator.NAME)
+public class SolrLegacyFieldsMigrator extends AbstractEventListener implements Disposable
+{
+    /**
+     * The name of the event listener.
+     */
+    public static final String NAME = "org.xwiki.contrib.llm.internal.SolrLegacyFieldsMigrator";
+
+    private static final int BATCH_SIZE = 100;
+
+    private static final String FIELD_ID = "id";
+
+    private static final String FIELD_VERSION = "_version_";
+
+    private static final String MISSING_FIELD_QUERY = "(*:* -%s:[* TO *])";
+
+    private static final String LEGACY_CHUNKS_QUERY =
+        MISSING_FIELD_QUERY.formatted(AiLLMSolrCoreInitializer.FIELD_WIKI) + " OR "
+            + MISSING_FIELD_QUERY.formatted(AiLLMSolrCoreInitializer.FIELD_STORE_HINT);
+
+    @Inject
+    private Logger logger;
+
+    @Inject
+    private SolrClientManager clientManager;
+
+    @Inject
+    private SolrCommitCoordinator commitCoordinator;
+
+    @Inject
+    private Provider<XWikiContext> contextProvider;
+
+    private Thread thread;
+
+    // Assume that there are legacy chunks until the index has been checked.
+    private volatile boolean legacyChunks = true;
+
+    private volatile boolean disposed;
+
+    /**
+     * Default constructor.
+     */
+    public SolrLegacyFieldsMigrator()
+    {
+        super(NAME, new ApplicationReadyEvent());
+    }
+
+    /**
+     * @return {@code true} if the index might contain chunks without wiki or store hint, queries need to match them
+     *     as if they were part of the main wiki and the internal store in this case
+     */
+    public boolean hasLegacyChunks()
+    {
+        return this.legacyChunks;
+    }
+
+    @Override
+    public void onEvent(Event event, Object source, Object data)
+    {
+        try {
+            this.legacyChunks = countLegacyChunks() > 0;
+        } catch (Exception e) {
+            this.logger.warn("Failed to check for chunks without wiki or store hint: [{}]",
+                ExceptionUtils.getRootCauseMessage(e));
+            return;
+        }
+
+        if (this.legacyChunks) {
+            String mainWiki = this.contextProvider.get().getMainXWiki();
+            synchronized (this) {
+                if (this.thread == null && !this.disposed) {
+                    this.thread = new Thread(() -> migrate(mainWiki), "LLM legacy chunk migration");
+                    this.thread.setDaemon(true);
+                    this.thread.start();
+                }
+            }
+        }
+    }
+
+    private long countLegacyChunks() throws SolrException, SolrServerException, IOException
+    {
+        SolrQuery query = new SolrQuery(LEGACY_CHUNKS_QUERY);
+        query.setRows(0);
+        return this.clientManager.query(query).getResults().getNumFound();
+    }
+
+    private void migrate(String mainWiki)
+    {
+        SolrQuery query = new SolrQuery("*:*");
+        query.addFilterQuery(LEGACY_CHUNKS_QUERY);
+        query.setFields(FIELD_ID, FIELD_VERSION, AiLLMSolrCoreInitializer.FIELD_WIKI,
+            AiLLMSolrCoreInitializer.FIELD_STORE_HINT);
+        query.setRows(BATCH_SIZE);
+        query.setSort(FIELD_ID, SolrQuery.ORDER.asc);
+
+        String cursorMark = CursorMarkParams.CURSOR_MARK_START;
+        long count = 0;
+        try {
+            while (!this.disposed) {
+                query.set(CursorMarkParams.CURSOR_MARK_PARAM, cursorMark);
+                QueryResponse response = this.clientManager.executeIndexing(client -> client.query(query));
+
+                List<SolrInputDocument> documents = new ArrayList<>(response.getResults().size());
+                for (SolrDocument document : response.getResults()) {
+                    documents.add(toAtomicUpdate(document, mainWiki));
+                }
+                count += store(documents);
+
+                String nextCursorMark = response.getNextCursorMark();
+                if (cursorMark.equals(nextCursorMark)) {
+                    break;
+                }
+                cursorMark = nextCursorMark;
+            }
+
+            if (!this.disposed) {
+                // Make the updates visible before checking that no legacy chunks are left.
+                this.commitCoordinator.flush();
+                this.legacyChunks = countLegacyChunks() > 0;
+            }
+
+            this.logger.info("Set the wiki and store hint of [{}] legacy chunks.", count);
+        } catch (Exception e) {
+            this.logger.warn("Failed to set the wiki and store hint of legacy chunks, migrated [{}] chunks: [{}]",
+                count, ExceptionUtils.getRootCauseMessage(e));
+        }
+    }
+
+    private static SolrInputDocument toAtomicUpdate(SolrDocument document, String mainWiki)
+    {
+        SolrInputDocument result = new SolrInputDocument();
+        result.setField(FIELD_ID, document.getFieldValue(FIELD_ID));
+        // Copy the version so chunks that have been indexed again in the meantime aren't modified.
+        result.setField(FIELD_VERSION, document.getFieldValue(FIELD_VERSION));
+        if (document.getFieldValue(AiLLMSolrCoreInitializer.FIELD_WIKI) == null) {
+            result.setField(AiLLMSolrCoreInitializer.FIELD_WIKI, Map.of("set", mainWiki));
+        }
+        if (document.getFieldValue(AiLLMSolrCoreInitializer.FIELD_STORE_HINT) == null) {
+            result.setField(AiLLMSolrCoreInitializer.FIELD_STORE_HINT, Map.of("set", InternalDocumentStore.NAME));
+        }
+        return result;
+    }
+
+    private int store(List<SolrInputDocument> documents)
+    {
+        if (documents.isEmpty()) {
+            return 0;
+        }
+
+        try {
+            this.commitCoordinator.add(documents);
+            return documents.size();
+        } catch (Exception e) {
+            // Most likely a version conflict because a chunk was updated concurrently, which also sets both fields.
+            // Update the chunks one by one to migrate all others.
+            int stored = 0;
+            for (SolrInputDocument document : documents) {
+                try {
+                    this.commitCoordinator.add(List.of(document));
+                    stored++;
+                } catch (Exception documentException) {
+                    this.logger.debug("Failed to set the wiki and store hint of chunk [{}]: [{}]",
+                        document.getFieldValue(FIELD_ID), ExceptionUtils.getRootCauseMessage(documentException));
+                }
+            }
+            return stored;
+        }
+    }
+
+    @Override
+    public void dispose()
+    {
+        this.disposed = true;
+    }
+}
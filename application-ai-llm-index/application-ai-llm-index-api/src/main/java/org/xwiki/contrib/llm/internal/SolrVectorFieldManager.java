@@ -0,0 +1,576 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.llm.internal;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.exception.ExceptionUtils;
+import org.apache.solr.client.solrj.SolrClient;
+import org.apache.solr.client.solrj.SolrQuery;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.request.schema.FieldTypeDefinition;
+import org.apache.solr.client.solrj.request.schema.SchemaRequest;
+import org.apache.solr.client.solrj.response.schema.SchemaResponse;
+import org.apache.solr.common.SolrDocument;
+import org.apache.solr.common.SolrInputDocument;
+import org.slf4j.Logger;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.search.solr.SolrException;
+
+import com.xpn.xwiki.util.Util;
+
+/**
+ * Manages the dense vector fields of the aillm core. Each number of dimensions and {@link VectorEncoding} gets its own
+ * vector field so that embeddings are stored and searched with the native dimensions of the embedding model instead
+ * of being padded to {@link AiLLMSolrCoreInitializer#NUMBER_OF_DIMENSIONS}. The fields are created on demand the
+ * first time a vector with a new number of dimensions is stored or searched.
+ * <p>
+ * Float vectors with {@link AiLLMSolrCoreInitializer#NUMBER_OF_DIMENSIONS} dimensions keep using the original
+ * {@link AiLLMSolrCoreInitializer#FIELD_VECTOR} field. Chunks that were indexed before the introduction of
+ * {@link AiLLMSolrCoreInitializer#FIELD_VECTOR_DIMENSIONS} are stored in that field, padded or truncated, until they
+ * are re-indexed. Chunks that are stored with another encoding than the configured one are searched, too, until they
+ * have been re-encoded by the {@link SolrVectorReencoder}. Byte encoded vectors only approximate the similarity, the
+ * results of their kNN queries need to be rescored with the full-precision vector, see {@link VectorQuery#rescore()}.
+ * <p>
+ * Chunks of collections with a dedicated index are stored in vector fields of their own partition, see
+ * {@link #getPartition(String, String)}. Lucene builds a separate HNSW graph per field, so the graph of a large
+ * collection is searched without traversing the chunks of all other collections and the shared graph doesn't contain
+ * the chunks of the large collection. The fields of a partition are never created by a search, only when the first
+ * chunk of the partition is stored.
+ * <p>
+ * New vector field types use the HNSW parameters of {@link AiLLMIndexConfiguration#getHnswMaxConnections()} and
+ * {@link AiLLMIndexConfiguration#getHnswBeamWidth()}, existing ones are updated by the schema migration of
+ * {@link AiLLMSolrCoreInitializer}.
+ *
+ * @version $Id$
+ * @since 0.6.3
+ */
+@Component(roles = SolrVectorFieldManager.class)
+@Singleton
+public class SolrVectorFieldManager
+{
+    /**
+     * A kNN query on one of the vector fields.
+     *
+     * @param field the vector field to search
+     * @param vector the query vector, formatted for the kNN query parser
+     * @param filterQuery an additional filter query that restricts the chunks to consider, or {@code null}
+     * @param rescore {@code true} if the field is byte encoded, so more candidates than needed should be requested
+     *     and rescored with their full-precision vector
+     */
+    public record VectorQuery(String field, String vector, String filterQuery, boolean rescore)
+    {
+    }
+
+    /**
+     * Caches whether some chunks match a query. The result is only checked again periodically as long as there are
+     * matching chunks as the checked kinds of chunks are never created anymore.
+     */
+    private static final class PeriodicCheck
+    {
+        private volatile boolean present = true;
+
+        private volatile long lastCheck;
+    }
+
+    private static final String FIELD_NAME_SEPARATOR = "_";
+
+    private static final String PARTITION_PREFIX = "p";
+
+    private static final String FIELD_TYPE_KNN_VECTOR = "knn_vector";
+
+    private static final String FIELD_TYPE_PREFIX = FIELD_TYPE_KNN_VECTOR + FIELD_NAME_SEPARATOR;
+
+    private static final String HNSW_MAX_CONNECTIONS = "hnswMaxConnections";
+
+    private static final String HNSW_BEAM_WIDTH = "hnswBeamWidth";
+
+    private static final String NAME = "name";
+
+    private static final String ALL_DOCUMENTS = "*:* ";
+
+    private static final String ANY_VALUE = ":[* TO *]";
+
+    private static final String BYTE_ENCODING_QUERY = AiLLMSolrCoreInitializer.FIELD_VECTOR_ENCODING + ":"
+        + encodingValue(VectorEncoding.BYTE);
+
+    private static final long CHECK_INTERVAL = TimeUnit.MINUTES.toMillis(1);
+
+    @Inject
+    private Logger logger;
+
+    @Inject
+    private SolrClientManager clientManager;
+
+    @Inject
+    private AiLLMIndexConfiguration configuration;
+
+    private final Set<String> existingFields = ConcurrentHashMap.newKeySet();
+
+    private final Set<String> existingFieldTypes = ConcurrentHashMap.newKeySet();
+
+    private final Set<String> existingPartitions = ConcurrentHashMap.newKeySet();
+
+    private volatile boolean schemaLoaded;
+
+    private final PeriodicCheck legacyVectors = new PeriodicCheck();
+
+    private final PeriodicCheck otherEncodingVectors = new PeriodicCheck();
+
+    /**
+     * @param dimensions the number of dimensions of the vector
+     * @return the name of the field that stores float vectors with the given number of dimensions
+     */
+    public static String getFieldName(int dimensions)
+    {
+        return getFieldName(dimensions, VectorEncoding.FLOAT32);
+    }
+
+    /**
+     * @param dimensions the number of dimensions of the vector
+     * @param encoding the encoding of the vector
+     * @return the name of the field that stores vectors with the given number of dimensions and encoding
+     */
+    public static String getFieldName(int dimensions, VectorEncoding encoding)
+    {
+        if (encoding != VectorEncoding.FLOAT32) {
+            return AiLLMSolrCoreInitializer.FIELD_VECTOR + FIELD_NAME_SEPARATOR + dimensions + FIELD_NAME_SEPARATOR
+                + encodingValue(encoding);
+        } else if (dimensions == AiLLMSolrCoreInitializer.NUMBER_OF_DIMENSIONS) {
+            return AiLLMSolrCoreInitializer.FIELD_VECTOR;
+        }
+
+        return AiLLMSolrCoreInitializer.FIELD_VECTOR + FIELD_NAME_SEPARATOR + dimensions;
+    }
+
+    /**
+     * @param dimensions the number of dimensions of the vector
+     * @param encoding the encoding of the vector
+     * @param partition the partition of the vector, or {@code null} for the vector fields that are shared by all
+     *     collections
+     * @return the name of the field that stores vectors with the given number of dimensions and encoding in the given
+     *     partition
+     */
+    public static String getFieldName(int dimensions, VectorEncoding encoding, String partition)
+    {
+        if (partition == null) {
+            return getFieldName(dimensions, encoding);
+        }
+
+        String result = AiLLMSolrCoreInitializer.FIELD_VECTOR + FIELD_NAME_SEPARATOR + dimensions;
+        if (encoding != VectorEncoding.FLOAT32) {
+            result += FIELD_NAME_SEPARATOR + encodingValue(encoding);
+        }
+        return result + FIELD_NAME_SEPARATOR + partition;
+    }
+
+    /**
+     * @param wiki the wiki of the collection
+     * @param collection the id of the collection
+     * @return the name of the partition that stores the vectors of the collection when it has a dedicated index, it
+     *     can be used as part of a field name
+     */
+    public static String getPartition(String wiki, String collection)
+    {
+        return PARTITION_PREFIX + Long.toHexString(Util.getHash(wiki + ':' + collection));
+    }
+
+    /**
+     * @param document a document returned by Solr
+     * @return the partition that stores the vector of the document, or {@code null} if it is stored in the shared
+     *     vector fields
+     */
+    public static String getPartition(SolrDocument document)
+    {
+        return document.getFieldValue(AiLLMSolrCoreInitializer.FIELD_VECTOR_PARTITION) instanceof String partition
+            ? partition : null;
+    }
+
+    /**
+     * Get the name of the field that stores vectors with the given number of dimensions in the configured encoding,
+     * creating the field if it doesn't exist yet.
+     *
+     * @param dimensions the number of dimensions of the vector
+     * @return the name of the field
+     * @throws SolrException if the field cannot be created
+     */
+    public String getOrCreateField(int dimensions) throws SolrException
+    {
+        return getOrCreateField(dimensions, this.configuration.getVectorEncoding(), null);
+    }
+
+    private String getOrCreateField(int dimensions, VectorEncoding encoding, String partition) throws SolrException
+    {
+        String fieldName = getFieldName(dimensions, encoding, partition);
+
+        if (!this.existingFields.contains(fieldName)) {
+            createField(fieldName, dimensions, encoding);
+        }
+
+        return fieldName;
+    }
+
+    /**
+     * Set the fields that store the given vector in the configured encoding.
+     *
+     * @param document the document to update
+     * @param vector the vector to store, can be {@code null} when there is no vector
+     * @throws SolrException if the vector field cannot be created
+     */
+    public void setVector(SolrInputDocument document, float[] vector) throws SolrException
+    {
+        setVector(document, vector, null);
+    }
+
+    /**
+     * Set the fields that store the given vector in the given partition.
+     *
+     * @param document the document to update
+     * @param vector the vector to store, can be {@code null} when there is no vector
+     * @param partition the partition of the collection of the document, see {@link #getPartition(String, String)},
+     *     or {@code null} to store the vector in the shared vector fields
+     * @throws SolrException if the vector field cannot be created
+     */
+    public void setVector(SolrInputDocument document, float[] vector, String partition)
+        throws SolrException
+    {
+        if (partition != null) {
+            document.setField(AiLLMSolrCoreInitializer.FIELD_VECTOR_PARTITION, partition);
+        }
+
+        if (vector == null) {
+            document.setField(AiLLMSolrCoreInitializer.FIELD_VECTOR_DIMENSIONS, 0);
+            return;
+        }
+
+        VectorEncoding encoding = this.configuration.getVectorEncoding();
+        String fieldName = getOrCreateField(vector.length, encoding, partition);
+        if (encoding == VectorEncoding.FLOAT32) {
+            document.setField(fieldName, SolrVectorUtils.asList(vector));
+        } else {
+            document.setField(fieldName, SolrVectorUtils.asList(SolrVectorUtils.quantize(vector)));
+            // The byte field isn't stored, keep the full-precision vector for re-using, rescoring and re-encoding it.
+            document.setField(AiLLMSolrCoreInitializer.FIELD_VECTOR_DATA, SolrVectorUtils.toBytes(vector));
+        }
+        document.setField(AiLLMSolrCoreInitializer.FIELD_VECTOR_DIMENSIONS, vector.length);
+        document.setField(AiLLMSolrCoreInitializer.FIELD_VECTOR_ENCODING, encodingValue(encoding));
+    }
+
+    /**
+     * @param document a document returned by Solr with all stored fields
+     * @return the full-precision vector of the document, or {@code null} if the document has no vector
+     */
+    public static float[] getVector(SolrDocument document)
+    {
+        Object vectorData = document.getFieldValue(AiLLMSolrCoreInitializer.FIELD_VECTOR_DATA);
+        if (vectorData != null) {
+            return SolrVectorUtils.fromBytes(vectorData);
+        }
+
+        String fieldName = AiLLMSolrCoreInitializer.FIELD_VECTOR;
+        if (document.getFieldValue(AiLLMSolrCoreInitializer.FIELD_VECTOR_DIMENSIONS) instanceof Number dimensions) {
+            fieldName = getFieldName(dimensions.intValue(), VectorEncoding.FLOAT32, getPartition(document));
+        }
+
+        List<?> vectorField = (List<?>) document.getFieldValue(fieldName);
+        return vectorField != null ? SolrVectorUtils.toFloatArray(vectorField) : null;
+    }
+
+    /**
+     * Get the kNN queries that are necessary to find the nearest chunks of the given query vector. Usually, this is
+     * a single query on the field with the dimensions of the vector. As long as there are chunks that haven't been
+     * migrated to that field yet, additional queries on the other fields that can contain such chunks are returned.
+     *
+     * @param vector the query vector
+     * @return the kNN queries to execute, the results of all queries need to be merged by score
+     * @throws SolrException if the vector field cannot be created
+     */
+    public List<VectorQuery> getVectorQueries(float[] vector) throws SolrException
+    {
+        VectorEncoding encoding = this.configuration.getVectorEncoding();
+        int dimensions = vector.length;
+        String fieldName = getOrCreateField(dimensions, encoding, null);
+
+        List<VectorQuery> result = new ArrayList<>();
+        result.add(new VectorQuery(fieldName, toQueryString(vector, encoding), null, encoding == VectorEncoding.BYTE));
+
+        addOtherEncodingQuery(result, vector, null);
+
+        if (!AiLLMSolrCoreInitializer.FIELD_VECTOR.equals(fieldName) && hasLegacyVectors()) {
+            // Chunks indexed before the introduction of per-dimension vector fields are still stored padded or
+            // truncated in the original vector field until they are re-indexed. Padding with zeros doesn't change the
+            // cosine similarity, so adjust the query vector in the same way to search them, too.
+            float[] legacyVector = Arrays.copyOf(vector, AiLLMSolrCoreInitializer.NUMBER_OF_DIMENSIONS);
+            result.add(new VectorQuery(AiLLMSolrCoreInitializer.FIELD_VECTOR,
+                SolrVectorUtils.toQueryString(legacyVector),
+                "-" + AiLLMSolrCoreInitializer.FIELD_VECTOR_DIMENSIONS + ANY_VALUE, false));
+        }
+
+        return result;
+    }
+
+    /**
+     * Get the kNN queries that are necessary to find the nearest chunks of the given query vector in the given
+     * partition.
+     *
+     * @param vector the query vector
+     * @param partition the partition to search, see {@link #getPartition(String, String)}
+     * @return the kNN queries to execute, empty if no chunk with the dimensions of the query vector has been stored in
+     *     the partition
+     * @throws SolrException if the schema cannot be loaded
+     */
+    public List<VectorQuery> getVectorQueries(float[] vector, String partition) throws SolrException
+    {
+        if (!this.schemaLoaded) {
+            loadSchema();
+        }
+
+        VectorEncoding encoding = this.configuration.getVectorEncoding();
+        String fieldName = getFieldName(vector.length, encoding, partition);
+
+        List<VectorQuery> result = new ArrayList<>();
+        if (this.existingFields.contains(fieldName)) {
+            result.add(
+                new VectorQuery(fieldName, toQueryString(vector, encoding), null, encoding == VectorEncoding.BYTE));
+        }
+
+        addOtherEncodingQuery(result, vector, partition);
+
+        return result;
+    }
+
+    private void addOtherEncodingQuery(List<VectorQuery> queries, float[] vector, String partition)
+    {
+        VectorEncoding encoding = this.configuration.getVectorEncoding();
+        VectorEncoding otherEncoding =
+            encoding == VectorEncoding.BYTE ? VectorEncoding.FLOAT32 : VectorEncoding.BYTE;
+        String otherFieldName = getFieldName(vector.length, otherEncoding, partition);
+        if (this.existingFields.contains(otherFieldName) && hasVectorsWithOtherEncoding()) {
+            queries.add(new VectorQuery(otherFieldName, toQueryString(vector, otherEncoding),
+                getOtherEncodingFilterQuery(), otherEncoding == VectorEncoding.BYTE));
+        }
+    }
+
+    /**
+     * @param partition a partition, see {@link #getPartition(String, String)}
+     * @return {@code true} if vectors have been stored in the given partition
+     * @throws SolrException if the schema cannot be loaded
+     */
+    public boolean hasPartition(String partition) throws SolrException
+    {
+        if (!this.schemaLoaded) {
+            loadSchema();
+        }
+
+        return this.existingPartitions.contains(partition);
+    }
+
+    /**
+     * @param partition a partition, see {@link #getPartition(String, String)}
+     * @return a filter query that matches the chunks of the given partition
+     */
+    public static String getPartitionFilterQuery(String partition)
+    {
+        return AiLLMSolrCoreInitializer.FIELD_VECTOR_PARTITION + ":" + partition;
+    }
+
+    /**
+     * @return a filter query that matches all chunks whose vector is stored in the shared vector fields, or
+     *     {@code null} if there are no partitions and thus all chunks match
+     * @throws SolrException if the schema cannot be loaded
+     */
+    public String getSharedFilterQuery() throws SolrException
+    {
+        if (!this.schemaLoaded) {
+            loadSchema();
+        }
+
+        return this.existingPartitions.isEmpty() ? null
+            : ALL_DOCUMENTS + "-" + AiLLMSolrCoreInitializer.FIELD_VECTOR_PARTITION + ANY_VALUE;
+    }
+
+    /**
+     * @return a filter query that matches all chunks whose vector is stored in another encoding than the configured
+     *     one
+     */
+    public String getOtherEncodingFilterQuery()
+    {
+        if (this.configuration.getVectorEncoding() == VectorEncoding.BYTE) {
+            return AiLLMSolrCoreInitializer.FIELD_VECTOR_DIMENSIONS + ":[1 TO *] AND -" + BYTE_ENCODING_QUERY;
+        } else {
+            // Also match the chunks that were indexed with the removed binary encoding so that they are re-encoded.
+            return AiLLMSolrCoreInitializer.FIELD_VECTOR_ENCODING + ANY_VALUE + " AND -"
+                + AiLLMSolrCoreInitializer.FIELD_VECTOR_ENCODING + ":" + encodingValue(VectorEncoding.FLOAT32);
+        }
+    }
+
+    /**
+     * @return {@code true} if the index might contain chunks without the number of dimensions of their vector
+     */
+    public boolean hasLegacyVectors()
+    {
+        return check(this.legacyVectors,
+            ALL_DOCUMENTS + "-" + AiLLMSolrCoreInitializer.FIELD_VECTOR_DIMENSIONS + ANY_VALUE);
+    }
+
+    /**
+     * @return {@code true} if the index might contain chunks whose vector is stored in another encoding than the
+     *     configured one
+     */
+    public boolean hasVectorsWithOtherEncoding()
+    {
+        return check(this.otherEncodingVectors, getOtherEncodingFilterQuery());
+    }
+
+    private boolean check(PeriodicCheck check, String queryString)
+    {
+        long now = System.currentTimeMillis();
+        if (check.present && now - check.lastCheck > CHECK_INTERVAL) {
+            SolrQuery query = new SolrQuery(queryString);
+            query.setRows(0);
+            try {
+                check.present = this.clientManager.query(query).getResults().getNumFound() > 0;
+                check.lastCheck = now;
+            } catch (Exception e) {
+                this.logger.warn("Failed to check for chunks matching [{}]: [{}]", queryString,
+                    ExceptionUtils.getRootCauseMessage(e));
+            }
+        }
+
+        return check.present;
+    }
+
+    private static String toQueryString(float[] vector, VectorEncoding encoding)
+    {
+        switch (encoding) {
+            case BYTE:
+                return SolrVectorUtils.toQueryString(SolrVectorUtils.quantize(vector));
+            case FLOAT32:
+            default:
+                return SolrVectorUtils.toQueryString(vector);
+        }
+    }
+
+    private static String encodingValue(VectorEncoding encoding)
+    {
+        return encoding.name().toLowerCase(Locale.ROOT);
+    }
+
+    private synchronized void createField(String fieldName, int dimensions, VectorEncoding encoding)
+        throws SolrException
+    {
+        try {
+            SolrClient client = this.clientManager.getClient();
+
+            if (!this.schemaLoaded) {
+                loadSchema();
+            }
+
+            if (this.existingFields.contains(fieldName)) {
+                return;
+            }
+
+            String fieldTypeName = FIELD_TYPE_PREFIX + dimensions;
+            if (encoding != VectorEncoding.FLOAT32) {
+                fieldTypeName += FIELD_NAME_SEPARATOR + encodingValue(encoding);
+            }
+            if (!this.existingFieldTypes.contains(fieldTypeName)) {
+                FieldTypeDefinition definition = new FieldTypeDefinition();
+                Map<String, Object> attributes = new HashMap<>();
+                attributes.put(NAME, fieldTypeName);
+                attributes.put("class", "solr.DenseVectorField");
+                attributes.put("vectorDimension", dimensions);
+                attributes.put("similarityFunction", "cosine");
+                attributes.put("vectorEncoding", encoding.name());
+                attributes.put("knnAlgorithm", "hnsw");
+                attributes.put(HNSW_MAX_CONNECTIONS, this.configuration.getHnswMaxConnections());
+                attributes.put(HNSW_BEAM_WIDTH, this.configuration.getHnswBeamWidth());
+                definition.setAttributes(attributes);
+                checkResponse(new SchemaRequest.AddFieldType(definition).process(client), fieldTypeName);
+                this.existingFieldTypes.add(fieldTypeName);
+            }
+
+            Map<String, Object> fieldAttributes = new HashMap<>();
+            fieldAttributes.put(NAME, fieldName);
+            fieldAttributes.put("type", fieldTypeName);
+            fieldAttributes.put("indexed", true);
+            // Byte vectors are lossy, the full-precision vector is stored in a separate binary field.
+            fieldAttributes.put("stored", encoding == VectorEncoding.FLOAT32);
+            fieldAttributes.put("multiValued", false);
+            checkResponse(new SchemaRequest.AddField(fieldAttributes).process(client), fieldName);
+            addExistingField(fieldName);
+
+            this.logger.info("Created the vector field [{}] with [{}] dimensions.", fieldName, dimensions);
+        } catch (SolrServerException | IOException e) {
+            throw new SolrException("Failed to create the vector field [%s]".formatted(fieldName), e);
+        }
+    }
+
+    private void addExistingField(String fieldName)
+    {
+        this.existingFields.add(fieldName);
+
+        String suffix = StringUtils.substringAfterLast(fieldName, FIELD_NAME_SEPARATOR);
+        if (fieldName.startsWith(AiLLMSolrCoreInitializer.FIELD_VECTOR + FIELD_NAME_SEPARATOR)
+            && suffix.startsWith(PARTITION_PREFIX))
+        {
+            this.existingPartitions.add(suffix);
+        }
+    }
+
+    private synchronized void loadSchema() throws SolrException
+    {
+        if (this.schemaLoaded) {
+            return;
+        }
+
+        try {
+            SolrClient client = this.clientManager.getClient();
+            new SchemaRequest.Fields().process(client).getFields()
+                .forEach(field -> addExistingField(String.valueOf(field.get(NAME))));
+            new SchemaRequest.FieldTypes().process(client).getFieldTypes().forEach(
+                fieldType -> this.existingFieldTypes.add(fieldType.getAttributes().get(NAME).toString()));
+            this.schemaLoaded = true;
+        } catch (SolrServerException | IOException e) {
+            throw new SolrException("Failed to load the schema of the aillm core", e);
+        }
+    }
+
+    private static void checkResponse(SchemaResponse.UpdateResponse response, String name) throws SolrException
+    {
+        Object errors = response.getResponse().get("errors");
+        if (errors != null) {
+            throw new SolrException("Failed to add [%s] to the schema: %s".formatted(name, errors));
+        }
+    }
+}
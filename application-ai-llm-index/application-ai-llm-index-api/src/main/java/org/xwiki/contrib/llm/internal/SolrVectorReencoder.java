@@ -0,0 +1,185 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.llm.internal;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.apache.commons.lang3.exception.ExceptionUtils;
+import org.apache.solr.client.solrj.SolrQuery;
+import org.apache.solr.client.solrj.response.QueryResponse;
+import org.apache.solr.common.SolrDocument;
+import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.common.params.CursorMarkParams;
+import org.slf4j.Logger;
+import org.xwiki.bridge.event.ApplicationReadyEvent;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.component.phase.Disposable;
+import org.xwiki.observation.AbstractEventListener;
+import org.xwiki.observation.event.Event;
+import org.xwiki.search.solr.SolrException;
+
+/**
+ * Re-encodes the vectors of the chunks that are stored in another {@link VectorEncoding} than the configured one, for
+ * example after enabling byte vectors. The conversion doesn't require computing the embeddings again as the
+ * full-precision vector is stored for both encodings. Until all chunks have been converted, searches also query the
+ * vector field of the previous encoding.
+ *
+ * @version $Id$
+ * @since 0.6.3
+ */
+@Component
+@Singleton
+@Named(SolrVectorReencoder.NAME)
+public class SolrVectorReencoder extends AbstractEventListener implements Disposable
+{
+    /**
+     * The name of the event listener.
+     */
+    public static final String NAME = "org.xwiki.contrib.llm.internal.SolrVectorReencoder";
+
+    private static final int BATCH_SIZE = 100;
+
+    private static final String FIELD_ID = "id";
+
+    private static final String FIELD_SCORE = "score";
+
+    @Inject
+    private Logger logger;
+
+    @Inject
+    private SolrClientManager clientManager;
+
+    @Inject
+    private SolrCommitCoordinator commitCoordinator;
+
+    @Inject
+    private SolrVectorFieldManager vectorFieldManager;
+
+    private Thread thread;
+
+    private volatile boolean disposed;
+
+    /**
+     * Default constructor.
+     */
+    public SolrVectorReencoder()
+    {
+        super(NAME, new ApplicationReadyEvent());
+    }
+
+    @Override
+    public void onEvent(Event event, Object source, Object data)
+    {
+        if (this.vectorFieldManager.hasVectorsWithOtherEncoding()) {
+            synchronized (this) {
+                if (this.thread == null && !this.disposed) {
+                    this.thread = new Thread(this::reencode, "LLM vector re-encoding");
+                    this.thread.setDaemon(true);
+                    this.thread.start();
+                }
+            }
+        }
+    }
+
+    private void reencode()
+    {
+        SolrQuery query = new SolrQuery("*:*");
+        query.addFilterQuery(this.vectorFieldManager.getOtherEncodingFilterQuery());
+        query.setRows(BATCH_SIZE);
+        query.setSort(FIELD_ID, SolrQuery.ORDER.asc);
+
+        String cursorMark = CursorMarkParams.CURSOR_MARK_START;
+        long count = 0;
+        try {
+            while (!this.disposed) {
+                query.set(CursorMarkParams.CURSOR_MARK_PARAM, cursorMark);
+                QueryResponse response = this.clientManager.executeIndexing(client -> client.query(query));
+
+                List<SolrInputDocument> documents = new ArrayList<>(response.getResults().size());
+                for (SolrDocument document : response.getResults()) {
+                    documents.add(toInputDocument(document));
+                }
+                count += store(documents);
+
+                String nextCursorMark = response.getNextCursorMark();
+                if (cursorMark.equals(nextCursorMark)) {
+                    break;
+                }
+                cursorMark = nextCursorMark;
+            }
+
+            this.logger.info("Re-encoded the vectors of [{}] chunks.", count);
+        } catch (Exception e) {
+            this.logger.warn("Failed to re-encode the vectors of the chunks, converted [{}] chunks: [{}]", count,
+                ExceptionUtils.getRootCauseMessage(e));
+        }
+    }
+
+    private SolrInputDocument toInputDocument(SolrDocument document) throws SolrException
+    {
+        SolrInputDocument result = new SolrInputDocument();
+        for (String fieldName : document.getFieldNames()) {
+            // Copy the version field, too, so updates that happened in the meantime aren't overwritten.
+            if (!fieldName.startsWith(AiLLMSolrCoreInitializer.FIELD_VECTOR) && !FIELD_SCORE.equals(fieldName)) {
+                result.setField(fieldName, document.getFieldValue(fieldName));
+            }
+        }
+        this.vectorFieldManager.setVector(result, SolrVectorFieldManager.getVector(document),
+            SolrVectorFieldManager.getPartition(document));
+        return result;
+    }
+
+    private int store(List<SolrInputDocument> documents)
+    {
+        if (documents.isEmpty()) {
+            return 0;
+        }
+
+        try {
+            this.commitCoordinator.add(documents);
+            return documents.size();
+        } catch (Exception e) {
+            // Most likely a version conflict because a chunk was updated concurrently, store the chunks one by one
+            // to convert all others.
+            int stored = 0;
+            for (SolrInputDocument document : documents) {
+                try {
+                    this.commitCoordinator.add(List.of(document));
+                    stored++;
+                } catch (Exception documentException) {
+                    this.logger.debug("Failed to re-encode the vector of chunk [{}]: [{}]",
+                        document.getFieldValue(FIELD_ID), ExceptionUtils.getRootCauseMessage(documentException));
+                }
+            }
+            return stored;
+        }
+    }
+
+    @Override
+    public void dispose()
+    {
+        this.disposed = true;
+    }
+}
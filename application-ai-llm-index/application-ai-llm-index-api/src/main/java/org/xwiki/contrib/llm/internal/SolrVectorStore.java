@@ -0,0 +1,164 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.llm.internal;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.apache.solr.client.solrj.SolrServerException;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.contrib.llm.Chunk;
+import org.xwiki.contrib.llm.IndexException;
+import org.xwiki.contrib.llm.SearchParameters;
+import org.xwiki.contrib.llm.SolrConnector;
+import org.xwiki.contrib.llm.VectorStore;
+import org.xwiki.contrib.llm.openai.Context;
+import org.xwiki.search.solr.SolrException;
+import org.xwiki.search.solr.SolrUtils;
+
+/**
+ * The {@link VectorStore} that stores the chunks in the aillm Solr core using the {@link SolrConnector}.
+ *
+ * @version $Id$
+ * @since 0.6.3
+ */
+@Component
+@Named(SolrVectorStore.NAME)
+@Singleton
+public class SolrVectorStore implements VectorStore
+{
+    /**
+     * The hint of this vector store.
+     */
+    public static final String NAME = "solr";
+
+    private static final String ANY_SUFFIX = "*";
+
+    @Inject
+    private SolrConnector solrConnector;
+
+    @Inject
+    private SolrUtils solrUtils;
+
+    @Override
+    public void storeChunks(List<Chunk> chunks) throws IndexException
+    {
+        try {
+            this.solrConnector.storeChunks(chunks);
+        } catch (SolrServerException | IOException | SolrException e) {
+            throw new IndexException("Error while storing chunks in Solr", e);
+        }
+    }
+
+    @Override
+    public List<Chunk> getChunks(String wiki, String collectionId, String documentId, int startChunk, int endChunk)
+    {
+        return this.solrConnector.getChunks(wiki, collectionId, documentId, startChunk, endChunk);
+    }
+
+    @Override
+    public void deleteChunksByIndex(String wiki, String collectionId, String documentId, int startChunk)
+    {
+        this.solrConnector.deleteChunksByIndex(wiki, collectionId, documentId, startChunk);
+    }
+
+    @Override
+    public void deleteChunksByIndex(String wiki, String collectionId, String documentId, int startChunk,
+        int endChunk)
+    {
+        this.solrConnector.deleteChunksByIndex(wiki, collectionId, documentId, startChunk, endChunk);
+    }
+
+    @Override
+    public void deleteChunksByDocIdAndStore(String wiki, String collectionId, String documentId, String storeHint)
+    {
+        this.solrConnector.deleteChunksByDocIdAndStore(wiki, collectionId, documentId, storeHint);
+    }
+
+    @Override
+    public void deleteChunksByStoreHintAndDocId(String storeHint, String documentId)
+    {
+        this.solrConnector.deleteChunksByStoreHintAndDocId(storeHint, documentId);
+    }
+
+    @Override
+    public void deleteChunksByCollection(String wiki, String collectionId)
+    {
+        this.solrConnector.deleteChunksByCollection(wiki, collectionId);
+    }
+
+    @Override
+    public void deleteOtherDocuments(String wiki, String collectionId, String storeHint,
+        List<String> documentIdPrefixes)
+    {
+        if (documentIdPrefixes.isEmpty()) {
+            this.solrConnector.deleteChunksByCollection(wiki, collectionId);
+        } else {
+            // Match all chunks whose document id doesn't start with one of the prefixes, unless they have been
+            // indexed with the given store hint.
+            String query = documentIdPrefixes.stream()
+                .map(this.solrUtils::toFilterQueryString)
+                .map(prefix -> prefix + ANY_SUFFIX)
+                .collect(Collectors.joining(" OR ", "(*:* -(" + AiLLMSolrCoreInitializer.FIELD_DOC_ID + ":(",
+                    ") OR " + AiLLMSolrCoreInitializer.FIELD_STORE_HINT + ":"
+                        + this.solrUtils.toCompleteFilterQueryString(storeHint) + "))"));
+
+            this.solrConnector.deleteChunksByQuery(wiki, collectionId, query);
+        }
+    }
+
+    @Override
+    public List<String> filterExistingDocuments(String wiki, String collectionId, List<String> documentIds)
+    {
+        return this.solrConnector.filterExistingDocuments(wiki, collectionId, documentIds);
+    }
+
+    @Override
+    public List<String> getDocumentsWithViewers(String documentIdPrefix)
+    {
+        String documentIdQuery = documentIdPrefix.isEmpty() ? ANY_SUFFIX
+            : this.solrUtils.toFilterQueryString(documentIdPrefix) + ANY_SUFFIX;
+        return this.solrConnector.getDocumentsWithViewers(documentIdQuery);
+    }
+
+    @Override
+    public List<Context> similaritySearch(String textQuery, Map<String, String> collectionEmbeddingModelMap,
+        int limit, Map<String, float[]> queryEmbeddings, SearchParameters parameters) throws IndexException
+    {
+        try {
+            return this.solrConnector.similaritySearch(textQuery, collectionEmbeddingModelMap, limit, queryEmbeddings,
+                parameters);
+        } catch (SolrServerException e) {
+            throw new IndexException("Failed to perform similarity search", e);
+        }
+    }
+
+    @Override
+    public void flush()
+    {
+        this.solrConnector.flush();
+    }
+}
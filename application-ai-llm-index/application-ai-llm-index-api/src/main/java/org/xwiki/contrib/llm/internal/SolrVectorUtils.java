@@ -0,0 +1,341 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.llm.internal;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Helpers for writing and reading dense vectors to and from Solr without intermediate boxed or string copies.
+ *
+ * @version $Id$
+ * @since 0.6.3
+ */
+public final class SolrVectorUtils
+{
+    private SolrVectorUtils()
+    {
+    }
+
+    /**
+     * Wraps the given vector in a read-only list that can be set as value of a dense vector field. The values are only
+     * boxed one at a time while SolrJ serializes the document, the vector itself is not copied.
+     *
+     * @param vector the vector to wrap
+     * @return a read-only list view of the given vector
+     */
+    public static List<Float> asList(float[] vector)
+    {
+        return new FloatArrayList(vector);
+    }
+
+    /**
+     * Converts the value of a dense vector field as returned by Solr to a primitive array. Depending on the response
+     * format, Solr returns the values either as numbers or as strings, both are supported.
+     *
+     * @param values the values of the vector field
+     * @return the vector
+     */
+    public static float[] toFloatArray(List<?> values)
+    {
+        if (values instanceof FloatArrayList floatArrayList) {
+            return floatArrayList.vector;
+        }
+
+        float[] result = new float[values.size()];
+        int i = 0;
+        for (Object value : values) {
+            if (value instanceof Number number) {
+                result[i] = number.floatValue();
+            } else {
+                result[i] = Float.parseFloat(String.valueOf(value));
+            }
+            i++;
+        }
+        return result;
+    }
+
+    /**
+     * Wraps the given byte vector in a read-only list that can be set as value of a byte-encoded dense vector field.
+     *
+     * @param vector the vector to wrap
+     * @return a read-only list view of the given vector
+     */
+    public static List<Byte> asList(byte[] vector)
+    {
+        return new ByteArrayList(vector);
+    }
+
+    /**
+     * Quantize the given vector to signed bytes for a byte-encoded dense vector field. The vector is scaled such that
+     * its component with the largest absolute value is mapped to 127. As the cosine similarity doesn't depend on the
+     * length of the vectors, this scale doesn't need to be stored and is computed for each vector, which uses the
+     * full range of the bytes no matter how the values of the model are distributed.
+     *
+     * @param vector the vector to quantize
+     * @return the quantized vector
+     */
+    public static byte[] quantize(float[] vector)
+    {
+        float maxAbs = 0;
+        for (float value : vector) {
+            maxAbs = Math.max(maxAbs, Math.abs(value));
+        }
+
+        byte[] result = new byte[vector.length];
+        if (maxAbs > 0) {
+            float scale = Byte.MAX_VALUE / maxAbs;
+            for (int i = 0; i < vector.length; i++) {
+                result[i] = (byte) Math.round(vector[i] * scale);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @param a the first vector
+     * @param b the second vector, must have the same length as the first vector
+     * @return the cosine similarity of the two vectors, {@code 0} if one of them is zero
+     */
+    public static double cosine(float[] a, float[] b)
+    {
+        double dot = 0;
+        double normA = 0;
+        double normB = 0;
+        for (int i = 0; i < a.length; i++) {
+            dot += a[i] * b[i];
+            normA += a[i] * a[i];
+            normB += b[i] * b[i];
+        }
+
+        if (normA == 0 || normB == 0) {
+            return 0;
+        }
+        return dot / Math.sqrt(normA * normB);
+    }
+
+    /**
+     * @param vector the vector to normalize
+     * @return a copy of the vector scaled to unit length, or {@code null} if the vector is zero as it has no direction
+     *     and thus no similarity to any other vector
+     */
+    public static float[] normalize(float[] vector)
+    {
+        double squaredNorm = 0;
+        for (float value : vector) {
+            squaredNorm += value * value;
+        }
+        if (squaredNorm == 0) {
+            return null;
+        }
+
+        float[] result = new float[vector.length];
+        float inverseNorm = (float) (1 / Math.sqrt(squaredNorm));
+        for (int i = 0; i < vector.length; i++) {
+            result[i] = vector[i] * inverseNorm;
+        }
+        return result;
+    }
+
+    /**
+     * Adapts a stored vector to the dimensions of a query vector. Vectors that were stored before the introduction of
+     * vector fields with native dimensions were padded with zeros, the padding is removed. Vectors with any other
+     * number of dimensions have been computed by another model and can't be compared to the query.
+     *
+     * @param vector the stored vector, can be {@code null}
+     * @param dimensions the number of dimensions of the query vector
+     * @return the vector with the given number of dimensions, or {@code null} if the vector is {@code null} or has
+     *     other dimensions that aren't padding
+     */
+    public static float[] removePadding(float[] vector, int dimensions)
+    {
+        if (vector == null || vector.length < dimensions) {
+            return null;
+        }
+
+        for (int i = dimensions; i < vector.length; i++) {
+            if (vector[i] != 0) {
+                return null;
+            }
+        }
+
+        return vector.length == dimensions ? vector : Arrays.copyOf(vector, dimensions);
+    }
+
+    /**
+     * Computes the cosine similarity of many vectors with the same query more efficiently than
+     * {@link #cosine(float[], float[])}: the query is normalized once and the loop uses independent accumulators so
+     * that the JIT compiler can keep several multiply-add operations in flight.
+     *
+     * @param unitQuery the query vector, normalized with {@link #normalize(float[])}
+     * @param vector the vector to compare, must have the same length as the query vector
+     * @return the cosine similarity of the two vectors, {@code 0} if the vector is zero
+     */
+    public static double cosineWithUnitVector(float[] unitQuery, float[] vector)
+    {
+        float dot0 = 0;
+        float dot1 = 0;
+        float dot2 = 0;
+        float dot3 = 0;
+        float norm0 = 0;
+        float norm1 = 0;
+        float norm2 = 0;
+        float norm3 = 0;
+        int length = vector.length;
+        int i = 0;
+        for (; i + 3 < length; i += 4) {
+            dot0 += unitQuery[i] * vector[i];
+            dot1 += unitQuery[i + 1] * vector[i + 1];
+            dot2 += unitQuery[i + 2] * vector[i + 2];
+            dot3 += unitQuery[i + 3] * vector[i + 3];
+            norm0 += vector[i] * vector[i];
+            norm1 += vector[i + 1] * vector[i + 1];
+            norm2 += vector[i + 2] * vector[i + 2];
+            norm3 += vector[i + 3] * vector[i + 3];
+        }
+        for (; i < length; i++) {
+            dot0 += unitQuery[i] * vector[i];
+            norm0 += vector[i] * vector[i];
+        }
+
+        double norm = (double) norm0 + norm1 + norm2 + norm3;
+        if (norm == 0) {
+            return 0;
+        }
+        return ((double) dot0 + dot1 + dot2 + dot3) / Math.sqrt(norm);
+    }
+
+    /**
+     * @param vector the vector to encode
+     * @return the binary little-endian representation of the vector for storing it in a binary field
+     */
+    public static byte[] toBytes(float[] vector)
+    {
+        ByteBuffer buffer = ByteBuffer.allocate(vector.length * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.asFloatBuffer().put(vector);
+        return buffer.array();
+    }
+
+    /**
+     * Decodes a vector stored in a binary field. Depending on the response format, Solr returns binary values as
+     * byte array, as {@link ByteBuffer} or as Base64-encoded string, all of them are supported.
+     *
+     * @param value the value of the binary field
+     * @return the decoded vector
+     */
+    public static float[] fromBytes(Object value)
+    {
+        ByteBuffer buffer;
+        if (value instanceof byte[] bytes) {
+            buffer = ByteBuffer.wrap(bytes);
+        } else if (value instanceof ByteBuffer byteBuffer) {
+            buffer = byteBuffer.duplicate();
+        } else {
+            buffer = ByteBuffer.wrap(Base64.getDecoder().decode(String.valueOf(value)));
+        }
+
+        float[] result = new float[buffer.remaining() / Float.BYTES];
+        buffer.order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer().get(result);
+        return result;
+    }
+
+    /**
+     * @param vector the vector
+     * @return the representation of the vector as expected by the kNN query parser
+     */
+    public static String toQueryString(float[] vector)
+    {
+        StringBuilder builder = new StringBuilder(vector.length * 12);
+        builder.append('[');
+        for (int i = 0; i < vector.length; i++) {
+            if (i > 0) {
+                builder.append(", ");
+            }
+            builder.append(vector[i]);
+        }
+        return builder.append(']').toString();
+    }
+
+    /**
+     * @param vector the vector
+     * @return the representation of the vector as expected by the kNN query parser
+     */
+    public static String toQueryString(byte[] vector)
+    {
+        StringBuilder builder = new StringBuilder(vector.length * 5);
+        builder.append('[');
+        for (int i = 0; i < vector.length; i++) {
+            if (i > 0) {
+                builder.append(", ");
+            }
+            builder.append(vector[i]);
+        }
+        return builder.append(']').toString();
+    }
+
+    private static final class FloatArrayList extends AbstractList<Float> implements RandomAccess
+    {
+        private final float[] vector;
+
+        FloatArrayList(float[] vector)
+        {
+            this.vector = vector;
+        }
+
+        @Override
+        public Float get(int index)
+        {
+            return this.vector[index];
+        }
+
+        @Override
+        public int size()
+        {
+            return this.vector.length;
+        }
+    }
+
+    private static final class ByteArrayList extends AbstractList<Byte> implements RandomAccess
+    {
+        private final byte[] vector;
+
+        ByteArrayList(byte[] vector)
+        {
+            this.vector = vector;
+        }
+
+        @Override
+        public Byte get(int index)
+        {
+            return this.vector[index];
+        }
+
+        @Override
+        public int size()
+        {
+            return this.vector.length;
+        }
+    }
+}
@@ -0,0 +1,42 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.llm.internal;
+
+/**
+ * The encoding of the vectors in the kNN index.
+ *
+ * @version $Id$
+ * @since 0.6.3
+ */
+public enum VectorEncoding
+{
+    /**
+     * Vectors are indexed with 32-bit floating point values.
+     */
+    FLOAT32,
+
+    /**
+     * Vectors are scaled and rounded to signed bytes before being indexed, which reduces the size of the index by
+     * about 4x. The full-precision vector is stored separately and used to rescore the candidates of the kNN search,
+     * see {@link AiLLMIndexConfiguration#getRescoringOversampling()}, so this is the encoding to use to reduce the
+     * memory of the index without losing ranking quality.
+     */
+    BYTE
+}
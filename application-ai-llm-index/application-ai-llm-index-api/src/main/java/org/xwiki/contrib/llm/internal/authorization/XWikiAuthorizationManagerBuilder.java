@@ -49,9 +49,16 @@ import com.xpn.xwiki.objects.BaseObject;
  */
 @Component
 @Singleton
-@Named("xwiki")
+@Named(XWikiAuthorizationManagerBuilder.NAME)
 public class XWikiAuthorizationManagerBuilder implements AuthorizationManagerBuilder
 {
+    /**
+     * The name of the rights check method.
+     *
+     * @since 0.6.3
+     */
+    public static final String NAME = "xwiki";
+
     @Inject
     private DocumentReferenceResolver<String> documentReferenceResolver;
 
@@ -0,0 +1,95 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.llm.internal.authorization;
+
+import java.util.List;
+import java.util.Objects;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.xwiki.bridge.event.DocumentCreatedEvent;
+import org.xwiki.bridge.event.DocumentDeletedEvent;
+import org.xwiki.bridge.event.DocumentUpdatedEvent;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.index.TaskManager;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.model.reference.LocalDocumentReference;
+import org.xwiki.observation.event.AbstractLocalEventListener;
+import org.xwiki.observation.event.Event;
+
+import com.xpn.xwiki.doc.XWikiDocument;
+
+/**
+ * Event listener that detects changes of the rights of spaces and wikis to update the viewers indexed with the chunks
+ * of their documents. Changes of the rights of a single document are already handled as the document is re-indexed
+ * whenever it is updated.
+ *
+ * @version $Id$
+ * @since 0.6.3
+ */
+@Component
+@Named(XWikiRightsEventListener.NAME)
+@Singleton
+public class XWikiRightsEventListener extends AbstractLocalEventListener
+{
+    /**
+     * The name of the event listener.
+     */
+    public static final String NAME = "org.xwiki.contrib.llm.internal.authorization.XWikiRightsEventListener";
+
+    private static final LocalDocumentReference GLOBAL_RIGHTS_CLASS =
+        new LocalDocumentReference("XWiki", "XWikiGlobalRights");
+
+    @Inject
+    private TaskManager taskManager;
+
+    /**
+     * Default constructor.
+     */
+    public XWikiRightsEventListener()
+    {
+        super(NAME, new DocumentCreatedEvent(), new DocumentUpdatedEvent(), new DocumentDeletedEvent());
+    }
+
+    @Override
+    public void processLocalEvent(Event event, Object source, Object data)
+    {
+        XWikiDocument document = (XWikiDocument) source;
+        DocumentReference documentReference = document.getDocumentReference();
+
+        if ((XWikiRightsIndexingTaskConsumer.WIKI_PREFERENCES.equals(documentReference.getLocalDocumentReference())
+            || XWikiRightsIndexingTaskConsumer.SPACE_PREFERENCES.equals(documentReference.getName()))
+            && !getRules(document).equals(getRules(document.getOriginalDocument()))) {
+            this.taskManager.addTask(documentReference.getWikiReference().getName(), document.getId(),
+                XWikiRightsIndexingTaskConsumer.NAME);
+        }
+    }
+
+    private static List<List<Object>> getRules(XWikiDocument document)
+    {
+        return document.getXObjects(GLOBAL_RIGHTS_CLASS).stream()
+            .filter(Objects::nonNull)
+            .map(rule -> List.<Object>of(rule.getStringValue("users"), rule.getStringValue("groups"),
+                rule.getStringValue("levels"), rule.getIntValue("allow")))
+            .toList();
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.llm.internal.authorization;
+
+import java.util.List;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Provider;
+import javax.inject.Singleton;
+
+import org.xwiki.component.annotation.Component;
+import org.xwiki.contrib.llm.VectorStore;
+import org.xwiki.contrib.llm.internal.xwikistore.XWikiDocumentDocumentIndexingTaskConsumer;
+import org.xwiki.index.TaskConsumer;
+import org.xwiki.index.TaskManager;
+import org.xwiki.model.EntityType;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.model.reference.EntityReferenceResolver;
+import org.xwiki.model.reference.EntityReferenceSerializer;
+import org.xwiki.model.reference.LocalDocumentReference;
+
+import com.xpn.xwiki.XWikiContext;
+import com.xpn.xwiki.util.Util;
+
+/**
+ * Re-indexes the documents below a space or wiki whose rights have changed so that the viewers indexed with their
+ * chunks are updated. The task is queued for the preferences document that stores the rights, the embeddings of the
+ * chunks are re-used so only the viewers are updated.
+ *
+ * @version $Id$
+ * @since 0.6.3
+ */
+@Component
+@Singleton
+@Named(XWikiRightsIndexingTaskConsumer.NAME)
+public class XWikiRightsIndexingTaskConsumer implements TaskConsumer
+{
+    /**
+     * The name of this task consumer.
+     */
+    public static final String NAME = "llm_xwiki_rights";
+
+    /**
+     * The name of the documents that store the rights of a space.
+     */
+    public static final String SPACE_PREFERENCES = "WebPreferences";
+
+    /**
+     * The document that stores the rights of a wiki.
+     */
+    public static final LocalDocumentReference WIKI_PREFERENCES =
+        new LocalDocumentReference("XWiki", "XWikiPreferences");
+
+    @Inject
+    private VectorStore vectorStore;
+
+    @Inject
+    private TaskManager taskManager;
+
+    @Inject
+    private Provider<XWikiContext> contextProvider;
+
+    @Inject
+    private EntityReferenceSerializer<String> entityReferenceSerializer;
+
+    @Inject
+    @Named("withparameters")
+    private EntityReferenceResolver<String> documentReferenceResolver;
+
+    @Inject
+    @Named("local/uid")
+    private EntityReferenceSerializer<String> localUIDEntityReferenceSerializer;
+
+    @Override
+    public void consume(DocumentReference documentReference, String version)
+    {
+        String documentIdPrefix;
+        String wiki = documentReference.getWikiReference().getName();
+        if (WIKI_PREFERENCES.equals(documentReference.getLocalDocumentReference())) {
+            // Administrators of the main wiki can view the documents of all wikis.
+            documentIdPrefix = wiki.equals(this.contextProvider.get().getMainXWiki()) ? "" : wiki + ':';
+        } else if (SPACE_PREFERENCES.equals(documentReference.getName())) {
+            // Match the documents of the space and of all nested spaces.
+            documentIdPrefix =
+                this.entityReferenceSerializer.serialize(documentReference.getLastSpaceReference()) + '.';
+        } else {
+            return;
+        }
+
+        // Documents can also be indexed in collections of the main wiki, so search the chunks of all wikis.
+        List<String> documentIds = this.vectorStore.getDocumentsWithViewers(documentIdPrefix);
+        for (String documentId : documentIds) {
+            DocumentReference indexedDocument =
+                new DocumentReference(this.documentReferenceResolver.resolve(documentId, EntityType.DOCUMENT));
+            long id = Util.getHash(this.localUIDEntityReferenceSerializer.serialize(indexedDocument));
+            this.taskManager.addTask(indexedDocument.getWikiReference().getName(), id,
+                XWikiDocumentDocumentIndexingTaskConsumer.NAME);
+        }
+    }
+}
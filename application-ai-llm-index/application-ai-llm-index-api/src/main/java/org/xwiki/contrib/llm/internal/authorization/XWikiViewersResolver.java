@@ -0,0 +1,246 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.llm.internal.authorization;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Provider;
+import javax.inject.Singleton;
+
+import org.slf4j.Logger;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.contrib.llm.internal.AiLLMSolrCoreInitializer;
+import org.xwiki.model.EntityType;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.model.reference.EntityReferenceResolver;
+import org.xwiki.model.reference.EntityReferenceSerializer;
+import org.xwiki.search.solr.SolrUtils;
+import org.xwiki.security.SecurityReference;
+import org.xwiki.security.SecurityReferenceFactory;
+import org.xwiki.security.authorization.AuthorizationException;
+import org.xwiki.security.authorization.AuthorizationManager;
+import org.xwiki.security.authorization.ReadableSecurityRule;
+import org.xwiki.security.authorization.Right;
+import org.xwiki.security.authorization.RuleState;
+import org.xwiki.security.authorization.SecurityEntryReader;
+import org.xwiki.security.authorization.SecurityRule;
+import org.xwiki.user.group.GroupException;
+import org.xwiki.user.group.GroupManager;
+
+import com.xpn.xwiki.XWikiContext;
+import com.xpn.xwiki.user.api.XWikiRightService;
+
+/**
+ * Computes the users and groups that might be allowed to view a document, based on the allow rules of the document
+ * and its parents. The result is indexed with the chunks of collections that use the xwiki rights check method so
+ * that similarity searches only consider chunks the current user might be allowed to view. The result is a superset:
+ * deny rules are ignored and the rights of the search results are still checked after the search.
+ *
+ * @version $Id$
+ * @since 0.6.3
+ */
+@Component(roles = XWikiViewersResolver.class)
+@Singleton
+public class XWikiViewersResolver
+{
+    /**
+     * The viewer that is indexed for documents that might be viewable by anyone, i.e., when no rule restricts the
+     * view right.
+     */
+    public static final String ANYONE = "*";
+
+    private static final String XWIKI_SPACE = "XWiki";
+
+    @Inject
+    private SecurityReferenceFactory securityReferenceFactory;
+
+    @Inject
+    private SecurityEntryReader securityEntryReader;
+
+    @Inject
+    @Named("withparameters")
+    private EntityReferenceResolver<String> documentReferenceResolver;
+
+    @Inject
+    private EntityReferenceSerializer<String> entityReferenceSerializer;
+
+    @Inject
+    private GroupManager groupManager;
+
+    @Inject
+    private AuthorizationManager authorizationManager;
+
+    @Inject
+    private Provider<XWikiContext> contextProvider;
+
+    @Inject
+    private SolrUtils solrUtils;
+
+    @Inject
+    private Logger logger;
+
+    /**
+     * @param documentId the id of the document in the XWiki document store
+     * @return the serialized references of the users and groups that might be allowed to view the document, or
+     *     {@link #ANYONE} if the view right isn't restricted
+     */
+    public List<String> getViewers(String documentId)
+    {
+        // Rights don't depend on the locale of the document.
+        DocumentReference documentReference =
+            new DocumentReference(this.documentReferenceResolver.resolve(documentId, EntityType.DOCUMENT))
+                .withoutLocale();
+
+        try {
+            Set<String> viewers = new LinkedHashSet<>();
+            Set<String> administrators = new LinkedHashSet<>();
+            boolean restricted = false;
+            boolean inDocumentWiki = true;
+
+            // Walk from the document up to the main wiki. The closest level with view rules defines who can view the
+            // document. Administrators can view everything below the level where they have been granted admin rights.
+            for (SecurityReference reference = this.securityReferenceFactory.newEntityReference(documentReference);
+                reference != null; reference = reference.getParentSecurityReference()) {
+                List<String> levelViewers = new ArrayList<>();
+                for (SecurityRule rule : this.securityEntryReader.read(reference).getRules()) {
+                    if (!(rule instanceof ReadableSecurityRule readableRule)) {
+                        // We can't tell to whom the rule applies.
+                        return List.of(ANYONE);
+                    }
+
+                    if (readableRule.getState() == RuleState.ALLOW) {
+                        List<String> subjects = getSubjects(readableRule);
+                        if (readableRule.match(Right.ADMIN) || readableRule.match(Right.PROGRAM)) {
+                            administrators.addAll(subjects);
+                        }
+                        if (readableRule.match(Right.VIEW)) {
+                            levelViewers.addAll(subjects);
+                        }
+                    }
+                }
+
+                // Rules of the main wiki don't restrict the view right in other wikis, but global administrators
+                // are still allowed to view everything.
+                if (inDocumentWiki && !restricted && !levelViewers.isEmpty()) {
+                    viewers.addAll(levelViewers);
+                    restricted = true;
+                }
+                if (reference.getType() == EntityType.WIKI) {
+                    inDocumentWiki = false;
+                }
+            }
+
+            if (!restricted) {
+                return List.of(ANYONE);
+            }
+
+            viewers.addAll(administrators);
+            return List.copyOf(viewers);
+        } catch (AuthorizationException e) {
+            this.logger.warn("Failed to read the rights of document [{}], the rights will only be checked after the "
+                + "search. Root cause: [{}]", documentReference, e.getMessage());
+            return List.of(ANYONE);
+        }
+    }
+
+    private List<String> getSubjects(ReadableSecurityRule rule)
+    {
+        List<String> result = new ArrayList<>();
+        rule.getUsers().stream().map(this.entityReferenceSerializer::serialize).forEach(result::add);
+        rule.getGroups().stream().map(this.entityReferenceSerializer::serialize).forEach(result::add);
+        return result;
+    }
+
+    /**
+     * @return a Solr filter query that matches the chunks that the current user might be allowed to view, or
+     *     {@code null} if no chunk needs to be filtered
+     */
+    public String getFilterQuery()
+    {
+        Set<String> principals = getPrincipals();
+        if (principals == null) {
+            return null;
+        }
+
+        // Wrap the clauses in filter() so that Solr caches them separately: the clause that matches the chunks without
+        // viewers is the same for all users and is only computed once.
+        return principals.stream()
+            .map(this.solrUtils::toCompleteFilterQueryString)
+            .collect(Collectors.joining(" OR ", "filter(" + AiLLMSolrCoreInitializer.FIELD_VIEWERS + ":(",
+                // Chunks that have been indexed without viewers are checked after the search.
+                ")) OR filter(*:* -" + AiLLMSolrCoreInitializer.FIELD_VIEWERS + ":[* TO *])"));
+    }
+
+    /**
+     * @return the viewers of chunks that the current user might be allowed to view: the user, its groups and
+     *     {@link #ANYONE}, or {@code null} if no chunk needs to be filtered as the user administrates the wiki
+     * @since 0.6.3
+     */
+    public Set<String> getPrincipals()
+    {
+        XWikiContext context = this.contextProvider.get();
+        DocumentReference userReference = context.getUserReference();
+
+        // Administrators of the wiki can view all documents, also when they aren't listed as viewers because they
+        // don't have their rights through a rule, e.g., the owner of the wiki.
+        if (userReference != null && (XWikiRightService.SUPERADMIN_USER.equals(userReference.getName())
+            || this.authorizationManager.hasAccess(Right.ADMIN, userReference, context.getWikiReference())))
+        {
+            return null;
+        }
+
+        Set<String> principals = new LinkedHashSet<>();
+        principals.add(ANYONE);
+        List<String> wikis = List.of(context.getWikiId(), context.getMainXWiki());
+
+        if (userReference == null) {
+            wikis.forEach(wiki -> principals.add(serialize(wiki, XWikiRightService.GUEST_USER)));
+        } else {
+            principals.add(this.entityReferenceSerializer.serialize(userReference));
+            // Members of the wiki are implicitly members of the all group.
+            wikis.forEach(wiki -> principals.add(serialize(wiki, XWikiRightService.ALLGROUP_GROUP)));
+            principals.add(serialize(userReference.getWikiReference().getName(), XWikiRightService.ALLGROUP_GROUP));
+
+            try {
+                Collection<DocumentReference> groups =
+                    this.groupManager.getGroups(userReference, GroupManager.WikiTarget.ALL, true);
+                groups.stream().map(this.entityReferenceSerializer::serialize).forEach(principals::add);
+            } catch (GroupException e) {
+                this.logger.warn("Failed to get the groups of user [{}], the rights will only be checked after the "
+                    + "search. Root cause: [{}]", userReference, e.getMessage());
+                return null;
+            }
+        }
+
+        return principals;
+    }
+
+    private String serialize(String wiki, String page)
+    {
+        return this.entityReferenceSerializer.serialize(new DocumentReference(wiki, XWIKI_SPACE, page));
+    }
+}
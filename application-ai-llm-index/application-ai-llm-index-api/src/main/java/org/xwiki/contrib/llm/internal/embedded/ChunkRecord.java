@@ -0,0 +1,208 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.llm.internal.embedded;
+
+import java.util.List;
+import java.util.Set;
+
+import org.xwiki.contrib.llm.Chunk;
+
+import com.fasterxml.jackson.annotation.JsonAutoDetect;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/**
+ * The metadata of a chunk that is stored in a {@link VectorSegment}, the embedding is stored in the
+ * {@link MappedVectorFile} of the segment at the slot of the record. Unknown properties are ignored so that segments
+ * written with properties that have been removed since, like {@code binaryQuantization}, can still be loaded.
+ *
+ * @version $Id$
+ * @since 0.6.3
+ */
+@JsonAutoDetect(fieldVisibility = JsonAutoDetect.Visibility.ANY, getterVisibility = JsonAutoDetect.Visibility.NONE,
+    isGetterVisibility = JsonAutoDetect.Visibility.NONE)
+@JsonInclude(JsonInclude.Include.NON_NULL)
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class ChunkRecord
+{
+    private String documentId;
+
+    private String url;
+
+    private String language;
+
+    private int chunkIndex;
+
+    private int posFirstChar;
+
+    private int posLastChar;
+
+    private String content;
+
+    private String errorMessage;
+
+    private String storeHint;
+
+    private List<String> viewers;
+
+    private boolean dedicatedIndex;
+
+    private int slot = -1;
+
+    /**
+     * Constructor for deserialization.
+     */
+    public ChunkRecord()
+    {
+    }
+
+    /**
+     * @param chunk the chunk to store
+     * @param slot the slot of the embedding of the chunk, {@code -1} if the chunk has no embedding
+     */
+    public ChunkRecord(Chunk chunk, int slot)
+    {
+        this.documentId = chunk.getDocumentID();
+        this.url = chunk.getDocumentURL();
+        this.language = chunk.getLanguage();
+        this.chunkIndex = chunk.getChunkIndex();
+        this.posFirstChar = chunk.getPosFirstChar();
+        this.posLastChar = chunk.getPosLastChar();
+        this.content = chunk.getContent();
+        this.errorMessage = chunk.getErrorMessage();
+        this.storeHint = chunk.getStoreHint();
+        this.viewers = chunk.getViewers();
+        this.dedicatedIndex = chunk.getDedicatedIndex();
+        this.slot = slot;
+    }
+
+    /**
+     * @param slot the new slot of the embedding
+     * @return a copy of this record with the given slot
+     */
+    public ChunkRecord withSlot(int slot)
+    {
+        ChunkRecord result = new ChunkRecord();
+        result.documentId = this.documentId;
+        result.url = this.url;
+        result.language = this.language;
+        result.chunkIndex = this.chunkIndex;
+        result.posFirstChar = this.posFirstChar;
+        result.posLastChar = this.posLastChar;
+        result.content = this.content;
+        result.errorMessage = this.errorMessage;
+        result.storeHint = this.storeHint;
+        result.viewers = this.viewers;
+        result.dedicatedIndex = this.dedicatedIndex;
+        result.slot = slot;
+        return result;
+    }
+
+    /**
+     * Copy this record into the given chunk.
+     *
+     * @param chunk the chunk to fill
+     * @param wiki the wiki of the segment
+     * @param collection the collection of the segment
+     * @param embedding the embedding of the chunk, {@code null} if it has none
+     * @return the chunk
+     */
+    public Chunk toChunk(Chunk chunk, String wiki, String collection, float[] embedding)
+    {
+        chunk.initialize(this.documentId, collection, this.url, this.language, this.posFirstChar, this.posLastChar,
+            this.content);
+        chunk.setWiki(wiki);
+        chunk.setChunkIndex(this.chunkIndex);
+        chunk.setErrorMessage(this.errorMessage);
+        chunk.setStoreHint(this.storeHint);
+        chunk.setViewers(this.viewers);
+        chunk.setDedicatedIndex(this.dedicatedIndex);
+        chunk.setEmbeddingVector(embedding);
+        chunk.computeId();
+        return chunk;
+    }
+
+    /**
+     * @param principals the users and groups that the current user is or is member of, {@code null} to not filter
+     * @return {@code true} if the chunk might be viewed by the current user, chunks without viewers are checked
+     *     after the search
+     */
+    public boolean isVisibleTo(Set<String> principals)
+    {
+        return principals == null || this.viewers == null || this.viewers.isEmpty()
+            || this.viewers.stream().anyMatch(principals::contains);
+    }
+
+    /**
+     * @return the id of the document of the chunk
+     */
+    public String getDocumentId()
+    {
+        return this.documentId;
+    }
+
+    /**
+     * @return the URL of the document of the chunk
+     */
+    public String getUrl()
+    {
+        return this.url;
+    }
+
+    /**
+     * @return the index of the chunk in the document
+     */
+    public int getChunkIndex()
+    {
+        return this.chunkIndex;
+    }
+
+    /**
+     * @return the content of the chunk
+     */
+    public String getContent()
+    {
+        return this.content;
+    }
+
+    /**
+     * @return the hint of the document store of the chunk
+     */
+    public String getStoreHint()
+    {
+        return this.storeHint;
+    }
+
+    /**
+     * @return the users and groups that might be allowed to view the chunk
+     */
+    public List<String> getViewers()
+    {
+        return this.viewers;
+    }
+
+    /**
+     * @return the slot of the embedding of the chunk, {@code -1} if the chunk has no embedding
+     */
+    public int getSlot()
+    {
+        return this.slot;
+    }
+}
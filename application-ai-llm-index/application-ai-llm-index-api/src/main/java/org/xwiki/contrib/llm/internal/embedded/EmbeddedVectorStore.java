@@ -0,0 +1,392 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.llm.internal.embedded;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Provider;
+import javax.inject.Singleton;
+
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+import org.slf4j.Logger;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.component.phase.Disposable;
+import org.xwiki.component.phase.Initializable;
+import org.xwiki.component.phase.InitializationException;
+import org.xwiki.contrib.llm.Chunk;
+import org.xwiki.contrib.llm.EmbeddingsUtils;
+import org.xwiki.contrib.llm.IndexException;
+import org.xwiki.contrib.llm.SearchParameters;
+import org.xwiki.contrib.llm.VectorStore;
+import org.xwiki.contrib.llm.internal.AiLLMIndexConfiguration;
+import org.xwiki.contrib.llm.internal.SharedQueryEmbeddings;
+import org.xwiki.contrib.llm.internal.SimilaritySearchExecutor;
+import org.xwiki.contrib.llm.internal.authorization.XWikiViewersResolver;
+import org.xwiki.contrib.llm.openai.Context;
+import org.xwiki.environment.Environment;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.xpn.xwiki.XWikiContext;
+import com.xpn.xwiki.util.Util;
+
+/**
+ * A vector store that keeps the chunks in the permanent directory of XWiki and searches them in-process, without
+ * depending on Solr. The embeddings of each collection are stored in a memory-mapped {@link VectorSegment} so that
+ * large collections don't need to fit into the heap. Collections are searched in parallel.
+ * <p>
+ * This store only supports similarity searches, hybrid searches only use the similarity of the chunks. Dedicated
+ * indexes are specific to Solr and ignored.
+ *
+ * @version $Id$
+ * @since 0.6.3
+ */
+@Component
+@Named(EmbeddedVectorStore.NAME)
+@Singleton
+public class EmbeddedVectorStore implements VectorStore, Initializable, Disposable
+{
+    /**
+     * The hint of this vector store.
+     */
+    public static final String NAME = "embedded";
+
+    private static final String HEADER_FILE = "segment.json";
+
+    private static final long FLUSH_INTERVAL_SECONDS = 10;
+
+    private static final Comparator<Context> BY_DESCENDING_SCORE =
+        Comparator.comparing(Context::similarityScore, Comparator.nullsLast(Comparator.reverseOrder()));
+
+    @Inject
+    private Logger logger;
+
+    @Inject
+    private Environment environment;
+
+    @Inject
+    private AiLLMIndexConfiguration configuration;
+
+    @Inject
+    private EmbeddingsUtils embeddingsUtils;
+
+    @Inject
+    private SimilaritySearchExecutor searchExecutor;
+
+    @Inject
+    private XWikiViewersResolver viewersResolver;
+
+    @Inject
+    private Provider<XWikiContext> contextProvider;
+
+    @Inject
+    private Provider<Chunk> chunkProvider;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    /**
+     * The segments by wiki and collection.
+     */
+    private final Map<String, Map<String, VectorSegment>> segments = new ConcurrentHashMap<>();
+
+    private Path directory;
+
+    private ScheduledExecutorService executor;
+
+    @Override
+    public void initialize() throws InitializationException
+    {
+        this.directory = this.environment.getPermanentDirectory().toPath().resolve("llm").resolve("vectors");
+        try {
+            Files.createDirectories(this.directory);
+            try (Stream<Path> segmentDirectories = Files.list(this.directory)) {
+                segmentDirectories.filter(path -> Files.exists(path.resolve(HEADER_FILE))).forEach(this::loadSegment);
+            }
+        } catch (IOException e) {
+            throw new InitializationException("Failed to load the vector store from [%s]".formatted(this.directory),
+                e);
+        }
+
+        this.executor = new ScheduledThreadPoolExecutor(2, new BasicThreadFactory.Builder()
+            .namingPattern("LLM embedded vector store %d")
+            .daemon(true)
+            .build());
+        // The chunks are flushed regularly to bound how much is lost when XWiki isn't stopped cleanly.
+        this.executor.scheduleWithFixedDelay(this::flush, FLUSH_INTERVAL_SECONDS, FLUSH_INTERVAL_SECONDS,
+            TimeUnit.SECONDS);
+        getAllSegments().forEach(this::buildGraphIfNeeded);
+    }
+
+    private void loadSegment(Path segmentDirectory)
+    {
+        try {
+            VectorSegment segment = VectorSegment.load(segmentDirectory, this.objectMapper);
+            this.segments.computeIfAbsent(segment.getWiki(), wiki -> new ConcurrentHashMap<>())
+                .put(segment.getCollection(), segment);
+        } catch (IOException e) {
+            this.logger.error("Failed to load the vectors in [{}], the collection needs to be re-indexed.",
+                segmentDirectory, e);
+        }
+    }
+
+    @Override
+    public void storeChunks(List<Chunk> chunks) throws IndexException
+    {
+        Map<VectorSegment, List<Chunk>> chunksBySegment = new HashMap<>();
+        for (Chunk chunk : chunks) {
+            chunksBySegment.computeIfAbsent(getOrCreateSegment(chunk.getWiki(), chunk.getCollection()),
+                segment -> new ArrayList<>()).add(chunk);
+        }
+
+        for (Map.Entry<VectorSegment, List<Chunk>> entry : chunksBySegment.entrySet()) {
+            VectorSegment segment = entry.getKey();
+            try {
+                // The segment is closed when the collection is deleted concurrently, it has already been removed from
+                // the segments then, so the chunks are stored in a new segment like in a new collection.
+                while (!segment.put(entry.getValue())) {
+                    segment = getOrCreateSegment(segment.getWiki(), segment.getCollection());
+                }
+            } catch (IOException e) {
+                throw new IndexException("Failed to store the chunks of collection [%s] in wiki [%s]"
+                    .formatted(segment.getCollection(), segment.getWiki()), e);
+            }
+            buildGraphIfNeeded(segment);
+        }
+    }
+
+    @Override
+    public List<Chunk> getChunks(String wiki, String collectionId, String documentId, int startChunk, int endChunk)
+    {
+        VectorSegment segment = getSegment(wiki, collectionId);
+        return segment != null ? segment.getChunks(documentId, startChunk, endChunk, this.chunkProvider::get)
+            : List.of();
+    }
+
+    @Override
+    public void deleteChunksByIndex(String wiki, String collectionId, String documentId, int startChunk)
+    {
+        deleteChunks(wiki, collectionId, documentId, startChunk, Integer.MAX_VALUE, null);
+    }
+
+    @Override
+    public void deleteChunksByIndex(String wiki, String collectionId, String documentId, int startChunk,
+        int endChunk)
+    {
+        deleteChunks(wiki, collectionId, documentId, startChunk, endChunk, null);
+    }
+
+    @Override
+    public void deleteChunksByDocIdAndStore(String wiki, String collectionId, String documentId, String storeHint)
+    {
+        deleteChunks(wiki, collectionId, documentId, 0, Integer.MAX_VALUE, storeHint);
+    }
+
+    @Override
+    public void deleteChunksByStoreHintAndDocId(String storeHint, String documentId)
+    {
+        for (VectorSegment segment : getAllSegments()) {
+            deleteChunks(segment.getWiki(), segment.getCollection(), documentId, 0, Integer.MAX_VALUE, storeHint);
+        }
+    }
+
+    private void deleteChunks(String wiki, String collectionId, String documentId, int startChunk, int endChunk,
+        String storeHint)
+    {
+        VectorSegment segment = getSegment(wiki, collectionId);
+        if (segment != null) {
+            try {
+                segment.deleteChunks(documentId, startChunk, endChunk, storeHint);
+            } catch (IOException e) {
+                this.logger.error(
+                    "Failed to delete chunks [{}] - [{}] of document [{}] in collection [{}] in wiki [{}]", startChunk,
+                    endChunk, documentId, collectionId, wiki, e);
+            }
+        }
+    }
+
+    @Override
+    public synchronized void deleteChunksByCollection(String wiki, String collectionId)
+    {
+        Map<String, VectorSegment> wikiSegments = this.segments.get(wiki);
+        VectorSegment segment = wikiSegments != null ? wikiSegments.remove(collectionId) : null;
+        if (segment != null) {
+            try {
+                segment.delete();
+            } catch (IOException e) {
+                this.logger.error("Failed to delete the chunks of collection [{}] in wiki [{}]", collectionId, wiki,
+                    e);
+            }
+        }
+    }
+
+    @Override
+    public void deleteOtherDocuments(String wiki, String collectionId, String storeHint,
+        List<String> documentIdPrefixes)
+    {
+        if (documentIdPrefixes.isEmpty()) {
+            deleteChunksByCollection(wiki, collectionId);
+            return;
+        }
+
+        VectorSegment segment = getSegment(wiki, collectionId);
+        if (segment != null) {
+            try {
+                segment.deleteChunks(chunk -> !storeHint.equals(chunk.getStoreHint())
+                    && documentIdPrefixes.stream().noneMatch(chunk.getDocumentId()::startsWith));
+            } catch (IOException e) {
+                this.logger.error("Failed to delete the chunks of other documents in collection [{}] in wiki [{}]",
+                    collectionId, wiki, e);
+            }
+        }
+    }
+
+    @Override
+    public List<String> filterExistingDocuments(String wiki, String collectionId, List<String> documentIds)
+    {
+        VectorSegment segment = getSegment(wiki, collectionId);
+        return segment != null ? documentIds.stream().filter(segment::hasDocument).toList() : List.of();
+    }
+
+    @Override
+    public List<String> getDocumentsWithViewers(String documentIdPrefix)
+    {
+        Set<String> result = new LinkedHashSet<>();
+        getAllSegments().forEach(segment -> result.addAll(segment.getDocumentsWithViewers(documentIdPrefix)));
+        return List.copyOf(result);
+    }
+
+    @Override
+    public List<Context> similaritySearch(String textQuery, Map<String, String> collectionEmbeddingModelMap,
+        int limit, Map<String, float[]> queryEmbeddings, SearchParameters parameters) throws IndexException
+    {
+        // Only search chunks that the current user might be allowed to view. This needs to be computed before the
+        // searches are executed concurrently.
+        Set<String> principals = this.viewersResolver.getPrincipals();
+        Map<String, VectorSegment> wikiSegments =
+            this.segments.getOrDefault(this.contextProvider.get().getWikiId(), Map.of());
+        int exactSearchThreshold = this.configuration.getExactSearchThreshold();
+        int beamWidth = limit * this.configuration.getKnnCandidateMultiplier();
+
+        SharedQueryEmbeddings sharedQueryEmbeddings =
+            new SharedQueryEmbeddings(textQuery, queryEmbeddings, this.embeddingsUtils);
+        List<Callable<List<Context>>> searches = new ArrayList<>();
+        for (Map.Entry<String, String> entry : collectionEmbeddingModelMap.entrySet()) {
+            VectorSegment segment = wikiSegments.get(entry.getKey());
+            if (segment != null) {
+                String embeddingModelId = entry.getValue();
+                searches.add(() -> segment.search(sharedQueryEmbeddings.get(embeddingModelId), limit,
+                    exactSearchThreshold, beamWidth, principals));
+                buildGraphIfNeeded(segment);
+            }
+        }
+
+        return this.searchExecutor.invokeAll(searches, this.configuration.getSimilaritySearchTimeout(),
+                TimeUnit.MILLISECONDS).stream()
+            .flatMap(Collection::stream)
+            .sorted(BY_DESCENDING_SCORE)
+            .limit(limit)
+            .toList();
+    }
+
+    @Override
+    public void flush()
+    {
+        for (VectorSegment segment : getAllSegments()) {
+            try {
+                segment.flush();
+            } catch (IOException e) {
+                this.logger.error("Failed to flush the chunks of collection [{}] in wiki [{}]",
+                    segment.getCollection(), segment.getWiki(), e);
+            }
+        }
+    }
+
+    @Override
+    public void dispose()
+    {
+        if (this.executor != null) {
+            this.executor.shutdownNow();
+        }
+
+        for (VectorSegment segment : getAllSegments()) {
+            try {
+                segment.close();
+            } catch (IOException e) {
+                this.logger.error("Failed to close the chunks of collection [{}] in wiki [{}]",
+                    segment.getCollection(), segment.getWiki(), e);
+            }
+        }
+        this.segments.clear();
+    }
+
+    private void buildGraphIfNeeded(VectorSegment segment)
+    {
+        if (segment.needsGraph(this.configuration.getExactSearchThreshold())) {
+            int maxConnections = this.configuration.getHnswMaxConnections();
+            int beamWidth = this.configuration.getHnswBeamWidth();
+            this.executor.execute(() -> segment.buildGraph(maxConnections, beamWidth));
+        }
+    }
+
+    private VectorSegment getSegment(String wiki, String collectionId)
+    {
+        Map<String, VectorSegment> wikiSegments = this.segments.get(wiki);
+        return wikiSegments != null ? wikiSegments.get(collectionId) : null;
+    }
+
+    private synchronized VectorSegment getOrCreateSegment(String wiki, String collectionId) throws IndexException
+    {
+        VectorSegment segment = getSegment(wiki, collectionId);
+        if (segment == null) {
+            Path segmentDirectory =
+                this.directory.resolve(Long.toHexString(Util.getHash(wiki + ':' + collectionId)));
+            try {
+                segment = VectorSegment.create(segmentDirectory, wiki, collectionId, this.objectMapper);
+            } catch (IOException e) {
+                throw new IndexException("Failed to create the vector store of collection [%s] in wiki [%s]"
+                    .formatted(collectionId, wiki), e);
+            }
+            this.segments.computeIfAbsent(wiki, key -> new ConcurrentHashMap<>()).put(collectionId, segment);
+        }
+        return segment;
+    }
+
+    private List<VectorSegment> getAllSegments()
+    {
+        return this.segments.values().stream().flatMap(wikiSegments -> wikiSegments.values().stream()).toList();
+    }
+}
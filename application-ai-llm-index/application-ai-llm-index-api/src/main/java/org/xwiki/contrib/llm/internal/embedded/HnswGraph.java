@@ -0,0 +1,324 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.llm.internal.embedded;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.SplittableRandom;
+import java.util.function.IntPredicate;
+
+/**
+ * An in-memory hierarchical navigable small world graph over the vectors of a {@link MappedVectorFile}, see
+ * <a href="https://arxiv.org/abs/1603.09320">Malkov and Yashunin</a>. The nodes of the graph are the slots of the
+ * vectors, the graph only stores the links between them and reads the vectors from the file.
+ * <p>
+ * The graph isn't thread-safe, searches may run concurrently but not concurrently with insertions.
+ *
+ * @version $Id$
+ * @since 0.6.3
+ */
+public class HnswGraph
+{
+    /**
+     * A node found by a search together with its similarity to the query.
+     *
+     * @param node the node
+     * @param score the similarity of the node to the query
+     * @version $Id$
+     */
+    public record Neighbor(int node, float score)
+    {
+    }
+
+    private static final Comparator<Neighbor> BY_SCORE = Comparator.comparingDouble(Neighbor::score);
+
+    private static final Comparator<Neighbor> BY_DESCENDING_SCORE = BY_SCORE.reversed();
+
+    /**
+     * Scores nodes against the vector that is searched or inserted.
+     */
+    private interface NodeScorer
+    {
+        float score(int node);
+    }
+
+    private final MappedVectorFile vectors;
+
+    private final int maxConnections;
+
+    private final int beamWidth;
+
+    private final double levelMultiplier;
+
+    // Fixed seed so that the graph is reproducible for the same insertion order.
+    private final SplittableRandom random = new SplittableRandom(42);
+
+    /**
+     * The links of each node on each level. The first element of each array is the number of links.
+     */
+    private int[][][] links = new int[0][][];
+
+    /**
+     * The similarity of each node to its linked nodes, at the same positions as the links.
+     */
+    private float[][][] linkScores = new float[0][][];
+
+    private int entryPoint = -1;
+
+    private int maxLevel = -1;
+
+    private int size;
+
+    /**
+     * @param vectors the vectors of the nodes
+     * @param maxConnections the maximum number of links of each node on the upper levels, nodes have twice as many
+     *     links on the lowest level
+     * @param beamWidth the number of candidates that are considered when inserting a node
+     */
+    public HnswGraph(MappedVectorFile vectors, int maxConnections, int beamWidth)
+    {
+        this.vectors = vectors;
+        this.maxConnections = Math.max(2, maxConnections);
+        this.beamWidth = Math.max(this.maxConnections, beamWidth);
+        this.levelMultiplier = 1 / Math.log(this.maxConnections);
+    }
+
+    /**
+     * @return the number of nodes in the graph
+     */
+    public int size()
+    {
+        return this.size;
+    }
+
+    /**
+     * @param node the node
+     * @return {@code true} if the node has been inserted into the graph
+     */
+    public boolean contains(int node)
+    {
+        return node < this.links.length && this.links[node] != null;
+    }
+
+    /**
+     * Insert a node into the graph.
+     *
+     * @param node the node to insert, must not be in the graph yet
+     */
+    public void insert(int node)
+    {
+        int level = (int) (-Math.log(1 - this.random.nextDouble()) * this.levelMultiplier);
+        if (node >= this.links.length) {
+            int capacity = Math.max(node + 1, this.links.length * 2);
+            this.links = Arrays.copyOf(this.links, capacity);
+            this.linkScores = Arrays.copyOf(this.linkScores, capacity);
+        }
+        int[][] nodeLinks = new int[level + 1][];
+        float[][] nodeLinkScores = new float[level + 1][];
+        for (int i = 0; i <= level; i++) {
+            nodeLinks[i] = new int[getMaxConnections(i) + 1];
+            nodeLinkScores[i] = new float[getMaxConnections(i) + 1];
+        }
+        this.links[node] = nodeLinks;
+        this.linkScores[node] = nodeLinkScores;
+        this.size++;
+
+        if (this.entryPoint < 0) {
+            this.entryPoint = node;
+            this.maxLevel = level;
+            return;
+        }
+
+        NodeScorer scorer = other -> this.vectors.cosine(node, other);
+        Neighbor entry = descend(scorer, level);
+        for (int currentLevel = Math.min(level, this.maxLevel); currentLevel >= 0; currentLevel--) {
+            List<Neighbor> candidates = searchLevel(scorer, entry, this.beamWidth, currentLevel, null);
+            List<Neighbor> selected = selectNeighbors(candidates, getMaxConnections(currentLevel));
+            int[] levelLinks = nodeLinks[currentLevel];
+            for (Neighbor neighbor : selected) {
+                levelLinks[++levelLinks[0]] = neighbor.node();
+                nodeLinkScores[currentLevel][levelLinks[0]] = neighbor.score();
+                addLink(neighbor.node(), node, neighbor.score(), currentLevel);
+            }
+            entry = candidates.get(0);
+        }
+
+        if (level > this.maxLevel) {
+            this.maxLevel = level;
+            this.entryPoint = node;
+        }
+    }
+
+    /**
+     * Search the nodes that are the most similar to the query.
+     *
+     * @param normalizedQuery the query vector, normalized to unit length
+     * @param limit the maximum number of nodes to return
+     * @param beamWidth the number of candidates to consider, higher values improve the recall
+     * @param accept the nodes that may be returned, other nodes are only used to navigate the graph
+     * @return the accepted nodes that are most similar to the query, sorted by descending similarity
+     */
+    public List<Neighbor> search(float[] normalizedQuery, int limit, int beamWidth, IntPredicate accept)
+    {
+        if (this.entryPoint < 0) {
+            return List.of();
+        }
+
+        NodeScorer scorer = node -> this.vectors.cosine(node, normalizedQuery);
+        List<Neighbor> result = searchLevel(scorer, descend(scorer, 0), Math.max(limit, beamWidth), 0, accept);
+        return result.size() > limit ? result.subList(0, limit) : result;
+    }
+
+    /**
+     * Greedily walk the upper levels of the graph towards the most similar node.
+     */
+    private Neighbor descend(NodeScorer scorer, int targetLevel)
+    {
+        int current = this.entryPoint;
+        float currentScore = scorer.score(current);
+        for (int level = this.maxLevel; level > targetLevel; level--) {
+            boolean changed = true;
+            while (changed) {
+                changed = false;
+                int[] levelLinks = this.links[current][level];
+                for (int i = 1; i <= levelLinks[0]; i++) {
+                    float score = scorer.score(levelLinks[i]);
+                    if (score > currentScore) {
+                        current = levelLinks[i];
+                        currentScore = score;
+                        changed = true;
+                    }
+                }
+            }
+        }
+        return new Neighbor(current, currentScore);
+    }
+
+    /**
+     * Beam search on one level of the graph. Nodes that aren't accepted are still visited so that the search can
+     * find accepted nodes behind them.
+     *
+     * @return the best accepted nodes, sorted by descending similarity
+     */
+    private List<Neighbor> searchLevel(NodeScorer scorer, Neighbor entry, int beamWidth, int level,
+        IntPredicate accept)
+    {
+        BitSet visited = new BitSet(this.links.length);
+        PriorityQueue<Neighbor> candidates = new PriorityQueue<>(BY_DESCENDING_SCORE);
+        PriorityQueue<Neighbor> results = new PriorityQueue<>(BY_SCORE);
+        visited.set(entry.node());
+        candidates.add(entry);
+        if (accept == null || accept.test(entry.node())) {
+            results.add(entry);
+        }
+
+        while (!candidates.isEmpty()) {
+            Neighbor candidate = candidates.poll();
+            if (results.size() >= beamWidth && candidate.score() < results.peek().score()) {
+                break;
+            }
+
+            int[] levelLinks = this.links[candidate.node()][level];
+            for (int i = 1; i <= levelLinks[0]; i++) {
+                int node = levelLinks[i];
+                if (!visited.get(node)) {
+                    visited.set(node);
+                    Neighbor neighbor = new Neighbor(node, scorer.score(node));
+                    if (results.size() < beamWidth || neighbor.score() > results.peek().score()) {
+                        candidates.add(neighbor);
+                        if (accept == null || accept.test(node)) {
+                            results.add(neighbor);
+                            if (results.size() > beamWidth) {
+                                results.poll();
+                            }
+                        }
+                    }
+                }
+            }
+        }
+
+        List<Neighbor> result = new ArrayList<>(results);
+        result.sort(BY_DESCENDING_SCORE);
+        return result;
+    }
+
+    /**
+     * Select the neighbors of a new node among the candidates, a candidate is skipped when it is more similar to an
+     * already selected neighbor than to the node to keep links in all directions. Skipped candidates are used to
+     * fill the remaining links.
+     *
+     * @param candidates the candidates sorted by descending similarity to the node
+     */
+    private List<Neighbor> selectNeighbors(List<Neighbor> candidates, int maximum)
+    {
+        List<Neighbor> selected = new ArrayList<>(maximum);
+        List<Neighbor> skipped = new ArrayList<>();
+        for (Neighbor candidate : candidates) {
+            if (selected.size() >= maximum) {
+                break;
+            }
+            boolean diverse = true;
+            for (Neighbor neighbor : selected) {
+                if (this.vectors.cosine(candidate.node(), neighbor.node()) > candidate.score()) {
+                    diverse = false;
+                    break;
+                }
+            }
+            (diverse ? selected : skipped).add(candidate);
+        }
+        for (int i = 0; i < skipped.size() && selected.size() < maximum; i++) {
+            selected.add(skipped.get(i));
+        }
+        return selected;
+    }
+
+    private void addLink(int node, int newNeighbor, float score, int level)
+    {
+        int[] levelLinks = this.links[node][level];
+        float[] levelScores = this.linkScores[node][level];
+        int maximum = levelLinks.length - 1;
+        if (levelLinks[0] < maximum) {
+            levelLinks[++levelLinks[0]] = newNeighbor;
+            levelScores[levelLinks[0]] = score;
+        } else {
+            // The node has too many links, replace its least similar link if the new neighbor is more similar. This
+            // only uses the stored similarities as re-selecting diverse neighbors on every overflow is too slow.
+            int weakest = 1;
+            for (int i = 2; i <= maximum; i++) {
+                if (levelScores[i] < levelScores[weakest]) {
+                    weakest = i;
+                }
+            }
+            if (score > levelScores[weakest]) {
+                levelLinks[weakest] = newNeighbor;
+                levelScores[weakest] = score;
+            }
+        }
+    }
+
+    private int getMaxConnections(int level)
+    {
+        return level == 0 ? 2 * this.maxConnections : this.maxConnections;
+    }
+}
@@ -0,0 +1,243 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.llm.internal.embedded;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A file of fixed-size float vectors that is memory-mapped in pages so that vectors are read directly from the page
+ * cache of the operating system without copying them to the heap. Each vector is stored in a numbered slot together
+ * with its inverse norm so that cosine similarities don't need to normalize the stored vectors.
+ * <p>
+ * Slots can be read concurrently, a slot must not be read while it is written.
+ *
+ * @version $Id$
+ * @since 0.6.3
+ */
+public class MappedVectorFile implements AutoCloseable
+{
+    /**
+     * The approximate size of a mapped page, large enough to keep the number of mappings low and small enough to not
+     * waste much space in the (sparse) file of small collections.
+     */
+    private static final long PAGE_BYTES = 16L * 1024 * 1024;
+
+    private final Path path;
+
+    private final int dimensions;
+
+    private final int stride;
+
+    private final int slotsPerPage;
+
+    private final FileChannel channel;
+
+    private final List<MappedByteBuffer> mappedPages = new ArrayList<>();
+
+    private volatile FloatBuffer[] pages = new FloatBuffer[0];
+
+    /**
+     * Buffers for copying vectors with their inverse norm out of the mapped pages.
+     */
+    private final ThreadLocal<float[]> scratch;
+
+    private final ThreadLocal<float[]> otherScratch;
+
+    /**
+     * Open or create the vector file.
+     *
+     * @param path the path of the file
+     * @param dimensions the number of dimensions of the vectors
+     * @throws IOException if the file cannot be opened
+     */
+    public MappedVectorFile(Path path, int dimensions) throws IOException
+    {
+        this.path = path;
+        this.dimensions = dimensions;
+        // Each slot stores the vector followed by its inverse norm.
+        this.stride = dimensions + 1;
+        this.slotsPerPage = (int) Math.max(1, PAGE_BYTES / (this.stride * (long) Float.BYTES));
+        this.scratch = ThreadLocal.withInitial(() -> new float[this.stride]);
+        this.otherScratch = ThreadLocal.withInitial(() -> new float[this.stride]);
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+            StandardOpenOption.WRITE);
+    }
+
+    /**
+     * @return the path of the file
+     */
+    public Path getPath()
+    {
+        return this.path;
+    }
+
+    /**
+     * @return the number of dimensions of the vectors
+     */
+    public int getDimensions()
+    {
+        return this.dimensions;
+    }
+
+    /**
+     * Write a vector to a slot, the file is extended if necessary.
+     *
+     * @param slot the slot to write
+     * @param vector the vector to write, must have the dimensions of the file
+     * @throws IOException if the file cannot be extended
+     */
+    public void write(int slot, float[] vector) throws IOException
+    {
+        if (vector.length != this.dimensions) {
+            throw new IllegalArgumentException(
+                "Expected a vector with [%d] dimensions but got [%d]".formatted(this.dimensions, vector.length));
+        }
+
+        double squaredNorm = 0;
+        for (float value : vector) {
+            squaredNorm += value * value;
+        }
+
+        FloatBuffer page = getPage(slot / this.slotsPerPage);
+        int offset = getOffset(slot);
+        page.put(offset, vector);
+        page.put(offset + this.dimensions, squaredNorm > 0 ? (float) (1 / Math.sqrt(squaredNorm)) : 0);
+    }
+
+    /**
+     * @param slot the slot to read
+     * @return a copy of the vector in the slot
+     */
+    public float[] read(int slot)
+    {
+        float[] result = new float[this.dimensions];
+        this.pages[slot / this.slotsPerPage].get(getOffset(slot), result);
+        return result;
+    }
+
+    /**
+     * @param slot the slot of the vector
+     * @param normalizedQuery the query vector, normalized to unit length
+     * @return the cosine similarity between the vector in the slot and the query, {@code 0} if the stored vector is
+     *     zero
+     */
+    public float cosine(int slot, float[] normalizedQuery)
+    {
+        // Copying the vector in bulk and computing the dot product on the copy is much faster than reading the values
+        // one by one from the buffer.
+        float[] vector = this.scratch.get();
+        FloatBuffer page = this.pages[slot / this.slotsPerPage];
+        page.get(getOffset(slot), vector);
+        return dot(vector, normalizedQuery) * vector[this.dimensions];
+    }
+
+    /**
+     * @param slot the slot of the first vector
+     * @param otherSlot the slot of the second vector
+     * @return the cosine similarity between the vectors in the two slots
+     */
+    public float cosine(int slot, int otherSlot)
+    {
+        float[] vector = this.scratch.get();
+        this.pages[slot / this.slotsPerPage].get(getOffset(slot), vector);
+        float[] otherVector = this.otherScratch.get();
+        this.pages[otherSlot / this.slotsPerPage].get(getOffset(otherSlot), otherVector);
+        return dot(vector, otherVector) * vector[this.dimensions] * otherVector[this.dimensions];
+    }
+
+    private float dot(float[] vector, float[] otherVector)
+    {
+        float result = 0;
+        for (int i = 0; i < this.dimensions; i++) {
+            result += vector[i] * otherVector[i];
+        }
+        return result;
+    }
+
+    /**
+     * Map the pages that already exist in the file so that all slots below the given number can be read.
+     *
+     * @param slots the number of slots that need to be readable
+     * @throws IOException if the file cannot be mapped
+     */
+    public void mapSlots(int slots) throws IOException
+    {
+        if (slots > 0) {
+            getPage((slots - 1) / this.slotsPerPage);
+        }
+    }
+
+    /**
+     * Write the modified pages to the disk.
+     */
+    public synchronized void force()
+    {
+        this.mappedPages.forEach(MappedByteBuffer::force);
+    }
+
+    @Override
+    public synchronized void close() throws IOException
+    {
+        force();
+        // The mapped pages stay readable for searches that are still running, they are released by the garbage
+        // collector.
+        this.channel.close();
+    }
+
+    private int getOffset(int slot)
+    {
+        return (slot % this.slotsPerPage) * this.stride;
+    }
+
+    private FloatBuffer getPage(int pageIndex) throws IOException
+    {
+        FloatBuffer[] currentPages = this.pages;
+        if (pageIndex < currentPages.length) {
+            return currentPages[pageIndex];
+        }
+
+        synchronized (this) {
+            FloatBuffer[] newPages = this.pages;
+            if (pageIndex >= newPages.length) {
+                long pageSize = (long) this.slotsPerPage * this.stride * Float.BYTES;
+                newPages = Arrays.copyOf(newPages, pageIndex + 1);
+                for (int i = this.pages.length; i <= pageIndex; i++) {
+                    // Mapping beyond the end of the file extends it.
+                    MappedByteBuffer mappedPage =
+                        this.channel.map(FileChannel.MapMode.READ_WRITE, i * pageSize, pageSize);
+                    mappedPage.order(ByteOrder.LITTLE_ENDIAN);
+                    this.mappedPages.add(mappedPage);
+                    newPages[i] = mappedPage.asFloatBuffer();
+                }
+                this.pages = newPages;
+            }
+            return newPages[pageIndex];
+        }
+    }
+}
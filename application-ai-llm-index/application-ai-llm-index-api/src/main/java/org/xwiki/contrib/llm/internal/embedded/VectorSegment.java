@@ -0,0 +1,755 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.llm.internal.embedded;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.IntPredicate;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+import org.apache.commons.io.FileUtils;
+import org.xwiki.contrib.llm.Chunk;
+import org.xwiki.contrib.llm.internal.SolrVectorUtils;
+import org.xwiki.contrib.llm.internal.embedded.HnswGraph.Neighbor;
+import org.xwiki.contrib.llm.openai.Context;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * The chunks of one collection in the embedded vector store. The embeddings are stored in a {@link MappedVectorFile},
+ * the metadata of the chunks is kept in memory and persisted in an append-only log of JSON lines that is replayed
+ * when the segment is loaded. Slots of replaced or deleted chunks are reclaimed by rewriting both files once they
+ * make up more than half of the segment.
+ * <p>
+ * Collections with more chunks than the exact search threshold are searched with an {@link HnswGraph} that is built in
+ * the background and then updated on every insertion, smaller collections and searches that the graph can't answer
+ * are answered by scoring all chunks.
+ *
+ * @version $Id$
+ * @since 0.6.3
+ */
+public class VectorSegment implements AutoCloseable
+{
+    private static final String HEADER_FILE = "segment.json";
+
+    private static final String VECTORS_FILE = "vectors-%d.bin";
+
+    private static final String LOG_FILE = "chunks-%d.log";
+
+    /**
+     * The minimum number of reclaimable slots or log entries before a segment is compacted.
+     */
+    private static final int MIN_COMPACTION_SIZE = 1000;
+
+    private static final Comparator<Neighbor> BY_SCORE = Comparator.comparingDouble(Neighbor::score);
+
+    /**
+     * The persisted properties of the segment.
+     *
+     * @param wiki the wiki of the collection
+     * @param collection the id of the collection
+     * @param dimensions the dimensions of the embeddings, {@code 0} as long as no embedding has been stored
+     * @param generation the generation of the vector and log files, incremented on every compaction
+     */
+    private record Header(String wiki, String collection, int dimensions, long generation)
+    {
+    }
+
+    /**
+     * An entry of the log, the chunk is {@code null} when the chunk has been deleted.
+     *
+     * @param documentId the id of the document of the chunk
+     * @param chunkIndex the index of the chunk in the document
+     * @param chunk the stored chunk or {@code null} if the chunk has been deleted
+     */
+    private record LogEntry(String documentId, int chunkIndex, ChunkRecord chunk)
+    {
+    }
+
+    private final Path directory;
+
+    private final String wiki;
+
+    private final String collection;
+
+    private final ObjectMapper objectMapper;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final AtomicBoolean graphBuilding = new AtomicBoolean();
+
+    private final Map<String, NavigableMap<Integer, ChunkRecord>> documents = new HashMap<>();
+
+    /**
+     * The chunk that uses each slot, {@code null} for free slots.
+     */
+    private ChunkRecord[] slots = new ChunkRecord[0];
+
+    private int nextSlot;
+
+    private int liveVectors;
+
+    private int chunkCount;
+
+    private int logEntries;
+
+    private int dimensions;
+
+    private long generation;
+
+    private MappedVectorFile vectors;
+
+    private FileChannel logChannel;
+
+    private Writer log;
+
+    private boolean dirty;
+
+    private HnswGraph graph;
+
+    private boolean closed;
+
+    private VectorSegment(Path directory, String wiki, String collection, ObjectMapper objectMapper)
+    {
+        this.directory = directory;
+        this.wiki = wiki;
+        this.collection = collection;
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * Create a new empty segment.
+     *
+     * @param directory the directory of the segment
+     * @param wiki the wiki of the collection
+     * @param collection the id of the collection
+     * @param objectMapper the object mapper for serializing the metadata
+     * @return the new segment
+     * @throws IOException if the files of the segment cannot be created
+     */
+    public static VectorSegment create(Path directory, String wiki, String collection, ObjectMapper objectMapper)
+        throws IOException
+    {
+        Files.createDirectories(directory);
+        VectorSegment segment = new VectorSegment(directory, wiki, collection, objectMapper);
+        segment.writeHeader();
+        segment.openLog();
+        return segment;
+    }
+
+    /**
+     * Load an existing segment.
+     *
+     * @param directory the directory of the segment
+     * @param objectMapper the object mapper for serializing the metadata
+     * @return the loaded segment
+     * @throws IOException if the files of the segment cannot be read
+     */
+    public static VectorSegment load(Path directory, ObjectMapper objectMapper) throws IOException
+    {
+        Header header = objectMapper.readValue(directory.resolve(HEADER_FILE).toFile(), Header.class);
+        VectorSegment segment = new VectorSegment(directory, header.wiki(), header.collection(), objectMapper);
+        segment.dimensions = header.dimensions();
+        segment.generation = header.generation();
+        segment.replayLog();
+        if (segment.dimensions > 0) {
+            segment.vectors = new MappedVectorFile(segment.getVectorsPath(segment.generation), segment.dimensions);
+            segment.vectors.mapSlots(segment.nextSlot);
+        }
+        segment.openLog();
+        return segment;
+    }
+
+    /**
+     * @return the wiki of the collection
+     */
+    public String getWiki()
+    {
+        return this.wiki;
+    }
+
+    /**
+     * @return the id of the collection
+     */
+    public String getCollection()
+    {
+        return this.collection;
+    }
+
+    /**
+     * Store chunks of the collection, replacing the chunks with the same document and index.
+     *
+     * @param chunks the chunks to store
+     * @return {@code false} if the chunks haven't been stored as the segment has been closed, e.g., because the
+     *     collection has been deleted concurrently
+     * @throws IOException if the chunks cannot be written
+     */
+    public boolean put(List<Chunk> chunks) throws IOException
+    {
+        Lock writeLock = this.lock.writeLock();
+        writeLock.lock();
+        try {
+            if (this.closed) {
+                return false;
+            }
+            for (Chunk chunk : chunks) {
+                put(chunk);
+            }
+            compactIfNeeded();
+            return true;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private void put(Chunk chunk) throws IOException
+    {
+        float[] embedding = chunk.getEmbeddingVector();
+        if (embedding != null && embedding.length != this.dimensions) {
+            // The embedding model has changed, the existing embeddings can't be compared to the new ones anymore.
+            compact(embedding.length);
+        }
+
+        ChunkRecord previous = getRecord(chunk.getDocumentID(), chunk.getChunkIndex());
+        int slot = -1;
+        boolean newSlot = false;
+        if (embedding != null) {
+            // Keep the slot when only the metadata of the chunk changed, e.g., its viewers.
+            if (previous != null && previous.getSlot() >= 0
+                && Arrays.equals(this.vectors.read(previous.getSlot()), embedding))
+            {
+                slot = previous.getSlot();
+            } else {
+                slot = this.nextSlot;
+                this.vectors.write(slot, embedding);
+                newSlot = true;
+            }
+        }
+
+        ChunkRecord chunkRecord = new ChunkRecord(chunk, slot);
+        writeEntry(new LogEntry(chunk.getDocumentID(), chunk.getChunkIndex(), chunkRecord));
+        if (newSlot && this.graph != null) {
+            this.graph.insert(slot);
+        }
+    }
+
+    /**
+     * @param documentId the id of the document
+     * @param startChunk the index of the first chunk to return
+     * @param endChunk the index of the first chunk to not return anymore
+     * @param chunkSupplier provides new chunks to fill
+     * @return the stored chunks of the document in the given range
+     */
+    public List<Chunk> getChunks(String documentId, int startChunk, int endChunk, Supplier<Chunk> chunkSupplier)
+    {
+        Lock readLock = this.lock.readLock();
+        readLock.lock();
+        try {
+            NavigableMap<Integer, ChunkRecord> chunks = this.documents.get(documentId);
+            if (chunks == null || this.closed) {
+                return List.of();
+            }
+
+            return chunks.subMap(startChunk, endChunk).values().stream()
+                .map(chunkRecord -> chunkRecord.toChunk(chunkSupplier.get(), this.wiki, this.collection,
+                    chunkRecord.getSlot() >= 0 ? this.vectors.read(chunkRecord.getSlot()) : null))
+                .toList();
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    /**
+     * Delete chunks of a document.
+     *
+     * @param documentId the id of the document
+     * @param startChunk the index of the first chunk to delete
+     * @param endChunk the index of the first chunk to not delete anymore
+     * @param storeHint the document store of the chunks to delete, {@code null} to delete chunks of any store
+     * @throws IOException if the deletion cannot be written
+     */
+    public void deleteChunks(String documentId, int startChunk, int endChunk, String storeHint) throws IOException
+    {
+        Lock writeLock = this.lock.writeLock();
+        writeLock.lock();
+        try {
+            NavigableMap<Integer, ChunkRecord> chunks = this.documents.get(documentId);
+            if (chunks != null && !this.closed) {
+                List<ChunkRecord> toDelete = chunks.subMap(startChunk, endChunk).values().stream()
+                    .filter(chunkRecord -> storeHint == null || storeHint.equals(chunkRecord.getStoreHint()))
+                    .toList();
+                for (ChunkRecord chunkRecord : toDelete) {
+                    writeEntry(new LogEntry(documentId, chunkRecord.getChunkIndex(), null));
+                }
+                compactIfNeeded();
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Delete all chunks that match the given predicate.
+     *
+     * @param predicate the predicate of the chunks to delete
+     * @throws IOException if the deletion cannot be written
+     */
+    public void deleteChunks(Predicate<ChunkRecord> predicate) throws IOException
+    {
+        Lock writeLock = this.lock.writeLock();
+        writeLock.lock();
+        try {
+            if (this.closed) {
+                return;
+            }
+            List<ChunkRecord> toDelete = this.documents.values().stream()
+                .flatMap(chunks -> chunks.values().stream())
+                .filter(predicate)
+                .toList();
+            for (ChunkRecord chunkRecord : toDelete) {
+                writeEntry(new LogEntry(chunkRecord.getDocumentId(), chunkRecord.getChunkIndex(), null));
+            }
+            compactIfNeeded();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * @param documentId the id of a document
+     * @return {@code true} if at least one chunk of the document is stored
+     */
+    public boolean hasDocument(String documentId)
+    {
+        Lock readLock = this.lock.readLock();
+        readLock.lock();
+        try {
+            return this.documents.containsKey(documentId);
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    /**
+     * @param documentIdPrefix the prefix of the ids of the documents to return
+     * @return the ids of the documents with the given prefix that have chunks with viewers
+     */
+    public List<String> getDocumentsWithViewers(String documentIdPrefix)
+    {
+        Lock readLock = this.lock.readLock();
+        readLock.lock();
+        try {
+            return this.documents.entrySet().stream()
+                .filter(entry -> entry.getKey().startsWith(documentIdPrefix))
+                .filter(entry -> entry.getValue().values().stream()
+                    .anyMatch(chunkRecord -> chunkRecord.getViewers() != null && !chunkRecord.getViewers().isEmpty()))
+                .map(Map.Entry::getKey)
+                .toList();
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    /**
+     * Search the chunks that are the most similar to the query.
+     *
+     * @param query the embedding of the query
+     * @param limit the maximum number of results
+     * @param exactSearchThreshold the maximum number of chunks for which all chunks are scored instead of searching
+     *     the graph
+     * @param beamWidth the number of candidates to consider when searching the graph
+     * @param principals the users and groups that the current user is or is member of, {@code null} to not filter
+     * @return the most similar chunks, sorted by descending score, the score is the cosine similarity scaled to
+     *     [0, 1] like the scores of Solr
+     */
+    public List<Context> search(float[] query, int limit, int exactSearchThreshold, int beamWidth,
+        Set<String> principals)
+    {
+        Lock readLock = this.lock.readLock();
+        readLock.lock();
+        try {
+            float[] normalizedQuery = SolrVectorUtils.normalize(query);
+            if (this.closed || this.vectors == null || query.length != this.dimensions || normalizedQuery == null) {
+                return List.of();
+            }
+
+            ChunkRecord[] currentSlots = this.slots;
+            IntPredicate accept = slot -> currentSlots[slot] != null && currentSlots[slot].isVisibleTo(principals);
+            List<Neighbor> neighbors = null;
+            if (this.graph != null && this.liveVectors > exactSearchThreshold) {
+                neighbors = this.graph.search(normalizedQuery, limit, beamWidth, accept);
+            }
+            // The graph might miss accepted chunks when few chunks are accepted, score all chunks in this case.
+            if (neighbors == null || neighbors.size() < limit) {
+                neighbors = scan(normalizedQuery, limit, accept);
+            }
+
+            return neighbors.stream()
+                .map(neighbor -> {
+                    ChunkRecord chunkRecord = currentSlots[neighbor.node()];
+                    return new Context(this.collection, chunkRecord.getDocumentId(), chunkRecord.getUrl(),
+                        chunkRecord.getContent(), (1.0 + neighbor.score()) / 2, null);
+                })
+                .toList();
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    private List<Neighbor> scan(float[] normalizedQuery, int limit, IntPredicate accept)
+    {
+        PriorityQueue<Neighbor> results = new PriorityQueue<>(limit + 1, BY_SCORE);
+        for (int slot = 0; slot < this.nextSlot; slot++) {
+            if (accept.test(slot)) {
+                float score = this.vectors.cosine(slot, normalizedQuery);
+                if (results.size() < limit || score > results.peek().score()) {
+                    results.add(new Neighbor(slot, score));
+                    if (results.size() > limit) {
+                        results.poll();
+                    }
+                }
+            }
+        }
+
+        List<Neighbor> result = new ArrayList<>(results);
+        result.sort(BY_SCORE.reversed());
+        return result;
+    }
+
+    /**
+     * @param exactSearchThreshold the maximum number of chunks for which all chunks are scored
+     * @return {@code true} if the segment is large enough to be searched with a graph that hasn't been built yet
+     */
+    public boolean needsGraph(int exactSearchThreshold)
+    {
+        Lock readLock = this.lock.readLock();
+        readLock.lock();
+        try {
+            return this.graph == null && this.liveVectors > exactSearchThreshold && !this.graphBuilding.get();
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    /**
+     * Build the graph of the segment. The graph is built without blocking searches or insertions, chunks that are
+     * inserted while building it are added once it has been built.
+     *
+     * @param maxConnections the maximum number of links of each node
+     * @param beamWidth the number of candidates that are considered when inserting a node
+     */
+    public void buildGraph(int maxConnections, int beamWidth)
+    {
+        if (!this.graphBuilding.compareAndSet(false, true)) {
+            return;
+        }
+
+        try {
+            MappedVectorFile graphVectors;
+            int graphSlots;
+            BitSet liveSlots = new BitSet();
+            Lock readLock = this.lock.readLock();
+            readLock.lock();
+            try {
+                graphVectors = this.vectors;
+                graphSlots = this.nextSlot;
+                for (int slot = 0; slot < graphSlots; slot++) {
+                    liveSlots.set(slot, this.slots[slot] != null);
+                }
+            } finally {
+                readLock.unlock();
+            }
+
+            if (graphVectors == null) {
+                return;
+            }
+
+            // The vectors of existing slots never change, only a compaction replaces the vector file.
+            HnswGraph newGraph = new HnswGraph(graphVectors, maxConnections, beamWidth);
+            liveSlots.stream().forEach(newGraph::insert);
+
+            Lock writeLock = this.lock.writeLock();
+            writeLock.lock();
+            try {
+                if (this.vectors == graphVectors && this.graph == null) {
+                    for (int slot = graphSlots; slot < this.nextSlot; slot++) {
+                        if (this.slots[slot] != null) {
+                            newGraph.insert(slot);
+                        }
+                    }
+                    this.graph = newGraph;
+                }
+            } finally {
+                writeLock.unlock();
+            }
+        } finally {
+            this.graphBuilding.set(false);
+        }
+    }
+
+    /**
+     * Write pending changes to the disk.
+     *
+     * @throws IOException if the changes cannot be written
+     */
+    public void flush() throws IOException
+    {
+        Lock writeLock = this.lock.writeLock();
+        writeLock.lock();
+        try {
+            if (this.dirty) {
+                // Write the vectors first so that the log never references vectors that haven't been written.
+                if (this.vectors != null) {
+                    this.vectors.force();
+                }
+                this.log.flush();
+                this.logChannel.force(false);
+                this.dirty = false;
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        Lock writeLock = this.lock.writeLock();
+        writeLock.lock();
+        try {
+            if (this.log != null) {
+                flush();
+                this.log.close();
+                this.log = null;
+            }
+            if (this.vectors != null) {
+                this.vectors.close();
+            }
+            this.closed = true;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Close the segment and delete all its files.
+     *
+     * @throws IOException if the files cannot be deleted
+     */
+    public void delete() throws IOException
+    {
+        close();
+        FileUtils.deleteDirectory(this.directory.toFile());
+    }
+
+    private ChunkRecord getRecord(String documentId, int chunkIndex)
+    {
+        NavigableMap<Integer, ChunkRecord> chunks = this.documents.get(documentId);
+        return chunks != null ? chunks.get(chunkIndex) : null;
+    }
+
+    private void writeEntry(LogEntry entry) throws IOException
+    {
+        this.log.write(this.objectMapper.writeValueAsString(entry));
+        this.log.write('\n');
+        this.dirty = true;
+        apply(entry);
+    }
+
+    private void apply(LogEntry entry)
+    {
+        this.logEntries++;
+        NavigableMap<Integer, ChunkRecord> chunks =
+            this.documents.computeIfAbsent(entry.documentId(), key -> new TreeMap<>());
+        ChunkRecord previous = entry.chunk() != null ? chunks.put(entry.chunkIndex(), entry.chunk())
+            : chunks.remove(entry.chunkIndex());
+        if (chunks.isEmpty()) {
+            this.documents.remove(entry.documentId());
+        }
+
+        if (previous != null) {
+            this.chunkCount--;
+            int previousSlot = previous.getSlot();
+            if (previousSlot >= 0 && this.slots[previousSlot] == previous) {
+                this.slots[previousSlot] = null;
+                this.liveVectors--;
+            }
+        }
+
+        if (entry.chunk() != null) {
+            this.chunkCount++;
+            int slot = entry.chunk().getSlot();
+            if (slot >= 0) {
+                if (slot >= this.slots.length) {
+                    this.slots = Arrays.copyOf(this.slots, Math.max(slot + 1, this.slots.length * 2));
+                }
+                this.slots[slot] = entry.chunk();
+                this.liveVectors++;
+                this.nextSlot = Math.max(this.nextSlot, slot + 1);
+            }
+        }
+    }
+
+    private void replayLog() throws IOException
+    {
+        Path logPath = getLogPath(this.generation);
+        if (Files.exists(logPath)) {
+            try (BufferedReader reader = Files.newBufferedReader(logPath, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    try {
+                        if (!line.isBlank()) {
+                            apply(this.objectMapper.readValue(line, LogEntry.class));
+                        }
+                    } catch (JsonProcessingException e) {
+                        // The last line is incomplete when the process stopped while writing it, skip it.
+                    }
+                }
+            }
+        }
+    }
+
+    private void openLog() throws IOException
+    {
+        this.logChannel = FileChannel.open(getLogPath(this.generation), StandardOpenOption.CREATE,
+            StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long size = this.logChannel.size();
+        if (size > 0) {
+            // Terminate an incomplete last line so that it doesn't corrupt the next entry.
+            ByteBuffer lastByte = ByteBuffer.allocate(1);
+            this.logChannel.read(lastByte, size - 1);
+            if (lastByte.get(0) != '\n') {
+                this.logChannel.write(ByteBuffer.wrap(new byte[] { '\n' }), size);
+            }
+        }
+        this.logChannel.position(this.logChannel.size());
+        this.log = new BufferedWriter(Channels.newWriter(this.logChannel, StandardCharsets.UTF_8));
+    }
+
+    private void compactIfNeeded() throws IOException
+    {
+        int freeSlots = this.nextSlot - this.liveVectors;
+        int obsoleteEntries = this.logEntries - this.chunkCount;
+        if ((freeSlots > MIN_COMPACTION_SIZE && freeSlots > this.liveVectors)
+            || (obsoleteEntries > MIN_COMPACTION_SIZE && obsoleteEntries > this.chunkCount))
+        {
+            compact(this.dimensions);
+        }
+    }
+
+    /**
+     * Rewrite the vectors and the log of the segment without free slots and obsolete entries. The new files are
+     * written next to the old ones and only used once the header references them so that a crash while compacting
+     * doesn't lose any data.
+     *
+     * @param newDimensions the dimensions of the embeddings after the compaction, embeddings with different dimensions
+     *     are discarded
+     */
+    private void compact(int newDimensions) throws IOException
+    {
+        long oldGeneration = this.generation;
+        MappedVectorFile oldVectors = this.vectors;
+        Writer oldLog = this.log;
+        long newGeneration = oldGeneration + 1;
+        MappedVectorFile newVectors =
+            newDimensions > 0 ? new MappedVectorFile(getVectorsPath(newGeneration), newDimensions) : null;
+
+        List<ChunkRecord> chunkRecords = this.documents.values().stream()
+            .flatMap(chunks -> chunks.values().stream())
+            .toList();
+        this.documents.clear();
+        this.slots = new ChunkRecord[0];
+        this.nextSlot = 0;
+        this.liveVectors = 0;
+        this.chunkCount = 0;
+        this.logEntries = 0;
+        this.graph = null;
+        this.generation = newGeneration;
+        this.dimensions = newDimensions;
+        this.vectors = newVectors;
+        openLog();
+
+        for (ChunkRecord chunkRecord : chunkRecords) {
+            int slot = -1;
+            if (chunkRecord.getSlot() >= 0 && oldVectors != null && oldVectors.getDimensions() == newDimensions) {
+                slot = this.nextSlot;
+                newVectors.write(slot, oldVectors.read(chunkRecord.getSlot()));
+            }
+            writeEntry(new LogEntry(chunkRecord.getDocumentId(), chunkRecord.getChunkIndex(),
+                chunkRecord.withSlot(slot)));
+        }
+        flush();
+        writeHeader();
+
+        oldLog.close();
+        if (oldVectors != null) {
+            oldVectors.close();
+        }
+        Files.deleteIfExists(getLogPath(oldGeneration));
+        // The old vectors might still be mapped, deleting them fails on some systems until they are unmapped.
+        getVectorsPath(oldGeneration).toFile().delete();
+    }
+
+    private void writeHeader() throws IOException
+    {
+        Path headerPath = this.directory.resolve(HEADER_FILE);
+        Path temporaryPath = this.directory.resolve(HEADER_FILE + ".tmp");
+        this.objectMapper.writeValue(temporaryPath.toFile(),
+            new Header(this.wiki, this.collection, this.dimensions, this.generation));
+        Files.move(temporaryPath, headerPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private Path getVectorsPath(long fileGeneration)
+    {
+        return this.directory.resolve(VECTORS_FILE.formatted(fileGeneration));
+    }
+
+    private Path getLogPath(long fileGeneration)
+    {
+        return this.directory.resolve(LOG_FILE.formatted(fileGeneration));
+    }
+}
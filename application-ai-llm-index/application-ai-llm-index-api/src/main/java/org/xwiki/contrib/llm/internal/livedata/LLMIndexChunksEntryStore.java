@@ -30,17 +30,16 @@ import javax.inject.Provider;
 import javax.inject.Singleton;
 
 import org.apache.commons.lang3.StringUtils;
-import org.apache.solr.client.solrj.SolrClient;
 import org.apache.solr.client.solrj.SolrQuery;
 import org.apache.solr.client.solrj.SolrServerException;
 import org.apache.solr.common.SolrDocumentList;
 import org.xwiki.component.annotation.Component;
 import org.xwiki.contrib.llm.internal.AiLLMSolrCoreInitializer;
+import org.xwiki.contrib.llm.internal.SolrClientManager;
 import org.xwiki.livedata.LiveData;
 import org.xwiki.livedata.LiveDataEntryStore;
 import org.xwiki.livedata.LiveDataException;
 import org.xwiki.livedata.LiveDataQuery;
-import org.xwiki.search.solr.Solr;
 import org.xwiki.search.solr.SolrException;
 import org.xwiki.search.solr.SolrUtils;
 import org.xwiki.security.authorization.ContextualAuthorizationManager;
@@ -69,7 +68,7 @@ public class LLMIndexChunksEntryStore implements LiveDataEntryStore
     private Provider<XWikiContext> contextProvider;
 
     @Inject
-    private Solr solr;
+    private SolrClientManager clientManager;
 
     @Inject
     private SolrUtils solrUtils;
@@ -90,7 +89,7 @@ public class LLMIndexChunksEntryStore implements LiveDataEntryStore
 
         Map<String, LLMIndexProperty> properties = this.propertiesProvider.get();
 
-        try (SolrClient client = this.solr.getCore(AiLLMSolrCoreInitializer.DEFAULT_AILLM_SOLR_CORE).getClient()) {
+        try {
             SolrQuery solrQuery = new SolrQuery();
 
             solrQuery.setStart(Math.toIntExact(query.getOffset()));
@@ -123,7 +122,7 @@ public class LLMIndexChunksEntryStore implements LiveDataEntryStore
 
             LiveData result = new LiveData();
 
-            SolrDocumentList results = client.query(solrQuery).getResults();
+            SolrDocumentList results = this.clientManager.query(solrQuery).getResults();
             result.setCount(results.getNumFound());
             result.getEntries().addAll(
                 results.stream().map(solrDocument ->
@@ -30,7 +30,7 @@ import javax.ws.rs.core.Response;
 import org.xwiki.component.annotation.Component;
 import org.xwiki.contrib.llm.Collection;
 import org.xwiki.contrib.llm.IndexException;
-import org.xwiki.contrib.llm.SolrConnector;
+import org.xwiki.contrib.llm.VectorStore;
 import org.xwiki.contrib.llm.internal.CollectionIndexingTaskConsumer;
 import org.xwiki.contrib.llm.rest.CollectionResource;
 import org.xwiki.contrib.llm.rest.JSONCollection;
@@ -62,7 +62,7 @@ public class DefaultCollectionResource extends AbstractCollectionResource implem
     private TaskManager taskManager;
 
     @Inject
-    private SolrConnector solrConnector;
+    private VectorStore vectorStore;
 
     @Override
     public JSONCollection getCollection(String wikiName, String collectionName)
@@ -148,7 +148,9 @@ public class DefaultCollectionResource extends AbstractCollectionResource implem
         }
 
         if (options.clean()) {
-            this.solrConnector.deleteChunksByCollection(wikiName, collectionName);
+            this.vectorStore.deleteChunksByCollection(wikiName, collectionName);
+            // The indexing task only indexes documents that aren't indexed yet, so the deletion must be visible.
+            this.vectorStore.flush();
         }
 
         this.taskManager.addTask(wikiName, collection.getDocumentId(), CollectionIndexingTaskConsumer.NAME);
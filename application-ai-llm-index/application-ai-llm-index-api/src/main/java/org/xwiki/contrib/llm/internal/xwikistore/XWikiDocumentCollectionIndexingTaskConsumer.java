@@ -22,7 +22,6 @@ package org.xwiki.contrib.llm.internal.xwikistore;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
-import java.util.stream.Collectors;
 
 import javax.inject.Inject;
 import javax.inject.Named;
@@ -32,8 +31,7 @@ import org.slf4j.Logger;
 import org.xwiki.component.annotation.Component;
 import org.xwiki.contrib.llm.Collection;
 import org.xwiki.contrib.llm.CollectionManager;
-import org.xwiki.contrib.llm.SolrConnector;
-import org.xwiki.contrib.llm.internal.AiLLMSolrCoreInitializer;
+import org.xwiki.contrib.llm.VectorStore;
 import org.xwiki.index.IndexException;
 import org.xwiki.index.TaskConsumer;
 import org.xwiki.index.TaskManager;
@@ -41,7 +39,6 @@ import org.xwiki.model.reference.DocumentReference;
 import org.xwiki.model.reference.EntityReferenceSerializer;
 import org.xwiki.model.reference.SpaceReference;
 import org.xwiki.model.reference.WikiReference;
-import org.xwiki.search.solr.SolrUtils;
 
 import com.xpn.xwiki.util.Util;
 
@@ -87,10 +84,7 @@ public class XWikiDocumentCollectionIndexingTaskConsumer implements TaskConsumer
     private EntityReferenceSerializer<String> withParametersEntityReferenceSerializer;
 
     @Inject
-    private SolrUtils solrUtils;
-
-    @Inject
-    private SolrConnector solrConnector;
+    private VectorStore vectorStore;
 
     @Override
     public void consume(DocumentReference documentReference, String version) throws IndexException
@@ -113,6 +107,8 @@ public class XWikiDocumentCollectionIndexingTaskConsumer implements TaskConsumer
                 this.helper.resolveSpaceReferences(collection.getDocumentSpaces(), collection.getDocumentReference());
             // Clear any documents not part of the spaces to index.
             cleanOtherDocuments(documentReference.getWikiReference().getName(), collectionId, spaceReferences);
+            // Commit pending updates as the check which documents need to be indexed relies on them.
+            this.vectorStore.flush();
             // Index all remaining documents.
             indexDocuments(collectionId, spaceReferences);
         } else if (collection != null) {
@@ -132,21 +128,14 @@ public class XWikiDocumentCollectionIndexingTaskConsumer implements TaskConsumer
 
     private void cleanOtherDocuments(String wiki, String collectionId, List<SpaceReference> spaceReferences)
     {
-        // Construct a Solr query to match all chunks whose documentId starts with one of the given spaceReferences.
-        if (spaceReferences.isEmpty()) {
-            // No spaces to keep - clear all documents from the collection.
-            this.solrConnector.deleteChunksByCollection(wiki, collectionId);
-        } else {
-            String query = spaceReferences.stream()
-                .map(this.entityReferenceSerializer::serialize)
-                .map(this.solrUtils::toFilterQueryString)
-                .map(filter -> filter + ".*")
-                .collect(Collectors.joining(" OR ", "(*:* -(" + AiLLMSolrCoreInitializer.FIELD_DOC_ID + ":(",
-                    // Also clean all chunks indexed with a different store hint.
-                    ") OR " + AiLLMSolrCoreInitializer.FIELD_STORE_HINT + ":" + XWikiDocumentStore.NAME + "))"));
-
-            this.solrConnector.deleteChunksByQuery(wiki, collectionId, query);
-        }
+        // Keep only the chunks of documents in the given spaces, the vector store deletes all chunks of the collection
+        // when there are no spaces to keep.
+        List<String> documentIdPrefixes = spaceReferences.stream()
+            .map(this.entityReferenceSerializer::serialize)
+            .map(space -> space + ".")
+            .toList();
+
+        this.vectorStore.deleteOtherDocuments(wiki, collectionId, XWikiDocumentStore.NAME, documentIdPrefixes);
     }
 
     private void indexDocuments(String collectionId, List<SpaceReference> spaceReferences) throws IndexException
@@ -168,7 +157,7 @@ public class XWikiDocumentCollectionIndexingTaskConsumer implements TaskConsumer
                     .toList();
 
                 Set<String> indexedDocuments =
-                    new HashSet<>(this.solrConnector.filterExistingDocuments(wikiReference.getName(), collectionId,
+                    new HashSet<>(this.vectorStore.filterExistingDocuments(wikiReference.getName(), collectionId,
                         documentIds));
 
                 documents.stream()
@@ -31,7 +31,7 @@ import org.xwiki.bridge.event.DocumentDeletedEvent;
 import org.xwiki.bridge.event.DocumentUpdatedEvent;
 import org.xwiki.component.annotation.Component;
 import org.xwiki.contrib.llm.Collection;
-import org.xwiki.contrib.llm.SolrConnector;
+import org.xwiki.contrib.llm.VectorStore;
 import org.xwiki.contrib.llm.internal.DefaultCollection;
 import org.xwiki.index.TaskManager;
 import org.xwiki.model.reference.EntityReferenceSerializer;
@@ -58,7 +58,7 @@ public class XWikiDocumentStoreEventListener extends AbstractLocalEventListener
     public static final String NAME = "org.xwiki.contrib.llm.internal.xwikistore.XWikiDocumentStoreEventListener";
 
     @Inject
-    private SolrConnector solrConnector;
+    private VectorStore vectorStore;
 
     @Inject
     private TaskManager taskManager;
@@ -102,7 +102,7 @@ public class XWikiDocumentStoreEventListener extends AbstractLocalEventListener
         // collections by store.
         if (event instanceof DocumentDeletedEvent) {
             String documentId = this.entityReferenceSerializer.serialize(document.getDocumentReferenceWithLocale());
-            this.solrConnector.deleteChunksByStoreHintAndDocId(XWikiDocumentStore.NAME, documentId);
+            this.vectorStore.deleteChunksByStoreHintAndDocId(XWikiDocumentStore.NAME, documentId);
         } else {
             // Queue an indexing task. The task itself will determine if this document is actually part of a collection.
             this.taskManager.addTask(wiki, document.getId(), XWikiDocumentDocumentIndexingTaskConsumer.NAME);
@@ -54,6 +54,7 @@ public class JSONCollection
     private int chunkingOverlapOffset;
     private List<String> documentSpaces;
     private boolean allowGuests;
+    private Boolean dedicatedIndex;
     private String queryGroups;
     private String rightsCheckMethod;
 
@@ -82,6 +83,7 @@ public class JSONCollection
         this.chunkingOverlapOffset = collection.getChunkingOverlapOffset();
         this.documentSpaces = collection.getDocumentSpaces();
         this.allowGuests = collection.getAllowGuests();
+        this.dedicatedIndex = collection.getDedicatedIndex();
         this.queryGroups = collection.getQueryGroups();
         this.rightsCheckMethod = collection.getRightsCheckMethod();
 
@@ -106,6 +108,7 @@ public class JSONCollection
         applyChunkingOverlapOffset(collection);
         applyDocumentSpaces(collection);
         applyAllowGuests(collection);
+        applyDedicatedIndex(collection);
         applyQueryGroups(collection);
         applyRightsCheckMethod(collection);
         if (StringUtils.isNotBlank(collection.getRightsCheckMethod())) {
@@ -166,6 +169,13 @@ public class JSONCollection
         collection.setAllowGuests(this.allowGuests);
     }
 
+    private void applyDedicatedIndex(Collection collection) throws IndexException
+    {
+        if (this.dedicatedIndex != null) {
+            collection.setDedicatedIndex(this.dedicatedIndex);
+        }
+    }
+
     private void applyQueryGroups(Collection collection) throws IndexException
     {
         if (this.queryGroups != null) {
@@ -260,6 +270,15 @@ public class JSONCollection
         return this.allowGuests;
     }
 
+    /**
+     * @return {@code true} if the collection is indexed in a dedicated vector index, {@code null} if not specified
+     * @since 0.6.3
+     */
+    public Boolean getDedicatedIndex()
+    {
+        return this.dedicatedIndex;
+    }
+
     /**
      * @return the list of groups that can query the collection
      */
@@ -340,6 +359,16 @@ public class JSONCollection
         this.allowGuests = allowGuests;
     }
 
+    /**
+     * @param dedicatedIndex {@code true} if the collection shall be indexed in a dedicated vector index, {@code null}
+     *     to keep the current setting
+     * @since 0.6.3
+     */
+    public void setDedicatedIndex(Boolean dedicatedIndex)
+    {
+        this.dedicatedIndex = dedicatedIndex;
+    }
+
     /**
      * @param queryGroups the list of groups that can query the collection
      */
@@ -379,6 +408,7 @@ public class JSONCollection
             .append(getChunkingMethod(), that.getChunkingMethod())
             .append(getDocumentSpaces(), that.getDocumentSpaces())
             .append(getAllowGuests(), that.getAllowGuests())
+            .append(getDedicatedIndex(), that.getDedicatedIndex())
             .append(getQueryGroups(), that.getQueryGroups())
             .append(getRightsCheckMethod(), that.getRightsCheckMethod())
             .isEquals();
@@ -395,6 +425,7 @@ public class JSONCollection
             .append(getChunkingOverlapOffset())
             .append(getDocumentSpaces())
             .append(getAllowGuests())
+            .append(getDedicatedIndex())
             .append(getQueryGroups())
             .append(getRightsCheckMethod())
             .toHashCode();
@@ -412,6 +443,7 @@ public class JSONCollection
             .append("chunkingOverlapOffset", this.chunkingOverlapOffset)
             .append("documentSpaces", this.documentSpaces)
             .append("allowGuests", this.allowGuests)
+            .append("dedicatedIndex", this.dedicatedIndex)
             .append("queryGroups", this.queryGroups)
             .append("rightsCheckMethod", this.rightsCheckMethod)
             .toString();
@@ -37,6 +37,7 @@ import org.xwiki.contrib.llm.DocumentStore;
 import org.xwiki.contrib.llm.IndexException;
 import org.xwiki.contrib.llm.IndexTaskConsumer;
 import org.xwiki.contrib.llm.authorization.AuthorizationManagerBuilder;
+import org.xwiki.contrib.llm.internal.EmbeddingCache;
 import org.xwiki.contrib.llm.internal.xwikistore.XWikiDocumentDocumentIndexingTaskConsumer;
 import org.xwiki.contrib.llm.openai.Context;
 import org.xwiki.index.TaskManager;
@@ -74,6 +75,9 @@ public class CollectionManagerScriptService implements ScriptService
     @Inject
     private TaskManager taskManager;
 
+    @Inject
+    private EmbeddingCache embeddingCache;
+
     /**
      * Creates a new collection.
      *
@@ -217,4 +221,14 @@ public class CollectionManagerScriptService implements ScriptService
         return this.taskManager.getQueueSize(IndexTaskConsumer.NAME)
             + this.taskManager.getQueueSize(XWikiDocumentDocumentIndexingTaskConsumer.NAME);
     }
+
+    /**
+     * @return the hit and miss statistics of the cache of query embeddings
+     * @since 0.6.3
+     */
+    @Unstable
+    public EmbeddingCache.Statistics getEmbeddingCacheStatistics()
+    {
+        return this.embeddingCache.getStatistics();
+    }
 }
@@ -67,7 +67,7 @@ class IndexWorkerTest
     private TaskManager taskManager;
 
     @MockComponent
-    private SolrConnector solrConnector;
+    private VectorStore vectorStore;
 
     @BeforeEach
     void setUp(MockitoComponentManager componentManager)
@@ -113,7 +113,7 @@ class IndexWorkerTest
 
         verifyNoInteractions(this.taskManager);
 
-        verify(this.solrConnector)
+        verify(this.vectorStore)
             .deleteChunksByDocIdAndStore(WIKI_NAME, COLLECTION, DOCUMENT_ID, InternalDocumentStore.NAME);
     }
 
@@ -25,14 +25,15 @@ import java.util.Set;
 
 import javax.inject.Named;
 
-import org.apache.solr.client.solrj.SolrServerException;
 import org.junit.jupiter.api.Test;
 import org.xwiki.component.manager.ComponentLookupException;
 import org.xwiki.contrib.llm.authorization.AuthorizationManager;
 import org.xwiki.contrib.llm.authorization.AuthorizationManagerBuilder;
 import org.xwiki.contrib.llm.Collection;
 import org.xwiki.contrib.llm.IndexException;
+import org.xwiki.contrib.llm.SearchParameters;
 import org.xwiki.contrib.llm.SolrConnector;
+import org.xwiki.contrib.llm.VectorStore;
 import org.xwiki.contrib.llm.openai.Context;
 import org.xwiki.model.reference.DocumentReference;
 import org.xwiki.query.Query;
@@ -59,6 +60,7 @@ import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -95,6 +97,15 @@ class DefaultCollectionManagerTest
     @MockComponent
     private SolrConnector solrConnector;
 
+    @MockComponent
+    private VectorStore vectorStore;
+
+    @MockComponent
+    private AiLLMIndexConfiguration configuration;
+
+    @MockComponent
+    private SearchDenialStatistics denialStatistics;
+
     @Test
     void createCollection() throws Exception
     {
@@ -175,7 +186,7 @@ class DefaultCollectionManagerTest
     }
 
     @Test
-    void similaritySearch() throws QueryException, ComponentLookupException, IndexException, SolrServerException
+    void similaritySearch() throws QueryException, ComponentLookupException, IndexException
     {
         XWikiContext context = this.oldcore.getXWikiContext();
         context.setWikiId(WIKI_NAME);
@@ -214,7 +225,7 @@ class DefaultCollectionManagerTest
         when(authorization2.canView(Set.of("forbidden2", "allowed4")))
             .thenReturn(Map.of("forbidden2", false, "allowed4", true));
 
-        when(this.solrConnector.similaritySearch(any(), any(), anyInt())).thenReturn(contextList);
+        when(this.vectorStore.similaritySearch(any(), any(), anyInt(), any(), any())).thenReturn(contextList);
 
         List<Context> result =
             this.collectionManager.similaritySearch("query", List.of(COLLECTION_ID, collectionId2), 10);
@@ -222,7 +233,46 @@ class DefaultCollectionManagerTest
         List<Context> expected = List.of(contextList.get(0), contextList.get(1), contextList.get(3));
         assertEquals(expected, result);
 
-        verify(this.solrConnector).similaritySearch("query", embeddingModelMap, 10);
+        verify(this.vectorStore).similaritySearch(eq("query"), eq(embeddingModelMap), eq(10), any(),
+            eq(SearchParameters.SIMILARITY));
+    }
+
+    @Test
+    void similaritySearchFetchesMoreResultsWhenResultsAreDenied() throws Exception
+    {
+        XWikiContext context = this.oldcore.getXWikiContext();
+        context.setWikiId(WIKI_NAME);
+
+        mockCollectionsQuery(List.of());
+        createAndSaveCollection(COLLECTION_ID, "testEmbeddingModel");
+        when(this.customRightsAuthorizationManagerBuilder.getConfigurationClassReference())
+            .thenReturn(Collection.XCLASS_REFERENCE);
+        AuthorizationManager authorizationManager = mock();
+        when(this.customRightsAuthorizationManagerBuilder.build(any())).thenReturn(authorizationManager);
+        when(this.configuration.getMaxOverFetchMultiplier()).thenReturn(4);
+        when(this.configuration.getOverFetchTimeBudget()).thenReturn(60000L);
+
+        List<Context> contextList = List.of(
+            new Context(COLLECTION_ID, "forbidden1", "url1", "content1", 0.9, null),
+            new Context(COLLECTION_ID, "allowed2", "url2", "content2", 0.8, null),
+            new Context(COLLECTION_ID, "forbidden3", "url3", "content3", 0.7, null),
+            new Context(COLLECTION_ID, "allowed4", "url4", "content4", 0.6, null),
+            new Context(COLLECTION_ID, "allowed5", "url5", "content5", 0.5, null)
+        );
+        when(this.vectorStore.similaritySearch(any(), any(), anyInt(), any(), any()))
+            .thenAnswer(invocation -> contextList.subList(0, invocation.<Integer>getArgument(2)));
+        when(authorizationManager.canView(Set.of("forbidden1", "allowed2")))
+            .thenReturn(Map.of("forbidden1", false, "allowed2", true));
+        // Only the new results need to be checked.
+        when(authorizationManager.canView(Set.of("forbidden3", "allowed4")))
+            .thenReturn(Map.of("forbidden3", false, "allowed4", true));
+
+        List<Context> result = this.collectionManager.similaritySearch("query", List.of(COLLECTION_ID), 2);
+
+        assertEquals(List.of(contextList.get(1), contextList.get(3)), result);
+        verify(this.vectorStore).similaritySearch(eq("query"), any(), eq(2), any(), any());
+        verify(this.vectorStore).similaritySearch(eq("query"), any(), eq(4), any(), any());
+        verify(this.denialStatistics, times(2)).record(WIKI_NAME, COLLECTION_ID, 2, 1);
     }
 
     private void createAndSaveCollection(String collectionId, String embeddingModel)
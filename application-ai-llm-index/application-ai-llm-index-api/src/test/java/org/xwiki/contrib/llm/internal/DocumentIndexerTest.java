@@ -0,0 +1,185 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.llm.internal;
+
+import java.util.List;
+
+import javax.inject.Provider;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.xwiki.contrib.llm.Chunk;
+import org.xwiki.contrib.llm.ChunkingUtils;
+import org.xwiki.contrib.llm.Collection;
+import org.xwiki.contrib.llm.CollectionManager;
+import org.xwiki.contrib.llm.Document;
+import org.xwiki.contrib.llm.DocumentStore;
+import org.xwiki.contrib.llm.EmbeddingModel;
+import org.xwiki.contrib.llm.EmbeddingsUtils;
+import org.xwiki.contrib.llm.IndexException;
+import org.xwiki.contrib.llm.VectorStore;
+import org.xwiki.contrib.llm.internal.authorization.XWikiViewersResolver;
+import org.xwiki.test.junit5.mockito.ComponentTest;
+import org.xwiki.test.junit5.mockito.InjectMockComponents;
+import org.xwiki.test.junit5.mockito.MockComponent;
+
+import com.xpn.xwiki.XWikiContext;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Component test for {@link DocumentIndexer}.
+ *
+ * @version $Id$
+ */
+@ComponentTest
+class DocumentIndexerTest
+{
+    private static final String WIKI = "xwiki";
+
+    private static final String COLLECTION = "collection";
+
+    private static final String DOCUMENT = "document";
+
+    private static final String MODEL = "model";
+
+    @InjectMockComponents
+    private DocumentIndexer documentIndexer;
+
+    @MockComponent
+    private CollectionManager collectionManager;
+
+    @MockComponent
+    private VectorStore vectorStore;
+
+    @MockComponent
+    private Provider<XWikiContext> contextProvider;
+
+    @MockComponent
+    private EmbeddingsUtils embeddingsUtils;
+
+    @MockComponent
+    private ChunkingUtils chunkingUtils;
+
+    @MockComponent
+    private XWikiViewersResolver viewersResolver;
+
+    private Collection collection;
+
+    private Document document;
+
+    @BeforeEach
+    void setUp() throws Exception
+    {
+        when(this.contextProvider.get()).thenReturn(mock(XWikiContext.class));
+        this.collection = mock(Collection.class);
+        when(this.collectionManager.getCollection(COLLECTION)).thenReturn(this.collection);
+        DocumentStore documentStore = mock(DocumentStore.class);
+        when(this.collection.getDocumentStore()).thenReturn(documentStore);
+        this.document = mock(Document.class);
+        when(documentStore.getDocument(DOCUMENT)).thenReturn(this.document);
+        when(this.collection.getEmbeddingModel()).thenReturn(MODEL);
+        when(this.embeddingsUtils.getMaximumNumberOfTexts(any(), any())).thenReturn(10);
+        when(this.embeddingsUtils.getDimensions(any(), any())).thenReturn(1);
+    }
+
+    @Test
+    void indexDocumentEmbedsAndStoresTheChunks() throws Exception
+    {
+        Chunk chunk = chunk("content");
+        List<Chunk> chunks = List.of(chunk);
+        when(this.chunkingUtils.chunkDocument(this.collection, this.document)).thenReturn(chunks);
+        float[] embedding = { 1.0f };
+        when(this.embeddingsUtils.computeEmbeddingVectors(List.of("content"), MODEL, null,
+            EmbeddingModel.EmbeddingPurpose.INDEX)).thenReturn(List.of(embedding));
+
+        this.documentIndexer.indexDocument(WIKI, COLLECTION, DOCUMENT);
+
+        assertSame(embedding, chunk.getEmbeddingVector());
+        InOrder inOrder = inOrder(this.vectorStore);
+        inOrder.verify(this.vectorStore).storeChunks(chunks);
+        inOrder.verify(this.vectorStore).deleteChunksByIndex(WIKI, COLLECTION, DOCUMENT, 1);
+    }
+
+    @Test
+    void indexDocumentStoresEmbeddingErrors() throws Exception
+    {
+        Chunk chunk = chunk("content");
+        List<Chunk> chunks = List.of(chunk);
+        when(this.chunkingUtils.chunkDocument(this.collection, this.document)).thenReturn(chunks);
+        when(this.embeddingsUtils.computeEmbeddingVectors(anyList(), any(), any(), any()))
+            .thenThrow(new IndexException("Model unavailable"));
+
+        this.documentIndexer.indexDocument(WIKI, COLLECTION, DOCUMENT);
+
+        assertNull(chunk.getEmbeddingVector());
+        assertEquals("Error computing the embedding: IndexException: Model unavailable", chunk.getErrorMessage());
+        verify(this.vectorStore).storeChunks(chunks);
+    }
+
+    @Test
+    void indexDocumentRethrowsStoreFailures() throws Exception
+    {
+        List<Chunk> chunks = List.of(chunk("content"));
+        when(this.chunkingUtils.chunkDocument(this.collection, this.document)).thenReturn(chunks);
+        when(this.embeddingsUtils.computeEmbeddingVectors(anyList(), any(), any(), any()))
+            .thenReturn(List.of(new float[] { 1.0f }));
+        IndexException storeException = new IndexException("Store unavailable");
+        doThrow(storeException).when(this.vectorStore).storeChunks(chunks);
+
+        assertSame(storeException, assertThrows(IndexException.class,
+            () -> this.documentIndexer.indexDocument(WIKI, COLLECTION, DOCUMENT)));
+        verify(this.vectorStore, never()).deleteChunksByIndex(WIKI, COLLECTION, DOCUMENT, 1);
+    }
+
+    @Test
+    void indexDocumentRethrowsChunkingFailures() throws Exception
+    {
+        IndexException chunkingException = new IndexException("Chunking failed");
+        when(this.chunkingUtils.chunkDocument(this.collection, this.document)).thenThrow(chunkingException);
+
+        assertSame(chunkingException, assertThrows(IndexException.class,
+            () -> this.documentIndexer.indexDocument(WIKI, COLLECTION, DOCUMENT)));
+    }
+
+    private static Chunk chunk(String content)
+    {
+        Chunk chunk = new Chunk();
+        chunk.setWiki(WIKI);
+        chunk.setCollection(COLLECTION);
+        chunk.setDocumentID(DOCUMENT);
+        chunk.setChunkIndex(0);
+        chunk.setContent(content);
+        chunk.computeId();
+        return chunk;
+    }
+}
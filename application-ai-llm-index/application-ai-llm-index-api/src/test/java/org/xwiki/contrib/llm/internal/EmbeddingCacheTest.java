@@ -0,0 +1,119 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.llm.internal;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.xwiki.contrib.llm.EmbeddingModel;
+import org.xwiki.test.junit5.mockito.ComponentTest;
+import org.xwiki.test.junit5.mockito.InjectMockComponents;
+import org.xwiki.test.junit5.mockito.MockComponent;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Component test for {@link EmbeddingCache}.
+ *
+ * @version $Id$
+ */
+@ComponentTest
+class EmbeddingCacheTest
+{
+    private static final String WIKI = "wiki";
+
+    private static final String MODEL_ID = "model";
+
+    private static final EmbeddingModel.EmbeddingPurpose QUERY = EmbeddingModel.EmbeddingPurpose.QUERY;
+
+    @InjectMockComponents
+    private EmbeddingCache cache;
+
+    @MockComponent
+    private AiLLMIndexConfiguration configuration;
+
+    private final EmbeddingModel model = mock();
+
+    @BeforeEach
+    void setUp()
+    {
+        when(this.configuration.getEmbeddingCacheSize()).thenReturn(1024L * 1024);
+        when(this.configuration.getEmbeddingCacheTimeToLive()).thenReturn(3600L);
+    }
+
+    @Test
+    void hitWithNormalizedText()
+    {
+        float[] embedding = { 1, 2, 3 };
+        assertNull(this.cache.get(WIKI, MODEL_ID, this.model, QUERY, "What is XWiki?"));
+        this.cache.put(WIKI, MODEL_ID, this.model, QUERY, "What is XWiki?", embedding);
+
+        assertSame(embedding, this.cache.get(WIKI, MODEL_ID, this.model, QUERY, "  What  is\nXWiki? "));
+        assertNull(this.cache.get("otherWiki", MODEL_ID, this.model, QUERY, "What is XWiki?"));
+        assertNull(this.cache.get(WIKI, MODEL_ID, this.model, EmbeddingModel.EmbeddingPurpose.INDEX,
+            "What is XWiki?"));
+
+        EmbeddingCache.Statistics statistics = this.cache.getStatistics();
+        assertEquals(1, statistics.hits());
+        assertEquals(3, statistics.misses());
+        assertEquals(1, statistics.size());
+    }
+
+    @Test
+    void evictOnModelChange()
+    {
+        this.cache.put(WIKI, MODEL_ID, this.model, QUERY, "text", new float[] { 1 });
+
+        assertNull(this.cache.get(WIKI, MODEL_ID, mock(), QUERY, "text"));
+        assertNull(this.cache.get(WIKI, MODEL_ID, this.model, QUERY, "text"));
+        assertEquals(0, this.cache.getStatistics().size());
+        assertEquals(0, this.cache.getStatistics().bytes());
+    }
+
+    @Test
+    void expireAfterTimeToLive()
+    {
+        when(this.configuration.getEmbeddingCacheTimeToLive()).thenReturn(-1L);
+        this.cache.put(WIKI, MODEL_ID, this.model, QUERY, "text", new float[] { 1 });
+
+        assertNull(this.cache.get(WIKI, MODEL_ID, this.model, QUERY, "text"));
+        assertEquals(1, this.cache.getStatistics().evictions());
+    }
+
+    @Test
+    void evictLeastRecentlyUsedWhenFull()
+    {
+        // Each entry takes a bit more than 4000 bytes, so only two of them fit.
+        when(this.configuration.getEmbeddingCacheSize()).thenReturn(9000L);
+        this.cache.put(WIKI, MODEL_ID, this.model, QUERY, "first", new float[1000]);
+        this.cache.put(WIKI, MODEL_ID, this.model, QUERY, "second", new float[1000]);
+        // Access the first entry so the second one is the least recently used one.
+        this.cache.get(WIKI, MODEL_ID, this.model, QUERY, "first");
+        this.cache.put(WIKI, MODEL_ID, this.model, QUERY, "third", new float[1000]);
+
+        assertNull(this.cache.get(WIKI, MODEL_ID, this.model, QUERY, "second"));
+        assertEquals(1000, this.cache.get(WIKI, MODEL_ID, this.model, QUERY, "first").length);
+        assertEquals(1000, this.cache.get(WIKI, MODEL_ID, this.model, QUERY, "third").length);
+        assertEquals(2, this.cache.getStatistics().size());
+    }
+}
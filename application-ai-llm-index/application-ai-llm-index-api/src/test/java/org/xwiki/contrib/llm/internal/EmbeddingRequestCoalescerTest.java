@@ -0,0 +1,165 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.llm.internal;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.xwiki.contrib.llm.EmbeddingModel;
+import org.xwiki.contrib.llm.IndexException;
+import org.xwiki.test.junit5.mockito.ComponentTest;
+import org.xwiki.test.junit5.mockito.InjectMockComponents;
+import org.xwiki.test.junit5.mockito.MockComponent;
+import org.xwiki.user.UserReference;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Component test for {@link EmbeddingRequestCoalescer}.
+ *
+ * @version $Id$
+ */
+@ComponentTest
+class EmbeddingRequestCoalescerTest
+{
+    private static final String WIKI = "xwiki";
+
+    private static final String MODEL_ID = "model";
+
+    private static final long TIMEOUT = 10;
+
+    @InjectMockComponents
+    private EmbeddingRequestCoalescer coalescer;
+
+    @MockComponent
+    private AiLLMIndexConfiguration configuration;
+
+    private EmbeddingModel model;
+
+    private final List<List<String>> batches = new CopyOnWriteArrayList<>();
+
+    @BeforeEach
+    void setUp()
+    {
+        this.model = mock();
+        when(this.model.getMaximumParallelism()).thenReturn(2);
+        // Use a long window so that only a full batch or the expiry of the window can trigger the request.
+        when(this.configuration.getEmbeddingBatchWindow()).thenReturn(TimeUnit.SECONDS.toMillis(TIMEOUT));
+    }
+
+    @Test
+    void combinesConcurrentRequests() throws Exception
+    {
+        UserReference user = mock();
+
+        CompletableFuture<float[]> first = embedAsync(user, "a", this::embedLengths);
+        CompletableFuture<float[]> second = embedAsync(user, "bb", this::embedLengths);
+
+        assertArrayEquals(new float[] { 1 }, first.get(TIMEOUT, TimeUnit.SECONDS));
+        assertArrayEquals(new float[] { 2 }, second.get(TIMEOUT, TimeUnit.SECONDS));
+        assertEquals(1, this.batches.size());
+        assertEquals(2, this.batches.get(0).size());
+    }
+
+    @Test
+    void doesNotCombineRequestsOfDifferentUsers() throws Exception
+    {
+        when(this.configuration.getEmbeddingBatchWindow()).thenReturn(100L);
+
+        CompletableFuture<float[]> first = embedAsync(mock(), "a", this::embedLengths);
+        CompletableFuture<float[]> second = embedAsync(mock(), "bb", this::embedLengths);
+
+        assertArrayEquals(new float[] { 1 }, first.get(TIMEOUT, TimeUnit.SECONDS));
+        assertArrayEquals(new float[] { 2 }, second.get(TIMEOUT, TimeUnit.SECONDS));
+        assertEquals(List.of(List.of("a"), List.of("bb")),
+            this.batches.stream().sorted((a, b) -> a.get(0).compareTo(b.get(0))).toList());
+    }
+
+    @Test
+    void failureFailsAllRequestsOfTheBatch() throws Exception
+    {
+        UserReference user = mock();
+        IndexException failure = new IndexException("Rejected text");
+
+        CompletableFuture<float[]> first = embedAsync(user, "a", texts -> {
+            throw failure;
+        });
+        CompletableFuture<float[]> second = embedAsync(user, "bb", texts -> {
+            throw failure;
+        });
+
+        assertSame(failure, assertThrows(ExecutionException.class,
+            () -> first.get(TIMEOUT, TimeUnit.SECONDS)).getCause());
+        assertSame(failure, assertThrows(ExecutionException.class,
+            () -> second.get(TIMEOUT, TimeUnit.SECONDS)).getCause());
+    }
+
+    @Test
+    void errorDoesNotBlockOtherRequests() throws Exception
+    {
+        UserReference user = mock();
+        EmbeddingRequestCoalescer.BatchEmbedder failingEmbedder = texts -> {
+            throw new AssertionError("Model crashed");
+        };
+
+        CompletableFuture<float[]> first = embedAsync(user, "a", failingEmbedder);
+        CompletableFuture<float[]> second = embedAsync(user, "bb", failingEmbedder);
+
+        // The request that computed the embeddings gets the error, the other one must not wait forever.
+        List<Throwable> causes = List.of(
+            assertThrows(ExecutionException.class, () -> first.get(TIMEOUT, TimeUnit.SECONDS)).getCause(),
+            assertThrows(ExecutionException.class, () -> second.get(TIMEOUT, TimeUnit.SECONDS)).getCause());
+        assertEquals(1, causes.stream().filter(AssertionError.class::isInstance).count());
+        assertInstanceOf(IllegalStateException.class,
+            causes.stream().filter(cause -> !(cause instanceof AssertionError)).findFirst().orElseThrow());
+    }
+
+    private List<float[]> embedLengths(List<String> texts)
+    {
+        this.batches.add(List.copyOf(texts));
+        return texts.stream().map(text -> new float[] { text.length() }).toList();
+    }
+
+    private CompletableFuture<float[]> embedAsync(UserReference user, String text,
+        EmbeddingRequestCoalescer.BatchEmbedder embedder)
+    {
+        CompletableFuture<float[]> result = new CompletableFuture<>();
+        Thread thread = new Thread(() -> {
+            try {
+                result.complete(this.coalescer.embed(WIKI, MODEL_ID, this.model, user, text, embedder));
+            } catch (Throwable e) {
+                result.completeExceptionally(e);
+            }
+        });
+        thread.start();
+        return result;
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.llm.internal;
+
+import java.io.Serializable;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.xwiki.context.Execution;
+import org.xwiki.context.ExecutionContextManager;
+import org.xwiki.context.concurrent.ContextStoreManager;
+import org.xwiki.test.annotation.BeforeComponent;
+import org.xwiki.test.junit5.mockito.ComponentTest;
+import org.xwiki.test.junit5.mockito.InjectMockComponents;
+import org.xwiki.test.junit5.mockito.MockComponent;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Component test for {@link SimilaritySearchExecutor}.
+ *
+ * @version $Id$
+ */
+@ComponentTest
+class SimilaritySearchExecutorTest
+{
+    private static final Map<String, Serializable> CONTEXT_STORE = Map.of("wiki", "subwiki");
+
+    @InjectMockComponents
+    private SimilaritySearchExecutor searchExecutor;
+
+    @MockComponent
+    private AiLLMIndexConfiguration configuration;
+
+    @MockComponent
+    private ContextStoreManager contextStoreManager;
+
+    @MockComponent
+    private ExecutionContextManager executionContextManager;
+
+    @MockComponent
+    private Execution execution;
+
+    @BeforeComponent
+    void beforeComponent()
+    {
+        when(this.configuration.getSimilaritySearchThreads()).thenReturn(2);
+    }
+
+    @BeforeEach
+    void setUp() throws Exception
+    {
+        when(this.contextStoreManager.save(any())).thenReturn(CONTEXT_STORE);
+    }
+
+    @Test
+    void resultsInOrderOfTasksAndInContext() throws Exception
+    {
+        List<Callable<String>> tasks = List.of(
+            () -> {
+                Thread.sleep(50);
+                return "slow";
+            },
+            () -> "fast",
+            () -> "third");
+
+        assertEquals(List.of("slow", "fast", "third"), this.searchExecutor.invokeAll(tasks, 10, TimeUnit.SECONDS));
+
+        verify(this.contextStoreManager, atLeastOnce()).restore(CONTEXT_STORE);
+        verify(this.execution, atLeastOnce()).removeContext();
+    }
+
+    @Test
+    void failedAndTimedOutTasksAreSkipped() throws Exception
+    {
+        CountDownLatch interrupted = new CountDownLatch(1);
+        List<Callable<String>> tasks = List.of(
+            () -> {
+                throw new IllegalStateException("Embedding model not available");
+            },
+            () -> {
+                try {
+                    Thread.sleep(TimeUnit.MINUTES.toMillis(1));
+                } catch (InterruptedException e) {
+                    interrupted.countDown();
+                }
+                return "too late";
+            },
+            () -> "result");
+
+        assertEquals(List.of("result"), this.searchExecutor.invokeAll(tasks, 200, TimeUnit.MILLISECONDS));
+        // The task that didn't complete in time is cancelled.
+        assertTrue(interrupted.await(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void singleTaskRunsInCurrentThread() throws Exception
+    {
+        Thread currentThread = Thread.currentThread();
+        List<Callable<Thread>> tasks = List.of(Thread::currentThread);
+
+        assertEquals(List.of(currentThread), this.searchExecutor.invokeAll(tasks, 1, TimeUnit.SECONDS));
+
+        verify(this.contextStoreManager, never()).save(any());
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.llm.internal;
+
+import java.util.List;
+
+import org.apache.solr.client.solrj.SolrClient;
+import org.apache.solr.client.solrj.request.UpdateRequest;
+import org.apache.solr.common.SolrInputDocument;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.xwiki.test.junit5.mockito.ComponentTest;
+import org.xwiki.test.junit5.mockito.InjectMockComponents;
+import org.xwiki.test.junit5.mockito.MockComponent;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Component test for {@link SolrCommitCoordinator}.
+ *
+ * @version $Id$
+ */
+@ComponentTest
+class SolrCommitCoordinatorTest
+{
+    private static final int COMMIT_WITHIN = 500;
+
+    @InjectMockComponents
+    private SolrCommitCoordinator commitCoordinator;
+
+    @MockComponent
+    private SolrClientManager clientManager;
+
+    @MockComponent
+    private AiLLMIndexConfiguration configuration;
+
+    private SolrClient client;
+
+    @BeforeEach
+    void setUp() throws Exception
+    {
+        this.client = mock();
+        when(this.clientManager.executeIndexing(any())).thenAnswer(invocation ->
+            invocation.<SolrClientManager.SolrClientOperation<?>>getArgument(0).apply(this.client));
+        when(this.configuration.getCommitWithin()).thenReturn(COMMIT_WITHIN);
+        when(this.configuration.getSoftCommitBatchSize()).thenReturn(3);
+    }
+
+    @Test
+    void addUsesCommitWithin() throws Exception
+    {
+        List<SolrInputDocument> documents = List.of(new SolrInputDocument());
+
+        this.commitCoordinator.add(documents);
+
+        verify(this.client).add(documents, COMMIT_WITHIN);
+        verify(this.client, never()).commit();
+        verify(this.client, never()).commit(anyBoolean(), anyBoolean(), anyBoolean());
+    }
+
+    @Test
+    void softCommitWhenBatchIsFull() throws Exception
+    {
+        List<SolrInputDocument> documents = List.of(new SolrInputDocument(), new SolrInputDocument());
+
+        this.commitCoordinator.add(documents);
+        verify(this.client, never()).commit(anyBoolean(), anyBoolean(), anyBoolean());
+
+        this.commitCoordinator.deleteByQuery("docId:test");
+
+        verify(this.client).deleteByQuery("docId:test", COMMIT_WITHIN);
+        verify(this.client).commit(false, false, true);
+    }
+
+    @Test
+    void flushOnlyCommitsPendingUpdates() throws Exception
+    {
+        this.commitCoordinator.flush();
+        verify(this.client, never()).commit(anyBoolean(), anyBoolean());
+
+        this.commitCoordinator.deleteById("chunk");
+        this.commitCoordinator.flush();
+        this.commitCoordinator.flush();
+
+        verify(this.client).deleteById("chunk", COMMIT_WITHIN);
+        verify(this.client).commit(true, true);
+    }
+
+    @Test
+    void flushAfterHardCommitOpensSearcher() throws Exception
+    {
+        when(this.configuration.getHardCommitInterval()).thenReturn(1);
+        // Re-initialize the component to schedule the hard commit with the configured interval.
+        this.commitCoordinator.initialize();
+
+        this.commitCoordinator.deleteById("chunk");
+
+        // Wait for the hard commit that persists the update without opening a searcher.
+        verify(this.client, timeout(5000)).request(any(UpdateRequest.class), isNull());
+        this.commitCoordinator.flush();
+
+        verify(this.client).commit(true, true);
+    }
+
+    @Test
+    void disposeCommitsPendingUpdates() throws Exception
+    {
+        this.commitCoordinator.deleteById("chunk");
+
+        this.commitCoordinator.dispose();
+
+        verify(this.client).commit(true, true);
+    }
+}
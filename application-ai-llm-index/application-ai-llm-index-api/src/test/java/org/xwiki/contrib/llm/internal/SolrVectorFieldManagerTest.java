@@ -0,0 +1,71 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.llm.internal;
+
+import org.apache.solr.common.SolrDocument;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for {@link SolrVectorFieldManager}.
+ *
+ * @version $Id$
+ */
+class SolrVectorFieldManagerTest
+{
+    @Test
+    void getFieldNameWithoutPartition()
+    {
+        assertEquals("vector", SolrVectorFieldManager.getFieldName(1024, VectorEncoding.FLOAT32, null));
+        assertEquals("vector_384", SolrVectorFieldManager.getFieldName(384, VectorEncoding.FLOAT32, null));
+        assertEquals("vector_384_byte", SolrVectorFieldManager.getFieldName(384, VectorEncoding.BYTE, null));
+    }
+
+    @Test
+    void getFieldNameWithPartition()
+    {
+        String partition = SolrVectorFieldManager.getPartition("xwiki", "large");
+
+        assertEquals("vector_1024_" + partition,
+            SolrVectorFieldManager.getFieldName(1024, VectorEncoding.FLOAT32, partition));
+        assertEquals("vector_384_byte_" + partition,
+            SolrVectorFieldManager.getFieldName(384, VectorEncoding.BYTE, partition));
+    }
+
+    @Test
+    void getPartition()
+    {
+        String partition = SolrVectorFieldManager.getPartition("xwiki", "large");
+
+        assertTrue(partition.matches("p[0-9a-f]+"), partition);
+        assertEquals(partition, SolrVectorFieldManager.getPartition("xwiki", "large"));
+        assertNotEquals(partition, SolrVectorFieldManager.getPartition("subwiki", "large"));
+        assertNotEquals(partition, SolrVectorFieldManager.getPartition("xwiki", "small"));
+
+        SolrDocument document = new SolrDocument();
+        assertNull(SolrVectorFieldManager.getPartition(document));
+        document.setField(AiLLMSolrCoreInitializer.FIELD_VECTOR_PARTITION, partition);
+        assertEquals(partition, SolrVectorFieldManager.getPartition(document));
+    }
+}
@@ -0,0 +1,240 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.llm.internal;
+
+import java.nio.ByteBuffer;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.function.IntToDoubleFunction;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for {@link SolrVectorUtils}.
+ *
+ * @version $Id$
+ */
+class SolrVectorUtilsTest
+{
+    @Test
+    void asListIsViewOfArray()
+    {
+        float[] vector = new float[] { 0.25f, -1.5f, 3.0f };
+
+        List<Float> list = SolrVectorUtils.asList(vector);
+
+        assertEquals(List.of(0.25f, -1.5f, 3.0f), list);
+        assertSame(vector, SolrVectorUtils.toFloatArray(list));
+    }
+
+    @Test
+    void toFloatArrayFromNumbersAndStrings()
+    {
+        float[] expected = new float[] { 0.25f, -1.5f, 3.0f };
+
+        assertArrayEquals(expected, SolrVectorUtils.toFloatArray(List.of(0.25f, -1.5, 3)));
+        assertArrayEquals(expected, SolrVectorUtils.toFloatArray(List.of("0.25", "-1.5", "3.0")));
+    }
+
+    @Test
+    void binaryRoundTrip()
+    {
+        float[] vector = new float[] { 0.25f, -1.5f, Float.MIN_VALUE, 3.0f };
+
+        byte[] bytes = SolrVectorUtils.toBytes(vector);
+
+        assertArrayEquals(vector, SolrVectorUtils.fromBytes(bytes));
+        assertArrayEquals(vector, SolrVectorUtils.fromBytes(ByteBuffer.wrap(bytes)));
+        assertArrayEquals(vector, SolrVectorUtils.fromBytes(Base64.getEncoder().encodeToString(bytes)));
+    }
+
+    @Test
+    void quantizeUsesFullByteRange()
+    {
+        assertArrayEquals(new byte[] { 127, -32, 0 }, SolrVectorUtils.quantize(new float[] { 1.0f, -0.25f, 0.0f }));
+        assertArrayEquals(new byte[] { 0, 0 }, SolrVectorUtils.quantize(new float[] { 0.0f, 0.0f }));
+    }
+
+    /**
+     * Measure the recall of the top 10 results of byte vectors compared to float vectors on a fixed, clustered corpus
+     * that resembles text embeddings.
+     */
+    @Test
+    void quantizedRecallAt10()
+    {
+        int dimensions = 384;
+        int k = 10;
+        Random random = new Random(42);
+        float[][] centroids = new float[40][];
+        for (int i = 0; i < centroids.length; i++) {
+            centroids[i] = randomVector(random, new float[dimensions]);
+        }
+        float[][] corpus = new float[2000][];
+        byte[][] quantizedCorpus = new byte[corpus.length][];
+        for (int i = 0; i < corpus.length; i++) {
+            corpus[i] = randomVector(random, centroids[random.nextInt(centroids.length)]);
+            quantizedCorpus[i] = SolrVectorUtils.quantize(corpus[i]);
+        }
+
+        double recall = 0;
+        int numberOfQueries = 50;
+        for (int q = 0; q < numberOfQueries; q++) {
+            float[] query = randomVector(random, centroids[random.nextInt(centroids.length)]);
+            byte[] quantizedQuery = SolrVectorUtils.quantize(query);
+            Set<Integer> expected = topK(corpus.length, k, i -> cosine(query, corpus[i]));
+            Set<Integer> actual = topK(corpus.length, k, i -> cosine(quantizedQuery, quantizedCorpus[i]));
+            actual.retainAll(expected);
+            recall += actual.size() / (double) k;
+        }
+        recall /= numberOfQueries;
+
+        assertTrue(recall >= 0.95, "recall@10 of byte vectors is only " + recall);
+    }
+
+    @Test
+    void byteQuantizedRescoredRecallAt10()
+    {
+        int dimensions = 384;
+        int k = 10;
+        int numberOfCandidates = k * 4;
+        Random random = new Random(42);
+        float[][] centroids = new float[40][];
+        for (int i = 0; i < centroids.length; i++) {
+            centroids[i] = randomVector(random, new float[dimensions]);
+        }
+        float[][] corpus = new float[2000][];
+        byte[][] quantizedCorpus = new byte[corpus.length][];
+        for (int i = 0; i < corpus.length; i++) {
+            corpus[i] = randomVector(random, centroids[random.nextInt(centroids.length)]);
+            quantizedCorpus[i] = SolrVectorUtils.quantize(corpus[i]);
+        }
+
+        double recall = 0;
+        int numberOfQueries = 50;
+        for (int q = 0; q < numberOfQueries; q++) {
+            float[] query = randomVector(random, centroids[random.nextInt(centroids.length)]);
+            byte[] quantizedQuery = SolrVectorUtils.quantize(query);
+            Set<Integer> expected = topK(corpus.length, k, i -> cosine(query, corpus[i]));
+            Set<Integer> candidates =
+                topK(corpus.length, numberOfCandidates, i -> cosine(quantizedQuery, quantizedCorpus[i]));
+            Set<Integer> actual = candidates.stream()
+                .sorted(Comparator.comparingDouble((Integer i) -> SolrVectorUtils.cosine(query, corpus[i])).reversed())
+                .limit(k)
+                .collect(Collectors.toSet());
+            actual.retainAll(expected);
+            recall += actual.size() / (double) k;
+        }
+        recall /= numberOfQueries;
+
+        assertTrue(recall >= 0.99, "recall@10 of rescored byte vectors is only " + recall);
+    }
+
+    @Test
+    void removePadding()
+    {
+        float[] vector = new float[] { 0.5f, -1.0f };
+        assertSame(vector, SolrVectorUtils.removePadding(vector, 2));
+        assertArrayEquals(vector, SolrVectorUtils.removePadding(new float[] { 0.5f, -1.0f, 0.0f, 0.0f }, 2));
+        // Vectors of other models can't be compared to the query.
+        assertNull(SolrVectorUtils.removePadding(new float[] { 0.5f, -1.0f, 0.25f }, 2));
+        assertNull(SolrVectorUtils.removePadding(vector, 3));
+        assertNull(SolrVectorUtils.removePadding(null, 2));
+    }
+
+    @Test
+    void normalize()
+    {
+        float[] vector = new float[] { 3.0f, -4.0f };
+        assertArrayEquals(new float[] { 0.6f, -0.8f }, SolrVectorUtils.normalize(vector), 1e-6f);
+        // The vector is copied.
+        assertArrayEquals(new float[] { 3.0f, -4.0f }, vector);
+        // A zero vector has no direction.
+        assertNull(SolrVectorUtils.normalize(new float[3]));
+    }
+
+    @Test
+    void cosineWithUnitVector()
+    {
+        Random random = new Random(42);
+        // Use a length that isn't a multiple of the unrolling of the loop.
+        float[] query = randomVector(random, new float[387]);
+        float[] unitQuery = SolrVectorUtils.normalize(query);
+        for (int i = 0; i < 20; i++) {
+            float[] vector = randomVector(random, new float[query.length]);
+            assertEquals(cosine(query, vector), SolrVectorUtils.cosineWithUnitVector(unitQuery, vector), 1e-5);
+        }
+        assertEquals(0.0, SolrVectorUtils.cosineWithUnitVector(unitQuery, new float[query.length]));
+        assertEquals(0.0, SolrVectorUtils.cosine(new float[] { 1.0f, 2.0f }, new float[] { 0.0f, 0.0f }));
+    }
+
+    private static float[] randomVector(Random random, float[] center)
+    {
+        float[] result = new float[center.length];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = (float) (center[i] + random.nextGaussian());
+        }
+        return result;
+    }
+
+    private static Set<Integer> topK(int size, int k, IntToDoubleFunction score)
+    {
+        return IntStream.range(0, size).boxed()
+            .sorted(Comparator.comparingDouble((Integer i) -> score.applyAsDouble(i)).reversed())
+            .limit(k)
+            .collect(Collectors.toSet());
+    }
+
+    private static double cosine(float[] a, float[] b)
+    {
+        double dot = 0;
+        double normA = 0;
+        double normB = 0;
+        for (int i = 0; i < a.length; i++) {
+            dot += a[i] * b[i];
+            normA += a[i] * a[i];
+            normB += b[i] * b[i];
+        }
+        return dot / Math.sqrt(normA * normB);
+    }
+
+    private static double cosine(byte[] a, byte[] b)
+    {
+        double dot = 0;
+        double normA = 0;
+        double normB = 0;
+        for (int i = 0; i < a.length; i++) {
+            dot += a[i] * b[i];
+            normA += a[i] * a[i];
+            normB += b[i] * b[i];
+        }
+        return dot / Math.sqrt(normA * normB);
+    }
+}
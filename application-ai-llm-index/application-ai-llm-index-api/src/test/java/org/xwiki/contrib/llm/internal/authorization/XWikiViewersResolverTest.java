@@ -0,0 +1,218 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.llm.internal.authorization;
+
+import java.util.List;
+
+import javax.inject.Named;
+import javax.inject.Provider;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.xwiki.model.EntityType;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.model.reference.EntityReferenceResolver;
+import org.xwiki.model.reference.EntityReferenceSerializer;
+import org.xwiki.security.SecurityReference;
+import org.xwiki.search.solr.SolrUtils;
+import org.xwiki.security.SecurityReferenceFactory;
+import org.xwiki.security.authorization.AuthorizationManager;
+import org.xwiki.security.authorization.ReadableSecurityRule;
+import org.xwiki.security.authorization.Right;
+import org.xwiki.security.authorization.RuleState;
+import org.xwiki.security.authorization.SecurityEntryReader;
+import org.xwiki.security.authorization.SecurityRule;
+import org.xwiki.security.authorization.SecurityRuleEntry;
+import org.xwiki.test.junit5.mockito.ComponentTest;
+import org.xwiki.test.junit5.mockito.InjectMockComponents;
+import org.xwiki.test.junit5.mockito.MockComponent;
+
+import com.xpn.xwiki.XWikiContext;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Component test for {@link XWikiViewersResolver}.
+ *
+ * @version $Id$
+ */
+@ComponentTest
+class XWikiViewersResolverTest
+{
+    private static final String DOCUMENT_ID = "wiki:Space.Page";
+
+    private static final DocumentReference DOCUMENT_REFERENCE = new DocumentReference("wiki", "Space", "Page");
+
+    private static final DocumentReference STAFF_GROUP = new DocumentReference("wiki", "XWiki", "StaffGroup");
+
+    private static final DocumentReference ADMIN_GROUP = new DocumentReference("wiki", "XWiki", "XWikiAdminGroup");
+
+    private static final DocumentReference ALL_GROUP = new DocumentReference("wiki", "XWiki", "XWikiAllGroup");
+
+    private static final DocumentReference USER = new DocumentReference("wiki", "XWiki", "User");
+
+    @InjectMockComponents
+    private XWikiViewersResolver viewersResolver;
+
+    @MockComponent
+    private SecurityReferenceFactory securityReferenceFactory;
+
+    @MockComponent
+    private SecurityEntryReader securityEntryReader;
+
+    @MockComponent
+    @Named("withparameters")
+    private EntityReferenceResolver<String> documentReferenceResolver;
+
+    @MockComponent
+    private EntityReferenceSerializer<String> entityReferenceSerializer;
+
+    @MockComponent
+    private Provider<XWikiContext> contextProvider;
+
+    @MockComponent
+    private AuthorizationManager authorizationManager;
+
+    @MockComponent
+    private SolrUtils solrUtils;
+
+    private SecurityReference documentSecurityReference;
+
+    private SecurityReference spaceSecurityReference;
+
+    private SecurityReference wikiSecurityReference;
+
+    @BeforeEach
+    void setUp() throws Exception
+    {
+        when(this.documentReferenceResolver.resolve(DOCUMENT_ID, EntityType.DOCUMENT)).thenReturn(DOCUMENT_REFERENCE);
+
+        this.wikiSecurityReference = mockSecurityReference(EntityType.WIKI, null);
+        this.spaceSecurityReference = mockSecurityReference(EntityType.SPACE, this.wikiSecurityReference);
+        this.documentSecurityReference = mockSecurityReference(EntityType.DOCUMENT, this.spaceSecurityReference);
+        when(this.securityReferenceFactory.newEntityReference(DOCUMENT_REFERENCE))
+            .thenReturn(this.documentSecurityReference);
+
+        for (DocumentReference group : List.of(STAFF_GROUP, ADMIN_GROUP, ALL_GROUP)) {
+            when(this.entityReferenceSerializer.serialize(group)).thenReturn(group.toString());
+        }
+    }
+
+    @Test
+    void getViewersWithoutViewRules() throws Exception
+    {
+        mockRules(this.documentSecurityReference);
+        mockRules(this.spaceSecurityReference);
+        mockRules(this.wikiSecurityReference, mockRule(RuleState.ALLOW, Right.ADMIN, ADMIN_GROUP));
+
+        assertEquals(List.of(XWikiViewersResolver.ANYONE), this.viewersResolver.getViewers(DOCUMENT_ID));
+    }
+
+    @Test
+    void getViewersUsesClosestViewRulesAndAdministrators() throws Exception
+    {
+        mockRules(this.documentSecurityReference);
+        mockRules(this.spaceSecurityReference, mockRule(RuleState.ALLOW, Right.VIEW, STAFF_GROUP));
+        mockRules(this.wikiSecurityReference, mockRule(RuleState.ALLOW, Right.ADMIN, ADMIN_GROUP),
+            mockRule(RuleState.ALLOW, Right.VIEW, ALL_GROUP));
+
+        assertEquals(List.of(STAFF_GROUP.toString(), ADMIN_GROUP.toString()),
+            this.viewersResolver.getViewers(DOCUMENT_ID));
+    }
+
+    @Test
+    void getViewersIgnoresDenyRules() throws Exception
+    {
+        mockRules(this.documentSecurityReference, mockRule(RuleState.DENY, Right.VIEW, ALL_GROUP));
+        mockRules(this.spaceSecurityReference);
+        mockRules(this.wikiSecurityReference);
+
+        assertEquals(List.of(XWikiViewersResolver.ANYONE), this.viewersResolver.getViewers(DOCUMENT_ID));
+    }
+
+    @Test
+    void getFilterQueryForSuperadmin()
+    {
+        XWikiContext context = mock();
+        when(this.contextProvider.get()).thenReturn(context);
+        when(context.getUserReference()).thenReturn(new DocumentReference("xwiki", "XWiki", "superadmin"));
+
+        assertNull(this.viewersResolver.getFilterQuery());
+    }
+
+    @Test
+    void getFilterQueryForWikiAdministrator()
+    {
+        XWikiContext context = mock();
+        when(this.contextProvider.get()).thenReturn(context);
+        when(context.getUserReference()).thenReturn(USER);
+        when(context.getWikiReference()).thenReturn(USER.getWikiReference());
+        // The owner of the wiki is an administrator without being listed in any rule.
+        when(this.authorizationManager.hasAccess(Right.ADMIN, USER, USER.getWikiReference())).thenReturn(true);
+
+        assertNull(this.viewersResolver.getFilterQuery());
+    }
+
+    @Test
+    void getFilterQueryWithSeparatelyCachedClauses()
+    {
+        XWikiContext context = mock();
+        when(this.contextProvider.get()).thenReturn(context);
+        when(context.getUserReference()).thenReturn(USER);
+        when(context.getWikiReference()).thenReturn(USER.getWikiReference());
+        when(context.getWikiId()).thenReturn("wiki");
+        when(context.getMainXWiki()).thenReturn("wiki");
+        when(this.entityReferenceSerializer.serialize(USER)).thenReturn(USER.toString());
+        when(this.solrUtils.toCompleteFilterQueryString(any())).then(invocation -> "\"" + invocation.getArgument(0)
+            + "\"");
+
+        assertEquals("filter(viewers:(\"*\" OR \"wiki:XWiki.User\" OR \"wiki:XWiki.XWikiAllGroup\")) "
+            + "OR filter(*:* -viewers:[* TO *])", this.viewersResolver.getFilterQuery());
+    }
+
+    private SecurityReference mockSecurityReference(EntityType type, SecurityReference parent)
+    {
+        SecurityReference reference = mock();
+        when(reference.getType()).thenReturn(type);
+        when(reference.getParentSecurityReference()).thenReturn(parent);
+        return reference;
+    }
+
+    private void mockRules(SecurityReference reference, SecurityRule... rules) throws Exception
+    {
+        SecurityRuleEntry entry = mock();
+        when(entry.getRules()).thenReturn(List.of(rules));
+        when(this.securityEntryReader.read(reference)).thenReturn(entry);
+    }
+
+    private static ReadableSecurityRule mockRule(RuleState state, Right right, DocumentReference group)
+    {
+        ReadableSecurityRule rule = mock();
+        when(rule.getState()).thenReturn(state);
+        when(rule.match(right)).thenReturn(true);
+        when(rule.getUsers()).thenReturn(List.of());
+        when(rule.getGroups()).thenReturn(List.of(group));
+        return rule;
+    }
+}
@@ -0,0 +1,216 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.llm.internal.embedded;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.xwiki.contrib.llm.Chunk;
+import org.xwiki.contrib.llm.openai.Context;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for {@link VectorSegment}.
+ *
+ * @version $Id$
+ */
+class VectorSegmentTest
+{
+    private static final String WIKI = "xwiki";
+
+    private static final String COLLECTION = "collection";
+
+    private static final String STORE_HINT = "xwiki";
+
+    private static final int DIMENSIONS = 16;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @TempDir
+    private Path directory;
+
+    @Test
+    void storeAndReload() throws Exception
+    {
+        VectorSegment segment = VectorSegment.create(this.directory, WIKI, COLLECTION, this.objectMapper);
+        Chunk chunk = createChunk("Space.Page", 0, new float[] { 1, 2, 3 }, List.of("XWiki.Admin"));
+        Chunk errorChunk = createChunk("Space.Page", 1, null, null);
+        errorChunk.setErrorMessage("error");
+        segment.put(List.of(chunk, errorChunk));
+
+        assertEquals(List.of(chunk, errorChunk), segment.getChunks("Space.Page", 0, 10, Chunk::new));
+        segment.close();
+
+        VectorSegment loaded = VectorSegment.load(this.directory, this.objectMapper);
+        assertEquals(WIKI, loaded.getWiki());
+        assertEquals(COLLECTION, loaded.getCollection());
+        assertEquals(List.of(chunk, errorChunk), loaded.getChunks("Space.Page", 0, 10, Chunk::new));
+        assertEquals(List.of("Space.Page"), loaded.getDocumentsWithViewers("Space."));
+        loaded.close();
+    }
+
+    @Test
+    void searchFiltersViewers() throws Exception
+    {
+        VectorSegment segment = VectorSegment.create(this.directory, WIKI, COLLECTION, this.objectMapper);
+        segment.put(List.of(
+            createChunk("Space.Private", 0, new float[] { 1, 0 }, List.of("XWiki.Admin")),
+            createChunk("Space.Public", 0, new float[] { 1, 1 }, List.of("XWiki.XWikiGuest")),
+            createChunk("Space.Unchecked", 0, new float[] { 0, 1 }, null)));
+
+        List<Context> all = segment.search(new float[] { 2, 0 }, 10, 100, 10, null);
+        assertEquals(List.of("Space.Private", "Space.Public", "Space.Unchecked"),
+            all.stream().map(Context::documentId).toList());
+        assertEquals(1.0, all.get(0).similarityScore(), 1e-6);
+        assertEquals(0.5, all.get(2).similarityScore(), 1e-6);
+
+        List<Context> guest = segment.search(new float[] { 2, 0 }, 10, 100, 10, Set.of("XWiki.XWikiGuest"));
+        assertEquals(List.of("Space.Public", "Space.Unchecked"), guest.stream().map(Context::documentId).toList());
+
+        // Queries of another embedding model don't match any chunk.
+        assertEquals(List.of(), segment.search(new float[] { 1, 0, 0 }, 10, 100, 10, null));
+        segment.close();
+    }
+
+    @Test
+    void graphSearchFindsNearestNeighbors() throws Exception
+    {
+        VectorSegment segment = VectorSegment.create(this.directory, WIKI, COLLECTION, this.objectMapper);
+        Random random = new Random(42);
+        List<Chunk> chunks = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            chunks.add(createChunk("Space.Page" + i, 0, randomVector(random), null));
+        }
+        segment.put(chunks);
+
+        assertTrue(segment.needsGraph(100));
+        segment.buildGraph(16, 100);
+        assertFalse(segment.needsGraph(100));
+
+        // Chunks that are inserted after building the graph are added to it.
+        float[] query = randomVector(random);
+        segment.put(List.of(createChunk("Space.Query", 0, query, null)));
+
+        List<Context> exact = segment.search(query, 10, Integer.MAX_VALUE, 100, null);
+        List<Context> approximate = segment.search(query, 10, 100, 100, null);
+        assertEquals("Space.Query", approximate.get(0).documentId());
+        long found = approximate.stream().filter(exact::contains).count();
+        assertTrue(found >= 8, "Only found " + found + " of the 10 nearest neighbors");
+        segment.close();
+    }
+
+    @Test
+    void deleteAndCompact() throws Exception
+    {
+        VectorSegment segment = VectorSegment.create(this.directory, WIKI, COLLECTION, this.objectMapper);
+        Random random = new Random(42);
+        List<Chunk> chunks = new ArrayList<>();
+        for (int i = 0; i < 3000; i++) {
+            chunks.add(createChunk("Space" + (i % 3) + ".Page" + i, 0, randomVector(random), null));
+        }
+        segment.put(chunks);
+        Chunk kept = chunks.get(2);
+
+        segment.deleteChunks(chunk -> !chunk.getDocumentId().startsWith("Space2."));
+        segment.deleteChunks("Space2.Page5", 0, 10, "other");
+
+        assertFalse(segment.hasDocument("Space0.Page0"));
+        assertTrue(segment.hasDocument("Space2.Page5"));
+        assertEquals(List.of(kept), segment.getChunks(kept.getDocumentID(), 0, 1, Chunk::new));
+        segment.close();
+
+        VectorSegment loaded = VectorSegment.load(this.directory, this.objectMapper);
+        assertFalse(loaded.hasDocument("Space1.Page1"));
+        assertEquals(List.of(kept), loaded.getChunks(kept.getDocumentID(), 0, 1, Chunk::new));
+        assertEquals(kept.getDocumentID(),
+            loaded.search(kept.getEmbeddingVector(), 1, 0, 10, null).get(0).documentId());
+
+        loaded.deleteChunks(kept.getDocumentID(), 0, Integer.MAX_VALUE, STORE_HINT);
+        assertFalse(loaded.hasDocument(kept.getDocumentID()));
+        loaded.close();
+    }
+
+    @Test
+    void changingDimensionsDiscardsEmbeddings() throws Exception
+    {
+        VectorSegment segment = VectorSegment.create(this.directory, WIKI, COLLECTION, this.objectMapper);
+        segment.put(List.of(createChunk("Space.Old", 0, new float[] { 1, 0 }, null)));
+        float[] newEmbedding = { 0, 1, 0 };
+        segment.put(List.of(createChunk("Space.New", 0, newEmbedding, null)));
+
+        Chunk old = segment.getChunks("Space.Old", 0, 1, Chunk::new).get(0);
+        assertNull(old.getEmbeddingVector());
+        assertArrayEquals(newEmbedding, segment.getChunks("Space.New", 0, 1, Chunk::new).get(0).getEmbeddingVector());
+        assertEquals(List.of("Space.New"),
+            segment.search(newEmbedding, 10, 100, 10, null).stream().map(Context::documentId).toList());
+        segment.close();
+    }
+
+    @Test
+    void closedSegmentRejectsChunks() throws Exception
+    {
+        VectorSegment segment = VectorSegment.create(this.directory, WIKI, COLLECTION, this.objectMapper);
+        Chunk chunk = createChunk("Space.Page", 0, new float[] { 1, 0 }, null);
+        assertTrue(segment.put(List.of(chunk)));
+
+        segment.delete();
+
+        // A concurrent deletion of the collection must not be undone, the caller needs to use a new segment.
+        assertFalse(segment.put(List.of(chunk)));
+        assertEquals(List.of(), segment.getChunks("Space.Page", 0, 1, Chunk::new));
+        assertEquals(List.of(), segment.search(new float[] { 1, 0 }, 10, 100, 10, null));
+        segment.deleteChunks("Space.Page", 0, 1, null);
+    }
+
+    private static Chunk createChunk(String documentId, int index, float[] embedding, List<String> viewers)
+    {
+        Chunk chunk = new Chunk();
+        chunk.initialize(documentId, COLLECTION, "/xwiki/bin/view/" + documentId, "en", 0, 10,
+            "Content of " + documentId);
+        chunk.setWiki(WIKI);
+        chunk.setChunkIndex(index);
+        chunk.setStoreHint(STORE_HINT);
+        chunk.setEmbeddingVector(embedding);
+        chunk.setViewers(viewers);
+        chunk.computeId();
+        return chunk;
+    }
+
+    private static float[] randomVector(Random random)
+    {
+        float[] result = new float[DIMENSIONS];
+        for (int i = 0; i < DIMENSIONS; i++) {
+            result[i] = (float) random.nextGaussian();
+        }
+        return result;
+    }
+}
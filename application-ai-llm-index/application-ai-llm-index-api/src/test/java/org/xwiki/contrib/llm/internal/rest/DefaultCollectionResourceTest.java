@@ -35,6 +35,7 @@ import org.xwiki.contrib.llm.Collection;
 import org.xwiki.contrib.llm.CollectionManager;
 import org.xwiki.contrib.llm.IndexException;
 import org.xwiki.contrib.llm.SolrConnector;
+import org.xwiki.contrib.llm.VectorStore;
 import org.xwiki.contrib.llm.authorization.AuthorizationManager;
 import org.xwiki.contrib.llm.authorization.AuthorizationManagerBuilder;
 import org.xwiki.contrib.llm.internal.AiLLMSolrCoreInitializer;
@@ -145,6 +146,9 @@ class DefaultCollectionResourceTest
     @MockComponent
     private SolrConnector solrConnector;
 
+    @MockComponent
+    private VectorStore vectorStore;
+
     @MockComponent
     private AiLLMSolrCoreInitializer aillmSolrCoreInitializer;
 
@@ -32,6 +32,7 @@ import org.xwiki.contrib.llm.Collection;
 import org.xwiki.contrib.llm.CollectionManager;
 import org.xwiki.contrib.llm.Document;
 import org.xwiki.contrib.llm.SolrConnector;
+import org.xwiki.contrib.llm.VectorStore;
 import org.xwiki.contrib.llm.internal.AiLLMSolrCoreInitializer;
 import org.xwiki.contrib.llm.internal.CurrentUserCollection;
 import org.xwiki.contrib.llm.internal.CurrentUserCollectionManager;
@@ -119,6 +120,9 @@ class DefaultDocumentResourceTest
     @MockComponent
     private SolrConnector solrConnector;
 
+    @MockComponent
+    private VectorStore vectorStore;
+
     @MockComponent
     private AiLLMSolrCoreInitializer aillmSolrCoreInitializer;
 
@@ -216,6 +220,7 @@ class DefaultDocumentResourceTest
         assertEquals(DOCUMENT_ID,
             this.documentResource.getDocument(WIKI_NAME, COLLECTION_NAME, DOCUMENT_ID).getTitle());
         verifyNoInteractions(this.solrConnector);
+        verifyNoInteractions(this.vectorStore);
     }
 
     @Test
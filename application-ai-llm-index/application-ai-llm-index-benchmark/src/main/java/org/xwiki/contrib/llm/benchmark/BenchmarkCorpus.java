@@ -0,0 +1,275 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.llm.benchmark;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.regex.Pattern;
+import java.util.stream.IntStream;
+
+import org.xwiki.contrib.llm.internal.SolrVectorUtils;
+
+/**
+ * The vectors that are indexed and searched by the benchmark. The documents are streamed for every pass so that the
+ * corpus doesn't need to fit into memory, only the queries are kept in memory.
+ *
+ * @version $Id$
+ * @since 0.6.3
+ */
+public final class BenchmarkCorpus
+{
+    /**
+     * Consumes the documents of the corpus.
+     */
+    @FunctionalInterface
+    public interface DocumentConsumer
+    {
+        /**
+         * @param index the index of the document in the corpus
+         * @param vector the vector of the document
+         * @throws IOException if the document cannot be processed
+         */
+        void accept(int index, float[] vector) throws IOException;
+    }
+
+    private static final Pattern SEPARATOR = Pattern.compile("[,\\s]+");
+
+    private static final int GROUND_TRUTH_BATCH_SIZE = 10000;
+
+    private final Path documentFile;
+
+    private final int numberOfHeldOutQueries;
+
+    private final int numberOfDocuments;
+
+    private final float[][] centroids;
+
+    private final long seed;
+
+    private final List<float[]> queries;
+
+    private BenchmarkCorpus(Path documentFile, int numberOfHeldOutQueries, int numberOfDocuments,
+        float[][] centroids, long seed, List<float[]> queries)
+    {
+        this.documentFile = documentFile;
+        this.numberOfHeldOutQueries = numberOfHeldOutQueries;
+        this.numberOfDocuments = numberOfDocuments;
+        this.centroids = centroids;
+        this.seed = seed;
+        this.queries = queries;
+    }
+
+    /**
+     * Create a synthetic corpus of vectors that are normally distributed around random cluster centers, which
+     * resembles the structure of real embeddings better than uniformly distributed vectors.
+     *
+     * @param numberOfDocuments the number of documents
+     * @param numberOfQueries the number of queries
+     * @param dimensions the number of dimensions of the vectors
+     * @param numberOfClusters the number of clusters
+     * @param seed the seed of the random generator
+     * @return the synthetic corpus
+     */
+    public static BenchmarkCorpus synthetic(int numberOfDocuments, int numberOfQueries, int dimensions,
+        int numberOfClusters, long seed)
+    {
+        Random random = new Random(seed);
+        float[][] centroids = new float[numberOfClusters][];
+        for (int i = 0; i < numberOfClusters; i++) {
+            centroids[i] = randomVector(random, new float[dimensions]);
+        }
+
+        Random queryRandom = new Random(seed + 1);
+        List<float[]> queries = new ArrayList<>(numberOfQueries);
+        for (int i = 0; i < numberOfQueries; i++) {
+            queries.add(randomVector(queryRandom, centroids[queryRandom.nextInt(numberOfClusters)]));
+        }
+
+        return new BenchmarkCorpus(null, 0, numberOfDocuments, centroids, seed + 2, queries);
+    }
+
+    /**
+     * Load a recorded corpus, e.g., the embeddings exported from a wiki. Each line of the files contains one vector
+     * with its components separated by commas or whitespace, optionally enclosed in square brackets.
+     *
+     * @param documentFile the file with the vectors of the documents
+     * @param queryFile the file with the vectors of the queries, or {@code null} to hold out the first lines of the
+     *     document file as queries
+     * @param numberOfQueries the number of queries to hold out when there is no query file
+     * @return the recorded corpus
+     * @throws IOException if the files cannot be read
+     */
+    public static BenchmarkCorpus recorded(Path documentFile, Path queryFile, int numberOfQueries) throws IOException
+    {
+        List<float[]> queries = new ArrayList<>();
+        int heldOut = 0;
+        try (BufferedReader reader = Files.newBufferedReader(queryFile != null ? queryFile : documentFile)) {
+            String line;
+            while ((line = reader.readLine()) != null && (queryFile != null || queries.size() < numberOfQueries)) {
+                if (!line.isBlank()) {
+                    queries.add(parseVector(line));
+                }
+            }
+        }
+        if (queryFile == null) {
+            heldOut = queries.size();
+        }
+
+        int numberOfDocuments;
+        try (BufferedReader reader = Files.newBufferedReader(documentFile)) {
+            numberOfDocuments = (int) reader.lines().filter(line -> !line.isBlank()).count() - heldOut;
+        }
+
+        return new BenchmarkCorpus(documentFile, heldOut, numberOfDocuments, null, 0, queries);
+    }
+
+    /**
+     * @return the number of documents of the corpus
+     */
+    public int getNumberOfDocuments()
+    {
+        return this.numberOfDocuments;
+    }
+
+    /**
+     * @return the number of dimensions of the vectors
+     */
+    public int getDimensions()
+    {
+        return this.queries.get(0).length;
+    }
+
+    /**
+     * @return the query vectors
+     */
+    public List<float[]> getQueries()
+    {
+        return this.queries;
+    }
+
+    /**
+     * Pass all documents of the corpus to the given consumer, always in the same order and with the same vectors.
+     *
+     * @param consumer the consumer of the documents
+     * @throws IOException if the corpus cannot be read or the consumer fails
+     */
+    public void forEachDocument(DocumentConsumer consumer) throws IOException
+    {
+        if (this.documentFile == null) {
+            Random random = new Random(this.seed);
+            for (int i = 0; i < this.numberOfDocuments; i++) {
+                consumer.accept(i, randomVector(random, this.centroids[random.nextInt(this.centroids.length)]));
+            }
+        } else {
+            try (BufferedReader reader = Files.newBufferedReader(this.documentFile)) {
+                int lineNumber = 0;
+                int index = 0;
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (!line.isBlank() && lineNumber++ >= this.numberOfHeldOutQueries) {
+                        consumer.accept(index++, parseVector(line));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Compute the exact nearest neighbors of all queries by comparing them to all documents.
+     *
+     * @param k the number of neighbors to compute
+     * @return the indexes of the k nearest documents of each query
+     * @throws IOException if the corpus cannot be read
+     */
+    public int[][] computeNearestNeighbors(int k) throws IOException
+    {
+        List<PriorityQueue<ScoredDocument>> heaps = new ArrayList<>(this.queries.size());
+        for (int i = 0; i < this.queries.size(); i++) {
+            heaps.add(new PriorityQueue<>(Comparator.comparingDouble(ScoredDocument::score)));
+        }
+
+        List<ScoredDocument> batch = new ArrayList<>(GROUND_TRUTH_BATCH_SIZE);
+        List<float[]> batchVectors = new ArrayList<>(GROUND_TRUTH_BATCH_SIZE);
+        forEachDocument((index, vector) -> {
+            batch.add(new ScoredDocument(index, 0));
+            batchVectors.add(vector);
+            if (batch.size() == GROUND_TRUTH_BATCH_SIZE) {
+                updateNearestNeighbors(heaps, batch, batchVectors, k);
+            }
+        });
+        updateNearestNeighbors(heaps, batch, batchVectors, k);
+
+        int[][] result = new int[heaps.size()][];
+        for (int i = 0; i < heaps.size(); i++) {
+            result[i] = heaps.get(i).stream().mapToInt(ScoredDocument::index).toArray();
+        }
+        return result;
+    }
+
+    private void updateNearestNeighbors(List<PriorityQueue<ScoredDocument>> heaps, List<ScoredDocument> batch,
+        List<float[]> batchVectors, int k)
+    {
+        IntStream.range(0, heaps.size()).parallel().forEach(q -> {
+            PriorityQueue<ScoredDocument> heap = heaps.get(q);
+            float[] query = this.queries.get(q);
+            for (int i = 0; i < batch.size(); i++) {
+                double score = SolrVectorUtils.cosine(query, batchVectors.get(i));
+                if (heap.size() < k) {
+                    heap.add(new ScoredDocument(batch.get(i).index(), score));
+                } else if (heap.peek().score() < score) {
+                    heap.poll();
+                    heap.add(new ScoredDocument(batch.get(i).index(), score));
+                }
+            }
+        });
+        batch.clear();
+        batchVectors.clear();
+    }
+
+    private static float[] parseVector(String line)
+    {
+        String[] values = SEPARATOR.split(line.strip().replace("[", "").replace("]", "").strip());
+        float[] result = new float[values.length];
+        for (int i = 0; i < values.length; i++) {
+            result[i] = Float.parseFloat(values[i]);
+        }
+        return result;
+    }
+
+    private static float[] randomVector(Random random, float[] center)
+    {
+        float[] result = new float[center.length];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = (float) (center[i] + random.nextGaussian());
+        }
+        return result;
+    }
+
+    private record ScoredDocument(int index, double score)
+    {
+    }
+}
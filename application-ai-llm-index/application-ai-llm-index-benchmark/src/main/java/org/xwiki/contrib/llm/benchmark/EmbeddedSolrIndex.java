@@ -0,0 +1,171 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.llm.benchmark;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.solr.client.solrj.SolrQuery;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.embedded.EmbeddedSolrServer;
+import org.apache.solr.common.SolrInputDocument;
+import org.xwiki.contrib.llm.internal.SolrVectorUtils;
+
+/**
+ * A temporary Solr core with a single dense vector field that uses the given HNSW parameters. The field type matches
+ * the vector field types that are created by the index of the application.
+ *
+ * @version $Id$
+ * @since 0.6.3
+ */
+public class EmbeddedSolrIndex implements AutoCloseable
+{
+    private static final String CORE_NAME = "benchmark";
+
+    private static final String FIELD_ID = "id";
+
+    private static final String FIELD_VECTOR = "vector";
+
+    private static final String SOLR_CONFIG = """
+        <?xml version="1.0" encoding="UTF-8" ?>
+        <config>
+          <luceneMatchVersion>9.0</luceneMatchVersion>
+          <dataDir>${solr.data.dir:}</dataDir>
+          <directoryFactory name="DirectoryFactory" class="solr.NRTCachingDirectoryFactory"/>
+          <!-- Required for the per-field HNSW parameters -->
+          <codecFactory class="solr.SchemaCodecFactory"/>
+          <schemaFactory class="ClassicIndexSchemaFactory"/>
+          <updateHandler class="solr.DirectUpdateHandler2"/>
+          <requestHandler name="/select" class="solr.SearchHandler"/>
+        </config>
+        """;
+
+    private static final String SCHEMA = """
+        <?xml version="1.0" encoding="UTF-8" ?>
+        <schema name="benchmark" version="1.6">
+          <uniqueKey>id</uniqueKey>
+          <fieldType name="string" class="solr.StrField"/>
+          <fieldType name="plong" class="solr.LongPointField" docValues="true"/>
+          <fieldType name="knn_vector" class="solr.DenseVectorField" vectorDimension="%d" similarityFunction="cosine"
+            knnAlgorithm="hnsw" hnswMaxConnections="%d" hnswBeamWidth="%d"/>
+          <field name="id" type="string" indexed="true" stored="true" required="true"/>
+          <field name="_version_" type="plong" indexed="false" stored="false"/>
+          <field name="vector" type="knn_vector" indexed="true" stored="false"/>
+        </schema>
+        """;
+
+    private final Path solrHome;
+
+    private final EmbeddedSolrServer server;
+
+    /**
+     * Create a new empty index in a temporary directory.
+     *
+     * @param dimensions the number of dimensions of the vectors
+     * @param maxConnections the maximum number of connections of each node in the HNSW graph
+     * @param beamWidth the number of candidates considered when inserting a vector into the HNSW graph
+     * @throws IOException if the core cannot be created
+     */
+    public EmbeddedSolrIndex(int dimensions, int maxConnections, int beamWidth) throws IOException
+    {
+        this.solrHome = Files.createTempDirectory("llm-benchmark-solr");
+        Files.writeString(this.solrHome.resolve("solr.xml"), "<solr/>", StandardCharsets.UTF_8);
+        Path coreDirectory = this.solrHome.resolve(CORE_NAME);
+        Path configDirectory = Files.createDirectories(coreDirectory.resolve("conf"));
+        Files.writeString(coreDirectory.resolve("core.properties"), "name=" + CORE_NAME, StandardCharsets.UTF_8);
+        Files.writeString(configDirectory.resolve("solrconfig.xml"), SOLR_CONFIG, StandardCharsets.UTF_8);
+        Files.writeString(configDirectory.resolve("schema.xml"),
+            SCHEMA.formatted(dimensions, maxConnections, beamWidth), StandardCharsets.UTF_8);
+
+        this.server = new EmbeddedSolrServer(this.solrHome, CORE_NAME);
+    }
+
+    /**
+     * Index all documents of the corpus and commit them.
+     *
+     * @param corpus the corpus to index
+     * @param batchSize the number of documents to send to Solr at once
+     * @throws IOException if indexing fails
+     * @throws SolrServerException if indexing fails
+     */
+    public void index(BenchmarkCorpus corpus, int batchSize) throws IOException, SolrServerException
+    {
+        List<SolrInputDocument> batch = new ArrayList<>(batchSize);
+        corpus.forEachDocument((index, vector) -> {
+            SolrInputDocument document = new SolrInputDocument();
+            document.setField(FIELD_ID, String.valueOf(index));
+            document.setField(FIELD_VECTOR, SolrVectorUtils.asList(vector));
+            batch.add(document);
+            if (batch.size() == batchSize) {
+                add(batch);
+            }
+        });
+        add(batch);
+        this.server.commit();
+    }
+
+    private void add(List<SolrInputDocument> batch) throws IOException
+    {
+        if (!batch.isEmpty()) {
+            try {
+                this.server.add(batch);
+            } catch (SolrServerException e) {
+                throw new IOException("Failed to index the documents", e);
+            }
+            batch.clear();
+        }
+    }
+
+    /**
+     * Search the nearest neighbors of the given vector in the same way as the application does.
+     *
+     * @param vector the query vector
+     * @param limit the number of results
+     * @param topK the number of candidates explored in the HNSW graph
+     * @return the indexes of the found documents
+     * @throws IOException if the search fails
+     * @throws SolrServerException if the search fails
+     */
+    public int[] search(float[] vector, int limit, int topK) throws IOException, SolrServerException
+    {
+        SolrQuery query = new SolrQuery();
+        query.setQuery("{!knn f=%s topK=%d}%s".formatted(FIELD_VECTOR, topK, SolrVectorUtils.toQueryString(vector)));
+        query.setFields(FIELD_ID);
+        query.setRows(limit);
+        return this.server.query(query).getResults().stream()
+            .mapToInt(document -> Integer.parseInt(String.valueOf(document.getFieldValue(FIELD_ID))))
+            .toArray();
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        try {
+            this.server.close();
+        } finally {
+            FileUtils.deleteDirectory(this.solrHome.toFile());
+        }
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.llm.benchmark;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.apache.solr.client.solrj.SolrServerException;
+
+/**
+ * Measures the recall@k and the latency of the kNN search for combinations of the HNSW parameters
+ * ({@code llm.index.hnswMaxConnections}, {@code llm.index.hnswBeamWidth}) and the candidate multiplier
+ * ({@code llm.index.knnCandidateMultiplier}) to tune them for a given corpus. Run it with:
+ * <pre>
+ * mvn -Pbenchmark -pl application-ai-llm-index/application-ai-llm-index-benchmark -am install -DskipTests
+ * mvn -Pbenchmark -pl application-ai-llm-index/application-ai-llm-index-benchmark exec:java \
+ *   -Dbenchmark.documents=1000000 -Dbenchmark.maxConnections=16,32 -Dbenchmark.beamWidths=100,200
+ * </pre>
+ * The following system properties are supported:
+ * <ul>
+ * <li>{@code benchmark.corpus}: a file with one vector per line to use instead of a synthetic corpus, e.g., the
+ * embeddings exported from a wiki</li>
+ * <li>{@code benchmark.queries}: a file with one query vector per line, by default the first lines of the corpus are
+ * held out as queries</li>
+ * <li>{@code benchmark.documents}, {@code benchmark.dimensions}, {@code benchmark.clusters}, {@code benchmark.seed}:
+ * the size and shape of the synthetic corpus</li>
+ * <li>{@code benchmark.queryCount}: the number of queries</li>
+ * <li>{@code benchmark.k}: the number of results of each query</li>
+ * <li>{@code benchmark.maxConnections}, {@code benchmark.beamWidths}, {@code benchmark.candidateMultipliers}: the
+ * comma-separated values of the parameters to compare</li>
+ * </ul>
+ * The documents are streamed, so large corpora don't need to fit into memory, but each combination of HNSW
+ * parameters indexes the whole corpus again.
+ *
+ * @version $Id$
+ * @since 0.6.3
+ */
+public final class VectorSearchBenchmark
+{
+    private static final String PREFIX = "benchmark.";
+
+    private static final int INDEXING_BATCH_SIZE = 1000;
+
+    private static final String ROW_FORMAT = "%-16s %-10s %-12s %-10s %-10s %-10s%n";
+
+    private final PrintStream out;
+
+    private final BenchmarkCorpus corpus;
+
+    private final int k;
+
+    private VectorSearchBenchmark(PrintStream out, BenchmarkCorpus corpus, int k)
+    {
+        this.out = out;
+        this.corpus = corpus;
+        this.k = k;
+    }
+
+    /**
+     * @param args not used, the benchmark is configured with system properties
+     * @throws Exception if the benchmark fails
+     */
+    public static void main(String[] args) throws Exception
+    {
+        int numberOfQueries = Integer.getInteger(PREFIX + "queryCount", 200);
+        String corpusFile = System.getProperty(PREFIX + "corpus");
+        BenchmarkCorpus corpus;
+        if (corpusFile != null) {
+            String queryFile = System.getProperty(PREFIX + "queries");
+            corpus = BenchmarkCorpus.recorded(Path.of(corpusFile), queryFile != null ? Path.of(queryFile) : null,
+                numberOfQueries);
+        } else {
+            corpus = BenchmarkCorpus.synthetic(Integer.getInteger(PREFIX + "documents", 100000), numberOfQueries,
+                Integer.getInteger(PREFIX + "dimensions", 384), Integer.getInteger(PREFIX + "clusters", 100),
+                Long.getLong(PREFIX + "seed", 42));
+        }
+
+        VectorSearchBenchmark benchmark =
+            new VectorSearchBenchmark(System.out, corpus, Integer.getInteger(PREFIX + "k", 10));
+        benchmark.run(getIntegers("maxConnections", "16"), getIntegers("beamWidths", "100"),
+            getIntegers("candidateMultipliers", "1,2,4,8"));
+    }
+
+    private static List<Integer> getIntegers(String name, String defaultValue)
+    {
+        return Arrays.stream(System.getProperty(PREFIX + name, defaultValue).split(","))
+            .map(String::strip)
+            .map(Integer::valueOf)
+            .toList();
+    }
+
+    private void run(List<Integer> maxConnectionsValues, List<Integer> beamWidths, List<Integer> multipliers)
+        throws IOException, SolrServerException
+    {
+        this.out.printf("Computing the exact %d nearest neighbors of %d queries in %d documents with %d dimensions%n",
+            this.k, this.corpus.getQueries().size(), this.corpus.getNumberOfDocuments(), this.corpus.getDimensions());
+        int[][] nearestNeighbors = this.corpus.computeNearestNeighbors(this.k);
+
+        for (int maxConnections : maxConnectionsValues) {
+            for (int beamWidth : beamWidths) {
+                try (EmbeddedSolrIndex index =
+                    new EmbeddedSolrIndex(this.corpus.getDimensions(), maxConnections, beamWidth)) {
+                    long start = System.nanoTime();
+                    index.index(this.corpus, INDEXING_BATCH_SIZE);
+                    long indexingTime = System.nanoTime() - start;
+                    this.out.printf("%nhnswMaxConnections=%d hnswBeamWidth=%d: indexed in %d s (%.0f documents/s)%n",
+                        maxConnections, beamWidth, TimeUnit.NANOSECONDS.toSeconds(indexingTime),
+                        this.corpus.getNumberOfDocuments() / (indexingTime / 1e9));
+                    this.out.printf(ROW_FORMAT, "maxConnections", "beamWidth", "multiplier", "recall@" + this.k,
+                        "p50 (ms)", "p99 (ms)");
+
+                    for (int multiplier : multipliers) {
+                        measure(index, nearestNeighbors, maxConnections, beamWidth, multiplier);
+                    }
+                }
+            }
+        }
+    }
+
+    private void measure(EmbeddedSolrIndex index, int[][] nearestNeighbors, int maxConnections, int beamWidth,
+        int multiplier) throws IOException, SolrServerException
+    {
+        List<float[]> queries = this.corpus.getQueries();
+        int topK = this.k * multiplier;
+
+        // Warm up the caches and the JIT so that the first queries don't dominate the latency.
+        for (float[] query : queries) {
+            index.search(query, this.k, topK);
+        }
+
+        double[] latencies = new double[queries.size()];
+        double recall = 0;
+        for (int i = 0; i < queries.size(); i++) {
+            long start = System.nanoTime();
+            int[] results = index.search(queries.get(i), this.k, topK);
+            latencies[i] = (System.nanoTime() - start) / 1e6;
+
+            Set<Integer> expected = Arrays.stream(nearestNeighbors[i]).boxed().collect(Collectors.toSet());
+            recall += Arrays.stream(results).filter(expected::contains).count() / (double) expected.size();
+        }
+
+        Arrays.sort(latencies);
+        this.out.printf(ROW_FORMAT, maxConnections, beamWidth, multiplier,
+            "%.4f".formatted(recall / queries.size()), "%.2f".formatted(percentile(latencies, 50)),
+            "%.2f".formatted(percentile(latencies, 99)));
+    }
+
+    private static double percentile(double[] sortedValues, int percentile)
+    {
+        int index = (int) Math.ceil(percentile / 100.0 * sortedValues.length) - 1;
+        return sortedValues[Math.max(0, Math.min(index, sortedValues.length - 1))];
+    }
+}
@@ -19,6 +19,7 @@
  */
 package org.xwiki.contrib.llm;
 
+import java.util.ArrayList;
 import java.util.List;
 
 import org.xwiki.component.annotation.Role;
@@ -73,6 +74,48 @@ public interface EmbeddingModel
      */
     List<double[]> embed(List<String> texts, EmbeddingPurpose purpose) throws RequestError;
 
+    /**
+     * Embed the given text and return the embedding with single precision. Implementations should override this
+     * method when the embedding is natively available as {@code float[]} to avoid converting it back and forth.
+     *
+     * @param text the text to embed
+     * @param purpose the purpose of the embedding
+     * @return the embedding
+     * @throws RequestError when the API request fails
+     * @since 0.6.3
+     */
+    default float[] embedFloats(String text, EmbeddingPurpose purpose) throws RequestError
+    {
+        return embedFloats(List.of(text), purpose).get(0);
+    }
+
+    /**
+     * Embed the given texts and return the embeddings with single precision. Implementations should override this
+     * method when the embeddings are natively available as {@code float[]} to avoid converting them back and forth.
+     *
+     * @param texts the texts to embed
+     * @param purpose the purpose of the embedding
+     * @return an embedding for each text
+     * @throws RequestError when the API request fails
+     * @since 0.6.3
+     */
+    default List<float[]> embedFloats(List<String> texts, EmbeddingPurpose purpose) throws RequestError
+    {
+        List<double[]> embeddings = embed(texts, purpose);
+        List<float[]> result = new ArrayList<>(embeddings.size());
+        for (double[] embedding : embeddings) {
+            float[] floatEmbedding = null;
+            if (embedding != null) {
+                floatEmbedding = new float[embedding.length];
+                for (int i = 0; i < embedding.length; i++) {
+                    floatEmbedding[i] = (float) embedding[i];
+                }
+            }
+            result.add(floatEmbedding);
+        }
+        return result;
+    }
+
     /**
      * @return the descriptor of the model
      */
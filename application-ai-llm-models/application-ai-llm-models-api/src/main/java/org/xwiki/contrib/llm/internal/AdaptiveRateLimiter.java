@@ -0,0 +1,202 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.llm.internal;
+
+import java.net.http.HttpHeaders;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.commons.lang3.math.NumberUtils;
+
+/**
+ * A client-side rate limiter for a server that learns the limits of the server from the headers of its responses.
+ * Requests are spaced such that the remaining requests and tokens that the server reports are spread over the time
+ * until the server resets its limits. This slows down clients smoothly when they approach the limits instead of
+ * letting them run into errors. After a rate-limited response, no request is sent until the time requested by the
+ * server in the {@code Retry-After} header has passed.
+ *
+ * @version $Id$
+ * @since 0.6.3
+ */
+public class AdaptiveRateLimiter
+{
+    private static final String RATE_LIMIT_PREFIX = "x-ratelimit-";
+
+    private static final String REMAINING = "remaining-";
+
+    private static final String RESET = "reset-";
+
+    private static final String REQUESTS = "requests";
+
+    private static final String TOKENS = "tokens";
+
+    // Durations like "1s", "6m0s", "20ms" or "1h2m3.5s" as used in the rate limit headers of OpenAI.
+    private static final Pattern DURATION_PART = Pattern.compile("(\\d+(?:\\.\\d+)?)(ms|h|m|s)");
+
+    private static final long DEFAULT_BACKOFF = TimeUnit.SECONDS.toNanos(1);
+
+    private static final long MAXIMUM_BACKOFF = TimeUnit.MINUTES.toNanos(1);
+
+    private static final int TOO_MANY_REQUESTS = 429;
+
+    private static final int SERVICE_UNAVAILABLE = 503;
+
+    private long blockedUntil;
+
+    private long nextRequest;
+
+    private long requestInterval;
+
+    private double tokenInterval;
+
+    private long backoff = DEFAULT_BACKOFF;
+
+    /**
+     * Wait until the request may be sent.
+     *
+     * @param tokens the estimated number of tokens of the request
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    public void acquire(long tokens) throws InterruptedException
+    {
+        long waitNanos;
+        synchronized (this) {
+            long now = System.nanoTime();
+            long start = Math.max(now, Math.max(this.nextRequest, this.blockedUntil));
+            this.nextRequest = start + Math.max(this.requestInterval, (long) (tokens * this.tokenInterval));
+            waitNanos = start - now;
+        }
+
+        if (waitNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+    }
+
+    /**
+     * Learn the limits of the server from a response.
+     *
+     * @param statusCode the status code of the response
+     * @param headers the headers of the response
+     */
+    public synchronized void update(int statusCode, HttpHeaders headers)
+    {
+        long now = System.nanoTime();
+
+        Optional<Duration> requestsReset = getDuration(headers, RATE_LIMIT_PREFIX + RESET + REQUESTS);
+        Optional<Duration> tokensReset = getDuration(headers, RATE_LIMIT_PREFIX + RESET + TOKENS);
+        this.requestInterval = (long) getInterval(headers, REQUESTS, requestsReset, now);
+        this.tokenInterval = getInterval(headers, TOKENS, tokensReset, now);
+
+        if (statusCode == TOO_MANY_REQUESTS || statusCode == SERVICE_UNAVAILABLE) {
+            Optional<Duration> retryAfter = getRetryAfter(headers);
+            if (retryAfter.isPresent()) {
+                this.blockedUntil = Math.max(this.blockedUntil, now + retryAfter.get().toNanos());
+            } else if (this.blockedUntil <= now) {
+                // Back off exponentially when the server tells neither how long to wait nor when its limits reset.
+                this.blockedUntil = now + this.backoff;
+                this.backoff = Math.min(this.backoff * 2, MAXIMUM_BACKOFF);
+            }
+        } else {
+            this.backoff = DEFAULT_BACKOFF;
+        }
+    }
+
+    private double getInterval(HttpHeaders headers, String resource, Optional<Duration> reset, long now)
+    {
+        Optional<Long> remaining = headers.firstValue(RATE_LIMIT_PREFIX + REMAINING + resource)
+            .filter(NumberUtils::isCreatable)
+            .map(value -> NumberUtils.createNumber(value).longValue());
+
+        if (remaining.isEmpty() || reset.isEmpty()) {
+            return 0;
+        }
+
+        long resetNanos = reset.get().toNanos();
+        if (remaining.get() <= 0) {
+            // The limit is exhausted, don't send any request before the server resets it.
+            this.blockedUntil = Math.max(this.blockedUntil, now + resetNanos);
+            return 0;
+        }
+
+        return resetNanos / (double) remaining.get();
+    }
+
+    private static Optional<Duration> getRetryAfter(HttpHeaders headers)
+    {
+        Optional<Duration> retryAfterMillis = headers.firstValue("retry-after-ms")
+            .filter(NumberUtils::isCreatable)
+            .map(value -> Duration.ofMillis(NumberUtils.createNumber(value).longValue()));
+        if (retryAfterMillis.isPresent()) {
+            return retryAfterMillis;
+        }
+
+        return headers.firstValue("retry-after").flatMap(value -> {
+            if (NumberUtils.isCreatable(value)) {
+                return Optional.of(Duration.ofMillis((long) (NumberUtils.createDouble(value) * 1000)));
+            }
+
+            try {
+                ZonedDateTime date = ZonedDateTime.parse(value, DateTimeFormatter.RFC_1123_DATE_TIME);
+                Duration delay = Duration.between(ZonedDateTime.now(date.getZone()), date);
+                return Optional.of(delay.isNegative() ? Duration.ZERO : delay);
+            } catch (DateTimeParseException e) {
+                return Optional.empty();
+            }
+        });
+    }
+
+    private static Optional<Duration> getDuration(HttpHeaders headers, String name)
+    {
+        return headers.firstValue(name).flatMap(AdaptiveRateLimiter::parseDuration);
+    }
+
+    /**
+     * @param value a duration like "1s", "6m0s", "20ms" or a number of seconds
+     * @return the parsed duration, empty if the value couldn't be parsed
+     */
+    static Optional<Duration> parseDuration(String value)
+    {
+        if (NumberUtils.isCreatable(value)) {
+            return Optional.of(Duration.ofMillis((long) (NumberUtils.createDouble(value) * 1000)));
+        }
+
+        Matcher matcher = DURATION_PART.matcher(value);
+        double millis = 0;
+        int end = 0;
+        while (matcher.find() && matcher.start() == end) {
+            double amount = Double.parseDouble(matcher.group(1));
+            millis += switch (matcher.group(2)) {
+                case "h" -> amount * TimeUnit.HOURS.toMillis(1);
+                case "m" -> amount * TimeUnit.MINUTES.toMillis(1);
+                case "s" -> amount * TimeUnit.SECONDS.toMillis(1);
+                default -> amount;
+            };
+            end = matcher.end();
+        }
+
+        return end > 0 && end == value.length() ? Optional.of(Duration.ofMillis((long) millis)) : Optional.empty();
+    }
+}
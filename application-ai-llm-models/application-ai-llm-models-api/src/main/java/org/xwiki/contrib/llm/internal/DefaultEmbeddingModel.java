@@ -20,6 +20,8 @@
 package org.xwiki.contrib.llm.internal;
 
 import java.lang.reflect.Type;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.stream.Collectors;
 
@@ -40,8 +42,21 @@ import org.xwiki.contrib.llm.RequestError;
  */
 public class DefaultEmbeddingModel extends AbstractModel implements EmbeddingModel
 {
+    /**
+     * Sends a single embedding request to the server.
+     *
+     * @param <T> the type of the embeddings
+     */
+    @FunctionalInterface
+    private interface EmbeddingRequest<T>
+    {
+        List<T> send(GPTAPIServer server, String model, List<String> texts) throws RequestError;
+    }
+
     private final Provider<ComponentManager> componentManagerProvider;
 
+    private final TokenBucket tokenBudget;
+
     /**
      * Constructor.
      *
@@ -55,6 +70,9 @@ public class DefaultEmbeddingModel extends AbstractModel implements EmbeddingMod
         super(config, componentManager);
         this.componentManagerProvider = componentManager.getInstance(
             new DefaultParameterizedType(null, Provider.class, ComponentManager.class), "context");
+        // A new model instance is created when the configuration changes, so the budget never needs to be updated.
+        int tokensPerMinute = config.getTokensPerMinute();
+        this.tokenBudget = tokensPerMinute > 0 ? new TokenBucket(tokensPerMinute, Duration.ofMinutes(1)) : null;
     }
 
     @Override
@@ -65,21 +83,86 @@ public class DefaultEmbeddingModel extends AbstractModel implements EmbeddingMod
 
     @Override
     public List<double[]> embed(List<String> texts, EmbeddingPurpose purpose) throws RequestError
+    {
+        return embed(texts, purpose, GPTAPIServer::embed);
+    }
+
+    @Override
+    public float[] embedFloats(String text, EmbeddingPurpose purpose) throws RequestError
+    {
+        return embedFloats(List.of(text), purpose).get(0);
+    }
+
+    @Override
+    public List<float[]> embedFloats(List<String> texts, EmbeddingPurpose purpose) throws RequestError
+    {
+        return embed(texts, purpose, GPTAPIServer::embedFloats);
+    }
+
+    /**
+     * Split the texts into requests that don't exceed the configured maximum number of tokens and pace the requests
+     * to the configured number of tokens per minute.
+     */
+    private <T> List<T> embed(List<String> texts, EmbeddingPurpose purpose, EmbeddingRequest<T> request)
+        throws RequestError
+    {
+        GPTAPIServer server = getServer();
+        String model = this.modelConfiguration.getModel();
+        List<String> prefixedTexts = addPrefix(texts, purpose);
+        int maximumTokens = this.modelConfiguration.getMaximumTokensPerRequest();
+        if (maximumTokens <= 0 && this.tokenBudget == null) {
+            return request.send(server, model, prefixedTexts);
+        }
+
+        List<T> result = new ArrayList<>(prefixedTexts.size());
+        int batchStart = 0;
+        long batchTokens = 0;
+        for (int i = 0; i < prefixedTexts.size(); i++) {
+            int tokens = server.countTokens(model, prefixedTexts.get(i));
+            if (maximumTokens > 0 && i > batchStart && batchTokens + tokens > maximumTokens) {
+                result.addAll(send(server, model, prefixedTexts.subList(batchStart, i), batchTokens, request));
+                batchStart = i;
+                batchTokens = 0;
+            }
+            batchTokens += tokens;
+        }
+        result.addAll(send(server, model, prefixedTexts.subList(batchStart, prefixedTexts.size()), batchTokens,
+            request));
+        return result;
+    }
+
+    private <T> List<T> send(GPTAPIServer server, String model, List<String> texts, long tokens,
+        EmbeddingRequest<T> request) throws RequestError
+    {
+        if (this.tokenBudget != null) {
+            try {
+                this.tokenBudget.acquire(tokens);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RequestError(500, "Interrupted while waiting for the token budget of the model", e);
+            }
+        }
+
+        return request.send(server, model, texts);
+    }
+
+    private GPTAPIServer getServer() throws RequestError
     {
         try {
-            GPTAPIServer server = this.componentManagerProvider.get()
+            return this.componentManagerProvider.get()
                 .getInstance(GPTAPIServer.class, this.modelConfiguration.getServerName());
-            
-            List<String> prefixedTexts = texts.stream()
-                .map(text -> addPrefix(text, purpose))
-                .collect(Collectors.toList());
-            
-            return server.embed(this.modelConfiguration.getModel(), prefixedTexts);
         } catch (ComponentLookupException e) {
             throw new RequestError(500, "Could not find the GPT API server");
         }
     }
 
+    private List<String> addPrefix(List<String> texts, EmbeddingPurpose purpose)
+    {
+        return texts.stream()
+            .map(text -> addPrefix(text, purpose))
+            .collect(Collectors.toList());
+    }
+
     @Override
     public EmbeddingModelDescriptor getDescriptor()
     {
@@ -0,0 +1,211 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.llm.internal;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.theokanning.openai.OpenAiError;
+
+/**
+ * Parses the response of the embeddings API of OpenAI with a streaming parser directly into primitive arrays, without
+ * creating an object per value. Embeddings can be encoded either as arrays of numbers or as base64 strings of the
+ * little-endian float values.
+ *
+ * @param <T> the type of the embedding vectors
+ * @version $Id$
+ * @since 0.6.3
+ */
+final class EmbeddingResponseParser<T>
+{
+    private static final String EMBEDDING = "embedding";
+
+    private final VectorReader<T> vectorReader;
+
+    /**
+     * Reads the vectors of one response, the buffer of the numbers is reused between the vectors of the response.
+     */
+    private interface VectorReader<T>
+    {
+        T readArray(JsonParser parser) throws IOException;
+
+        T decode(FloatBuffer values);
+    }
+
+    private record IndexedVector<T>(int index, T vector)
+    {
+    }
+
+    private EmbeddingResponseParser(VectorReader<T> vectorReader)
+    {
+        this.vectorReader = vectorReader;
+    }
+
+    /**
+     * @return a new parser for float vectors, a parser must only be used for a single response at a time
+     */
+    static EmbeddingResponseParser<float[]> floats()
+    {
+        return new EmbeddingResponseParser<>(new FloatVectorReader());
+    }
+
+    /**
+     * @return a new parser for double vectors, a parser must only be used for a single response at a time
+     */
+    static EmbeddingResponseParser<double[]> doubles()
+    {
+        return new EmbeddingResponseParser<>(new DoubleVectorReader());
+    }
+
+    /**
+     * @param input the response body
+     * @param objectMapper the object mapper used to read error details
+     * @return the embeddings in the order of the input texts
+     * @throws IOException if the response can't be parsed or contains an error
+     */
+    List<T> parse(InputStream input, ObjectMapper objectMapper) throws IOException
+    {
+        List<IndexedVector<T>> vectors = new ArrayList<>();
+        boolean hasData = false;
+        try (JsonParser parser = objectMapper.getFactory().createParser(input)) {
+            expect(parser.nextToken(), JsonToken.START_OBJECT);
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken value = parser.nextToken();
+                if ("data".equals(field) && value == JsonToken.START_ARRAY) {
+                    hasData = true;
+                    while (parser.nextToken() == JsonToken.START_OBJECT) {
+                        vectors.add(readEmbedding(parser, vectors.size()));
+                    }
+                } else if ("error".equals(field) && value == JsonToken.START_OBJECT) {
+                    OpenAiError.OpenAiErrorDetails error = parser.readValueAs(OpenAiError.OpenAiErrorDetails.class);
+                    throw new IOException(error.getMessage());
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+
+        if (!hasData) {
+            throw new IOException("Response data is null");
+        }
+
+        // The embeddings are normally already ordered by index.
+        vectors.sort(Comparator.comparingInt(IndexedVector::index));
+        return vectors.stream().map(IndexedVector::vector).toList();
+    }
+
+    private IndexedVector<T> readEmbedding(JsonParser parser, int position) throws IOException
+    {
+        int index = position;
+        T vector = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            if (EMBEDDING.equals(field) && value == JsonToken.START_ARRAY) {
+                vector = this.vectorReader.readArray(parser);
+            } else if (EMBEDDING.equals(field) && value == JsonToken.VALUE_STRING) {
+                ByteBuffer bytes = ByteBuffer.wrap(parser.getBinaryValue()).order(ByteOrder.LITTLE_ENDIAN);
+                vector = this.vectorReader.decode(bytes.asFloatBuffer());
+            } else if ("index".equals(field) && value == JsonToken.VALUE_NUMBER_INT) {
+                index = parser.getIntValue();
+            } else {
+                parser.skipChildren();
+            }
+        }
+
+        if (vector == null) {
+            throw new IOException("Missing embedding at position [%d]".formatted(position));
+        }
+
+        return new IndexedVector<>(index, vector);
+    }
+
+    private static void expect(JsonToken actual, JsonToken expected) throws IOException
+    {
+        if (actual != expected) {
+            throw new IOException("Unexpected token [%s] in the embedding response".formatted(actual));
+        }
+    }
+
+    private static final class FloatVectorReader implements VectorReader<float[]>
+    {
+        private float[] buffer = new float[1024];
+
+        @Override
+        public float[] readArray(JsonParser parser) throws IOException
+        {
+            int size = 0;
+            while (parser.nextToken() != JsonToken.END_ARRAY) {
+                if (size == this.buffer.length) {
+                    this.buffer = Arrays.copyOf(this.buffer, size * 2);
+                }
+                this.buffer[size++] = parser.getFloatValue();
+            }
+            return Arrays.copyOf(this.buffer, size);
+        }
+
+        @Override
+        public float[] decode(FloatBuffer values)
+        {
+            float[] result = new float[values.remaining()];
+            values.get(result);
+            return result;
+        }
+    }
+
+    private static final class DoubleVectorReader implements VectorReader<double[]>
+    {
+        private double[] buffer = new double[1024];
+
+        @Override
+        public double[] readArray(JsonParser parser) throws IOException
+        {
+            int size = 0;
+            while (parser.nextToken() != JsonToken.END_ARRAY) {
+                if (size == this.buffer.length) {
+                    this.buffer = Arrays.copyOf(this.buffer, size * 2);
+                }
+                this.buffer[size++] = parser.getDoubleValue();
+            }
+            return Arrays.copyOf(this.buffer, size);
+        }
+
+        @Override
+        public double[] decode(FloatBuffer values)
+        {
+            double[] result = new double[values.remaining()];
+            for (int i = 0; i < result.length; i++) {
+                result[i] = values.get(i);
+            }
+            return result;
+        }
+    }
+}
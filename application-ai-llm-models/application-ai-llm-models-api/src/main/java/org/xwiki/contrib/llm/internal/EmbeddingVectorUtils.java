@@ -0,0 +1,88 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.llm.internal;
+
+import java.util.List;
+
+/**
+ * Helpers for converting embedding vectors between the primitive {@code float[]} representation that is used
+ * internally and the {@code double[]} representation of the older APIs.
+ *
+ * @version $Id$
+ * @since 0.6.3
+ */
+public final class EmbeddingVectorUtils
+{
+    private EmbeddingVectorUtils()
+    {
+    }
+
+    /**
+     * @param vector the vector to convert, can be {@code null}
+     * @return the vector with single precision, or {@code null} if the given vector was {@code null}
+     */
+    public static float[] toFloatArray(double[] vector)
+    {
+        if (vector == null) {
+            return null;
+        }
+
+        float[] result = new float[vector.length];
+        for (int i = 0; i < vector.length; i++) {
+            result[i] = (float) vector[i];
+        }
+        return result;
+    }
+
+    /**
+     * @param vector the vector to convert, can be {@code null}
+     * @return the vector with double precision, or {@code null} if the given vector was {@code null}
+     */
+    public static double[] toDoubleArray(float[] vector)
+    {
+        if (vector == null) {
+            return null;
+        }
+
+        double[] result = new double[vector.length];
+        for (int i = 0; i < vector.length; i++) {
+            result[i] = vector[i];
+        }
+        return result;
+    }
+
+    /**
+     * @param vectors the vectors to convert
+     * @return the vectors with single precision
+     */
+    public static List<float[]> toFloatArrays(List<double[]> vectors)
+    {
+        return vectors.stream().map(EmbeddingVectorUtils::toFloatArray).toList();
+    }
+
+    /**
+     * @param vectors the vectors to convert
+     * @return the vectors with double precision
+     */
+    public static List<double[]> toDoubleArrays(List<float[]> vectors)
+    {
+        return vectors.stream().map(EmbeddingVectorUtils::toDoubleArray).toList();
+    }
+}
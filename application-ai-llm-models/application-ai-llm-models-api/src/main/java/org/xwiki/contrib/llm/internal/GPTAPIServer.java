@@ -42,4 +42,56 @@ public interface GPTAPIServer
      * @throws RequestError if there is any problem calling the embedding model
      */
     List<double[]> embed(String model, List<String> texts) throws RequestError;
+
+    /**
+     * Embed the given texts with the given model and return the embeddings with single precision.
+     *
+     * @param model the embedding model
+     * @param texts the texts to embed
+     * @return the embeddings of the given texts
+     * @throws RequestError if there is any problem calling the embedding model
+     * @since 0.6.3
+     */
+    default List<float[]> embedFloats(String model, List<String> texts) throws RequestError
+    {
+        return EmbeddingVectorUtils.toFloatArrays(embed(model, texts));
+    }
+
+    /**
+     * Count the tokens of the given text for the given model. Servers that don't know the tokenizer of the model
+     * return the estimate of {@link #estimateTokens(String)}.
+     *
+     * @param model the embedding model
+     * @param text the text to count the tokens of
+     * @return the (estimated) number of tokens of the text
+     * @since 0.6.3
+     */
+    default int countTokens(String model, String text)
+    {
+        return estimateTokens(text);
+    }
+
+    /**
+     * Estimate the number of tokens of a text without knowing the tokenizer, assuming about four characters per token
+     * for ASCII text and one token for each other character, which is usually an overestimate for BPE tokenizers.
+     *
+     * @param text the text to estimate the number of tokens of
+     * @return the estimated number of tokens
+     * @since 0.6.3
+     */
+    static int estimateTokens(String text)
+    {
+        int asciiCharacters = 0;
+        int otherCharacters = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < 128) {
+                asciiCharacters++;
+            } else if (!Character.isLowSurrogate(c)) {
+                otherCharacters++;
+            }
+        }
+
+        return (asciiCharacters + 3) / 4 + otherCharacters;
+    }
 }
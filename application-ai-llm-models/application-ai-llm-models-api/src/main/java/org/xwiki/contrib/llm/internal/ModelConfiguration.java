@@ -51,6 +51,10 @@ public class ModelConfiguration
 
     private int maximumParallelism;
 
+    private int maximumTokensPerRequest;
+
+    private int tokensPerMinute;
+
     private boolean allowGuests;
 
     private List<DocumentReference> allowedGroups;
@@ -131,6 +135,24 @@ public class ModelConfiguration
         return this.maximumParallelism;
     }
 
+    /**
+     * @return the maximum number of tokens of all texts in a single embedding request, {@code 0} if unlimited
+     * @since 0.6.3
+     */
+    public int getMaximumTokensPerRequest()
+    {
+        return this.maximumTokensPerRequest;
+    }
+
+    /**
+     * @return the maximum number of tokens that may be embedded per minute, {@code 0} if unlimited
+     * @since 0.6.3
+     */
+    public int getTokensPerMinute()
+    {
+        return this.tokensPerMinute;
+    }
+
     /**
      * @return the reference of the object that contains the model configuration
      */
@@ -235,6 +257,25 @@ public class ModelConfiguration
         this.maximumParallelism = maximumParallelism;
     }
 
+    /**
+     * @param maximumTokensPerRequest the maximum number of tokens of all texts in a single embedding request,
+     *     {@code 0} if unlimited
+     * @since 0.6.3
+     */
+    public void setMaximumTokensPerRequest(int maximumTokensPerRequest)
+    {
+        this.maximumTokensPerRequest = maximumTokensPerRequest;
+    }
+
+    /**
+     * @param tokensPerMinute the maximum number of tokens that may be embedded per minute, {@code 0} if unlimited
+     * @since 0.6.3
+     */
+    public void setTokensPerMinute(int tokensPerMinute)
+    {
+        this.tokensPerMinute = tokensPerMinute;
+    }
+
     /**
      * @param allowGuests {@code true} if guests are allowed to access the model, {@code false} otherwise
      */
@@ -108,6 +108,16 @@ public class ModelWikiObjectComponentBuilder implements WikiObjectComponentBuild
      */
     private static final String MAXIMUM_PARALLELISM_FIELD = "maximumParallelism";
 
+    /**
+     * The name of the field containing the maximum number of tokens to put in a single embedding request.
+     */
+    private static final String MAXIMUM_TOKENS_PER_REQUEST_FIELD = "maximumTokensPerRequest";
+
+    /**
+     * The name of the field containing the maximum number of tokens to embed per minute.
+     */
+    private static final String TOKENS_PER_MINUTE_FIELD = "tokensPerMinute";
+
     /**
      * The value indicating that guests are allowed to access the model.
      */
@@ -237,6 +247,8 @@ public class ModelWikiObjectComponentBuilder implements WikiObjectComponentBuild
         modelConfiguration.setDimensions(xObject.getIntValue(DIMENSIONS_FIELD));
         modelConfiguration.setContextSize(xObject.getIntValue(CONTEXT_SIZE_FIELD));
         modelConfiguration.setMaximumParallelism(xObject.getIntValue(MAXIMUM_PARALLELISM_FIELD, 100));
+        modelConfiguration.setMaximumTokensPerRequest(xObject.getIntValue(MAXIMUM_TOKENS_PER_REQUEST_FIELD));
+        modelConfiguration.setTokensPerMinute(xObject.getIntValue(TOKENS_PER_MINUTE_FIELD));
         modelConfiguration.setId(this.localEntityReferenceSerializer.serialize(xObject.getDocumentReference()));
         modelConfiguration.setName(xObject.getOwnerDocument().getTitle());
         modelConfiguration.setObjectReference(xObject.getReference());
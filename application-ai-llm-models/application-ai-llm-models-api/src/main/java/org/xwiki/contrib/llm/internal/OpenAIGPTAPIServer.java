@@ -27,18 +27,16 @@ import java.util.List;
 import javax.inject.Inject;
 import javax.inject.Named;
 
+import org.apache.commons.lang3.StringUtils;
 import org.xwiki.component.annotation.Component;
 import org.xwiki.component.annotation.InstantiationStrategy;
 import org.xwiki.component.descriptor.ComponentInstantiationStrategy;
 import org.xwiki.contrib.llm.RequestError;
+import org.xwiki.contrib.llm.openai.EmbeddingsRequest;
 
-import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.theokanning.openai.OpenAiError;
-import com.theokanning.openai.OpenAiResponse;
-import com.theokanning.openai.embedding.Embedding;
-import com.theokanning.openai.embedding.EmbeddingRequest;
 
 /**
  * Implementation of {@link GPTAPIServer} that uses the OpenAI API. This component is meant to be instantiated and
@@ -52,13 +50,31 @@ import com.theokanning.openai.embedding.EmbeddingRequest;
 @Named("openai")
 public class OpenAIGPTAPIServer extends AbstractGPTAPIServer
 {
+    private static final String BASE64 = "base64";
+
     @Inject
     private RequestHelper requestHelper;
 
+    // Request base64 encoded embeddings until the server rejects them.
+    private volatile boolean base64Supported = true;
+
     @Override
     public List<double[]> embed(String model, List<String> texts) throws RequestError
     {
-        EmbeddingRequest request = new EmbeddingRequest(model, texts, null);
+        return requestEmbeddings(model, texts, EmbeddingResponseParser.doubles());
+    }
+
+    @Override
+    public List<float[]> embedFloats(String model, List<String> texts) throws RequestError
+    {
+        return requestEmbeddings(model, texts, EmbeddingResponseParser.floats());
+    }
+
+    private <T> List<T> requestEmbeddings(String model, List<String> texts, EmbeddingResponseParser<T> parser)
+        throws RequestError
+    {
+        boolean base64 = this.base64Supported;
+        EmbeddingsRequest request = new EmbeddingsRequest(model, texts, base64 ? BASE64 : null, null);
 
         try {
             HttpResponse<InputStream> httpResponse =
@@ -68,19 +84,16 @@ public class OpenAIGPTAPIServer extends AbstractGPTAPIServer
 
             if (httpResponse.statusCode() != 200) {
                 OpenAiError error = objectMapper.readValue(httpResponse.body(), OpenAiError.class);
-                throw new RequestError(httpResponse.statusCode(), error.error.getMessage());
+                String message = error.error.getMessage();
+                if (base64 && isEncodingFormatError(httpResponse.statusCode(), message)) {
+                    // The server doesn't support base64 encoded embeddings, request them as numbers.
+                    this.base64Supported = false;
+                    return requestEmbeddings(model, texts, parser);
+                }
+                throw new RequestError(httpResponse.statusCode(), message);
             }
 
-            OpenAiResponse<Embedding> openAiResponse = readEmbeddingResponse(objectMapper, httpResponse);
-
-            if (openAiResponse.data != null) {
-                return openAiResponse.data.stream()
-                    .map(Embedding::getEmbedding)
-                    .map(list -> list.stream().mapToDouble(Double::doubleValue).toArray())
-                    .toList();
-            } else {
-                throw new IOException("Response data is null");
-            }
+            return parser.parse(httpResponse.body(), objectMapper);
         } catch (RequestError e) {
             // Don't let the next catch clause catch this more specific exception.
             throw e;
@@ -89,19 +102,9 @@ public class OpenAIGPTAPIServer extends AbstractGPTAPIServer
         }
     }
 
-    private static OpenAiResponse<Embedding> readEmbeddingResponse(ObjectMapper objectMapper,
-        HttpResponse<InputStream> httpResponse) throws IOException
+    private static boolean isEncodingFormatError(int statusCode, String message)
     {
-        try {
-            return objectMapper.readValue(httpResponse.body(),
-                new TypeReference<OpenAiResponse<Embedding>>()
-                {
-                });
-        } catch (IOException e) {
-            // If parsing the response failed, it is possible that in fact, it was an error response.
-            // Try reading the error response and throw an exception with the error.
-            OpenAiError error = objectMapper.readValue(httpResponse.body(), OpenAiError.class);
-            throw new IOException(error.error.getMessage());
-        }
+        return (statusCode == 400 || statusCode == 422)
+            && StringUtils.containsAnyIgnoreCase(message, "encoding_format", "encodingFormat", BASE64);
     }
 }
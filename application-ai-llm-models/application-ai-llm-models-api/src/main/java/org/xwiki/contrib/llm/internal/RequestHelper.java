@@ -28,6 +28,9 @@ import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.inject.Inject;
 import javax.inject.Singleton;
@@ -59,8 +62,12 @@ public class RequestHelper
     @Inject
     private HttpClientFactory httpClientFactory;
 
+    // The rate limiters of the servers by URL and token as the limits of the server apply to the account.
+    private final Map<List<String>, AdaptiveRateLimiter> rateLimiters = new ConcurrentHashMap<>();
+
     /**
-     * Perform a POST request.
+     * Perform a POST request. Requests to the same server with the same token are paced by a rate limiter that adapts
+     * to the rate limit headers of the responses of the server.
      *
      * @param config the configuration that provides the URL and the authentication token
      * @param path the path of the API endpoint
@@ -76,10 +83,17 @@ public class RequestHelper
         throws IOException
     {
         HttpClient httpClient = this.httpClientFactory.createHttpClient();
-        HttpRequest request = prepareRequest(path, config, body);
+        String serializedBody = serializeBody(body);
+        HttpRequest request = prepareRequest(path, config, serializedBody);
+        AdaptiveRateLimiter rateLimiter = this.rateLimiters.computeIfAbsent(
+            List.of(StringUtils.defaultString(config.getURL()), StringUtils.defaultString(config.getToken())),
+            key -> new AdaptiveRateLimiter());
 
         try {
-            return httpClient.send(request, bodyHandler);
+            rateLimiter.acquire(serializedBody != null ? GPTAPIServer.estimateTokens(serializedBody) : 0);
+            HttpResponse<R> response = httpClient.send(request, bodyHandler);
+            rateLimiter.update(response.statusCode(), response.headers());
+            return response;
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
             throw new IOException(e);
@@ -135,7 +149,18 @@ public class RequestHelper
         }
     }
 
-    private <T> HttpRequest prepareRequest(String path, GPTAPIConfig config, T body) throws IOException
+    private static <T> String serializeBody(T body) throws IOException
+    {
+        if (body == null) {
+            return null;
+        }
+
+        ObjectMapper objectMapper = new ObjectMapper();
+        objectMapper.setSerializationInclusion(JsonInclude.Include.NON_NULL);
+        return objectMapper.writeValueAsString(body);
+    }
+
+    private HttpRequest prepareRequest(String path, GPTAPIConfig config, String body)
     {
         HttpRequest.Builder builder = HttpRequest.newBuilder()
             .uri(URI.create(config.getURL() + path))
@@ -145,9 +170,7 @@ public class RequestHelper
             .header("User-Agent", "XWiki AI LLM Application");
 
         if (body != null) {
-            ObjectMapper objectMapper = new ObjectMapper();
-            objectMapper.setSerializationInclusion(JsonInclude.Include.NON_NULL);
-            builder = builder.POST(HttpRequest.BodyPublishers.ofString(objectMapper.writeValueAsString(body)));
+            builder = builder.POST(HttpRequest.BodyPublishers.ofString(body));
         }
 
         return builder.build();
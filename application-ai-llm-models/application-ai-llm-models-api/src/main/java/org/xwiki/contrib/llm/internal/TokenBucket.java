@@ -0,0 +1,92 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.llm.internal;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A token bucket that paces consumers to a budget per period, e.g., a number of tokens per minute. The bucket starts
+ * full and is refilled continuously. Consumers reserve their tokens immediately and wait until the bucket would have
+ * contained them, so concurrent consumers are served in the order of their requests and a request that is larger than
+ * the whole budget only waits until the bucket is full again.
+ *
+ * @version $Id$
+ * @since 0.6.3
+ */
+public class TokenBucket
+{
+    private final double capacity;
+
+    private final double tokensPerNanosecond;
+
+    private double available;
+
+    private long lastRefill;
+
+    /**
+     * @param capacity the number of tokens that are available per period
+     * @param period the period in which the bucket is refilled completely
+     */
+    public TokenBucket(long capacity, Duration period)
+    {
+        this.capacity = capacity;
+        this.tokensPerNanosecond = capacity / (double) period.toNanos();
+        this.available = capacity;
+        this.lastRefill = System.nanoTime();
+    }
+
+    /**
+     * Take the given number of tokens from the bucket, waiting until they are available.
+     *
+     * @param tokens the number of tokens to take
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    public void acquire(long tokens) throws InterruptedException
+    {
+        long waitNanos;
+        synchronized (this) {
+            refill();
+            // Don't let a single large request exceed the capacity so that it doesn't block all further requests.
+            this.available -= Math.min(tokens, this.capacity);
+            waitNanos = this.available < 0 ? (long) Math.ceil(-this.available / this.tokensPerNanosecond) : 0;
+        }
+
+        if (waitNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+    }
+
+    /**
+     * @return the number of tokens that are currently available, negative when consumers are waiting
+     */
+    public synchronized double getAvailable()
+    {
+        refill();
+        return this.available;
+    }
+
+    private void refill()
+    {
+        long now = System.nanoTime();
+        this.available = Math.min(this.capacity, this.available + (now - this.lastRefill) * this.tokensPerNanosecond);
+        this.lastRefill = now;
+    }
+}
@@ -0,0 +1,194 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.llm.internal.rest;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.List;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+
+import org.xwiki.component.annotation.Component;
+import org.xwiki.contrib.llm.ChatClientConfigProvider;
+import org.xwiki.contrib.llm.EmbeddingModel;
+import org.xwiki.contrib.llm.EmbeddingModelManager;
+import org.xwiki.contrib.llm.GPTAPIException;
+import org.xwiki.contrib.llm.RequestError;
+import org.xwiki.contrib.llm.internal.CORSUtils;
+import org.xwiki.contrib.llm.internal.GPTAPIServer;
+import org.xwiki.contrib.llm.openai.EmbeddingsRequest;
+import org.xwiki.contrib.llm.rest.EmbeddingsResource;
+import org.xwiki.model.reference.WikiReference;
+import org.xwiki.rest.XWikiResource;
+import org.xwiki.rest.XWikiRestException;
+import org.xwiki.user.CurrentUserReference;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Default implementation of {@link EmbeddingsResource}.
+ *
+ * @version $Id$
+ * @since 0.6.3
+ */
+@Component
+@Named("org.xwiki.contrib.llm.internal.rest.DefaultEmbeddingsResource")
+@Singleton
+public class DefaultEmbeddingsResource extends XWikiResource implements EmbeddingsResource
+{
+    private static final String CORS_ALLOW_ORIGIN = "Access-Control-Allow-Origin";
+    private static final String CORS_ALLOW_METHODS = "Access-Control-Allow-Methods";
+    private static final String CORS_ALLOW_HEADERS = "Access-Control-Allow-Headers";
+    private static final String CORS_METHODS = "POST, OPTIONS";
+    private static final String CORS_HEADERS = "Content-Type, Authorization, Origin";
+    private static final String BASE64 = "base64";
+    private static final String OBJECT = "object";
+
+    // Same limit as the OpenAI API, larger requests need to be split by the client.
+    private static final int MAX_INPUTS = 2048;
+
+    @Inject
+    private ChatClientConfigProvider configProvider;
+
+    @Inject
+    private EmbeddingModelManager embeddingModelManager;
+
+    @Override
+    public Response getEmbeddings(String origin, String wikiName, EmbeddingsRequest request)
+    {
+        String allowedOrigin = CORSUtils.matchOrigin(origin, this.configProvider, wikiName);
+        try {
+            if (request == null || request.input() == null || request.input().isEmpty()) {
+                throw new RequestError(Response.Status.BAD_REQUEST.getStatusCode(), "The input must not be empty.");
+            }
+            if (request.input().size() > MAX_INPUTS) {
+                throw new RequestError(Response.Status.BAD_REQUEST.getStatusCode(),
+                    "The input must not contain more than [%d] texts.".formatted(MAX_INPUTS));
+            }
+            if (request.model() == null || request.model().isBlank()) {
+                throw new RequestError(Response.Status.BAD_REQUEST.getStatusCode(), "The model must be specified.");
+            }
+            boolean base64 = BASE64.equals(request.encodingFormat());
+            if (!base64 && request.encodingFormat() != null && !"float".equals(request.encodingFormat())) {
+                throw new RequestError(Response.Status.BAD_REQUEST.getStatusCode(),
+                    "Unsupported encoding format [%s].".formatted(request.encodingFormat()));
+            }
+
+            EmbeddingModel model;
+            try {
+                // Checks that the current user has access to the model.
+                model = this.embeddingModelManager.getModel(new WikiReference(wikiName), request.model(),
+                    CurrentUserReference.INSTANCE);
+            } catch (GPTAPIException e) {
+                throw new RequestError(Response.Status.NOT_FOUND.getStatusCode(), e.getMessage());
+            }
+
+            List<float[]> embeddings = model.embedFloats(request.input(), getPurpose(request));
+
+            // Stream the response to avoid holding the serialized embeddings of large requests in memory.
+            StreamingOutput output = outputStream -> writeResponse(outputStream, request, embeddings, base64);
+            return Response.ok(output, MediaType.APPLICATION_JSON_TYPE)
+                .header(CORS_ALLOW_ORIGIN, allowedOrigin)
+                .header(CORS_ALLOW_METHODS, CORS_METHODS)
+                .header(CORS_ALLOW_HEADERS, CORS_HEADERS)
+                .build();
+        } catch (RequestError e) {
+            int status = e.getCode() >= 400 && e.getCode() < 600 ? e.getCode()
+                : Response.Status.INTERNAL_SERVER_ERROR.getStatusCode();
+            return Response.status(status)
+                .entity(e.getOpenAiError())
+                .type(MediaType.APPLICATION_JSON_TYPE)
+                .header(CORS_ALLOW_ORIGIN, allowedOrigin)
+                .header(CORS_ALLOW_METHODS, CORS_METHODS)
+                .header(CORS_ALLOW_HEADERS, CORS_HEADERS)
+                .build();
+        }
+    }
+
+    @Override
+    public Response options(String origin, String wikiName) throws XWikiRestException
+    {
+        try {
+            String allowedOrigin = CORSUtils.matchOrigin(origin, this.configProvider, wikiName);
+            return CORSUtils.addCORSHeaders(allowedOrigin, CORS_METHODS, CORS_HEADERS).build();
+        } catch (Exception e) {
+            throw new XWikiRestException("Error handling the preflight request.", e);
+        }
+    }
+
+    private static EmbeddingModel.EmbeddingPurpose getPurpose(EmbeddingsRequest request)
+    {
+        return "index".equals(request.purpose()) ? EmbeddingModel.EmbeddingPurpose.INDEX
+            : EmbeddingModel.EmbeddingPurpose.QUERY;
+    }
+
+    private static void writeResponse(OutputStream outputStream, EmbeddingsRequest request,
+        List<float[]> embeddings, boolean base64) throws IOException
+    {
+        try (JsonGenerator generator = new ObjectMapper().getFactory().createGenerator(outputStream,
+            JsonEncoding.UTF8)) {
+            generator.writeStartObject();
+            generator.writeStringField(OBJECT, "list");
+            generator.writeArrayFieldStart("data");
+            for (int i = 0; i < embeddings.size(); i++) {
+                generator.writeStartObject();
+                generator.writeStringField(OBJECT, "embedding");
+                generator.writeNumberField("index", i);
+                generator.writeFieldName("embedding");
+                writeEmbedding(generator, embeddings.get(i), base64);
+                generator.writeEndObject();
+            }
+            generator.writeEndArray();
+            generator.writeStringField("model", request.model());
+
+            // The embedding models don't report the number of tokens, estimate it.
+            long tokens = request.input().stream().mapToLong(GPTAPIServer::estimateTokens).sum();
+            generator.writeObjectFieldStart("usage");
+            generator.writeNumberField("prompt_tokens", tokens);
+            generator.writeNumberField("total_tokens", tokens);
+            generator.writeEndObject();
+            generator.writeEndObject();
+        }
+    }
+
+    private static void writeEmbedding(JsonGenerator generator, float[] embedding, boolean base64) throws IOException
+    {
+        if (base64) {
+            ByteBuffer buffer = ByteBuffer.allocate(embedding.length * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            buffer.asFloatBuffer().put(embedding);
+            generator.writeBinary(buffer.array());
+        } else {
+            generator.writeStartArray();
+            for (float value : embedding) {
+                generator.writeNumber(value);
+            }
+            generator.writeEndArray();
+        }
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.llm.openai;
+
+import java.util.List;
+
+import org.xwiki.stability.Unstable;
+
+import com.fasterxml.jackson.annotation.JsonAutoDetect;
+import com.fasterxml.jackson.annotation.JsonFormat;
+import com.fasterxml.jackson.databind.PropertyNamingStrategies;
+import com.fasterxml.jackson.databind.annotation.JsonNaming;
+
+/**
+ * A request to compute the embeddings of one or more texts.
+ *
+ * @param model the model to use for the embeddings
+ * @param input the texts to embed, a single string is accepted, too
+ * @param encodingFormat the format of the returned embeddings, either "float" (default) or "base64" for the
+ * little-endian bytes of the float vector encoded as base64
+ * @param purpose the purpose of the embeddings, either "query" (default) or "index", this is an extension of the
+ * OpenAI API for models that embed queries and indexed texts differently
+ *
+ * @version $Id$
+ * @since 0.6.3
+ */
+@Unstable
+@JsonNaming(PropertyNamingStrategies.SnakeCaseStrategy.class)
+@JsonAutoDetect(creatorVisibility = JsonAutoDetect.Visibility.ANY)
+public record EmbeddingsRequest(
+    String model,
+    @JsonFormat(with = JsonFormat.Feature.ACCEPT_SINGLE_VALUE_AS_ARRAY)
+    List<String> input,
+    String encodingFormat,
+    String purpose
+)
+{
+}
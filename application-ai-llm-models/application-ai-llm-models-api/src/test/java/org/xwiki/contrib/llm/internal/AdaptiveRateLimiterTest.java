@@ -0,0 +1,96 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.llm.internal;
+
+import java.net.http.HttpHeaders;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for {@link AdaptiveRateLimiter}.
+ *
+ * @version $Id$
+ */
+class AdaptiveRateLimiterTest
+{
+    @Test
+    void parseDuration()
+    {
+        assertEquals(Optional.of(Duration.ofSeconds(1)), AdaptiveRateLimiter.parseDuration("1s"));
+        assertEquals(Optional.of(Duration.ofMillis(20)), AdaptiveRateLimiter.parseDuration("20ms"));
+        assertEquals(Optional.of(Duration.ofMinutes(6)), AdaptiveRateLimiter.parseDuration("6m0s"));
+        assertEquals(Optional.of(Duration.ofMillis(3_723_500)), AdaptiveRateLimiter.parseDuration("1h2m3.5s"));
+        assertEquals(Optional.of(Duration.ofMillis(2500)), AdaptiveRateLimiter.parseDuration("2.5"));
+        assertEquals(Optional.empty(), AdaptiveRateLimiter.parseDuration("soon"));
+    }
+
+    @Test
+    void retryAfter() throws Exception
+    {
+        AdaptiveRateLimiter rateLimiter = new AdaptiveRateLimiter();
+        rateLimiter.update(429, headers(Map.of("retry-after-ms", "200")));
+
+        long start = System.nanoTime();
+        rateLimiter.acquire(1);
+        assertTrue(System.nanoTime() - start >= Duration.ofMillis(150).toNanos());
+    }
+
+    @Test
+    void spreadRemainingRequests() throws Exception
+    {
+        AdaptiveRateLimiter rateLimiter = new AdaptiveRateLimiter();
+        rateLimiter.update(200, headers(Map.of(
+            "x-ratelimit-remaining-requests", "2",
+            "x-ratelimit-reset-requests", "200ms")));
+
+        long start = System.nanoTime();
+        rateLimiter.acquire(1);
+        rateLimiter.acquire(1);
+        assertTrue(System.nanoTime() - start >= Duration.ofMillis(80).toNanos());
+    }
+
+    @Test
+    void noHeaders() throws Exception
+    {
+        AdaptiveRateLimiter rateLimiter = new AdaptiveRateLimiter();
+        rateLimiter.update(200, headers(Map.of()));
+
+        long start = System.nanoTime();
+        for (int i = 0; i < 10; i++) {
+            rateLimiter.acquire(1000);
+        }
+        assertTrue(System.nanoTime() - start < Duration.ofMillis(100).toNanos());
+    }
+
+    private static HttpHeaders headers(Map<String, String> values)
+    {
+        Map<String, List<String>> headers = new HashMap<>();
+        values.forEach((name, value) -> headers.put(name, List.of(value)));
+        return HttpHeaders.of(headers, (name, value) -> true);
+    }
+}
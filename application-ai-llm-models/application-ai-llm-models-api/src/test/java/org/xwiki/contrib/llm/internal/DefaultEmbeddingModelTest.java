@@ -19,157 +19,153 @@
  */
 package org.xwiki.contrib.llm.internal;
 
-import java.io.InputStream;
-import java.net.http.HttpClient;
-import java.net.http.HttpHeaders;
-import java.net.http.HttpRequest;
-import java.net.http.HttpResponse;
-import java.nio.ByteBuffer;
-import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.util.List;
-import java.util.concurrent.Flow;
 
-import org.apache.commons.io.IOUtils;
+import javax.inject.Provider;
+
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
-import org.mockito.ArgumentCaptor;
-import org.mockito.Mock;
-import org.xwiki.contrib.llm.GPTAPIConfig;
-import org.xwiki.contrib.llm.RequestError;
-import org.xwiki.test.annotation.ComponentList;
-import org.xwiki.test.junit5.mockito.ComponentTest;
-import org.xwiki.test.junit5.mockito.InjectComponentManager;
-import org.xwiki.test.junit5.mockito.InjectMockComponents;
-import org.xwiki.test.junit5.mockito.MockComponent;
-import org.xwiki.test.mockito.MockitoComponentManager;
+import org.mockito.InOrder;
+import org.xwiki.component.manager.ComponentManager;
+import org.xwiki.component.util.DefaultParameterizedType;
+import org.xwiki.contrib.llm.EmbeddingModel;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
-import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
-import static org.mockito.Mockito.doAnswer;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 /**
- * Component test for {@link OpenAIGPTAPIServer}.
+ * Unit tests for {@link DefaultEmbeddingModel}.
  *
  * @version $Id$
  */
-@ComponentTest
-@ComponentList({ RequestHelper.class })
-class OpenAIGPTAPIServerTest
+class DefaultEmbeddingModelTest
 {
+    private static final String SERVER = "server";
 
-    private static final String INPUT = "XWiki is awesome";
-
-    private static final String TOKEN = "token";
+    private static final String MODEL = "model";
 
-    private static final String URL = "https://api.openai.com/v1/";
+    private GPTAPIServer server;
 
-    private static final String MODEL = "text-embedding-ada-002";
+    private ComponentManager componentManager;
 
-    /**
-     * Example response taken from
-     * <a href="https://platform.openai.com/docs/api-reference/embeddings/create">the OpenAI documentation</a>.
-     */
-    private static final String EMBEDDING_RESPONSE = """
-            {
-              "object": "list",
-              "data": [
-                {
-                  "object": "embedding",
-                  "embedding": [
-                    0.0023064255,
-                    -0.009327292,
-                    -0.0028842222
-                  ],
-                  "index": 0
-                }
-              ],
-              "model": "text-embedding-ada-002",
-              "usage": {
-                "prompt_tokens": 8,
-                "total_tokens": 8
-              }
-            }
-            """;
+    private ModelConfiguration configuration;
 
-    private static final String APPLICATION_JSON = "application/json";
+    @BeforeEach
+    void setUp() throws Exception
+    {
+        this.server = mock();
+        // One token per character and a one-dimensional embedding with the length of the text to check the order.
+        when(this.server.countTokens(eq(MODEL), anyString()))
+            .thenAnswer(invocation -> invocation.getArgument(1, String.class).length());
+        when(this.server.embedFloats(eq(MODEL), anyList())).thenAnswer(invocation -> invocation
+            .<List<String>>getArgument(1).stream()
+            .map(text -> new float[] { text.length() })
+            .toList());
+
+        this.componentManager = mock();
+        Provider<ComponentManager> componentManagerProvider = () -> this.componentManager;
+        when(this.componentManager.getInstance(
+            new DefaultParameterizedType(null, Provider.class, ComponentManager.class), "context"))
+            .thenReturn(componentManagerProvider);
+        when(this.componentManager.getInstance(GPTAPIServer.class, SERVER)).thenReturn(this.server);
+
+        this.configuration = new ModelConfiguration();
+        this.configuration.setServerName(SERVER);
+        this.configuration.setModel(MODEL);
+        this.configuration.setEmbeddingIndexPrefix("");
+        this.configuration.setEmbeddingQueryPrefix("");
+    }
 
-    @MockComponent
-    private HttpClientFactory httpClientFactory;
+    @Test
+    void noLimits() throws Exception
+    {
+        List<String> texts = List.of("aaaa", "bb");
 
-    @InjectComponentManager
-    private MockitoComponentManager componentManager;
+        List<float[]> embeddings = createModel().embedFloats(texts, EmbeddingModel.EmbeddingPurpose.INDEX);
 
-    @Mock
-    private HttpClient httpClient;
+        assertEquals(2, embeddings.size());
+        verify(this.server).embedFloats(MODEL, texts);
+        verify(this.server, times(0)).countTokens(any(), any());
+    }
 
-    @Mock
-    private HttpResponse<InputStream> httpResponse;
+    @Test
+    void splitAtMaximumTokensPerRequest() throws Exception
+    {
+        this.configuration.setMaximumTokensPerRequest(10);
 
-    @Mock
-    private GPTAPIConfig config;
+        List<float[]> embeddings = createModel().embedFloats(List.of("aaaa", "bbbb", "cccc", "dd", "eeee"),
+            EmbeddingModel.EmbeddingPurpose.INDEX);
 
-    @InjectMockComponents
-    private OpenAIGPTAPIServer server;
+        assertLengths(List.of(4, 4, 4, 2, 4), embeddings);
+        InOrder inOrder = inOrder(this.server);
+        inOrder.verify(this.server).embedFloats(MODEL, List.of("aaaa", "bbbb"));
+        inOrder.verify(this.server).embedFloats(MODEL, List.of("cccc", "dd", "eeee"));
+        inOrder.verifyNoMoreInteractions();
+    }
 
-    @BeforeEach
-    void setUp() throws Exception
+    @Test
+    void textLargerThanMaximumTokensPerRequest() throws Exception
     {
-        when(this.httpClientFactory.createHttpClient()).thenReturn(this.httpClient);
-        when(this.httpClient.<InputStream>send(any(HttpRequest.class), any())).thenReturn(this.httpResponse);
-        when(this.config.getToken()).thenReturn(TOKEN);
-        when(this.config.getURL()).thenReturn(URL);
-        this.server.initialize(this.config, mock(), mock());
+        this.configuration.setMaximumTokensPerRequest(5);
+
+        List<float[]> embeddings = createModel().embedFloats(List.of("aa", "bbbbbbbb", "cc"),
+            EmbeddingModel.EmbeddingPurpose.INDEX);
+
+        // The large text is sent alone, the server decides whether it truncates it or fails.
+        assertLengths(List.of(2, 8, 2), embeddings);
+        InOrder inOrder = inOrder(this.server);
+        inOrder.verify(this.server).embedFloats(MODEL, List.of("aa"));
+        inOrder.verify(this.server).embedFloats(MODEL, List.of("bbbbbbbb"));
+        inOrder.verify(this.server).embedFloats(MODEL, List.of("cc"));
     }
 
     @Test
-    void embed() throws Exception
+    void prefixIsCounted() throws Exception
     {
-        when(this.httpResponse.statusCode()).thenReturn(200);
-        when(this.httpResponse.body()).thenReturn(IOUtils.toInputStream(EMBEDDING_RESPONSE, StandardCharsets.UTF_8));
-
-        double[] embedding = this.server.embed(MODEL, List.of(INPUT)).get(0);
-        assertEquals(3, embedding.length);
-        assertEquals(0.0023064255, embedding[0]);
-        assertEquals(-0.009327292, embedding[1]);
-        assertEquals(-0.0028842222, embedding[2]);
-
-        // Capture the POST request
-        ArgumentCaptor<HttpRequest> requestCaptor = ArgumentCaptor.forClass(HttpRequest.class);
-        verify(this.httpClient).send(requestCaptor.capture(), any());
-        HttpRequest request = requestCaptor.getValue();
-        assertEquals(URL + "embeddings", request.uri().toString());
-        HttpHeaders headers = request.headers();
-        assertEquals("Bearer " + TOKEN, headers.firstValue("Authorization").orElseThrow());
-        assertEquals(APPLICATION_JSON, headers.firstValue("Accept").orElseThrow());
-        assertEquals(APPLICATION_JSON, headers.firstValue("Content-Type").orElseThrow());
-
-        Flow.Subscriber<ByteBuffer> bufferSubscriber = mock();
-        doAnswer(invocation -> {
-            Flow.Subscription subscription = invocation.getArgument(0);
-            subscription.request(Long.MAX_VALUE);
-            return null;
-        }).when(bufferSubscriber).onSubscribe(any());
-        request.bodyPublisher().orElseThrow().subscribe(bufferSubscriber);
-        ArgumentCaptor<ByteBuffer> bufferCaptor = ArgumentCaptor.forClass(ByteBuffer.class);
-        verify(bufferSubscriber).onNext(bufferCaptor.capture());
-        ByteBuffer buffer = bufferCaptor.getValue();
-
-        assertEquals("{\"model\":\"text-embedding-ada-002\",\"input\":[\"XWiki is awesome\"]}",
-            StandardCharsets.UTF_8.decode(buffer).toString());
+        this.configuration.setMaximumTokensPerRequest(10);
+        this.configuration.setEmbeddingQueryPrefix("q: ");
+
+        createModel().embedFloats(List.of("aaaa", "bbbb"), EmbeddingModel.EmbeddingPurpose.QUERY);
+
+        verify(this.server).embedFloats(MODEL, List.of("q: aaaa"));
+        verify(this.server).embedFloats(MODEL, List.of("q: bbbb"));
     }
 
     @Test
-    void embedWithError() throws Exception
+    void waitForTokensPerMinute() throws Exception
+    {
+        // 10 tokens per second.
+        this.configuration.setTokensPerMinute(600);
+        this.configuration.setMaximumTokensPerRequest(600);
+        DefaultEmbeddingModel model = createModel();
+
+        long start = System.nanoTime();
+        model.embedFloats(List.of("a".repeat(600)), EmbeddingModel.EmbeddingPurpose.INDEX);
+        assertTrue(System.nanoTime() - start < Duration.ofMillis(200).toNanos());
+
+        // The budget of the minute is used up, the next 5 tokens need half a second.
+        start = System.nanoTime();
+        model.embedFloats(List.of("bbbbb"), EmbeddingModel.EmbeddingPurpose.INDEX);
+        assertTrue(System.nanoTime() - start >= Duration.ofMillis(400).toNanos());
+    }
+
+    private DefaultEmbeddingModel createModel() throws Exception
     {
-        when(this.httpResponse.statusCode()).thenReturn(400);
-        when(this.httpResponse.body()).thenReturn(IOUtils.toInputStream(
-            "{\"error\": {\"message\": \"Invalid request\", \"code\": 400}}", StandardCharsets.UTF_8));
+        return new DefaultEmbeddingModel(this.configuration, this.componentManager);
+    }
 
-        RequestError exception = assertThrows(RequestError.class, () -> this.server.embed(MODEL, List.of(INPUT)));
-        assertEquals("400: Invalid request", exception.getMessage());
+    private static void assertLengths(List<Integer> expected, List<float[]> embeddings)
+    {
+        assertEquals(expected, embeddings.stream().map(embedding -> (int) embedding[0]).toList());
     }
 }
@@ -0,0 +1,261 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.llm.internal;
+
+import java.io.InputStream;
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Flow;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.xwiki.contrib.llm.GPTAPIConfig;
+import org.xwiki.contrib.llm.RequestError;
+import org.xwiki.test.annotation.ComponentList;
+import org.xwiki.test.junit5.mockito.ComponentTest;
+import org.xwiki.test.junit5.mockito.InjectComponentManager;
+import org.xwiki.test.junit5.mockito.InjectMockComponents;
+import org.xwiki.test.junit5.mockito.MockComponent;
+import org.xwiki.test.mockito.MockitoComponentManager;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Component test for {@link OpenAIGPTAPIServer}.
+ *
+ * @version $Id$
+ */
+@ComponentTest
+@ComponentList({ RequestHelper.class })
+class OpenAIGPTAPIServerTest
+{
+
+    private static final String INPUT = "XWiki is awesome";
+
+    private static final String TOKEN = "token";
+
+    private static final String URL = "https://api.openai.com/v1/";
+
+    private static final String MODEL = "text-embedding-ada-002";
+
+    /**
+     * Example response taken from
+     * <a href="https://platform.openai.com/docs/api-reference/embeddings/create">the OpenAI documentation</a>.
+     */
+    private static final String EMBEDDING_RESPONSE = """
+            {
+              "object": "list",
+              "data": [
+                {
+                  "object": "embedding",
+                  "embedding": [
+                    0.0023064255,
+                    -0.009327292,
+                    -0.0028842222
+                  ],
+                  "index": 0
+                }
+              ],
+              "model": "text-embedding-ada-002",
+              "usage": {
+                "prompt_tokens": 8,
+                "total_tokens": 8
+              }
+            }
+            """;
+
+    private static final String APPLICATION_JSON = "application/json";
+
+    private static final String ENCODING_FORMAT = "encoding_format";
+
+    @MockComponent
+    private HttpClientFactory httpClientFactory;
+
+    @InjectComponentManager
+    private MockitoComponentManager componentManager;
+
+    @Mock
+    private HttpClient httpClient;
+
+    @Mock
+    private HttpResponse<InputStream> httpResponse;
+
+    @Mock
+    private GPTAPIConfig config;
+
+    @InjectMockComponents
+    private OpenAIGPTAPIServer server;
+
+    @BeforeEach
+    void setUp() throws Exception
+    {
+        when(this.httpClientFactory.createHttpClient()).thenReturn(this.httpClient);
+        when(this.httpClient.<InputStream>send(any(HttpRequest.class), any())).thenReturn(this.httpResponse);
+        when(this.httpResponse.headers()).thenReturn(HttpHeaders.of(Map.of(), (name, value) -> true));
+        when(this.config.getToken()).thenReturn(TOKEN);
+        when(this.config.getURL()).thenReturn(URL);
+        this.server.initialize(this.config, mock(), mock());
+    }
+
+    @Test
+    void embed() throws Exception
+    {
+        when(this.httpResponse.statusCode()).thenReturn(200);
+        when(this.httpResponse.body()).thenReturn(IOUtils.toInputStream(EMBEDDING_RESPONSE, StandardCharsets.UTF_8));
+
+        double[] embedding = this.server.embed(MODEL, List.of(INPUT)).get(0);
+        assertEquals(3, embedding.length);
+        assertEquals(0.0023064255, embedding[0]);
+        assertEquals(-0.009327292, embedding[1]);
+        assertEquals(-0.0028842222, embedding[2]);
+
+        // Capture the POST request
+        ArgumentCaptor<HttpRequest> requestCaptor = ArgumentCaptor.forClass(HttpRequest.class);
+        verify(this.httpClient).send(requestCaptor.capture(), any());
+        HttpRequest request = requestCaptor.getValue();
+        assertEquals(URL + "embeddings", request.uri().toString());
+        HttpHeaders headers = request.headers();
+        assertEquals("Bearer " + TOKEN, headers.firstValue("Authorization").orElseThrow());
+        assertEquals(APPLICATION_JSON, headers.firstValue("Accept").orElseThrow());
+        assertEquals(APPLICATION_JSON, headers.firstValue("Content-Type").orElseThrow());
+
+        assertEquals("{\"model\":\"text-embedding-ada-002\",\"input\":[\"XWiki is awesome\"],"
+            + "\"encoding_format\":\"base64\"}", getBody(request));
+    }
+
+    @Test
+    void embedFloatsWithBase64() throws Exception
+    {
+        ByteBuffer vector = ByteBuffer.allocate(3 * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        vector.asFloatBuffer().put(new float[] { 0.5f, -0.25f, 1.0f });
+        String response = "{\"object\": \"list\", \"data\": [{\"object\": \"embedding\", \"index\": 0, "
+            + "\"embedding\": \"" + Base64.getEncoder().encodeToString(vector.array()) + "\"}]}";
+        when(this.httpResponse.statusCode()).thenReturn(200);
+        when(this.httpResponse.body()).thenReturn(IOUtils.toInputStream(response, StandardCharsets.UTF_8));
+
+        List<float[]> embeddings = this.server.embedFloats(MODEL, List.of(INPUT));
+
+        assertEquals(1, embeddings.size());
+        assertArrayEquals(new float[] { 0.5f, -0.25f, 1.0f }, embeddings.get(0));
+    }
+
+    @Test
+    void embedWithError() throws Exception
+    {
+        when(this.httpResponse.statusCode()).thenReturn(400);
+        when(this.httpResponse.body()).thenReturn(IOUtils.toInputStream(
+            "{\"error\": {\"message\": \"Invalid request\", \"code\": 400}}", StandardCharsets.UTF_8));
+
+        RequestError exception = assertThrows(RequestError.class, () -> this.server.embed(MODEL, List.of(INPUT)));
+        assertEquals("400: Invalid request", exception.getMessage());
+    }
+
+    @Test
+    void fallBackToNumbersWhenBase64IsRejected() throws Exception
+    {
+        when(this.httpResponse.statusCode()).thenReturn(422, 200, 200);
+        when(this.httpResponse.body()).thenReturn(
+            IOUtils.toInputStream("{\"error\": {\"message\": \"Unsupported value for encoding_format\"}}",
+                StandardCharsets.UTF_8),
+            IOUtils.toInputStream(EMBEDDING_RESPONSE, StandardCharsets.UTF_8),
+            IOUtils.toInputStream(EMBEDDING_RESPONSE, StandardCharsets.UTF_8));
+
+        List<float[]> embeddings = this.server.embedFloats(MODEL, List.of(INPUT));
+
+        assertEquals(1, embeddings.size());
+        assertArrayEquals(new float[] { 0.0023064255f, -0.009327292f, -0.0028842222f }, embeddings.get(0));
+
+        // The next request doesn't try base64 again.
+        this.server.embedFloats(MODEL, List.of(INPUT));
+
+        ArgumentCaptor<HttpRequest> requestCaptor = ArgumentCaptor.forClass(HttpRequest.class);
+        verify(this.httpClient, times(3)).send(requestCaptor.capture(), any());
+        List<HttpRequest> requests = requestCaptor.getAllValues();
+        assertTrue(getBody(requests.get(0)).contains(ENCODING_FORMAT));
+        assertFalse(getBody(requests.get(1)).contains(ENCODING_FORMAT));
+        assertFalse(getBody(requests.get(2)).contains(ENCODING_FORMAT));
+    }
+
+    @Test
+    void keepBase64AfterOtherErrors() throws Exception
+    {
+        when(this.httpResponse.statusCode()).thenReturn(400, 200);
+        when(this.httpResponse.body()).thenReturn(
+            IOUtils.toInputStream("{\"error\": {\"message\": \"Invalid model\"}}", StandardCharsets.UTF_8),
+            IOUtils.toInputStream(EMBEDDING_RESPONSE, StandardCharsets.UTF_8));
+
+        RequestError exception = assertThrows(RequestError.class, () -> this.server.embed(MODEL, List.of(INPUT)));
+        assertEquals("400: Invalid model", exception.getMessage());
+
+        this.server.embed(MODEL, List.of(INPUT));
+
+        ArgumentCaptor<HttpRequest> requestCaptor = ArgumentCaptor.forClass(HttpRequest.class);
+        verify(this.httpClient, times(2)).send(requestCaptor.capture(), any());
+        assertTrue(getBody(requestCaptor.getAllValues().get(1)).contains(ENCODING_FORMAT));
+    }
+
+    @Test
+    void embedWithErrorInSuccessfulResponse() throws Exception
+    {
+        when(this.httpResponse.statusCode()).thenReturn(200);
+        when(this.httpResponse.body()).thenReturn(IOUtils.toInputStream(
+            "{\"object\": \"list\", \"error\": {\"message\": \"The model is overloaded\"}}",
+            StandardCharsets.UTF_8));
+
+        RequestError exception =
+            assertThrows(RequestError.class, () -> this.server.embedFloats(MODEL, List.of(INPUT)));
+        assertEquals("500: The model is overloaded", exception.getMessage());
+    }
+
+    private static String getBody(HttpRequest request)
+    {
+        Flow.Subscriber<ByteBuffer> bufferSubscriber = mock();
+        doAnswer(invocation -> {
+            Flow.Subscription subscription = invocation.getArgument(0);
+            subscription.request(Long.MAX_VALUE);
+            return null;
+        }).when(bufferSubscriber).onSubscribe(any());
+        request.bodyPublisher().orElseThrow().subscribe(bufferSubscriber);
+        ArgumentCaptor<ByteBuffer> bufferCaptor = ArgumentCaptor.forClass(ByteBuffer.class);
+        verify(bufferSubscriber).onNext(bufferCaptor.capture());
+        return StandardCharsets.UTF_8.decode(bufferCaptor.getValue()).toString();
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.llm.internal;
+
+import java.time.Duration;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for {@link TokenBucket}.
+ *
+ * @version $Id$
+ */
+class TokenBucketTest
+{
+    private static final double DELTA = 1;
+
+    @Test
+    void startsFull() throws Exception
+    {
+        TokenBucket bucket = new TokenBucket(100, Duration.ofMinutes(1));
+        assertEquals(100, bucket.getAvailable(), DELTA);
+
+        long start = System.nanoTime();
+        bucket.acquire(100);
+        assertTrue(System.nanoTime() - start < Duration.ofMillis(100).toNanos());
+        assertEquals(0, bucket.getAvailable(), DELTA);
+    }
+
+    @Test
+    void waitsForRefill() throws Exception
+    {
+        TokenBucket bucket = new TokenBucket(100, Duration.ofSeconds(1));
+        bucket.acquire(100);
+
+        long start = System.nanoTime();
+        bucket.acquire(20);
+        assertTrue(System.nanoTime() - start >= Duration.ofMillis(150).toNanos());
+    }
+
+    @Test
+    void reservesTokensOfWaitingConsumers() throws Exception
+    {
+        TokenBucket bucket = new TokenBucket(100, Duration.ofMinutes(1));
+        bucket.acquire(100);
+
+        Thread waiting = new Thread(() -> {
+            try {
+                bucket.acquire(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        waiting.start();
+        try {
+            // The waiting consumer has reserved its tokens, later consumers queue behind it.
+            long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+            while (bucket.getAvailable() > -49 && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(-50, bucket.getAvailable(), DELTA);
+        } finally {
+            waiting.interrupt();
+            waiting.join();
+        }
+    }
+
+    @Test
+    void capsLargeRequests() throws Exception
+    {
+        TokenBucket bucket = new TokenBucket(100, Duration.ofSeconds(1));
+
+        // A request that is larger than the whole budget doesn't wait for more than the refill of the bucket.
+        long start = System.nanoTime();
+        bucket.acquire(1000);
+        assertTrue(System.nanoTime() - start < Duration.ofMillis(100).toNanos());
+        assertEquals(0, bucket.getAvailable(), 5);
+
+        start = System.nanoTime();
+        bucket.acquire(1000);
+        long waited = System.nanoTime() - start;
+        assertTrue(waited >= Duration.ofMillis(800).toNanos());
+        assertTrue(waited < Duration.ofSeconds(3).toNanos());
+    }
+
+    @Test
+    void doesNotRefillBeyondCapacity() throws Exception
+    {
+        TokenBucket bucket = new TokenBucket(10, Duration.ofMillis(10));
+        Thread.sleep(50);
+        assertEquals(10, bucket.getAvailable(), 0);
+    }
+}
@@ -0,0 +1,200 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.llm.internal.rest;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.xwiki.contrib.llm.ChatClientConfigProvider;
+import org.xwiki.contrib.llm.EmbeddingModel;
+import org.xwiki.contrib.llm.EmbeddingModelManager;
+import org.xwiki.contrib.llm.GPTAPIException;
+import org.xwiki.contrib.llm.openai.EmbeddingsRequest;
+import org.xwiki.model.reference.WikiReference;
+import org.xwiki.test.junit5.mockito.InjectMockComponents;
+import org.xwiki.test.junit5.mockito.MockComponent;
+import org.xwiki.user.CurrentUserReference;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.xpn.xwiki.test.junit5.mockito.OldcoreTest;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Component test for {@link DefaultEmbeddingsResource}.
+ *
+ * @version $Id$
+ */
+@OldcoreTest
+class DefaultEmbeddingsResourceTest
+{
+    private static final String WIKI = "xwiki";
+
+    private static final String MODEL = "model";
+
+    private static final float[] FIRST_EMBEDDING = { 0.5f, -1.0f };
+
+    private static final float[] SECOND_EMBEDDING = { 0.25f, 2.0f };
+
+    @InjectMockComponents
+    private DefaultEmbeddingsResource embeddingsResource;
+
+    @MockComponent
+    private ChatClientConfigProvider configProvider;
+
+    @MockComponent
+    private EmbeddingModelManager embeddingModelManager;
+
+    private EmbeddingModel model;
+
+    @BeforeEach
+    void setUp() throws Exception
+    {
+        this.model = mock();
+        when(this.embeddingModelManager.getModel(new WikiReference(WIKI), MODEL, CurrentUserReference.INSTANCE))
+            .thenReturn(this.model);
+    }
+
+    @Test
+    void singleInput() throws Exception
+    {
+        when(this.model.embedFloats(List.of("first"), EmbeddingModel.EmbeddingPurpose.QUERY))
+            .thenReturn(List.of(FIRST_EMBEDDING));
+
+        Response response = this.embeddingsResource.getEmbeddings(null, WIKI,
+            new EmbeddingsRequest(MODEL, List.of("first"), null, null));
+
+        assertEquals(Response.Status.OK.getStatusCode(), response.getStatus());
+        JsonNode json = readEntity(response);
+        assertEquals("list", json.get("object").asText());
+        assertEquals(MODEL, json.get("model").asText());
+        assertEquals(1, json.get("data").size());
+        assertEquals(0, json.get("data").get(0).get("index").asInt());
+        assertArrayEquals(FIRST_EMBEDDING, toFloatArray(json.get("data").get(0).get("embedding")));
+    }
+
+    @Test
+    void batchedInput() throws Exception
+    {
+        when(this.model.embedFloats(List.of("first", "second"), EmbeddingModel.EmbeddingPurpose.INDEX))
+            .thenReturn(List.of(FIRST_EMBEDDING, SECOND_EMBEDDING));
+
+        Response response = this.embeddingsResource.getEmbeddings(null, WIKI,
+            new EmbeddingsRequest(MODEL, List.of("first", "second"), "float", "index"));
+
+        assertEquals(Response.Status.OK.getStatusCode(), response.getStatus());
+        JsonNode data = readEntity(response).get("data");
+        assertEquals(2, data.size());
+        assertEquals(1, data.get(1).get("index").asInt());
+        assertArrayEquals(FIRST_EMBEDDING, toFloatArray(data.get(0).get("embedding")));
+        assertArrayEquals(SECOND_EMBEDDING, toFloatArray(data.get(1).get("embedding")));
+    }
+
+    @Test
+    void base64Output() throws Exception
+    {
+        when(this.model.embedFloats(List.of("first"), EmbeddingModel.EmbeddingPurpose.QUERY))
+            .thenReturn(List.of(FIRST_EMBEDDING));
+
+        Response response = this.embeddingsResource.getEmbeddings(null, WIKI,
+            new EmbeddingsRequest(MODEL, List.of("first"), "base64", null));
+
+        assertEquals(Response.Status.OK.getStatusCode(), response.getStatus());
+        byte[] bytes = Base64.getDecoder().decode(readEntity(response).get("data").get(0).get("embedding").asText());
+        float[] embedding = new float[bytes.length / Float.BYTES];
+        ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer().get(embedding);
+        assertArrayEquals(FIRST_EMBEDDING, embedding);
+    }
+
+    @Test
+    void unsupportedEncodingFormat() throws Exception
+    {
+        Response response = this.embeddingsResource.getEmbeddings(null, WIKI,
+            new EmbeddingsRequest(MODEL, List.of("first"), "int8", null));
+
+        assertEquals(Response.Status.BAD_REQUEST.getStatusCode(), response.getStatus());
+        verify(this.model, never()).embedFloats(any(List.class), any());
+    }
+
+    @Test
+    void missingModel() throws Exception
+    {
+        Response response = this.embeddingsResource.getEmbeddings(null, WIKI,
+            new EmbeddingsRequest(" ", List.of("first"), null, null));
+
+        assertEquals(Response.Status.BAD_REQUEST.getStatusCode(), response.getStatus());
+        verify(this.embeddingModelManager, never()).getModel(any(), any(), any());
+    }
+
+    @Test
+    void tooManyInputs() throws Exception
+    {
+        Response response = this.embeddingsResource.getEmbeddings(null, WIKI,
+            new EmbeddingsRequest(MODEL, Collections.nCopies(2049, "text"), null, null));
+
+        assertEquals(Response.Status.BAD_REQUEST.getStatusCode(), response.getStatus());
+        verify(this.model, never()).embedFloats(any(List.class), any());
+    }
+
+    @Test
+    void accessDenied() throws Exception
+    {
+        when(this.embeddingModelManager.getModel(new WikiReference(WIKI), "secret", CurrentUserReference.INSTANCE))
+            .thenThrow(new GPTAPIException("Model [secret] not found"));
+
+        Response response = this.embeddingsResource.getEmbeddings(null, WIKI,
+            new EmbeddingsRequest("secret", List.of("first"), null, null));
+
+        // Don't reveal if the model exists when the user isn't allowed to use it.
+        assertEquals(Response.Status.NOT_FOUND.getStatusCode(), response.getStatus());
+    }
+
+    private static JsonNode readEntity(Response response) throws Exception
+    {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        ((StreamingOutput) response.getEntity()).write(outputStream);
+        return new ObjectMapper().readTree(outputStream.toByteArray());
+    }
+
+    private static float[] toFloatArray(JsonNode array)
+    {
+        float[] result = new float[array.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = array.get(i).floatValue();
+        }
+        return result;
+    }
+}
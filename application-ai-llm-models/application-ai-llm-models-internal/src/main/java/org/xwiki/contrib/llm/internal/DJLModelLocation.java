@@ -0,0 +1,95 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.llm.internal;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Locale;
+import java.util.stream.Stream;
+
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * The location from which an embedding model is loaded with DJL.
+ *
+ * @param name the name of the model as configured in the model
+ * @param url the URL of the model, either in the HuggingFace model zoo of DJL or a local directory
+ * @param engine the DJL engine that executes the model
+ * @param fileName the name of the model file without extension in a local directory, {@code null} to let DJL find it
+ * @version $Id$
+ * @since 0.6.3
+ */
+record DJLModelLocation(String name, String url, String engine, String fileName)
+{
+    /**
+     * The name of the PyTorch engine.
+     */
+    static final String PYTORCH = "PyTorch";
+
+    /**
+     * The name of the ONNX Runtime engine.
+     */
+    static final String ONNX_RUNTIME = "OnnxRuntime";
+
+    private static final String ONNX_EXTENSION = ".onnx";
+
+    /**
+     * Resolve the location of a model. Models are loaded from the directory with the name of the model in the models
+     * directory if it exists, which allows using, e.g., a quantized ONNX export of a model. A directory with an ONNX
+     * file is executed with ONNX Runtime, quantized files are preferred. Other models are loaded from the HuggingFace
+     * model zoo of DJL for the configured engine.
+     *
+     * @param name the name of the model
+     * @param modelsDirectory the directory that contains local models
+     * @param engine the configured engine, "PyTorch" or "OnnxRuntime"
+     * @return the location of the model
+     * @throws IOException if the local directory of the model can't be read
+     */
+    static DJLModelLocation resolve(String name, Path modelsDirectory, String engine) throws IOException
+    {
+        Path normalizedModelsDirectory = modelsDirectory.normalize();
+        Path localDirectory = normalizedModelsDirectory.resolve(name).normalize();
+        if (localDirectory.startsWith(normalizedModelsDirectory) && !localDirectory.equals(normalizedModelsDirectory)
+            && Files.isDirectory(localDirectory)) {
+            String onnxFile = findOnnxFile(localDirectory);
+            return new DJLModelLocation(name, localDirectory.toUri().toString(),
+                onnxFile != null ? ONNX_RUNTIME : PYTORCH, onnxFile);
+        }
+
+        String zooEngine = ONNX_RUNTIME.equalsIgnoreCase(engine) || "onnx".equalsIgnoreCase(engine)
+            ? ONNX_RUNTIME : PYTORCH;
+        return new DJLModelLocation(name, "djl://ai.djl.huggingface." + zooEngine.toLowerCase(Locale.ROOT) + "/" + name,
+            zooEngine, null);
+    }
+
+    private static String findOnnxFile(Path directory) throws IOException
+    {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.map(file -> file.getFileName().toString())
+                .filter(fileName -> fileName.endsWith(ONNX_EXTENSION))
+                .min(Comparator.comparing((String fileName) -> !fileName.contains("quantized"))
+                    .thenComparing(Comparator.naturalOrder()))
+                .map(fileName -> StringUtils.removeEnd(fileName, ONNX_EXTENSION))
+                .orElse(null);
+        }
+    }
+}
@@ -0,0 +1,250 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.llm.internal;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+import org.apache.commons.lang3.exception.ExceptionUtils;
+import org.apache.commons.lang3.function.FailableFunction;
+import org.apache.commons.lang3.tuple.Pair;
+import org.slf4j.Logger;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.component.phase.Disposable;
+import org.xwiki.configuration.ConfigurationSource;
+import org.xwiki.environment.Environment;
+
+import ai.djl.huggingface.tokenizers.HuggingFaceTokenizer;
+import ai.djl.inference.Predictor;
+
+/**
+ * Manages the resources of the models that are executed with DJL, which are shared between all instances of the
+ * internal server. Loaded models are kept together with a pool of predictors until they haven't been used for the
+ * configured idle time.
+ *
+ * @version $Id$
+ * @since 0.6.3
+ */
+@Component(roles = DJLModelManager.class)
+@Singleton
+public class DJLModelManager implements Disposable
+{
+    private static final String CACHE_DIR_PROPERTY = "DJL_CACHE_DIR";
+
+    private static final String THREADS_PROPERTY = "ai.djl.pytorch.num_threads";
+
+    private static final String PREFIX = "llm.internal.";
+
+    private static final String TOKENIZER_FILE = "tokenizer.json";
+
+    private static final String INTRA_OP_THREADS = PREFIX + "intraOpThreads";
+
+    /**
+     * The default of {@code llm.internal.maxBatchSize}. It is the default batch size of the sentence-transformers
+     * library that the supported embedding models are published for. It hasn't been tuned on specific hardware, use
+     * {@code EmbeddingBatchSizeBenchmark} to compare it with other batch sizes on the hardware of a wiki.
+     */
+    static final int DEFAULT_MAXIMUM_BATCH_SIZE = 32;
+
+    @Inject
+    private Logger logger;
+
+    @Inject
+    private Environment environment;
+
+    @Inject
+    @Named("xwikiproperties")
+    private ConfigurationSource configurationSource;
+
+    private final Map<DJLModelLocation, DJLPredictorPool> pools = new ConcurrentHashMap<>();
+
+    // The resolved locations by model name and configured engine, resolving lists the local model directory.
+    private final Map<Pair<String, String>, DJLModelLocation> locations = new ConcurrentHashMap<>();
+
+    private final Map<String, Optional<HuggingFaceTokenizer>> tokenizers = new ConcurrentHashMap<>();
+
+    private ScheduledExecutorService evictionExecutor;
+
+    /**
+     * @return the maximum number of texts that are embedded together in a single forward pass of the model
+     */
+    public int getMaximumBatchSize()
+    {
+        return Math.max(1, this.configurationSource.getProperty(PREFIX + "maxBatchSize", DEFAULT_MAXIMUM_BATCH_SIZE));
+    }
+
+    /**
+     * Configure DJL before the engine is loaded: store the downloaded models in the permanent directory of XWiki and
+     * set the number of threads that PyTorch uses for a single operation.
+     */
+    private void initializeEngine()
+    {
+        if (StringUtils.isBlank(System.getProperty(CACHE_DIR_PROPERTY))) {
+            System.setProperty(CACHE_DIR_PROPERTY,
+                this.environment.getPermanentDirectory().toPath().resolve("cache/djl.ai").toAbsolutePath()
+                    .toString());
+        }
+
+        int threads = this.configurationSource.getProperty(INTRA_OP_THREADS, 0);
+        if (threads > 0 && StringUtils.isBlank(System.getProperty(THREADS_PROPERTY))) {
+            System.setProperty(THREADS_PROPERTY, String.valueOf(threads));
+        }
+    }
+
+    /**
+     * Execute the given action with a predictor of the given model. The model is loaded on first use, the predictor
+     * is only used by the current thread during the action.
+     *
+     * @param modelName the name of the model on HuggingFace
+     * @param action the action to execute
+     * @param <R> the type of the result
+     * @return the result of the action
+     * @throws Exception if loading the model or executing the action fails
+     */
+    public <R> R withPredictor(String modelName, FailableFunction<Predictor<String, float[]>, R, Exception> action)
+        throws Exception
+    {
+        while (true) {
+            DJLPredictorPool pool = getPool(modelName);
+            R result = pool.withPredictor(action);
+            if (result != null) {
+                return result;
+            }
+            // The pool has been closed because it was idle, try again with a new pool.
+            this.pools.remove(pool.getLocation(), pool);
+        }
+    }
+
+    /**
+     * Load the models that are configured to be preloaded so that the first requests don't need to wait for them.
+     */
+    public void preloadModels()
+    {
+        List<?> modelNames = this.configurationSource.getProperty(PREFIX + "preloadModels", List.class);
+        if (modelNames != null) {
+            for (Object modelName : modelNames) {
+                try {
+                    getPool(String.valueOf(modelName)).getModel();
+                    this.logger.info("Preloaded the embedding model [{}].", modelName);
+                } catch (Exception e) {
+                    this.logger.warn("Failed to preload the embedding model [{}]: [{}]", modelName,
+                        ExceptionUtils.getRootCauseMessage(e));
+                }
+            }
+        }
+    }
+
+    /**
+     * @param modelName the name of the model on HuggingFace
+     * @return the tokenizer of the model, {@code null} if it couldn't be loaded, loading isn't tried again
+     */
+    public HuggingFaceTokenizer getTokenizer(String modelName)
+    {
+        return this.tokenizers.computeIfAbsent(modelName, this::loadTokenizer).orElse(null);
+    }
+
+    private Optional<HuggingFaceTokenizer> loadTokenizer(String modelName)
+    {
+        try {
+            // Use the tokenizer that is shipped with the model to avoid downloading it separately.
+            Path tokenizerPath = getPool(modelName).getModel().getModelPath().resolve(TOKENIZER_FILE);
+            if (Files.exists(tokenizerPath)) {
+                return Optional.of(HuggingFaceTokenizer.newInstance(tokenizerPath));
+            }
+            return Optional.of(HuggingFaceTokenizer.newInstance(modelName));
+        } catch (Exception e) {
+            this.logger.warn("Failed to load the tokenizer of model [{}], estimating the number of tokens instead: "
+                + "[{}]", modelName, ExceptionUtils.getRootCauseMessage(e));
+            return Optional.empty();
+        }
+    }
+
+    private DJLPredictorPool getPool(String modelName) throws IOException
+    {
+        initializeEngine();
+        startEviction();
+        String engine = this.configurationSource.getProperty(PREFIX + "engine", DJLModelLocation.PYTORCH);
+        Pair<String, String> key = Pair.of(modelName, engine);
+        DJLModelLocation modelLocation = this.locations.get(key);
+        if (modelLocation == null) {
+            // Resolving twice in parallel is harmless, both get the same location.
+            modelLocation = DJLModelLocation.resolve(modelName,
+                this.environment.getPermanentDirectory().toPath().resolve("llm/models"), engine);
+            this.locations.put(key, modelLocation);
+        }
+        return this.pools.computeIfAbsent(modelLocation, location -> new DJLPredictorPool(location,
+            this.configurationSource.getProperty(PREFIX + "predictorPoolSize", 2),
+            this.configurationSource.getProperty(INTRA_OP_THREADS, 0)));
+    }
+
+    private synchronized void startEviction()
+    {
+        if (this.evictionExecutor == null) {
+            this.evictionExecutor = new ScheduledThreadPoolExecutor(1, new BasicThreadFactory.Builder()
+                .namingPattern("LLM internal model eviction")
+                .daemon(true)
+                .build());
+            this.evictionExecutor.scheduleWithFixedDelay(this::evictIdleModels, 1, 1, TimeUnit.MINUTES);
+        }
+    }
+
+    private void evictIdleModels()
+    {
+        long idleNanos = TimeUnit.SECONDS.toNanos(this.configurationSource.getProperty(PREFIX + "modelIdleTime",
+            1800L));
+        this.pools.forEach((location, pool) -> {
+            if (idleNanos > 0 && pool.closeIfIdle(idleNanos)) {
+                this.pools.remove(location, pool);
+                // Resolve the location again when the model is used again to pick up changes of the local models.
+                this.locations.values().removeIf(location::equals);
+                this.logger.debug("Unloaded the idle embedding model [{}].", location.name());
+            }
+        });
+    }
+
+    @Override
+    public void dispose()
+    {
+        synchronized (this) {
+            if (this.evictionExecutor != null) {
+                this.evictionExecutor.shutdownNow();
+            }
+        }
+        this.pools.values().forEach(DJLPredictorPool::close);
+        this.pools.clear();
+        this.locations.clear();
+        this.tokenizers.values().forEach(tokenizer -> tokenizer.ifPresent(HuggingFaceTokenizer::close));
+        this.tokenizers.clear();
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.llm.internal;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.xwiki.bridge.event.ApplicationReadyEvent;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.observation.AbstractEventListener;
+import org.xwiki.observation.event.Event;
+
+/**
+ * Preloads the internal embedding models that are configured in {@code llm.internal.preloadModels} in the background
+ * when XWiki has started.
+ *
+ * @version $Id$
+ * @since 0.6.3
+ */
+@Component
+@Singleton
+@Named(DJLModelPreloader.NAME)
+public class DJLModelPreloader extends AbstractEventListener
+{
+    /**
+     * The name of the event listener.
+     */
+    public static final String NAME = "org.xwiki.contrib.llm.internal.DJLModelPreloader";
+
+    @Inject
+    private DJLModelManager modelManager;
+
+    /**
+     * Default constructor.
+     */
+    public DJLModelPreloader()
+    {
+        super(NAME, new ApplicationReadyEvent());
+    }
+
+    @Override
+    public void onEvent(Event event, Object source, Object data)
+    {
+        Thread thread = new Thread(() -> this.modelManager.preloadModels(), "LLM model preloading");
+        thread.setDaemon(true);
+        thread.start();
+    }
+}
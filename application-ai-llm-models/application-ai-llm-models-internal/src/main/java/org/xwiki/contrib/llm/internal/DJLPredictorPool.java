@@ -0,0 +1,180 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.llm.internal;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.Semaphore;
+
+import org.apache.commons.lang3.function.FailableFunction;
+
+import ai.djl.huggingface.translator.TextEmbeddingTranslatorFactory;
+import ai.djl.inference.Predictor;
+import ai.djl.repository.zoo.Criteria;
+import ai.djl.repository.zoo.ZooModel;
+
+/**
+ * A loaded embedding model together with a bounded pool of predictors. Each predictor is used by a single thread at a
+ * time, predictors are kept after their use so that they can be reused by the next request.
+ *
+ * @version $Id$
+ * @since 0.6.3
+ */
+class DJLPredictorPool
+{
+    private final DJLModelLocation location;
+
+    private final Semaphore permits;
+
+    private final int threads;
+
+    private final Deque<Predictor<String, float[]>> idlePredictors = new ArrayDeque<>();
+
+    private ZooModel<String, float[]> model;
+
+    private int activeUsers;
+
+    private long lastUsed = System.nanoTime();
+
+    private boolean closed;
+
+    /**
+     * @param location the location of the model
+     * @param size the maximum number of predictors that are used concurrently
+     * @param threads the number of threads that the engine uses for a single operation, 0 for the default
+     */
+    DJLPredictorPool(DJLModelLocation location, int size, int threads)
+    {
+        this.location = location;
+        this.threads = threads;
+        this.permits = new Semaphore(Math.max(1, size), true);
+    }
+
+    /**
+     * @return the location of the model
+     */
+    DJLModelLocation getLocation()
+    {
+        return this.location;
+    }
+
+    /**
+     * Execute the given action with a predictor of the pool, waiting until a predictor is available.
+     *
+     * @param action the action to execute
+     * @param <R> the type of the result
+     * @return the result of the action, {@code null} if the pool has been closed and the action hasn't been executed
+     * @throws Exception if loading the model or executing the action fails
+     */
+    <R> R withPredictor(FailableFunction<Predictor<String, float[]>, R, Exception> action) throws Exception
+    {
+        this.permits.acquire();
+        try {
+            Predictor<String, float[]> predictor;
+            synchronized (this) {
+                if (this.closed) {
+                    return null;
+                }
+                predictor = this.idlePredictors.poll();
+                if (predictor == null) {
+                    predictor = getModel().newPredictor();
+                }
+                this.activeUsers++;
+            }
+
+            try {
+                return action.apply(predictor);
+            } finally {
+                release(predictor);
+            }
+        } finally {
+            this.permits.release();
+        }
+    }
+
+    private synchronized void release(Predictor<String, float[]> predictor)
+    {
+        this.activeUsers--;
+        this.lastUsed = System.nanoTime();
+        if (this.closed) {
+            predictor.close();
+            close();
+        } else {
+            this.idlePredictors.push(predictor);
+        }
+    }
+
+    /**
+     * @return the loaded model, the model is loaded if it hasn't been loaded yet
+     * @throws Exception if loading the model fails
+     */
+    synchronized ZooModel<String, float[]> getModel() throws Exception
+    {
+        if (this.closed) {
+            throw new IllegalStateException("The model [%s] has been unloaded".formatted(this.location.name()));
+        } else if (this.model == null) {
+            Criteria.Builder<String, float[]> builder =
+                Criteria.builder()
+                    .setTypes(String.class, float[].class)
+                    .optModelUrls(this.location.url())
+                    .optModelName(this.location.fileName())
+                    .optEngine(this.location.engine())
+                    .optTranslatorFactory(new TextEmbeddingTranslatorFactory())
+                    // Pad the texts of a batch to the longest one so that they can be predicted together.
+                    .optArgument("padding", "true");
+            if (DJLModelLocation.ONNX_RUNTIME.equals(this.location.engine()) && this.threads > 0) {
+                // The PyTorch engine is configured globally through a system property.
+                builder.optOption("intraOpNumThreads", String.valueOf(this.threads));
+            }
+            this.model = builder.build().loadModel();
+        }
+
+        return this.model;
+    }
+
+    /**
+     * Close the pool if it hasn't been used for the given time.
+     *
+     * @param idleNanos the time in nanoseconds after which an unused pool is closed
+     * @return {@code true} if the pool has been closed
+     */
+    synchronized boolean closeIfIdle(long idleNanos)
+    {
+        if (this.activeUsers == 0 && System.nanoTime() - this.lastUsed > idleNanos) {
+            close();
+        }
+
+        return this.closed;
+    }
+
+    /**
+     * Close the predictors and the model. Predictors that are in use are closed when they are returned.
+     */
+    synchronized void close()
+    {
+        this.closed = true;
+        this.idlePredictors.forEach(Predictor::close);
+        this.idlePredictors.clear();
+        if (this.model != null && this.activeUsers == 0) {
+            this.model.close();
+            this.model = null;
+        }
+    }
+}
@@ -19,24 +19,24 @@
  */
 package org.xwiki.contrib.llm.internal;
 
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.List;
+import java.util.stream.IntStream;
 
 import javax.inject.Inject;
 import javax.inject.Named;
 
-import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.exception.ExceptionUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.xwiki.component.annotation.Component;
 import org.xwiki.component.annotation.InstantiationStrategy;
 import org.xwiki.component.descriptor.ComponentInstantiationStrategy;
 import org.xwiki.contrib.llm.RequestError;
-import org.xwiki.environment.Environment;
 
-import ai.djl.huggingface.translator.TextEmbeddingTranslatorFactory;
+import ai.djl.huggingface.tokenizers.HuggingFaceTokenizer;
 import ai.djl.inference.Predictor;
-import ai.djl.repository.zoo.Criteria;
-import ai.djl.repository.zoo.ZooModel;
 
 /**
  * An internal GPT API server that uses DJL to compute embeddings.
@@ -51,70 +51,80 @@ public class InternalGPTAPIServer extends AbstractGPTAPIServer
 {
     private static final Logger LOGGER = LoggerFactory.getLogger(InternalGPTAPIServer.class);
 
-    private static final String CACHE_DIR_PROPERTY = "DJL_CACHE_DIR";
-
     @Inject
-    private Environment environment;
+    private DJLModelManager modelManager;
 
     @Override
     public List<double[]> embed(String modelName, List<String> texts) throws RequestError
     {
-        try {
-            if (StringUtils.isBlank(System.getProperty(CACHE_DIR_PROPERTY))) {
-                System.setProperty(CACHE_DIR_PROPERTY,
-                    this.environment.getPermanentDirectory().toPath().resolve("cache/djl.ai").toAbsolutePath()
-                        .toString());
-            }
-
-            Criteria<String, float[]> criteria =
-                Criteria.builder()
-                    .setTypes(String.class, float[].class)
-                    .optModelUrls("djl://ai.djl.huggingface.pytorch/" + modelName)
-                    .optEngine("PyTorch")
-                    .optTranslatorFactory(new TextEmbeddingTranslatorFactory())
-                    .build();
-
-            try (ZooModel<String, float[]> model = criteria.loadModel();
-                 Predictor<String, float[]> predictor = model.newPredictor()) {
+        return EmbeddingVectorUtils.toDoubleArrays(embedFloats(modelName, texts));
+    }
 
-                return computeEmbeddingsWithPredictor(texts, predictor);
-            }
+    @Override
+    public List<float[]> embedFloats(String modelName, List<String> texts) throws RequestError
+    {
+        try {
+            return this.modelManager.withPredictor(modelName,
+                predictor -> computeEmbeddingsWithPredictor(texts, predictor));
         } catch (Exception e) {
             throw new RequestError(500, "Failed to compute embedding using DJL with model [%s].".formatted(modelName),
                 e);
         }
     }
 
-    private List<double[]> computeEmbeddingsWithPredictor(List<String> texts, Predictor<String, float[]> predictor)
+    @Override
+    public int countTokens(String modelName, String text)
+    {
+        HuggingFaceTokenizer tokenizer = this.modelManager.getTokenizer(modelName);
+        if (tokenizer != null) {
+            return tokenizer.encode(text).getIds().length;
+        }
+
+        return GPTAPIServer.estimateTokens(text);
+    }
+
+    private List<float[]> computeEmbeddingsWithPredictor(List<String> texts, Predictor<String, float[]> predictor)
     {
-        return texts.stream()
-            .map(text -> predictAndConvert(text, predictor))
+        // Sort the texts by length so that the texts of a batch need little padding.
+        List<Integer> order = IntStream.range(0, texts.size()).boxed()
+            .sorted(Comparator.comparingInt(i -> texts.get(i).length()))
             .toList();
+        int batchSize = this.modelManager.getMaximumBatchSize();
+
+        float[][] result = new float[texts.size()][];
+        for (int start = 0; start < order.size(); start += batchSize) {
+            List<Integer> batchIndexes = order.subList(start, Math.min(start + batchSize, order.size()));
+            List<String> batch = batchIndexes.stream().map(texts::get).toList();
+            List<float[]> embeddings = batchPredict(batch, predictor);
+            for (int i = 0; i < batchIndexes.size(); i++) {
+                result[batchIndexes.get(i)] = embeddings.get(i);
+            }
+        }
+
+        return Arrays.asList(result);
     }
 
-    private double[] predictAndConvert(String text, Predictor<String, float[]> predictor)
+    private List<float[]> batchPredict(List<String> batch, Predictor<String, float[]> predictor)
     {
-        try {
-            float[] embeddings = predictor.predict(text);
-            return convertFloatToDouble(embeddings);
-        } catch (Exception e) {
-            LOGGER.error("Failed to compute embeddings for text: {}", text, e);
-            return new double[0];
+        if (batch.size() > 1) {
+            try {
+                return predictor.batchPredict(batch);
+            } catch (Exception e) {
+                LOGGER.warn("Failed to compute the embeddings of a batch of [{}] texts, computing them one by one: "
+                    + "[{}]", batch.size(), ExceptionUtils.getRootCauseMessage(e));
+            }
         }
+
+        return batch.stream().map(text -> predict(text, predictor)).toList();
     }
 
-    /**
-     * Convert a float array to a double array.
-     *
-     * @param floatArray the float array to convert
-     * @return the converted double array
-     */
-    private double[] convertFloatToDouble(float[] floatArray)
+    private float[] predict(String text, Predictor<String, float[]> predictor)
     {
-        double[] doubleArray = new double[floatArray.length];
-        for (int i = 0; i < floatArray.length; i++) {
-            doubleArray[i] = floatArray[i];
+        try {
+            return predictor.predict(text);
+        } catch (Exception e) {
+            LOGGER.error("Failed to compute embeddings for text: {}", text, e);
+            return new float[0];
         }
-        return doubleArray;
     }
 }
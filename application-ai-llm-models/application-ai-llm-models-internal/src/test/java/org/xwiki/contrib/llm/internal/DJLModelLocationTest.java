@@ -0,0 +1,107 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.llm.internal;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * Unit tests for {@link DJLModelLocation}.
+ *
+ * @version $Id$
+ */
+class DJLModelLocationTest
+{
+    private static final String MODEL = "sentence-transformers/all-MiniLM-L6-v2";
+
+    private static final String ZOO_URL = "djl://ai.djl.huggingface.pytorch/";
+
+    @TempDir
+    private Path temporaryDirectory;
+
+    @Test
+    void modelZoo() throws Exception
+    {
+        Path modelsDirectory = this.temporaryDirectory.resolve("models");
+
+        DJLModelLocation location = DJLModelLocation.resolve(MODEL, modelsDirectory, DJLModelLocation.PYTORCH);
+        assertEquals(new DJLModelLocation(MODEL, ZOO_URL + MODEL, DJLModelLocation.PYTORCH, null), location);
+
+        location = DJLModelLocation.resolve(MODEL, modelsDirectory, "onnx");
+        assertEquals(new DJLModelLocation(MODEL, "djl://ai.djl.huggingface.onnxruntime/" + MODEL,
+            DJLModelLocation.ONNX_RUNTIME, null), location);
+    }
+
+    @Test
+    void localDirectoryPrefersQuantizedOnnxFile() throws Exception
+    {
+        Path modelsDirectory = this.temporaryDirectory.resolve("models");
+        Path modelDirectory = Files.createDirectories(modelsDirectory.resolve(MODEL));
+        Files.createFile(modelDirectory.resolve("model.onnx"));
+        Files.createFile(modelDirectory.resolve("model_quantized.onnx"));
+        Files.createFile(modelDirectory.resolve("tokenizer.json"));
+
+        // The ONNX file decides the engine, not the configuration.
+        DJLModelLocation location = DJLModelLocation.resolve(MODEL, modelsDirectory, DJLModelLocation.PYTORCH);
+
+        assertEquals(new DJLModelLocation(MODEL, modelDirectory.toUri().toString(), DJLModelLocation.ONNX_RUNTIME,
+            "model_quantized"), location);
+    }
+
+    @Test
+    void localDirectoryWithoutOnnxFile() throws Exception
+    {
+        Path modelsDirectory = this.temporaryDirectory.resolve("models");
+        Path modelDirectory = Files.createDirectories(modelsDirectory.resolve(MODEL));
+        Files.createFile(modelDirectory.resolve("model.pt"));
+
+        DJLModelLocation location = DJLModelLocation.resolve(MODEL, modelsDirectory, DJLModelLocation.ONNX_RUNTIME);
+
+        assertEquals(DJLModelLocation.PYTORCH, location.engine());
+        assertEquals(modelDirectory.toUri().toString(), location.url());
+        assertNull(location.fileName());
+    }
+
+    @Test
+    void directoriesOutsideOfTheModelsDirectoryAreIgnored() throws Exception
+    {
+        Path modelsDirectory = Files.createDirectories(this.temporaryDirectory.resolve("models"));
+        Path outsideDirectory = Files.createDirectories(this.temporaryDirectory.resolve("outside"));
+        Files.createFile(outsideDirectory.resolve("model.onnx"));
+
+        DJLModelLocation location = DJLModelLocation.resolve("../outside", modelsDirectory, DJLModelLocation.PYTORCH);
+        assertEquals(ZOO_URL + "../outside", location.url());
+        assertEquals(DJLModelLocation.PYTORCH, location.engine());
+
+        location = DJLModelLocation.resolve(outsideDirectory.toString(), modelsDirectory, DJLModelLocation.PYTORCH);
+        assertEquals(ZOO_URL + outsideDirectory, location.url());
+
+        // The models directory itself isn't a model.
+        Files.createFile(modelsDirectory.resolve("model.onnx"));
+        location = DJLModelLocation.resolve(".", modelsDirectory, DJLModelLocation.PYTORCH);
+        assertEquals(ZOO_URL + ".", location.url());
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.llm.internal;
+
+import java.util.List;
+import java.util.stream.IntStream;
+
+import javax.inject.Named;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.xwiki.configuration.ConfigurationSource;
+import org.xwiki.test.TestEnvironment;
+import org.xwiki.test.annotation.ComponentList;
+import org.xwiki.test.junit5.mockito.ComponentTest;
+import org.xwiki.test.junit5.mockito.InjectMockComponents;
+import org.xwiki.test.junit5.mockito.MockComponent;
+
+import static org.mockito.AdditionalAnswers.returnsSecondArg;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.when;
+
+/**
+ * Measures the throughput of the {@link InternalGPTAPIServer} embedding for different batch sizes
+ * ({@code llm.internal.maxBatchSize}). It isn't part of the unit tests, run it with:
+ * <pre>
+ * mvn -Pbenchmark test -pl application-ai-llm-models/application-ai-llm-models-internal
+ * </pre>
+ *
+ * @version $Id$
+ */
+@ComponentTest
+@ComponentList({ TestEnvironment.class, DJLModelManager.class })
+class EmbeddingBatchSizeBenchmark
+{
+    private static final String MODEL = "sentence-transformers/all-MiniLM-L6-v2";
+
+    private static final int NUMBER_OF_TEXTS = 512;
+
+    private static final int NUMBER_OF_RUNS = 3;
+
+    @MockComponent
+    @Named("xwikiproperties")
+    private ConfigurationSource configurationSource;
+
+    @InjectMockComponents
+    private InternalGPTAPIServer server;
+
+    @BeforeEach
+    void setUp()
+    {
+        when(this.configurationSource.getProperty(anyString(), any(Object.class))).then(returnsSecondArg());
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = { 1, 8, 16, DJLModelManager.DEFAULT_MAXIMUM_BATCH_SIZE, 64, 128 })
+    void embed(int batchSize) throws Exception
+    {
+        when(this.configurationSource.getProperty("llm.internal.maxBatchSize",
+            DJLModelManager.DEFAULT_MAXIMUM_BATCH_SIZE)).thenReturn(batchSize);
+        // Texts of different lengths so that the padding of the batches matters.
+        List<String> texts = IntStream.range(0, NUMBER_OF_TEXTS)
+            .mapToObj(i -> "XWiki is a structured wiki. ".repeat(1 + i % 16) + i)
+            .toList();
+        // Warm up the model.
+        this.server.embedFloats(MODEL, texts.subList(0, batchSize));
+
+        // Keep the fastest run to reduce the noise of other processes.
+        double seconds = Double.MAX_VALUE;
+        for (int run = 0; run < NUMBER_OF_RUNS; run++) {
+            long start = System.nanoTime();
+            this.server.embedFloats(MODEL, texts);
+            seconds = Math.min(seconds, (System.nanoTime() - start) / 1e9);
+        }
+
+        System.out.printf("Batch size %d: %.1f texts/s%n", batchSize, texts.size() / seconds);
+    }
+}
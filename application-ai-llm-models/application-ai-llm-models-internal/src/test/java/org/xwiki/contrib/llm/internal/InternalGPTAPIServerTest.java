@@ -22,14 +22,24 @@ package org.xwiki.contrib.llm.internal;
 import java.util.Arrays;
 import java.util.List;
 
+import javax.inject.Named;
+
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.xwiki.configuration.ConfigurationSource;
 import org.xwiki.test.TestEnvironment;
 import org.xwiki.test.annotation.ComponentList;
 import org.xwiki.test.junit5.mockito.ComponentTest;
 import org.xwiki.test.junit5.mockito.InjectMockComponents;
+import org.xwiki.test.junit5.mockito.MockComponent;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.AdditionalAnswers.returnsSecondArg;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.when;
 
 /**
  * Unit tests for {@link InternalGPTAPIServer}.
@@ -37,19 +47,81 @@ import static org.junit.jupiter.api.Assertions.assertTrue;
  * @version $Id$
  */
 @ComponentTest
-@ComponentList(TestEnvironment.class)
+@ComponentList({ TestEnvironment.class, DJLModelManager.class })
 class InternalGPTAPIServerTest
 {
+    private static final String MODEL = "sentence-transformers/all-MiniLM-L6-v2";
+
+    @MockComponent
+    @Named("xwikiproperties")
+    private ConfigurationSource configurationSource;
+
     @InjectMockComponents
     private InternalGPTAPIServer server;
 
+    @BeforeEach
+    void setUp()
+    {
+        when(this.configurationSource.getProperty(anyString(), any(Object.class))).then(returnsSecondArg());
+    }
+
     @Test
     void embed() throws Exception
     {
-        List<double[]> embed = this.server.embed("sentence-transformers/all-MiniLM-L6-v2", List.of("XWiki is great!"));
+        List<double[]> embed = this.server.embed(MODEL, List.of("XWiki is great!"));
 
         assertEquals(1, embed.size());
         assertEquals(384, embed.get(0).length);
         assertTrue(Arrays.stream(embed.get(0)).anyMatch(x -> x != 0));
+
+        // The second request reuses the loaded model and predictor.
+        List<double[]> secondEmbed = this.server.embed(MODEL, List.of("XWiki is great!"));
+        assertEquals(1, secondEmbed.size());
+        assertArrayEquals(embed.get(0), secondEmbed.get(0));
+    }
+
+    @Test
+    void embedBatchKeepsOrder() throws Exception
+    {
+        List<String> texts = List.of("A much longer text about XWiki, the structured wiki.", "XWiki", "A wiki.");
+
+        List<float[]> batchEmbeddings = this.server.embedFloats(MODEL, texts);
+
+        assertEquals(texts.size(), batchEmbeddings.size());
+        for (int i = 0; i < texts.size(); i++) {
+            float[] single = this.server.embedFloats(MODEL, List.of(texts.get(i))).get(0);
+            for (int j = 0; j < single.length; j++) {
+                assertEquals(single[j], batchEmbeddings.get(i)[j], 1e-4);
+            }
+        }
+    }
+
+    @Test
+    void onnxRuntimeMatchesPyTorch() throws Exception
+    {
+        List<String> texts = List.of("XWiki is great!", "The structured wiki with an extensible platform.");
+        List<float[]> pytorchEmbeddings = this.server.embedFloats(MODEL, texts);
+
+        when(this.configurationSource.getProperty("llm.internal.engine", "PyTorch")).thenReturn("OnnxRuntime");
+        List<float[]> onnxEmbeddings = this.server.embedFloats(MODEL, texts);
+
+        assertEquals(texts.size(), onnxEmbeddings.size());
+        for (int i = 0; i < texts.size(); i++) {
+            assertTrue(cosineSimilarity(pytorchEmbeddings.get(i), onnxEmbeddings.get(i)) > 0.99);
+        }
+    }
+
+    private static double cosineSimilarity(float[] a, float[] b)
+    {
+        assertEquals(a.length, b.length);
+        double dot = 0;
+        double normA = 0;
+        double normB = 0;
+        for (int i = 0; i < a.length; i++) {
+            dot += a[i] * b[i];
+            normA += a[i] * a[i];
+            normB += b[i] * b[i];
+        }
+        return dot / Math.sqrt(normA * normB);
     }
 }